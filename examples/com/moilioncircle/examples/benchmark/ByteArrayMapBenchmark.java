@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.examples.benchmark;
+
+import com.moilioncircle.redis.replicator.util.ByteArrayHashMap;
+import com.moilioncircle.redis.replicator.util.ByteArrayMap;
+
+import java.util.Map;
+
+/**
+ * Compares the memory footprint and the put and get throughput of {@link ByteArrayMap}
+ * and {@link ByteArrayHashMap} with many small hashes, which is how the fields of an rdb are held.
+ * <p>
+ * The first rounds warm up the jit, the numbers are rough and include the gc of the put phase.
+ *
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class ByteArrayMapBenchmark {
+
+    private static final int MAPS = 20000;
+    private static final int FIELDS = 64;
+    private static final int ROUNDS = 5;
+
+    // held in a field, so the maps of the last run are surely released before measuring
+    private static Map<byte[], byte[]>[] maps;
+
+    public static void main(String[] args) {
+        byte[][] fields = new byte[FIELDS][];
+        for (int i = 0; i < FIELDS; i++) fields[i] = ("field:" + i).getBytes();
+        for (int round = 0; round < ROUNDS; round++) {
+            run("ByteArrayMap", false, fields);
+            run("ByteArrayHashMap", true, fields);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void run(String name, boolean open, byte[][] fields) {
+        maps = null;
+        long before = used();
+        maps = new Map[MAPS];
+        long start = System.nanoTime();
+        for (int i = 0; i < MAPS; i++) {
+            Map<byte[], byte[]> map = open ? new ByteArrayHashMap<byte[]>() : new ByteArrayMap<byte[]>();
+            // copy the field as the rdb parser does, so both maps hash a fresh array
+            for (byte[] field : fields) map.put(field.clone(), field);
+            maps[i] = map;
+        }
+        long put = System.nanoTime() - start;
+        long footprint = used() - before;
+
+        start = System.nanoTime();
+        long hits = 0;
+        for (Map<byte[], byte[]> map : maps) {
+            for (byte[] field : fields) if (map.get(field) != null) hits++;
+        }
+        long get = System.nanoTime() - start;
+        if (hits != (long) MAPS * FIELDS) throw new AssertionError(hits);
+
+        long ops = (long) MAPS * FIELDS;
+        System.out.printf("%-16s put %6.1f ns/op, get %6.1f ns/op, %6.1f bytes/entry%n",
+                name, (double) put / ops, (double) get / ops, (double) footprint / ops);
+    }
+
+    private static long used() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
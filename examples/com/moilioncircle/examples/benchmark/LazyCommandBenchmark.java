@@ -0,0 +1,108 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.examples.benchmark;
+
+import com.moilioncircle.redis.replicator.cmd.Command;
+import com.moilioncircle.redis.replicator.cmd.CommandTable;
+import com.moilioncircle.redis.replicator.cmd.KeyCommand;
+import com.moilioncircle.redis.replicator.cmd.parser.HSetParser;
+import com.moilioncircle.redis.replicator.cmd.parser.SetParser;
+import com.moilioncircle.redis.replicator.cmd.parser.ZAddParser;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static com.moilioncircle.redis.replicator.cmd.CommandName.name;
+
+/**
+ * Compares the eager and the lazy parsers of SET, HSET and ZADD on a mix of commands, when the
+ * listener only looks at the raw key as {@link com.moilioncircle.redis.replicator.cmd.PartitionedCommandListener} does.
+ * <p>
+ * The allocated bytes are read from the hotspot thread mx bean.
+ *
+ * @author Leon Chen
+ * @see com.moilioncircle.redis.replicator.Configuration#setLazyDecodeCommand(boolean)
+ * @since 2.6.0
+ */
+public class LazyCommandBenchmark {
+
+    private static final int COMMANDS = 100000;
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) {
+        Object[][] commands = commands(new Random(0));
+        CommandTable eager = table(false);
+        CommandTable lazy = table(true);
+        for (int round = 0; round < ROUNDS; round++) {
+            run("eager", eager, commands);
+            run("lazy", lazy, commands);
+        }
+    }
+
+    private static void run(String name, CommandTable table, Object[][] commands) {
+        long bytes = allocated();
+        long start = System.nanoTime();
+        long sum = 0;
+        for (Object[] raw : commands) {
+            Command command = table.get((byte[]) raw[0]).parse(raw);
+            if (command instanceof KeyCommand) sum += ((KeyCommand) command).getRawKey().length;
+        }
+        long time = System.nanoTime() - start;
+        bytes = allocated() - bytes;
+        System.out.printf("%-5s %6.1f ns/command, %6.1f bytes/command (%d)%n",
+                name, (double) time / commands.length, (double) bytes / commands.length, sum);
+    }
+
+    private static CommandTable table(boolean lazy) {
+        CommandTable table = new CommandTable();
+        table.put(name("SET"), new SetParser(lazy));
+        table.put(name("HSET"), new HSetParser(lazy));
+        table.put(name("ZADD"), new ZAddParser(lazy));
+        return table;
+    }
+
+    private static Object[][] commands(Random random) {
+        Object[][] commands = new Object[COMMANDS][];
+        for (int i = 0; i < COMMANDS; i++) {
+            String key = "user:" + random.nextInt(1000000);
+            String value = "value:" + random.nextLong();
+            switch (random.nextInt(3)) {
+                case 0:
+                    commands[i] = bytes("SET", key, value, "EX", "3600");
+                    break;
+                case 1:
+                    commands[i] = bytes("HSET", key, "field:" + random.nextInt(100), value);
+                    break;
+                default:
+                    commands[i] = bytes("ZADD", key, "CH", "1.5", "a" + i, "2", "b" + i, "3.25", value);
+                    break;
+            }
+        }
+        return commands;
+    }
+
+    private static Object[] bytes(String... args) {
+        Object[] r = new Object[args.length];
+        for (int i = 0; i < args.length; i++) r[i] = args[i].getBytes();
+        return r;
+    }
+
+    private static long allocated() {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
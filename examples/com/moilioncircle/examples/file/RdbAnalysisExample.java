@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.examples.file;
+
+import com.moilioncircle.redis.replicator.Configuration;
+import com.moilioncircle.redis.replicator.FileType;
+import com.moilioncircle.redis.replicator.RedisReplicator;
+import com.moilioncircle.redis.replicator.Replicator;
+import com.moilioncircle.redis.replicator.rdb.analysis.AnalysisRdbVisitor;
+import com.moilioncircle.redis.replicator.rdb.analysis.RdbAnalyzer;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * usage: RdbAnalysisExample dump.rdb [csv]
+ *
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class RdbAnalysisExample {
+
+    @SuppressWarnings("resource")
+    public static void main(String[] args) throws IOException {
+        File rdb = new File(args.length > 0 ? args[0] : "./src/test/resources/dumpV7.rdb");
+        RdbAnalyzer analyzer = new RdbAnalyzer(20, 1024, ':');
+        final Replicator replicator = new RedisReplicator(rdb, FileType.RDB, Configuration.defaultSetting());
+        replicator.setRdbVisitor(new AnalysisRdbVisitor(replicator, analyzer));
+        replicator.open();
+        if (args.length > 1 && args[1].equals("csv")) {
+            analyzer.writeCsv(System.out);
+        } else {
+            analyzer.writeJson(System.out);
+            System.out.println();
+        }
+    }
+}
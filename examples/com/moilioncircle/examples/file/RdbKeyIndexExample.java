@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.examples.file;
+
+import com.moilioncircle.redis.replicator.Configuration;
+import com.moilioncircle.redis.replicator.FileType;
+import com.moilioncircle.redis.replicator.RedisReplicator;
+import com.moilioncircle.redis.replicator.Replicator;
+import com.moilioncircle.redis.replicator.rdb.RdbKeyIndex;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
+
+import java.io.File;
+import java.io.IOException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * usage: RdbKeyIndexExample dump.rdb key...
+ * <p>
+ * builds dump.rdb.idx next to the rdb file if it is missing or stale, then prints the keys.
+ *
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class RdbKeyIndexExample {
+
+    @SuppressWarnings("resource")
+    public static void main(String[] args) throws IOException {
+        File rdb = new File(args.length > 0 ? args[0] : "./src/test/resources/dumpV7.rdb");
+        File index = new File(rdb.getPath() + ".idx");
+        final Replicator replicator = new RedisReplicator(rdb, FileType.RDB, Configuration.defaultSetting());
+        RdbKeyIndex keys;
+        try {
+            keys = RdbKeyIndex.open(rdb, index, replicator);
+        } catch (IOException e) {
+            long now = System.currentTimeMillis();
+            RdbKeyIndex.build(rdb, index, replicator);
+            System.out.println("indexed " + rdb + " in " + (System.currentTimeMillis() - now) + " ms");
+            keys = RdbKeyIndex.open(rdb, index, replicator);
+        }
+        try {
+            for (int i = 1; i < args.length; i++) {
+                long now = System.nanoTime();
+                for (KeyValuePair<?> kv : keys.get(args[i].getBytes(UTF_8))) {
+                    System.out.println(kv);
+                }
+                System.out.println("lookup " + args[i] + " in " + (System.nanoTime() - now) / 1000 + " us");
+            }
+        } finally {
+            keys.close();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.examples.file;
+
+import com.moilioncircle.redis.replicator.Configuration;
+import com.moilioncircle.redis.replicator.FileType;
+import com.moilioncircle.redis.replicator.RedisReplicator;
+import com.moilioncircle.redis.replicator.Replicator;
+import com.moilioncircle.redis.replicator.rdb.RdbFilter;
+import com.moilioncircle.redis.replicator.rdb.RdbTransformer;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * usage: RdbTransformExample src.rdb dest.rdb
+ * <p>
+ * drops the keys that start with "session:" and renames "user:" to "u:", other records are copied byte for byte.
+ *
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class RdbTransformExample {
+
+    @SuppressWarnings("resource")
+    public static void main(String[] args) throws IOException {
+        File src = new File(args.length > 0 ? args[0] : "./src/test/resources/dumpV7.rdb");
+        File dest = new File(args.length > 1 ? args[1] : "./dump-transformed.rdb");
+        Replicator replicator = new RedisReplicator(src, FileType.RDB, Configuration.defaultSetting());
+        RdbTransformer transformer = new RdbTransformer(replicator, RdbTransformer.Rule.chain(
+                RdbTransformer.Rule.drop(RdbFilter.prefix("session:")),
+                RdbTransformer.Rule.rename("user:", "u:")));
+        long now = System.currentTimeMillis();
+        transformer.transform(src, dest);
+        System.out.println("copied: " + transformer.getCopiedKeys() + ", renamed: " + transformer.getRenamedKeys()
+                + ", dropped: " + transformer.getDroppedKeys() + " in " + (System.currentTimeMillis() - now) + " ms");
+    }
+}
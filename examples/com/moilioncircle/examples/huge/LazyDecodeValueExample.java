@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.examples.huge;
+
+import com.moilioncircle.redis.replicator.Configuration;
+import com.moilioncircle.redis.replicator.FileType;
+import com.moilioncircle.redis.replicator.RedisReplicator;
+import com.moilioncircle.redis.replicator.Replicator;
+import com.moilioncircle.redis.replicator.rdb.RdbListener;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parse the same rdb file with and without {@link Configuration#isLazyDecodeValue()},
+ * and print the elapsed time and the gc activity of both runs.
+ * <p>
+ * usage: LazyDecodeValueExample /path/to/dump.rdb
+ *
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class LazyDecodeValueExample {
+
+    public static void main(String[] args) throws Exception {
+        File file = new File(args.length > 0 ? args[0] : "/path/to/dump.rdb");
+        for (int i = 0; i < 2; i++) {
+            run(file, false);
+            run(file, true);
+        }
+    }
+
+    private static void run(File file, boolean lazy) throws Exception {
+        final AtomicLong count = new AtomicLong();
+        Configuration configuration = Configuration.defaultSetting().setLazyDecodeValue(lazy);
+        Replicator r = new RedisReplicator(file, FileType.RDB, configuration);
+        r.addRdbListener(new RdbListener.Adaptor() {
+            @Override
+            public void handle(Replicator replicator, KeyValuePair<?> kv) {
+                // only touch the raw key and value, like a migration or a backup does.
+                count.incrementAndGet();
+            }
+        });
+        long gcCount = gcCount(), gcTime = gcTime();
+        long start = System.nanoTime();
+        r.open();
+        long elapsed = (System.nanoTime() - start) / 1000000L;
+        System.out.println("lazyDecodeValue=" + lazy + ", keys=" + count.get() + ", elapsed=" + elapsed + "ms"
+                + ", throughput=" + (file.length() * 1000L / Math.max(1L, elapsed) / 1024 / 1024) + "MB/s"
+                + ", gc count=" + (gcCount() - gcCount) + ", gc time=" + (gcTime() - gcTime) + "ms");
+    }
+
+    private static long gcCount() {
+        long count = 0L;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0L, bean.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcTime() {
+        long time = 0L;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0L, bean.getCollectionTime());
+        }
+        return time;
+    }
+}
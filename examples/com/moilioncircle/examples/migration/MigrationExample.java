@@ -17,33 +17,17 @@
 package com.moilioncircle.examples.migration;
 
 import com.moilioncircle.redis.replicator.CloseListener;
-import com.moilioncircle.redis.replicator.Configuration;
 import com.moilioncircle.redis.replicator.RedisReplicator;
 import com.moilioncircle.redis.replicator.RedisURI;
 import com.moilioncircle.redis.replicator.Replicator;
-import com.moilioncircle.redis.replicator.cmd.Command;
-import com.moilioncircle.redis.replicator.cmd.CommandListener;
 import com.moilioncircle.redis.replicator.cmd.CommandName;
-import com.moilioncircle.redis.replicator.cmd.impl.DefaultCommand;
 import com.moilioncircle.redis.replicator.cmd.parser.DefaultCommandParser;
 import com.moilioncircle.redis.replicator.cmd.parser.PingParser;
-import com.moilioncircle.redis.replicator.rdb.RdbListener;
-import com.moilioncircle.redis.replicator.rdb.datatype.DB;
-import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
+import com.moilioncircle.redis.replicator.migration.MigrationSink;
 import com.moilioncircle.redis.replicator.rdb.dump.DumpRdbVisitor;
-import com.moilioncircle.redis.replicator.rdb.dump.datatype.DumpKeyValuePair;
-import redis.clients.jedis.Client;
-import redis.clients.jedis.Protocol;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
-import java.util.concurrent.atomic.AtomicInteger;
-
-import static java.nio.charset.StandardCharsets.UTF_8;
-import static redis.clients.jedis.Protocol.Command.AUTH;
-import static redis.clients.jedis.Protocol.Command.RESTORE;
-import static redis.clients.jedis.Protocol.Command.SELECT;
-import static redis.clients.jedis.Protocol.toByteArray;
 
 /**
  * @author Leon Chen
@@ -63,61 +47,26 @@ public class MigrationExample {
      * We running following steps to sync two redis.
      * 1. Get rdb stream from source redis.
      * 2. Convert source rdb stream to redis dump format.
-     * 3. Use Jedis RESTORE command to restore that dump format to target redis.
-     * 4. Get aof stream from source redis and sync to target redis.
+     * 3. Use MigrationSink to pipeline RESTORE commands of that dump format to target redis.
+     * 4. Get aof stream from source redis and pipeline to target redis.
      */
-    @SuppressWarnings("resource")
     public static void sync(String sourceUri, String targetUri) throws IOException, URISyntaxException {
         RedisURI suri = new RedisURI(sourceUri);
         RedisURI turi = new RedisURI(targetUri);
-        final ExampleClient target = new ExampleClient(turi.getHost(), turi.getPort());
-        Configuration tconfig = Configuration.valueOf(turi);
-        if (tconfig.getAuthPassword() != null) {
-            Object auth = target.send(AUTH, tconfig.getAuthPassword().getBytes());
-            System.out.println("AUTH:" + auth);
-        }
-        final AtomicInteger dbnum = new AtomicInteger(-1);
+        final MigrationSink sink = new MigrationSink(turi);
+        sink.open();
         Replicator r = dress(new RedisReplicator(suri));
-        r.addRdbListener(new RdbListener.Adaptor() {
-            @Override
-            public void handle(Replicator replicator, KeyValuePair<?> kv) {
-                if (!(kv instanceof DumpKeyValuePair)) return;
-                // Step1: select db
-                DB db = kv.getDb();
-                int index;
-                if (db != null && (index = (int) db.getDbNumber()) != dbnum.get()) {
-                    target.send(SELECT, toByteArray(index));
-                    dbnum.set(index);
-                    System.out.println("SELECT:" + index);
-                }
-
-                // Step2: restore dump data
-                DumpKeyValuePair mkv = (DumpKeyValuePair) kv;
-                if (mkv.getExpiredMs() == null) {
-                    Object r = target.restore(mkv.getRawKey(), 0L, mkv.getValue(), true);
-                    System.out.println(r);
-                } else {
-                    long ms = mkv.getExpiredMs() - System.currentTimeMillis();
-                    if (ms <= 0) return;
-                    Object r = target.restore(mkv.getRawKey(), ms, mkv.getValue(), true);
-                    System.out.println(r);
-                }
-            }
-        });
-        r.addCommandListener(new CommandListener() {
-            @Override
-            public void handle(Replicator replicator, Command command) {
-                if (!(command instanceof DefaultCommand)) return;
-                // Step3: sync aof command
-                DefaultCommand dc = (DefaultCommand) command;
-                Object r = target.send(dc.getCommand(), dc.getArgs());
-                System.out.println(r);
-            }
-        });
+        r.addRdbListener(sink);
+        r.addCommandListener(sink);
         r.addCloseListener(new CloseListener() {
             @Override
             public void handle(Replicator replicator) {
-                target.close();
+                try {
+                    sink.close();
+                    System.out.println("acked:" + sink.getAckedRequests() + ", failed:" + sink.getFailedRequests());
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
             }
         });
         r.open();
@@ -201,40 +150,4 @@ public class MigrationExample {
         r.addCommandParser(CommandName.name("RPOPLPUSH"), new DefaultCommandParser());
         return r;
     }
-
-    /*
-     * Jedis is not a reliable redis client.
-     * For simplicity we use Jedis to show this example.
-     * In production you need to replace following code to yours.
-     */
-    public static class ExampleClient extends Client {
-
-        public ExampleClient(final String host, final int port) {
-            super(host, port);
-            setConnectionTimeout(10000);
-            setSoTimeout(10000);
-        }
-
-        public Object send(Protocol.Command cmd, final byte[]... args) {
-            sendCommand(cmd, args);
-            Object r = getOne();
-            if (r instanceof byte[]) {
-                return new String((byte[]) r, UTF_8);
-            } else {
-                return r;
-            }
-        }
-
-        public Object send(final byte[] cmd, final byte[]... args) {
-            return send(Protocol.Command.valueOf(new String(cmd, UTF_8).toUpperCase()), args);
-        }
-
-        public Object restore(byte[] key, long expired, byte[] dumped, boolean replace) {
-            if (!replace) {
-                return send(RESTORE, key, toByteArray(expired), dumped);
-            } else {
-                return send(RESTORE, key, toByteArray(expired), dumped, "REPLACE".getBytes());
-            }
-        }
-    }
 }
@@ -19,6 +19,8 @@ package com.moilioncircle.redis.replicator;
 import com.moilioncircle.redis.replicator.cmd.Command;
 import com.moilioncircle.redis.replicator.cmd.CommandName;
 import com.moilioncircle.redis.replicator.cmd.CommandParser;
+import com.moilioncircle.redis.replicator.cmd.CommandTable;
+import com.moilioncircle.redis.replicator.cmd.ReplySlices;
 import com.moilioncircle.redis.replicator.cmd.parser.AppendParser;
 import com.moilioncircle.redis.replicator.cmd.parser.BRPopLPushParser;
 import com.moilioncircle.redis.replicator.cmd.parser.BitFieldParser;
@@ -96,14 +98,24 @@ import com.moilioncircle.redis.replicator.cmd.parser.ZUnionStoreParser;
 import com.moilioncircle.redis.replicator.event.Event;
 import com.moilioncircle.redis.replicator.event.PostFullSyncEvent;
 import com.moilioncircle.redis.replicator.event.PreFullSyncEvent;
+import com.moilioncircle.redis.replicator.io.RawByteListener;
 import com.moilioncircle.redis.replicator.io.RedisInputStream;
 import com.moilioncircle.redis.replicator.rdb.DefaultRdbVisitor;
 import com.moilioncircle.redis.replicator.rdb.RdbVisitor;
 import com.moilioncircle.redis.replicator.rdb.datatype.AuxField;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyStringValueByteArray;
 import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
 import com.moilioncircle.redis.replicator.rdb.datatype.Module;
+import com.moilioncircle.redis.replicator.rdb.dump.datatype.ChunkedKeyValuePair;
+import com.moilioncircle.redis.replicator.rdb.iterable.ValueIterableRdbVisitor;
+import com.moilioncircle.redis.replicator.rdb.iterable.datatype.KeyStringValueByteArrayIterator;
+import com.moilioncircle.redis.replicator.rdb.iterable.datatype.KeyStringValueMapEntryIterator;
+import com.moilioncircle.redis.replicator.rdb.iterable.datatype.KeyStringValueZSetEntryIterator;
 import com.moilioncircle.redis.replicator.rdb.module.ModuleKey;
 import com.moilioncircle.redis.replicator.rdb.module.ModuleParser;
+import com.moilioncircle.redis.replicator.util.ByteSlice;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
 import java.io.IOException;
 import java.util.Map;
@@ -120,26 +132,32 @@ import static com.moilioncircle.redis.replicator.Status.DISCONNECTING;
  * @since 2.1.0
  */
 public abstract class AbstractReplicator extends AbstractReplicatorListener implements Replicator {
+    private static final Log logger = LogFactory.getLog(AbstractReplicator.class);
+
     protected Configuration configuration;
     protected volatile RedisInputStream inputStream;
     protected RdbVisitor rdbVisitor = new DefaultRdbVisitor(this);
+    protected volatile EventDispatcher dispatcher;
+    protected volatile EventBatcher batcher;
+    protected long position;
     protected final AtomicReference<Status> connected = new AtomicReference<>(DISCONNECTED);
     protected final Map<ModuleKey, ModuleParser<? extends Module>> modules = new ConcurrentHashMap<>();
-    protected final Map<CommandName, CommandParser<? extends Command>> commands = new ConcurrentHashMap<>();
+    protected final CommandTable commandTable = new CommandTable();
+    protected final Map<CommandName, CommandParser<? extends Command>> commands = commandTable.asMap();
 
     @Override
     public CommandParser<? extends Command> getCommandParser(CommandName command) {
-        return commands.get(command);
+        return commandTable.get(command);
     }
 
     @Override
     public <T extends Command> void addCommandParser(CommandName command, CommandParser<T> parser) {
-        commands.put(command, parser);
+        commandTable.put(command, parser);
     }
 
     @Override
     public CommandParser<? extends Command> removeCommandParser(CommandName command) {
-        return commands.remove(command);
+        return commandTable.remove(command);
     }
 
     @Override
@@ -157,7 +175,116 @@ public abstract class AbstractReplicator extends AbstractReplicatorListener impl
         return modules.remove(ModuleKey.key(moduleName, moduleVersion));
     }
 
+    @Override
+    public boolean addRawByteListener(RawByteListener listener) {
+        flushRawBytes();
+        return super.addRawByteListener(listener);
+    }
+
+    @Override
+    public boolean removeRawByteListener(RawByteListener listener) {
+        flushRawBytes();
+        return super.removeRawByteListener(listener);
+    }
+
+    /**
+     * raw bytes are notified in coalesced ranges. deliver the pending range to the current
+     * listeners before the listener set changes or an event is handled. a listener added or
+     * removed from another thread than the reader leaves the range to the next refill of the reader.
+     *
+     * @since 2.6.0
+     */
+    protected void flushRawBytes() {
+        RedisInputStream in = this.inputStream;
+        if (in != null) in.flushRawBytes();
+    }
+
     public void submitEvent(Event event) {
+        submitEvent(event, 0L);
+    }
+
+    /**
+     * @param event  event, null if the bytes only advance the offset
+     * @param offset replication offset of the event, added to {@link Configuration#getReplOffset()} after the event is consumed
+     * @since 2.6.0
+     */
+    public void submitEvent(Event event, long offset) {
+        flushRawBytes();
+        long bytes = 0L;
+        RedisInputStream in = this.inputStream;
+        if (in != null && getEventBatcher() != null) {
+            // the input stream is recreated on reconnect
+            long position = in.position();
+            bytes = position >= this.position ? position - this.position : position;
+            this.position = position;
+        }
+        EventDispatcher dispatcher = getEventDispatcher();
+        if (dispatcher != null) {
+            if (!streaming(event)) {
+                dispatcher.dispatch(event, offset, bytes);
+                return;
+            }
+            // the value is read from the stream while the listeners run, so it can not be queued
+            dispatcher.drain();
+        }
+        doSubmitEvent(event, bytes);
+        doAddOffset(offset);
+    }
+
+    /**
+     * @return event dispatcher, null if events are handled in the reading thread
+     * @see Configuration#setEventQueueSize(int)
+     * @since 2.6.0
+     */
+    public EventDispatcher getEventDispatcher() {
+        EventDispatcher dispatcher = this.dispatcher;
+        if (dispatcher != null || configuration == null || configuration.getEventQueueSize() <= 0) return dispatcher;
+        synchronized (this) {
+            if (this.dispatcher == null) {
+                this.dispatcher = new EventDispatcher(this, configuration.getEventQueueSize(),
+                        configuration.getEventBatchSize(), configuration.getEventQueuePolicy());
+            }
+            return this.dispatcher;
+        }
+    }
+
+    /**
+     * @return event batcher, null if there is no batch listener
+     * @see Configuration#setListenerBatchSize(int)
+     * @since 2.6.0
+     */
+    public EventBatcher getEventBatcher() {
+        EventBatcher batcher = this.batcher;
+        if (batcher != null || configuration == null) return batcher;
+        if (rdbBatchListeners.isEmpty() && commandBatchListeners.isEmpty()) return null;
+        synchronized (this) {
+            if (this.batcher == null) {
+                this.batcher = new EventBatcher(this, configuration.getListenerBatchSize(),
+                        configuration.getListenerBatchBytes(), configuration.getListenerBatchLinger());
+            }
+            return this.batcher;
+        }
+    }
+
+    /**
+     * add the offset of consumed events, the offset is deferred while a batch is pending.
+     *
+     * @param offset replication offset
+     * @since 2.6.0
+     */
+    protected void doAddOffset(long offset) {
+        if (offset <= 0) return;
+        EventBatcher batcher = this.batcher;
+        if (batcher != null && batcher.defer(offset)) return;
+        configuration.addOffset(offset);
+    }
+
+    protected void doSubmitEvent(Event event, long bytes) {
+        EventBatcher batcher = getEventBatcher();
+        boolean streaming = streaming(event);
+        if (batcher != null && event != null && (streaming || !(event instanceof KeyValuePair<?>) && !(event instanceof Command))) {
+            batcher.flush();
+        }
         try {
             if (event instanceof KeyValuePair<?>) {
                 doRdbListener(this, (KeyValuePair<?>) event);
@@ -176,6 +303,47 @@ public abstract class AbstractReplicator extends AbstractReplicatorListener impl
         } catch (Throwable e) {
             doExceptionListener(this, e, event);
         }
+        if (batcher == null) {
+            doRelease(event);
+        } else {
+            batcher.add(event, bytes);
+            // handed to the batch listeners before the next record is read
+            if (streaming) batcher.flush();
+        }
+    }
+
+    /**
+     * @param slices command parsed by {@link com.moilioncircle.redis.replicator.cmd.ReplyParser#parseSlices}
+     * @return parser of the command or null, the name is looked up without a copy
+     * @since 2.6.0
+     */
+    protected CommandParser<? extends Command> lookup(ReplySlices slices) {
+        ByteSlice name = slices.get(0);
+        return name == null ? null : commandTable.get(name.array(), name.offset(), name.length());
+    }
+
+    /**
+     * @param event event
+     * @return true if the listeners read the value from the replication stream, so the event must be handled
+     * before the next event is parsed
+     * @see ValueIterableRdbVisitor
+     * @see ChunkedKeyValuePair
+     * @since 2.6.0
+     */
+    protected boolean streaming(Event event) {
+        return event instanceof KeyStringValueByteArrayIterator || event instanceof KeyStringValueMapEntryIterator
+                || event instanceof KeyStringValueZSetEntryIterator || event instanceof ChunkedKeyValuePair;
+    }
+
+    /**
+     * free the off-heap value of a consumed event
+     *
+     * @param event event
+     * @see KeyStringValueByteArray
+     * @since 2.6.0
+     */
+    protected void doRelease(Event event) {
+        if (event instanceof KeyStringValueByteArray) ((KeyStringValueByteArray) event).release();
     }
 
     @Override
@@ -205,15 +373,16 @@ public abstract class AbstractReplicator extends AbstractReplicatorListener impl
 
     @Override
     public void builtInCommandParserRegister() {
+        boolean lazy = configuration.isLazyDecodeCommand();
         addCommandParser(CommandName.name("PING"), new PingParser());
         addCommandParser(CommandName.name("APPEND"), new AppendParser());
-        addCommandParser(CommandName.name("SET"), new SetParser());
+        addCommandParser(CommandName.name("SET"), new SetParser(lazy));
         addCommandParser(CommandName.name("SETEX"), new SetExParser());
         addCommandParser(CommandName.name("MSET"), new MSetParser());
         addCommandParser(CommandName.name("DEL"), new DelParser());
         addCommandParser(CommandName.name("SADD"), new SAddParser());
         addCommandParser(CommandName.name("HMSET"), new HMSetParser());
-        addCommandParser(CommandName.name("HSET"), new HSetParser());
+        addCommandParser(CommandName.name("HSET"), new HSetParser(lazy));
         addCommandParser(CommandName.name("LSET"), new LSetParser());
         addCommandParser(CommandName.name("EXPIRE"), new ExpireParser());
         addCommandParser(CommandName.name("EXPIREAT"), new ExpireAtParser());
@@ -251,7 +420,7 @@ public abstract class AbstractReplicator extends AbstractReplicatorListener impl
         addCommandParser(CommandName.name("SDIFFSTORE"), new SDiffStoreParser());
         addCommandParser(CommandName.name("SINTERSTORE"), new SInterStoreParser());
         addCommandParser(CommandName.name("SUNIONSTORE"), new SUnionStoreParser());
-        addCommandParser(CommandName.name("ZADD"), new ZAddParser());
+        addCommandParser(CommandName.name("ZADD"), new ZAddParser(lazy));
         addCommandParser(CommandName.name("ZINTERSTORE"), new ZInterStoreParser());
         addCommandParser(CommandName.name("ZUNIONSTORE"), new ZUnionStoreParser());
         addCommandParser(CommandName.name("BRPOPLPUSH"), new BRPopLPushParser());
@@ -286,8 +455,26 @@ public abstract class AbstractReplicator extends AbstractReplicatorListener impl
         this.connected.compareAndSet(CONNECTED, DISCONNECTING);
     }
 
+    /**
+     * consume the events in the dispatcher queue and the pending batch, so the offset is complete before reconnecting or closing.
+     *
+     * @since 2.6.0
+     */
+    protected void doCloseEventDispatcher() {
+        EventDispatcher dispatcher = this.dispatcher;
+        if (dispatcher != null) dispatcher.close();
+        EventBatcher batcher = this.batcher;
+        if (batcher == null) return;
+        try {
+            batcher.close();
+        } catch (UncheckedIOException e) {
+            logger.error("failed to handle batch", e);
+        }
+    }
+
     protected void doClose() throws IOException {
         this.connected.compareAndSet(CONNECTED, DISCONNECTING);
+        doCloseEventDispatcher();
         try {
             if (inputStream != null) {
                 this.inputStream.setRawByteListeners(null);
@@ -17,9 +17,11 @@
 package com.moilioncircle.redis.replicator;
 
 import com.moilioncircle.redis.replicator.cmd.Command;
+import com.moilioncircle.redis.replicator.cmd.CommandBatchListener;
 import com.moilioncircle.redis.replicator.cmd.CommandListener;
 import com.moilioncircle.redis.replicator.io.RawByteListener;
 import com.moilioncircle.redis.replicator.rdb.AuxFieldListener;
+import com.moilioncircle.redis.replicator.rdb.RdbBatchListener;
 import com.moilioncircle.redis.replicator.rdb.RdbListener;
 import com.moilioncircle.redis.replicator.rdb.datatype.AuxField;
 import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
@@ -38,6 +40,8 @@ public class AbstractReplicatorListener implements ReplicatorListener {
     protected final List<RawByteListener> rawByteListeners = new CopyOnWriteArrayList<>();
     protected final List<AuxFieldListener> auxFieldListeners = new CopyOnWriteArrayList<>();
     protected final List<ExceptionListener> exceptionListeners = new CopyOnWriteArrayList<>();
+    protected final List<RdbBatchListener> rdbBatchListeners = new CopyOnWriteArrayList<>();
+    protected final List<CommandBatchListener> commandBatchListeners = new CopyOnWriteArrayList<>();
 
     @Override
     public boolean addCommandListener(CommandListener listener) {
@@ -49,6 +53,16 @@ public class AbstractReplicatorListener implements ReplicatorListener {
         return commandListeners.remove(listener);
     }
 
+    @Override
+    public boolean addCommandBatchListener(CommandBatchListener listener) {
+        return commandBatchListeners.add(listener);
+    }
+
+    @Override
+    public boolean removeCommandBatchListener(CommandBatchListener listener) {
+        return commandBatchListeners.remove(listener);
+    }
+
     @Override
     public boolean addRdbListener(RdbListener listener) {
         return rdbListeners.add(listener);
@@ -59,6 +73,16 @@ public class AbstractReplicatorListener implements ReplicatorListener {
         return rdbListeners.remove(listener);
     }
 
+    @Override
+    public boolean addRdbBatchListener(RdbBatchListener listener) {
+        return rdbBatchListeners.add(listener);
+    }
+
+    @Override
+    public boolean removeRdbBatchListener(RdbBatchListener listener) {
+        return rdbBatchListeners.remove(listener);
+    }
+
     @Override
     public boolean addAuxFieldListener(AuxFieldListener listener) {
         return auxFieldListeners.add(listener);
@@ -123,6 +147,20 @@ public class AbstractReplicatorListener implements ReplicatorListener {
         }
     }
 
+    protected void doCommandBatchListener(Replicator replicator, List<Command> commands) {
+        if (commandBatchListeners.isEmpty()) return;
+        for (CommandBatchListener listener : commandBatchListeners) {
+            listener.handle(replicator, commands);
+        }
+    }
+
+    protected void doRdbBatchListener(Replicator replicator, List<KeyValuePair<?>> kvs) {
+        if (rdbBatchListeners.isEmpty()) return;
+        for (RdbBatchListener listener : rdbBatchListeners) {
+            listener.handle(replicator, kvs);
+        }
+    }
+
     protected void doAuxFieldListener(Replicator replicator, AuxField auxField) {
         if (auxFieldListeners.isEmpty()) return;
         for (AuxFieldListener listener : auxFieldListeners) {
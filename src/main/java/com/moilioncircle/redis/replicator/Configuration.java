@@ -16,6 +16,9 @@
 
 package com.moilioncircle.redis.replicator;
 
+import com.moilioncircle.redis.replicator.io.AsyncBufferedInputStream;
+import com.moilioncircle.redis.replicator.rdb.RdbFilter;
+
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLParameters;
 import javax.net.ssl.SSLSocketFactory;
@@ -149,6 +152,157 @@ public class Configuration {
      */
     private final AtomicLong replOffset = new AtomicLong(-1);
 
+    /**
+     * threads to decode rdb key value pairs. 0 means decode in the thread that reads the rdb
+     *
+     * @since 2.6.0
+     */
+    private int rdbDecodeThreads = 0;
+
+    /**
+     * deliver rdb events in rdb order when rdbDecodeThreads > 0.
+     * if false, events are delivered as soon as decoded
+     *
+     * @since 2.6.0
+     */
+    private boolean rdbDecodeOrdered = true;
+
+    /**
+     * wait strategy of the async buffered input stream, SPIN and YIELD trade cpu for latency
+     *
+     * @since 2.6.0
+     */
+    private AsyncBufferedInputStream.WaitStrategy asyncWaitStrategy = AsyncBufferedInputStream.WaitStrategy.PARK;
+
+    /**
+     * capacity of the event queue between the reading thread and the listeners. 0 means listeners are called in the reading thread
+     *
+     * @since 2.6.0
+     */
+    private int eventQueueSize = 0;
+
+    /**
+     * max events the event dispatcher hands to the listeners at a time
+     *
+     * @since 2.6.0
+     */
+    private int eventBatchSize = 256;
+
+    /**
+     * back-pressure policy when the event queue is full
+     *
+     * @since 2.6.0
+     */
+    private EventDispatcher.Policy eventQueuePolicy = EventDispatcher.Policy.BLOCK;
+
+    /**
+     * max events in a batch of RdbBatchListener and CommandBatchListener
+     *
+     * @since 2.6.0
+     */
+    private int listenerBatchSize = 1024;
+
+    /**
+     * max bytes of the replication stream in a batch of RdbBatchListener and CommandBatchListener. 0 means no limit
+     *
+     * @since 2.6.0
+     */
+    private int listenerBatchBytes = 1024 * 1024;
+
+    /**
+     * max milliseconds a batch of RdbBatchListener and CommandBatchListener waits for more events. 0 means no limit
+     *
+     * @since 2.6.0
+     */
+    private int listenerBatchLinger = 100;
+
+    /**
+     * max in-flight requests of MigrationSink
+     *
+     * @since 2.6.0
+     */
+    private int migrationWindow = 1024;
+
+    /**
+     * max retries of a request rejected by -LOADING or -BUSYKEY
+     *
+     * @since 2.6.0
+     */
+    private int migrationRetries = 16;
+
+    /**
+     * retry interval in ms of a request rejected by -LOADING
+     *
+     * @since 2.6.0
+     */
+    private int migrationRetryInterval = 100;
+
+    /**
+     * verify the crc64 checksum of the rdb while parsing, rdb version 5 or later
+     *
+     * @since 2.6.0
+     */
+    private boolean verifyRdbChecksum = false;
+
+    /**
+     * only keep the raw bytes of string, list, set and hash values, the String values are decoded on first access
+     *
+     * @since 2.6.0
+     */
+    private boolean lazyDecodeValue = false;
+
+    /**
+     * decode intset as a long[] and sorted set as a PackedZSet, see KeyStringValueIntSet and KeyStringValuePackedZSet.
+     * a sorted set whose members exceed 2GB is decoded as a plain KeyStringValueZSet
+     *
+     * @since 2.6.0
+     */
+    private boolean primitiveValue = false;
+
+    /**
+     * filter evaluated right after a key of the rdb is read, the values of the rejected keys are skipped
+     *
+     * @since 2.6.0
+     */
+    private RdbFilter rdbFilter = null;
+
+    /**
+     * window size in bytes of the memory mapped file input of RedisRdbReplicator and RedisAofReplicator, 0 disables mapping
+     *
+     * @since 2.6.0
+     */
+    private int mappedFileWindow = 0;
+
+    /**
+     * keys of every partition that ParallelRdbReplicator decodes in a worker thread
+     *
+     * @since 2.6.0
+     */
+    private int rdbPartitionKeys = 16384;
+
+    /**
+     * strings of at least this many bytes are read into off-heap memory, 0 keeps all strings on heap.
+     * such string values are handed to the listeners as
+     * {@link com.moilioncircle.redis.replicator.rdb.datatype.KeyStringValueByteArray} and freed once consumed
+     *
+     * @since 2.6.0
+     */
+    private long offHeapThreshold = 0L;
+
+    /**
+     * true to map off-heap strings to temp files instead of direct buffers
+     *
+     * @since 2.6.0
+     */
+    private boolean offHeapMapped = false;
+
+    /**
+     * hold the raw arguments of SET, HSET and ZADD and decode them on first access, see SetParser, HSetParser and ZAddParser
+     *
+     * @since 2.6.0
+     */
+    private boolean lazyDecodeCommand = false;
+
     public int getConnectionTimeout() {
         return connectionTimeout;
     }
@@ -343,6 +497,195 @@ public class Configuration {
         return this;
     }
 
+    public int getRdbDecodeThreads() {
+        return rdbDecodeThreads;
+    }
+
+    public Configuration setRdbDecodeThreads(int rdbDecodeThreads) {
+        this.rdbDecodeThreads = rdbDecodeThreads;
+        return this;
+    }
+
+    public boolean isRdbDecodeOrdered() {
+        return rdbDecodeOrdered;
+    }
+
+    public Configuration setRdbDecodeOrdered(boolean rdbDecodeOrdered) {
+        this.rdbDecodeOrdered = rdbDecodeOrdered;
+        return this;
+    }
+
+    public AsyncBufferedInputStream.WaitStrategy getAsyncWaitStrategy() {
+        return asyncWaitStrategy;
+    }
+
+    public Configuration setAsyncWaitStrategy(AsyncBufferedInputStream.WaitStrategy asyncWaitStrategy) {
+        this.asyncWaitStrategy = asyncWaitStrategy;
+        return this;
+    }
+
+    public int getEventQueueSize() {
+        return eventQueueSize;
+    }
+
+    public Configuration setEventQueueSize(int eventQueueSize) {
+        this.eventQueueSize = eventQueueSize;
+        return this;
+    }
+
+    public int getEventBatchSize() {
+        return eventBatchSize;
+    }
+
+    public Configuration setEventBatchSize(int eventBatchSize) {
+        this.eventBatchSize = eventBatchSize;
+        return this;
+    }
+
+    public EventDispatcher.Policy getEventQueuePolicy() {
+        return eventQueuePolicy;
+    }
+
+    public Configuration setEventQueuePolicy(EventDispatcher.Policy eventQueuePolicy) {
+        this.eventQueuePolicy = eventQueuePolicy;
+        return this;
+    }
+
+    public int getListenerBatchSize() {
+        return listenerBatchSize;
+    }
+
+    public Configuration setListenerBatchSize(int listenerBatchSize) {
+        this.listenerBatchSize = listenerBatchSize;
+        return this;
+    }
+
+    public int getListenerBatchBytes() {
+        return listenerBatchBytes;
+    }
+
+    public Configuration setListenerBatchBytes(int listenerBatchBytes) {
+        this.listenerBatchBytes = listenerBatchBytes;
+        return this;
+    }
+
+    public int getListenerBatchLinger() {
+        return listenerBatchLinger;
+    }
+
+    public Configuration setListenerBatchLinger(int listenerBatchLinger) {
+        this.listenerBatchLinger = listenerBatchLinger;
+        return this;
+    }
+
+    public int getMigrationWindow() {
+        return migrationWindow;
+    }
+
+    public Configuration setMigrationWindow(int migrationWindow) {
+        this.migrationWindow = migrationWindow;
+        return this;
+    }
+
+    public int getMigrationRetries() {
+        return migrationRetries;
+    }
+
+    public Configuration setMigrationRetries(int migrationRetries) {
+        this.migrationRetries = migrationRetries;
+        return this;
+    }
+
+    public int getMigrationRetryInterval() {
+        return migrationRetryInterval;
+    }
+
+    public Configuration setMigrationRetryInterval(int migrationRetryInterval) {
+        this.migrationRetryInterval = migrationRetryInterval;
+        return this;
+    }
+
+    public boolean isVerifyRdbChecksum() {
+        return verifyRdbChecksum;
+    }
+
+    public Configuration setVerifyRdbChecksum(boolean verifyRdbChecksum) {
+        this.verifyRdbChecksum = verifyRdbChecksum;
+        return this;
+    }
+
+    public boolean isLazyDecodeValue() {
+        return lazyDecodeValue;
+    }
+
+    public Configuration setLazyDecodeValue(boolean lazyDecodeValue) {
+        this.lazyDecodeValue = lazyDecodeValue;
+        return this;
+    }
+
+    public boolean isPrimitiveValue() {
+        return primitiveValue;
+    }
+
+    public Configuration setPrimitiveValue(boolean primitiveValue) {
+        this.primitiveValue = primitiveValue;
+        return this;
+    }
+
+    public RdbFilter getRdbFilter() {
+        return rdbFilter;
+    }
+
+    public Configuration setRdbFilter(RdbFilter rdbFilter) {
+        this.rdbFilter = rdbFilter;
+        return this;
+    }
+
+    public int getMappedFileWindow() {
+        return mappedFileWindow;
+    }
+
+    public Configuration setMappedFileWindow(int mappedFileWindow) {
+        this.mappedFileWindow = mappedFileWindow;
+        return this;
+    }
+
+    public int getRdbPartitionKeys() {
+        return rdbPartitionKeys;
+    }
+
+    public Configuration setRdbPartitionKeys(int rdbPartitionKeys) {
+        this.rdbPartitionKeys = rdbPartitionKeys;
+        return this;
+    }
+
+    public long getOffHeapThreshold() {
+        return offHeapThreshold;
+    }
+
+    public Configuration setOffHeapThreshold(long offHeapThreshold) {
+        this.offHeapThreshold = offHeapThreshold;
+        return this;
+    }
+
+    public boolean isOffHeapMapped() {
+        return offHeapMapped;
+    }
+
+    public Configuration setOffHeapMapped(boolean offHeapMapped) {
+        this.offHeapMapped = offHeapMapped;
+        return this;
+    }
+
+    public boolean isLazyDecodeCommand() {
+        return lazyDecodeCommand;
+    }
+
+    public Configuration setLazyDecodeCommand(boolean lazyDecodeCommand) {
+        this.lazyDecodeCommand = lazyDecodeCommand;
+        return this;
+    }
+
     public static Configuration valueOf(RedisURI uri) {
         Configuration configuration = defaultSetting();
         Map<String, String> parameters = uri.parameters;
@@ -400,6 +743,66 @@ public class Configuration {
         if (parameters.containsKey("replOffset")) {
             configuration.setReplOffset(getLong(parameters.get("replOffset"), -1L));
         }
+        if (parameters.containsKey("rdbDecodeThreads")) {
+            configuration.setRdbDecodeThreads(getInt(parameters.get("rdbDecodeThreads"), 0));
+        }
+        if (parameters.containsKey("rdbDecodeOrdered")) {
+            configuration.setRdbDecodeOrdered(getBool(parameters.get("rdbDecodeOrdered"), true));
+        }
+        if (parameters.containsKey("asyncWaitStrategy")) {
+            configuration.setAsyncWaitStrategy(getWaitStrategy(parameters.get("asyncWaitStrategy"), AsyncBufferedInputStream.WaitStrategy.PARK));
+        }
+        if (parameters.containsKey("eventQueueSize")) {
+            configuration.setEventQueueSize(getInt(parameters.get("eventQueueSize"), 0));
+        }
+        if (parameters.containsKey("eventBatchSize")) {
+            configuration.setEventBatchSize(getInt(parameters.get("eventBatchSize"), 256));
+        }
+        if (parameters.containsKey("eventQueuePolicy")) {
+            configuration.setEventQueuePolicy(getPolicy(parameters.get("eventQueuePolicy"), EventDispatcher.Policy.BLOCK));
+        }
+        if (parameters.containsKey("listenerBatchSize")) {
+            configuration.setListenerBatchSize(getInt(parameters.get("listenerBatchSize"), 1024));
+        }
+        if (parameters.containsKey("listenerBatchBytes")) {
+            configuration.setListenerBatchBytes(getInt(parameters.get("listenerBatchBytes"), 1024 * 1024));
+        }
+        if (parameters.containsKey("listenerBatchLinger")) {
+            configuration.setListenerBatchLinger(getInt(parameters.get("listenerBatchLinger"), 100));
+        }
+        if (parameters.containsKey("migrationWindow")) {
+            configuration.setMigrationWindow(getInt(parameters.get("migrationWindow"), 1024));
+        }
+        if (parameters.containsKey("migrationRetries")) {
+            configuration.setMigrationRetries(getInt(parameters.get("migrationRetries"), 16));
+        }
+        if (parameters.containsKey("migrationRetryInterval")) {
+            configuration.setMigrationRetryInterval(getInt(parameters.get("migrationRetryInterval"), 100));
+        }
+        if (parameters.containsKey("verifyRdbChecksum")) {
+            configuration.setVerifyRdbChecksum(getBool(parameters.get("verifyRdbChecksum"), false));
+        }
+        if (parameters.containsKey("lazyDecodeValue")) {
+            configuration.setLazyDecodeValue(getBool(parameters.get("lazyDecodeValue"), false));
+        }
+        if (parameters.containsKey("primitiveValue")) {
+            configuration.setPrimitiveValue(getBool(parameters.get("primitiveValue"), false));
+        }
+        if (parameters.containsKey("mappedFileWindow")) {
+            configuration.setMappedFileWindow(getInt(parameters.get("mappedFileWindow"), 0));
+        }
+        if (parameters.containsKey("rdbPartitionKeys")) {
+            configuration.setRdbPartitionKeys(getInt(parameters.get("rdbPartitionKeys"), 16384));
+        }
+        if (parameters.containsKey("offHeapThreshold")) {
+            configuration.setOffHeapThreshold(getLong(parameters.get("offHeapThreshold"), 0L));
+        }
+        if (parameters.containsKey("offHeapMapped")) {
+            configuration.setOffHeapMapped(getBool(parameters.get("offHeapMapped"), false));
+        }
+        if (parameters.containsKey("lazyDecodeCommand")) {
+            configuration.setLazyDecodeCommand(getBool(parameters.get("lazyDecodeCommand"), false));
+        }
         return configuration;
     }
 
@@ -433,6 +836,26 @@ public class Configuration {
         }
     }
 
+    private static AsyncBufferedInputStream.WaitStrategy getWaitStrategy(String value, AsyncBufferedInputStream.WaitStrategy defaultValue) {
+        if (value == null)
+            return defaultValue;
+        try {
+            return AsyncBufferedInputStream.WaitStrategy.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return defaultValue;
+        }
+    }
+
+    private static EventDispatcher.Policy getPolicy(String value, EventDispatcher.Policy defaultValue) {
+        if (value == null)
+            return defaultValue;
+        try {
+            return EventDispatcher.Policy.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return defaultValue;
+        }
+    }
+
     @Override
     public String toString() {
         return "Configuration{" +
@@ -457,6 +880,27 @@ public class Configuration {
                 ", replId='" + replId + '\'' +
                 ", replStreamDB=" + replStreamDB +
                 ", replOffset=" + replOffset +
+                ", rdbDecodeThreads=" + rdbDecodeThreads +
+                ", rdbDecodeOrdered=" + rdbDecodeOrdered +
+                ", asyncWaitStrategy=" + asyncWaitStrategy +
+                ", eventQueueSize=" + eventQueueSize +
+                ", eventBatchSize=" + eventBatchSize +
+                ", eventQueuePolicy=" + eventQueuePolicy +
+                ", listenerBatchSize=" + listenerBatchSize +
+                ", listenerBatchBytes=" + listenerBatchBytes +
+                ", listenerBatchLinger=" + listenerBatchLinger +
+                ", migrationWindow=" + migrationWindow +
+                ", migrationRetries=" + migrationRetries +
+                ", migrationRetryInterval=" + migrationRetryInterval +
+                ", verifyRdbChecksum=" + verifyRdbChecksum +
+                ", lazyDecodeValue=" + lazyDecodeValue +
+                ", primitiveValue=" + primitiveValue +
+                ", rdbFilter=" + rdbFilter +
+                ", mappedFileWindow=" + mappedFileWindow +
+                ", rdbPartitionKeys=" + rdbPartitionKeys +
+                ", offHeapThreshold=" + offHeapThreshold +
+                ", offHeapMapped=" + offHeapMapped +
+                ", lazyDecodeCommand=" + lazyDecodeCommand +
                 '}';
     }
 }
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator;
+
+import com.moilioncircle.redis.replicator.cmd.Command;
+import com.moilioncircle.redis.replicator.event.Event;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Collects key value pairs and commands for {@link com.moilioncircle.redis.replicator.rdb.RdbBatchListener}
+ * and {@link com.moilioncircle.redis.replicator.cmd.CommandBatchListener}.
+ * <p>
+ * A batch is handed to the listeners when it holds {@link Configuration#getListenerBatchSize()} events or
+ * {@link Configuration#getListenerBatchBytes()} bytes, when its first event is older than
+ * {@link Configuration#getListenerBatchLinger()} milliseconds, before any other event and on close.
+ * A key value pair whose value is read from the replication stream is handed to the listeners alone.
+ * Offsets added while a batch is pending are deferred until the batch is handled.
+ *
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class EventBatcher {
+
+    protected static final Log logger = LogFactory.getLog(EventBatcher.class);
+
+    protected final int maxSize;
+    protected final long maxBytes;
+    protected final long linger;
+    protected final AbstractReplicator replicator;
+
+    protected Timer timer;
+    protected long bytes;
+    protected long offset;
+    protected long timestamp;
+    protected List<Command> commands = new ArrayList<>();
+    protected List<KeyValuePair<?>> kvs = new ArrayList<>();
+    protected volatile UncheckedIOException error;
+
+    public EventBatcher(AbstractReplicator replicator, int maxSize, long maxBytes, long linger) {
+        this.linger = linger;
+        this.maxBytes = maxBytes;
+        this.replicator = replicator;
+        this.maxSize = Math.max(1, maxSize);
+    }
+
+    /**
+     * @param event event
+     * @param bytes approximate size of the event in the replication stream
+     */
+    public synchronized void add(Event event, long bytes) {
+        checkError();
+        if (event instanceof KeyValuePair<?>) {
+            if (!commands.isEmpty()) flush();
+            kvs.add((KeyValuePair<?>) event);
+        } else if (event instanceof Command) {
+            if (!kvs.isEmpty()) flush();
+            commands.add((Command) event);
+        } else {
+            return;
+        }
+        if (kvs.size() + commands.size() == 1) {
+            this.timestamp = System.currentTimeMillis();
+            if (linger > 0 && timer == null) schedule();
+        }
+        this.bytes += Math.max(0L, bytes);
+        if (kvs.size() + commands.size() >= maxSize || (maxBytes > 0 && this.bytes >= maxBytes)) flush();
+    }
+
+    /**
+     * @param offset replication offset
+     * @return true if the offset is deferred to the pending batch
+     */
+    public synchronized boolean defer(long offset) {
+        if (kvs.isEmpty() && commands.isEmpty()) return false;
+        this.offset += offset;
+        return true;
+    }
+
+    public synchronized void flush() {
+        List<KeyValuePair<?>> kvs = this.kvs;
+        List<Command> commands = this.commands;
+        long offset = this.offset;
+        if (kvs.isEmpty() && commands.isEmpty() && offset == 0) return;
+        this.bytes = 0L;
+        this.offset = 0L;
+        if (!kvs.isEmpty()) this.kvs = new ArrayList<>();
+        if (!commands.isEmpty()) this.commands = new ArrayList<>();
+        try {
+            if (!kvs.isEmpty()) replicator.doRdbBatchListener(replicator, kvs);
+            if (!commands.isEmpty()) replicator.doCommandBatchListener(replicator, commands);
+        } catch (UncheckedIOException e) {
+            throw e;
+        } catch (Throwable e) {
+            replicator.doExceptionListener(replicator, e, kvs.isEmpty() ? commands : kvs);
+        } finally {
+            for (KeyValuePair<?> kv : kvs) replicator.doRelease(kv);
+        }
+        if (offset > 0) replicator.getConfiguration().addOffset(offset);
+    }
+
+    /**
+     * flush the pending batch and stop the linger timer.
+     */
+    public synchronized void close() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+        UncheckedIOException e = this.error;
+        this.error = null;
+        if (e != null) logger.error("failed to handle batch", e);
+        flush();
+    }
+
+    protected void schedule() {
+        timer = new Timer("batch-linger", true);
+        timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                linger();
+            }
+        }, linger, linger);
+    }
+
+    protected synchronized void linger() {
+        if (kvs.isEmpty() && commands.isEmpty()) return;
+        if (System.currentTimeMillis() - timestamp < linger) return;
+        try {
+            flush();
+        } catch (UncheckedIOException e) {
+            // rethrow in the thread that consumes events
+            this.error = e;
+        }
+    }
+
+    protected void checkError() {
+        UncheckedIOException e = this.error;
+        if (e == null) return;
+        this.error = null;
+        throw e;
+    }
+}
@@ -0,0 +1,450 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator;
+
+import com.moilioncircle.redis.replicator.cmd.Command;
+import com.moilioncircle.redis.replicator.event.Event;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Bounded queue between the thread that reads the replication stream and the listeners.
+ * <p>
+ * The reading thread only enqueues events, a dedicated thread drains them in batches of
+ * {@link Configuration#getEventBatchSize()} and calls the listeners, so a slow listener does not stall the
+ * socket. The replication offset of every event travels with it and is added to
+ * {@link Configuration#getReplOffset()} only after the listeners consumed the event.
+ * <p>
+ * Listeners are called in the dispatcher thread, raw bytes are still notified in the reading thread.
+ * A key value pair whose value the listeners read from the replication stream, such as the iterators of
+ * {@link com.moilioncircle.redis.replicator.rdb.iterable.ValueIterableRdbVisitor}, is handled in the reading
+ * thread after the queue is drained, the dispatcher thread keeps running and waits for the next event.
+ *
+ * @author Leon Chen
+ * @see Configuration#setEventQueueSize(int)
+ * @since 2.6.0
+ */
+public class EventDispatcher implements Runnable {
+
+    protected static final Log logger = LogFactory.getLog(EventDispatcher.class);
+
+    protected final Policy policy;
+    protected final int batchSize;
+    protected final BlockingQueue<Entry> queue;
+    protected final AbstractReplicator replicator;
+
+    protected volatile Thread worker;
+    protected volatile boolean closing;
+    protected volatile RuntimeException error;
+
+    /**
+     * offset of dropped events, carried by the next enqueued event. reading thread only.
+     */
+    protected long carry;
+
+    protected final AtomicLong dropped = new AtomicLong();
+    protected final AtomicLong spilled = new AtomicLong();
+    protected final AtomicLong consumed = new AtomicLong();
+
+    /**
+     * wakes the dispatcher thread up on close, it is not counted as dispatched
+     */
+    protected static final Entry WAKEUP = new Entry(null, 0L, 0L);
+
+    /**
+     * entries enqueued or spilled, reading thread only. {@link #drain()} waits until as many are processed.
+     */
+    protected long dispatched;
+    protected volatile long processed;
+    protected final Object barrier = new Object();
+
+    /**
+     * guards the spill file. once an event is spilled, later events are spilled too until the
+     * dispatcher thread read them back, so the order of events is kept.
+     */
+    protected final Object lock = new Object();
+    protected File spillFile;
+    protected DataInputStream spillIn;
+    protected DataOutputStream spillOut;
+    protected volatile long spillPending;
+
+    public EventDispatcher(AbstractReplicator replicator, int queueSize, int batchSize, Policy policy) {
+        this.policy = policy;
+        this.replicator = replicator;
+        this.batchSize = Math.max(1, batchSize);
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+    }
+
+    /**
+     * @param event  event, null if the bytes only advance the offset
+     * @param offset replication offset of the event
+     */
+    public void dispatch(Event event, long offset) {
+        dispatch(event, offset, 0L);
+    }
+
+    /**
+     * @param event  event, null if the bytes only advance the offset
+     * @param offset replication offset of the event
+     * @param bytes  approximate size of the event, see {@link EventBatcher}
+     */
+    public void dispatch(Event event, long offset, long bytes) {
+        checkError();
+        if (worker == null) start();
+        Entry entry = new Entry(event, offset + carry, bytes);
+        carry = 0L;
+        switch (policy) {
+            case DROP:
+                if (!droppable(event)) {
+                    put(entry);
+                } else if (queue.offer(entry)) {
+                    dispatched++;
+                } else {
+                    carry = entry.offset;
+                    dropped.incrementAndGet();
+                    replicator.doRelease(event);
+                }
+                break;
+            case SPILL:
+                synchronized (lock) {
+                    if ((spillPending == 0 && queue.offer(entry)) || spill(entry)) {
+                        dispatched++;
+                        break;
+                    }
+                }
+                // keep the order, the event waits until the spilled events are read back
+                awaitSpill();
+                put(entry);
+                break;
+            default:
+                put(entry);
+                break;
+        }
+    }
+
+    /**
+     * wait until all dispatched events are consumed and stop the dispatcher thread.
+     * the dispatcher restarts on the next {@link #dispatch(Event, long)}.
+     * <p>
+     * a listener that closes the dispatcher runs in the dispatcher thread, which can not wait for itself,
+     * so the call returns at once and the dispatcher keeps running until it is closed by the reading thread.
+     */
+    public void close() {
+        RuntimeException e = stop();
+        if (e != null) logger.error("failed to dispatch events", e);
+    }
+
+    /**
+     * wait until all dispatched events are consumed, so the next event could be handled in the reading thread.
+     * the dispatcher thread keeps running. unlike {@link #close()} the error of a listener is thrown.
+     */
+    public void drain() {
+        Thread worker = this.worker;
+        if (worker == null || worker == Thread.currentThread()) return;
+        try {
+            synchronized (barrier) {
+                while (processed < dispatched && error == null) barrier.wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new InterruptedIOException());
+        }
+        if (error != null) {
+            RuntimeException e = stop();
+            if (e != null) throw e;
+            return;
+        }
+        replicator.doAddOffset(carry);
+        carry = 0L;
+    }
+
+    /**
+     * @return events dropped by {@link Policy#DROP}
+     */
+    public long getDroppedEvents() {
+        return dropped.get();
+    }
+
+    /**
+     * @return events written to the spill file by {@link Policy#SPILL}
+     */
+    public long getSpilledEvents() {
+        return spilled.get();
+    }
+
+    /**
+     * @return events consumed by the listeners
+     */
+    public long getConsumedEvents() {
+        return consumed.get();
+    }
+
+    /**
+     * @return events waiting in the queue and the spill file
+     */
+    public long getPendingEvents() {
+        return queue.size() + spillPending;
+    }
+
+    @Override
+    public void run() {
+        final List<Entry> batch = new ArrayList<>(batchSize);
+        try {
+            while (true) {
+                if (queue.drainTo(batch, batchSize) == 0) unspill(batch);
+                if (batch.isEmpty()) {
+                    if (closing && queue.isEmpty() && spillPending == 0) break;
+                    // woken up by the next event or by WAKEUP on close
+                    batch.add(queue.take());
+                    queue.drainTo(batch, batchSize - 1);
+                }
+                long offset = 0L;
+                int n = 0;
+                try {
+                    for (int i = 0; i < batch.size(); i++) {
+                        Entry entry = batch.get(i);
+                        if (entry == WAKEUP) continue;
+                        if (entry.event != null) {
+                            replicator.doSubmitEvent(entry.event, entry.bytes);
+                            consumed.incrementAndGet();
+                        }
+                        offset += entry.offset;
+                        n++;
+                    }
+                } finally {
+                    replicator.doAddOffset(offset);
+                    batch.clear();
+                }
+                synchronized (barrier) {
+                    processed += n;
+                    barrier.notifyAll();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.error = new UncheckedIOException(new InterruptedIOException());
+        } catch (RuntimeException e) {
+            this.error = e;
+        } finally {
+            synchronized (barrier) {
+                barrier.notifyAll();
+            }
+        }
+    }
+
+    protected RuntimeException stop() {
+        Thread worker = this.worker;
+        if (worker == null || worker == Thread.currentThread()) return null;
+        this.closing = true;
+        // the queue is not empty if the offer fails, so the dispatcher thread sees closing before it waits again
+        queue.offer(WAKEUP);
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.worker = null;
+        }
+        RuntimeException e = this.error;
+        if (e == null) replicator.doAddOffset(carry);
+        this.carry = 0L;
+        this.error = null;
+        // events left by a failed dispatcher thread
+        for (Entry entry : queue) replicator.doRelease(entry.event);
+        this.queue.clear();
+        this.dispatched = 0L;
+        this.processed = 0L;
+        synchronized (lock) {
+            closeSpill();
+        }
+        return e;
+    }
+
+    protected void start() {
+        this.closing = false;
+        Thread worker = new Thread(this, "event-dispatcher");
+        worker.setDaemon(true);
+        this.worker = worker;
+        worker.start();
+    }
+
+    protected void checkError() {
+        RuntimeException e = this.error;
+        if (e == null) return;
+        this.error = null;
+        throw e;
+    }
+
+    /**
+     * full sync and aux events are never dropped
+     */
+    protected boolean droppable(Event event) {
+        return event == null || event instanceof KeyValuePair<?> || event instanceof Command;
+    }
+
+    protected void awaitSpill() {
+        try {
+            while (spillPending > 0) {
+                checkError();
+                MILLISECONDS.sleep(1);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new InterruptedIOException());
+        }
+    }
+
+    protected void put(Entry entry) {
+        try {
+            while (!queue.offer(entry, 100, MILLISECONDS)) checkError();
+            dispatched++;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new InterruptedIOException());
+        }
+    }
+
+    /**
+     * @return false if the event is not serializable, such as a module value or a custom command
+     */
+    protected boolean spill(Entry entry) {
+        try {
+            // every event is serialized on its own, so a failure does not corrupt the spill file
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(buf)) {
+                out.writeObject(entry);
+            } catch (NotSerializableException e) {
+                return false;
+            }
+            if (spillOut == null) {
+                spillFile = File.createTempFile("redis-replicator-", ".spill");
+                spillFile.deleteOnExit();
+                spillOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile)));
+            }
+            spillOut.writeInt(buf.size());
+            buf.writeTo(spillOut);
+            replicator.doRelease(entry.event);
+            spillPending++;
+            spilled.incrementAndGet();
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    protected void unspill(List<Entry> batch) {
+        if (spillPending == 0) return;
+        synchronized (lock) {
+            try {
+                spillOut.flush();
+                if (spillIn == null) {
+                    spillIn = new DataInputStream(new BufferedInputStream(new FileInputStream(spillFile)));
+                }
+                while (spillPending > 0 && batch.size() < batchSize) {
+                    byte[] bytes = new byte[spillIn.readInt()];
+                    spillIn.readFully(bytes);
+                    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                        batch.add((Entry) in.readObject());
+                    }
+                    spillPending--;
+                }
+                if (spillPending == 0) closeSpill();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (ClassNotFoundException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    protected void closeSpill() {
+        try {
+            if (spillIn != null) spillIn.close();
+        } catch (IOException e) {
+            //NOP
+        }
+        try {
+            if (spillOut != null) spillOut.close();
+        } catch (IOException e) {
+            //NOP
+        }
+        if (spillFile != null && !spillFile.delete()) {
+            logger.warn("failed to delete spill file " + spillFile);
+        }
+        spillIn = null;
+        spillOut = null;
+        spillFile = null;
+        spillPending = 0L;
+    }
+
+    /**
+     * back-pressure policy when the queue is full
+     */
+    public enum Policy {
+        /**
+         * block the reading thread until the listeners catch up
+         */
+        BLOCK,
+        /**
+         * drop key value pairs and commands and count them, see {@link #getDroppedEvents()}. the offset still advances
+         */
+        DROP,
+        /**
+         * serialize the event to a temporary file, see {@link #getSpilledEvents()}. an event that is not
+         * serializable, such as a module value, blocks the reading thread until the spilled events are consumed
+         */
+        SPILL
+    }
+
+    protected static class Entry implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        protected final Event event;
+        protected final long offset;
+        protected final long bytes;
+
+        protected Entry(Event event, long offset, long bytes) {
+            this.event = event;
+            this.bytes = bytes;
+            this.offset = offset;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator;
+
+import com.moilioncircle.redis.replicator.rdb.ParallelRdbParser;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Replicator of a local rdb file that decodes the key value pairs on {@link Configuration#getRdbDecodeThreads()}
+ * threads, all available processors if 0.
+ * <p>
+ * The file is read twice, a first pass cuts it into partitions of {@link Configuration#getRdbPartitionKeys()} keys
+ * and the partitions are decoded concurrently. see {@link ParallelRdbParser} for the ordering of events and the
+ * requirements on the rdb visitor.
+ *
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class ParallelRdbReplicator extends RedisRdbReplicator {
+
+    protected final File file;
+
+    public ParallelRdbReplicator(File file, Configuration configuration) throws FileNotFoundException {
+        super(file, configuration);
+        this.file = Objects.requireNonNull(file);
+    }
+
+    @Override
+    protected void doOpen() throws IOException {
+        new ParallelRdbParser(inputStream, this, file).parse();
+    }
+}
@@ -20,6 +20,8 @@ import com.moilioncircle.redis.replicator.cmd.Command;
 import com.moilioncircle.redis.replicator.cmd.CommandName;
 import com.moilioncircle.redis.replicator.cmd.CommandParser;
 import com.moilioncircle.redis.replicator.cmd.ReplyParser;
+import com.moilioncircle.redis.replicator.cmd.ReplySlices;
+import com.moilioncircle.redis.replicator.io.MappedRedisInputStream;
 import com.moilioncircle.redis.replicator.io.RedisInputStream;
 import com.moilioncircle.redis.replicator.util.Arrays;
 import org.apache.commons.logging.Log;
@@ -35,7 +37,6 @@ import java.util.Objects;
 
 import static com.moilioncircle.redis.replicator.Status.CONNECTED;
 import static com.moilioncircle.redis.replicator.Status.DISCONNECTED;
-import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
  * @author Leon Chen
@@ -47,14 +48,15 @@ public class RedisAofReplicator extends AbstractReplicator {
     protected final ReplyParser replyParser;
 
     public RedisAofReplicator(File file, Configuration configuration) throws FileNotFoundException {
-        this(new FileInputStream(file), configuration);
+        this(configuration.getMappedFileWindow() > 0 ? new MappedRedisInputStream(file, configuration.getMappedFileWindow()) : new FileInputStream(file), configuration);
     }
 
     public RedisAofReplicator(InputStream in, Configuration configuration) {
         Objects.requireNonNull(in);
         Objects.requireNonNull(configuration);
         this.configuration = configuration;
-        this.inputStream = new RedisInputStream(in, this.configuration.getBufferSize());
+        this.inputStream = in instanceof MappedRedisInputStream ? (RedisInputStream) in : new RedisInputStream(in, this.configuration.getBufferSize());
+        this.inputStream.setOffHeapThreshold(configuration.getOffHeapThreshold(), configuration.isOffHeapMapped());
         this.inputStream.setRawByteListeners(this.rawByteListeners);
         this.replyParser = new ReplyParser(inputStream);
         builtInCommandParserRegister();
@@ -78,21 +80,20 @@ public class RedisAofReplicator extends AbstractReplicator {
 
     protected void doOpen() throws IOException {
         while (getStatus() == CONNECTED) {
-            Object obj = replyParser.parse();
+            ReplySlices slices = replyParser.parseSlices(null);
 
-            if (obj instanceof Object[]) {
+            if (slices != null && slices.size() > 0) {
+                Object[] command = slices.toArray();
                 if (verbose() && logger.isDebugEnabled())
-                    logger.debug(Arrays.deepToString((Object[]) obj));
-                Object[] raw = (Object[]) obj;
-                CommandName name = CommandName.name(new String((byte[]) raw[0], UTF_8));
+                    logger.debug(Arrays.deepToString(command));
                 final CommandParser<? extends Command> parser;
-                if ((parser = commands.get(name)) == null) {
-                    logger.warn("command [" + name + "] not register. raw command:[" + Arrays.deepToString(raw) + "]");
+                if ((parser = lookup(slices)) == null) {
+                    logger.warn("command [" + CommandName.name(String.valueOf(slices.get(0))) + "] not register. raw command:[" + Arrays.deepToString(command) + "]");
                     continue;
                 }
-                submitEvent(parser.parse(raw));
+                submitEvent(parser.parse(command));
             } else {
-                logger.info("unexpected redis reply:" + obj);
+                logger.info("unexpected redis reply");
             }
         }
     }
@@ -20,8 +20,10 @@ import com.moilioncircle.redis.replicator.cmd.Command;
 import com.moilioncircle.redis.replicator.cmd.CommandName;
 import com.moilioncircle.redis.replicator.cmd.CommandParser;
 import com.moilioncircle.redis.replicator.cmd.ReplyParser;
+import com.moilioncircle.redis.replicator.cmd.ReplySlices;
 import com.moilioncircle.redis.replicator.io.PeekableInputStream;
 import com.moilioncircle.redis.replicator.io.RedisInputStream;
+import com.moilioncircle.redis.replicator.rdb.PipelinedRdbParser;
 import com.moilioncircle.redis.replicator.rdb.RdbParser;
 import com.moilioncircle.redis.replicator.util.Arrays;
 import org.apache.commons.logging.Log;
@@ -37,7 +39,6 @@ import java.util.Objects;
 
 import static com.moilioncircle.redis.replicator.Status.CONNECTED;
 import static com.moilioncircle.redis.replicator.Status.DISCONNECTED;
-import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
  * @author Leon Chen
@@ -62,6 +63,7 @@ public class RedisMixReplicator extends AbstractReplicator {
             in = this.peekable = new PeekableInputStream(in);
         }
         this.inputStream = new RedisInputStream(in, this.configuration.getBufferSize());
+        this.inputStream.setOffHeapThreshold(configuration.getOffHeapThreshold(), configuration.isOffHeapMapped());
         this.inputStream.setRawByteListeners(this.rawByteListeners);
         this.replyParser = new ReplyParser(inputStream);
         builtInCommandParserRegister();
@@ -85,25 +87,24 @@ public class RedisMixReplicator extends AbstractReplicator {
 
     protected void doOpen() throws IOException {
         if (peekable.peek() == 'R') {
-            RdbParser parser = new RdbParser(inputStream, this);
+            RdbParser parser = configuration.getRdbDecodeThreads() > 0 ? new PipelinedRdbParser(inputStream, this) : new RdbParser(inputStream, this);
             parser.parse();
         }
         while (getStatus() == CONNECTED) {
-            Object obj = replyParser.parse();
-            if (obj instanceof Object[]) {
+            ReplySlices slices = replyParser.parseSlices(null);
+            if (slices != null && slices.size() > 0) {
+                Object[] command = slices.toArray();
                 if (verbose() && logger.isDebugEnabled())
-                    logger.debug(Arrays.deepToString((Object[]) obj));
-                Object[] raw = (Object[]) obj;
-                CommandName name = CommandName.name(new String((byte[]) raw[0], UTF_8));
+                    logger.debug(Arrays.deepToString(command));
                 final CommandParser<? extends Command> parser;
                 //if command do not register. ignore
-                if ((parser = commands.get(name)) == null) {
-                    logger.warn("command [" + name + "] not register. raw command:[" + Arrays.deepToString(raw) + "]");
+                if ((parser = lookup(slices)) == null) {
+                    logger.warn("command [" + CommandName.name(String.valueOf(slices.get(0))) + "] not register. raw command:[" + Arrays.deepToString(command) + "]");
                     continue;
                 }
-                submitEvent(parser.parse(raw));
+                submitEvent(parser.parse(command));
             } else {
-                logger.info("unexpected redis reply:" + obj);
+                logger.info("unexpected redis reply");
             }
         }
     }
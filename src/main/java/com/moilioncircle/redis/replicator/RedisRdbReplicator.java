@@ -16,7 +16,9 @@
 
 package com.moilioncircle.redis.replicator;
 
+import com.moilioncircle.redis.replicator.io.MappedRedisInputStream;
 import com.moilioncircle.redis.replicator.io.RedisInputStream;
+import com.moilioncircle.redis.replicator.rdb.PipelinedRdbParser;
 import com.moilioncircle.redis.replicator.rdb.RdbParser;
 
 import java.io.EOFException;
@@ -37,14 +39,15 @@ import static com.moilioncircle.redis.replicator.Status.DISCONNECTED;
 public class RedisRdbReplicator extends AbstractReplicator {
 
     public RedisRdbReplicator(File file, Configuration configuration) throws FileNotFoundException {
-        this(new FileInputStream(file), configuration);
+        this(configuration.getMappedFileWindow() > 0 ? new MappedRedisInputStream(file, configuration.getMappedFileWindow()) : new FileInputStream(file), configuration);
     }
 
     public RedisRdbReplicator(InputStream in, Configuration configuration) {
         Objects.requireNonNull(in);
         Objects.requireNonNull(configuration);
         this.configuration = configuration;
-        this.inputStream = new RedisInputStream(in, this.configuration.getBufferSize());
+        this.inputStream = in instanceof MappedRedisInputStream ? (RedisInputStream) in : new RedisInputStream(in, this.configuration.getBufferSize());
+        this.inputStream.setOffHeapThreshold(configuration.getOffHeapThreshold(), configuration.isOffHeapMapped());
         this.inputStream.setRawByteListeners(this.rawByteListeners);
         if (configuration.isUseDefaultExceptionListener())
             addExceptionListener(new DefaultExceptionListener());
@@ -65,7 +68,7 @@ public class RedisRdbReplicator extends AbstractReplicator {
     }
 
     protected void doOpen() throws IOException {
-        RdbParser parser = new RdbParser(inputStream, this);
+        RdbParser parser = configuration.getRdbDecodeThreads() > 0 ? new PipelinedRdbParser(inputStream, this) : new RdbParser(inputStream, this);
         parser.parse();
     }
 }
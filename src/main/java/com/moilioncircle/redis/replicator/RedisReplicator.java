@@ -17,12 +17,14 @@
 package com.moilioncircle.redis.replicator;
 
 import com.moilioncircle.redis.replicator.cmd.Command;
+import com.moilioncircle.redis.replicator.cmd.CommandBatchListener;
 import com.moilioncircle.redis.replicator.cmd.CommandListener;
 import com.moilioncircle.redis.replicator.cmd.CommandName;
 import com.moilioncircle.redis.replicator.cmd.CommandParser;
 import com.moilioncircle.redis.replicator.io.PeekableInputStream;
 import com.moilioncircle.redis.replicator.io.RawByteListener;
 import com.moilioncircle.redis.replicator.rdb.AuxFieldListener;
+import com.moilioncircle.redis.replicator.rdb.RdbBatchListener;
 import com.moilioncircle.redis.replicator.rdb.RdbListener;
 import com.moilioncircle.redis.replicator.rdb.RdbVisitor;
 import com.moilioncircle.redis.replicator.rdb.datatype.Module;
@@ -136,6 +138,16 @@ public class RedisReplicator implements Replicator {
         return replicator.removeRdbListener(listener);
     }
 
+    @Override
+    public boolean addRdbBatchListener(RdbBatchListener listener) {
+        return replicator.addRdbBatchListener(listener);
+    }
+
+    @Override
+    public boolean removeRdbBatchListener(RdbBatchListener listener) {
+        return replicator.removeRdbBatchListener(listener);
+    }
+
     @Override
     public boolean addAuxFieldListener(AuxFieldListener listener) {
         return replicator.addAuxFieldListener(listener);
@@ -211,6 +223,16 @@ public class RedisReplicator implements Replicator {
         return replicator.removeCommandListener(listener);
     }
 
+    @Override
+    public boolean addCommandBatchListener(CommandBatchListener listener) {
+        return replicator.addCommandBatchListener(listener);
+    }
+
+    @Override
+    public boolean removeCommandBatchListener(CommandBatchListener listener) {
+        return replicator.removeCommandBatchListener(listener);
+    }
+
     @Override
     public boolean addCloseListener(CloseListener listener) {
         return replicator.addCloseListener(listener);
@@ -246,6 +268,16 @@ public class RedisReplicator implements Replicator {
         return replicator.getConfiguration();
     }
 
+    /**
+     * @return event dispatcher, null if events are handled in the reading thread
+     * @see Configuration#setEventQueueSize(int)
+     * @since 2.6.0
+     */
+    public EventDispatcher getEventDispatcher() {
+        if (!(replicator instanceof AbstractReplicator)) return null;
+        return ((AbstractReplicator) replicator).getEventDispatcher();
+    }
+
     @Override
     public void open() throws IOException {
         replicator.open();
@@ -22,11 +22,13 @@ import com.moilioncircle.redis.replicator.cmd.CommandName;
 import com.moilioncircle.redis.replicator.cmd.CommandParser;
 import com.moilioncircle.redis.replicator.cmd.OffsetHandler;
 import com.moilioncircle.redis.replicator.cmd.ReplyParser;
+import com.moilioncircle.redis.replicator.cmd.ReplySlices;
 import com.moilioncircle.redis.replicator.io.AsyncBufferedInputStream;
 import com.moilioncircle.redis.replicator.io.RateLimitInputStream;
 import com.moilioncircle.redis.replicator.io.RedisInputStream;
 import com.moilioncircle.redis.replicator.io.RedisOutputStream;
 import com.moilioncircle.redis.replicator.net.RedisSocketFactory;
+import com.moilioncircle.redis.replicator.rdb.PipelinedRdbParser;
 import com.moilioncircle.redis.replicator.rdb.RdbParser;
 import com.moilioncircle.redis.replicator.util.Arrays;
 import org.apache.commons.logging.Log;
@@ -38,6 +40,7 @@ import java.net.Socket;
 import java.util.Objects;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.Executors;
 
 import static com.moilioncircle.redis.replicator.Constants.DOLLAR;
 import static com.moilioncircle.redis.replicator.Constants.STAR;
@@ -140,7 +143,7 @@ public class RedisSocketReplicator extends AbstractReplicator {
                     }
                     in.skip(len);
                 } else {
-                    RdbParser parser = new RdbParser(in, replicator);
+                    RdbParser parser = configuration.getRdbDecodeThreads() > 0 ? new PipelinedRdbParser(in, replicator) : new RdbParser(in, replicator);
                     parser.parse();
                     if (len == -1) in.skip(40, false); // skip 40 bytes delimiter when disk-less replication
                 }
@@ -292,12 +295,13 @@ public class RedisSocketReplicator extends AbstractReplicator {
             outputStream = new RedisOutputStream(socket.getOutputStream());
             InputStream inputStream = socket.getInputStream();
             if (configuration.getAsyncCachedBytes() > 0) {
-                inputStream = new AsyncBufferedInputStream(inputStream, configuration.getAsyncCachedBytes());
+                inputStream = new AsyncBufferedInputStream(inputStream, configuration.getAsyncCachedBytes(), Executors.defaultThreadFactory(), configuration.getAsyncWaitStrategy());
             }
             if (configuration.getRateLimit() > 0) {
                 inputStream = new RateLimitInputStream(inputStream, configuration.getRateLimit());
             }
             this.inputStream = new RedisInputStream(inputStream, configuration.getBufferSize());
+            this.inputStream.setOffHeapThreshold(configuration.getOffHeapThreshold(), configuration.isOffHeapMapped());
             this.inputStream.setRawByteListeners(this.rawByteListeners);
             replyParser = new ReplyParser(this.inputStream);
             logger.info("Connected to redis-server[" + host + ":" + port + "]");
@@ -309,6 +313,7 @@ public class RedisSocketReplicator extends AbstractReplicator {
     @Override
     protected void doClose() throws IOException {
         connected.compareAndSet(CONNECTED, DISCONNECTING);
+        doCloseEventDispatcher();
 
         try {
             synchronized (this) {
@@ -377,29 +382,28 @@ public class RedisSocketReplicator extends AbstractReplicator {
             }
             final long[] offset = new long[1];
             while (getStatus() == CONNECTED) {
-                Object obj = replyParser.parse(new OffsetHandler() {
+                ReplySlices slices = replyParser.parseSlices(new OffsetHandler() {
                     @Override
                     public void handle(long len) {
                         offset[0] = len;
                     }
                 });
                 //command
-                if (obj instanceof Object[]) {
+                if (slices != null && slices.size() > 0) {
+                    Object[] command = slices.toArray();
                     if (verbose() && logger.isDebugEnabled())
-                        logger.debug(Arrays.deepToString((Object[]) obj));
-                    Object[] raw = (Object[]) obj;
-                    CommandName name = CommandName.name(new String((byte[]) raw[0], UTF_8));
+                        logger.debug(Arrays.deepToString(command));
                     final CommandParser<? extends Command> parser;
-                    if ((parser = commands.get(name)) == null) {
-                        logger.warn("command [" + name + "] not register. raw command:[" + Arrays.deepToString(raw) + "]");
+                    if ((parser = lookup(slices)) == null) {
+                        logger.warn("command [" + CommandName.name(String.valueOf(slices.get(0))) + "] not register. raw command:[" + Arrays.deepToString(command) + "]");
                         continue;
                     }
-                    submitEvent(parser.parse(raw));
+                    // add offset after event consumed. and then reset offset to 0L.
+                    submitEvent(parser.parse(command), offset[0]);
                 } else {
-                    logger.info("unexpected redis reply:" + obj);
+                    logger.info("unexpected redis reply");
+                    submitEvent(null, offset[0]);
                 }
-                // add offset after event consumed. and then reset offset to 0L.
-                configuration.addOffset(offset[0]);
                 offset[0] = 0L;
             }
             return true;
@@ -16,9 +16,11 @@
 
 package com.moilioncircle.redis.replicator;
 
+import com.moilioncircle.redis.replicator.cmd.CommandBatchListener;
 import com.moilioncircle.redis.replicator.cmd.CommandListener;
 import com.moilioncircle.redis.replicator.io.RawByteListener;
 import com.moilioncircle.redis.replicator.rdb.AuxFieldListener;
+import com.moilioncircle.redis.replicator.rdb.RdbBatchListener;
 import com.moilioncircle.redis.replicator.rdb.RdbListener;
 
 /**
@@ -37,6 +39,20 @@ public interface ReplicatorListener {
 
     boolean removeAuxFieldListener(AuxFieldListener listener);
 
+    /**
+     * @param listener rdb batch listener
+     * @return true if added
+     * @since 2.6.0
+     */
+    boolean addRdbBatchListener(RdbBatchListener listener);
+
+    /**
+     * @param listener rdb batch listener
+     * @return true if removed
+     * @since 2.6.0
+     */
+    boolean removeRdbBatchListener(RdbBatchListener listener);
+
     /*
      * Raw byte
      */
@@ -51,6 +67,20 @@ public interface ReplicatorListener {
 
     boolean removeCommandListener(CommandListener listener);
 
+    /**
+     * @param listener command batch listener
+     * @return true if added
+     * @since 2.6.0
+     */
+    boolean addCommandBatchListener(CommandBatchListener listener);
+
+    /**
+     * @param listener command batch listener
+     * @return true if removed
+     * @since 2.6.0
+     */
+    boolean removeCommandBatchListener(CommandBatchListener listener);
+
     /*
      * Close
      */
@@ -17,6 +17,7 @@
 package com.moilioncircle.redis.replicator.cmd;
 
 import com.moilioncircle.redis.replicator.io.RedisInputStream;
+import com.moilioncircle.redis.replicator.util.ByteArray;
 
 import java.io.IOException;
 
@@ -30,7 +31,13 @@ public interface BulkReplyHandler {
     class SimpleBulkReplyHandler implements BulkReplyHandler {
         @Override
         public byte[] handle(long len, RedisInputStream in) throws IOException {
-            byte[] reply = len == 0 ? new byte[]{} : in.readBytes(len).first();
+            byte[] reply = new byte[]{};
+            if (len > 0) {
+                // a heap array, the off-heap arrays of the stream are only released by the rdb parser
+                ByteArray bytes = new ByteArray(len);
+                in.read(bytes, 0, len);
+                reply = bytes.first();
+            }
             int c;
             if ((c = in.read()) != '\r') throw new AssertionError("expect '\\r' but :" + (char) c);
             if ((c = in.read()) != '\n') throw new AssertionError("expect '\\n' but :" + (char) c);
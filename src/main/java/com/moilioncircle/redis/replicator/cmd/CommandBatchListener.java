@@ -0,0 +1,31 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.moilioncircle.redis.replicator.cmd;
+
+import com.moilioncircle.redis.replicator.Replicator;
+
+import java.util.List;
+
+/**
+ * Receives commands in batches, see {@link com.moilioncircle.redis.replicator.Configuration#setListenerBatchSize(int)}.
+ * The replication offset of the commands advances after this method returns.
+ *
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public interface CommandBatchListener {
+    void handle(Replicator replicator, List<Command> commands);
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.cmd;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Command parsers keyed by the ascii case insensitive name of the command.
+ * <p>
+ * {@link #get(byte[])} looks the parser up by the raw name of a replicated command, it neither decodes
+ * nor upper cases the name. The names are folded to upper case once when a parser is registered.
+ * <p>
+ * Lookups read an immutable open addressing table, registrations copy it, so lookups take no lock
+ * and parsers could be registered while replicating. {@link #asMap()} is a {@link Map} view that writes through.
+ *
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class CommandTable {
+
+    protected volatile Table table = new Table(16);
+    protected final Map<CommandName, CommandParser<? extends Command>> map = new MapView();
+
+    /**
+     * @param name raw name of the command
+     * @return parser of the command or null
+     */
+    public CommandParser<? extends Command> get(byte[] name) {
+        return table.get(name, 0, name.length);
+    }
+
+    /**
+     * @param name   array that holds the raw name of the command, such as {@link ReplySlices}
+     * @param offset offset of the name
+     * @param length length of the name
+     * @return parser of the command or null
+     */
+    public CommandParser<? extends Command> get(byte[] name, int offset, int length) {
+        return table.get(name, offset, length);
+    }
+
+    public CommandParser<? extends Command> get(CommandName name) {
+        return get(name.name.getBytes(UTF_8));
+    }
+
+    public synchronized CommandParser<? extends Command> put(CommandName name, CommandParser<? extends Command> parser) {
+        if (parser == null) throw new NullPointerException();
+        byte[] key = upper(name.name.getBytes(UTF_8));
+        Table table = this.table;
+        CommandParser<? extends Command> old = table.get(key, 0, key.length);
+        Table next = new Table(old == null ? table.size + 1 : table.size);
+        next.putAll(table, null);
+        next.put(key, parser);
+        this.table = next;
+        return old;
+    }
+
+    public synchronized CommandParser<? extends Command> remove(CommandName name) {
+        byte[] key = upper(name.name.getBytes(UTF_8));
+        Table table = this.table;
+        CommandParser<? extends Command> old = table.get(key, 0, key.length);
+        if (old == null) return null;
+        Table next = new Table(table.size - 1);
+        next.putAll(table, key);
+        this.table = next;
+        return old;
+    }
+
+    public int size() {
+        return table.size;
+    }
+
+    /**
+     * @return map view of this table, changes of the map are visible to the lookups and vice versa
+     */
+    public Map<CommandName, CommandParser<? extends Command>> asMap() {
+        return map;
+    }
+
+    protected static byte[] upper(byte[] name) {
+        for (int i = 0; i < name.length; i++) name[i] = upper(name[i]);
+        return name;
+    }
+
+    protected static byte upper(byte b) {
+        return b >= 'a' && b <= 'z' ? (byte) (b - 32) : b;
+    }
+
+    protected static int hash(byte[] name, int offset, int length) {
+        int h = 1;
+        for (int i = offset; i < offset + length; i++) h = 31 * h + upper(name[i]);
+        return h ^ (h >>> 16);
+    }
+
+    protected class MapView extends AbstractMap<CommandName, CommandParser<? extends Command>> {
+
+        @Override
+        public int size() {
+            return CommandTable.this.size();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public CommandParser<? extends Command> get(Object key) {
+            return key instanceof CommandName ? CommandTable.this.get((CommandName) key) : null;
+        }
+
+        @Override
+        public CommandParser<? extends Command> put(CommandName key, CommandParser<? extends Command> value) {
+            return CommandTable.this.put(key, value);
+        }
+
+        @Override
+        public CommandParser<? extends Command> remove(Object key) {
+            return key instanceof CommandName ? CommandTable.this.remove((CommandName) key) : null;
+        }
+
+        @Override
+        public Set<Entry<CommandName, CommandParser<? extends Command>>> entrySet() {
+            return new AbstractSet<Entry<CommandName, CommandParser<? extends Command>>>() {
+                @Override
+                public int size() {
+                    return CommandTable.this.size();
+                }
+
+                @Override
+                public Iterator<Entry<CommandName, CommandParser<? extends Command>>> iterator() {
+                    return new EntryIterator(table);
+                }
+            };
+        }
+    }
+
+    /**
+     * iterates a snapshot of the table, names are the upper cased names of the registrations.
+     */
+    protected class EntryIterator implements Iterator<Map.Entry<CommandName, CommandParser<? extends Command>>> {
+        protected int next = -1;
+        protected CommandName last;
+        protected final Table table;
+
+        protected EntryIterator(Table table) {
+            this.table = table;
+            advance();
+        }
+
+        protected void advance() {
+            do next++; while (next < table.names.length && table.names[next] == null);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < table.names.length;
+        }
+
+        @Override
+        public Map.Entry<CommandName, CommandParser<? extends Command>> next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            last = CommandName.name(new String(table.names[next], UTF_8));
+            CommandParser<? extends Command> parser = table.parsers[next];
+            advance();
+            return new AbstractMap.SimpleImmutableEntry<CommandName, CommandParser<? extends Command>>(last, parser);
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) throw new IllegalStateException();
+            CommandTable.this.remove(last);
+            last = null;
+        }
+    }
+
+    protected static class Table {
+        protected int size;
+        protected final int mask;
+        protected final byte[][] names; // upper cased
+        protected final CommandParser<?>[] parsers;
+
+        protected Table(int capacity) {
+            int n = 4;
+            while (n < capacity * 2) n <<= 1;
+            this.mask = n - 1;
+            this.names = new byte[n][];
+            this.parsers = new CommandParser<?>[n];
+        }
+
+        protected CommandParser<? extends Command> get(byte[] name, int offset, int length) {
+            for (int i = hash(name, offset, length) & mask; names[i] != null; i = (i + 1) & mask) {
+                if (equals(names[i], name, offset, length)) return parsers[i];
+            }
+            return null;
+        }
+
+        protected void put(byte[] name, CommandParser<?> parser) {
+            int i = hash(name, 0, name.length) & mask;
+            while (names[i] != null && !equals(names[i], name, 0, name.length)) i = (i + 1) & mask;
+            if (names[i] == null) size++;
+            names[i] = name;
+            parsers[i] = parser;
+        }
+
+        protected void putAll(Table table, byte[] except) {
+            for (int i = 0; i < table.names.length; i++) {
+                byte[] name = table.names[i];
+                if (name == null || (except != null && equals(name, except, 0, except.length))) continue;
+                put(name, table.parsers[i]);
+            }
+        }
+
+        protected static boolean equals(byte[] upper, byte[] name, int offset, int length) {
+            if (upper.length != length) return false;
+            for (int i = 0; i < length; i++) {
+                if (upper[i] != CommandTable.upper(name[offset + i])) return false;
+            }
+            return true;
+        }
+    }
+}
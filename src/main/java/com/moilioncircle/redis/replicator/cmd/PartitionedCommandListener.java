@@ -0,0 +1,349 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.cmd;
+
+import com.moilioncircle.redis.replicator.Replicator;
+import com.moilioncircle.redis.replicator.UncheckedIOException;
+import com.moilioncircle.redis.replicator.cmd.impl.BRPopLPushCommand;
+import com.moilioncircle.redis.replicator.cmd.impl.BitOpCommand;
+import com.moilioncircle.redis.replicator.cmd.impl.DelCommand;
+import com.moilioncircle.redis.replicator.cmd.impl.EvalCommand;
+import com.moilioncircle.redis.replicator.cmd.impl.EvalShaCommand;
+import com.moilioncircle.redis.replicator.cmd.impl.ExecCommand;
+import com.moilioncircle.redis.replicator.cmd.impl.MSetCommand;
+import com.moilioncircle.redis.replicator.cmd.impl.MSetNxCommand;
+import com.moilioncircle.redis.replicator.cmd.impl.MultiCommand;
+import com.moilioncircle.redis.replicator.cmd.impl.PFCountCommand;
+import com.moilioncircle.redis.replicator.cmd.impl.PFMergeCommand;
+import com.moilioncircle.redis.replicator.cmd.impl.RPopLPushCommand;
+import com.moilioncircle.redis.replicator.cmd.impl.RenameCommand;
+import com.moilioncircle.redis.replicator.cmd.impl.RenameNxCommand;
+import com.moilioncircle.redis.replicator.cmd.impl.SDiffStoreCommand;
+import com.moilioncircle.redis.replicator.cmd.impl.SInterStoreCommand;
+import com.moilioncircle.redis.replicator.cmd.impl.SMoveCommand;
+import com.moilioncircle.redis.replicator.cmd.impl.SUnionStoreCommand;
+import com.moilioncircle.redis.replicator.cmd.impl.SortCommand;
+import com.moilioncircle.redis.replicator.cmd.impl.UnLinkCommand;
+import com.moilioncircle.redis.replicator.cmd.impl.ZInterStoreCommand;
+import com.moilioncircle.redis.replicator.cmd.impl.ZUnionStoreCommand;
+import com.moilioncircle.redis.replicator.util.CRC16;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.Closeable;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Calls a {@link CommandListener} in N single-threaded lanes while keeping the order of every key.
+ * <p>
+ * A command is routed to the lane of the cluster slot of its key ({@link CRC16#slot(byte[])}), so keys
+ * with the same hash tag share a lane. A multi-key command, or a MULTI/EXEC block, whose keys fall into one
+ * lane is routed to that lane as a whole, otherwise it is a barrier: all lanes are drained and the
+ * command is handled in the calling thread. Commands without known keys, such as SELECT, FLUSHALL,
+ * FLUSHDB, SWAPDB, scripts without keys and unknown commands, are barriers too.
+ * <p>
+ * An exception thrown by the listener in a lane is rethrown by the next {@link #handle(Replicator, Command)}.
+ * {@link #close()} drains and stops the lanes.
+ *
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class PartitionedCommandListener implements CommandListener, Closeable {
+
+    protected static final Log logger = LogFactory.getLog(PartitionedCommandListener.class);
+
+    protected static final Runnable STOP = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    protected final Lane[] lanes;
+    protected final CommandListener listener;
+    protected volatile Throwable error;
+    protected List<Command> transaction;
+
+    public PartitionedCommandListener(CommandListener listener, int lanes) {
+        this(listener, lanes, 1024);
+    }
+
+    /**
+     * @param listener listener
+     * @param lanes    number of lanes
+     * @param capacity pending commands per lane, the calling thread blocks if a lane is full
+     */
+    public PartitionedCommandListener(CommandListener listener, int lanes, int capacity) {
+        if (lanes <= 0) throw new IllegalArgumentException("lanes:" + lanes);
+        this.listener = listener;
+        this.lanes = new Lane[lanes];
+        for (int i = 0; i < lanes; i++) this.lanes[i] = new Lane(i, capacity);
+    }
+
+    @Override
+    public void handle(Replicator replicator, Command command) {
+        checkError();
+        if (transaction != null) {
+            transaction.add(command);
+            if (!(command instanceof ExecCommand)) return;
+            List<Command> commands = transaction;
+            transaction = null;
+            dispatch(replicator, commands);
+        } else if (command instanceof MultiCommand) {
+            transaction = new ArrayList<>();
+            transaction.add(command);
+        } else {
+            dispatch(replicator, Collections.singletonList(command));
+        }
+    }
+
+    @Override
+    public void close() {
+        if (transaction != null) {
+            logger.warn("discard " + transaction.size() + " commands of an unfinished transaction");
+            transaction = null;
+        }
+        for (Lane lane : lanes) lane.submit(STOP);
+        for (Lane lane : lanes) {
+            try {
+                lane.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    protected void dispatch(final Replicator replicator, final List<Command> commands) {
+        int lane = lane(commands);
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                for (Command command : commands) listener.handle(replicator, command);
+            }
+        };
+        if (lane >= 0) {
+            lanes[lane].submit(task);
+        } else {
+            barrier();
+            task.run();
+        }
+    }
+
+    /**
+     * @return lane of all keys of the commands, -1 if the commands need a barrier
+     */
+    protected int lane(List<Command> commands) {
+        int lane = -1;
+        for (Command command : commands) {
+            if (command instanceof MultiCommand || command instanceof ExecCommand) continue;
+            byte[][] keys = keys(command);
+            if (keys == null || keys.length == 0) return -1;
+            for (byte[] key : keys) {
+                if (key == null) return -1;
+                int l = CRC16.slot(key) % lanes.length;
+                if (lane == -1) lane = l;
+                else if (lane != l) return -1;
+            }
+        }
+        return lane;
+    }
+
+    /**
+     * override to route custom commands.
+     *
+     * @param command command
+     * @return keys of the command, null if the keys are unknown
+     */
+    protected byte[][] keys(Command command) {
+        if (command instanceof RenameCommand) {
+            RenameCommand c = (RenameCommand) command;
+            return keys(key(c.getRawKey(), c.getKey()), key(c.getRawNewKey(), c.getNewKey()));
+        } else if (command instanceof RenameNxCommand) {
+            RenameNxCommand c = (RenameNxCommand) command;
+            return keys(key(c.getRawKey(), c.getKey()), key(c.getRawNewKey(), c.getNewKey()));
+        } else if (command instanceof SortCommand) {
+            SortCommand c = (SortCommand) command;
+            // BY and GET patterns read arbitrary keys
+            if (c.getByPattern() != null || (c.getGetPatterns() != null && c.getGetPatterns().length > 0)) return null;
+            if (c.getDestination() == null) return keys(key(c.getRawKey(), c.getKey()));
+            return keys(key(c.getRawKey(), c.getKey()), key(c.getRawDestination(), c.getDestination()));
+        } else if (command instanceof KeyCommand) {
+            KeyCommand c = (KeyCommand) command;
+            return keys(key(c.getRawKey(), c.getKey()));
+        } else if (command instanceof DelCommand) {
+            DelCommand c = (DelCommand) command;
+            return keys(c.getRawKeys(), c.getKeys());
+        } else if (command instanceof UnLinkCommand) {
+            UnLinkCommand c = (UnLinkCommand) command;
+            return keys(c.getRawKeys(), c.getKeys());
+        } else if (command instanceof PFCountCommand) {
+            PFCountCommand c = (PFCountCommand) command;
+            return keys(c.getRawKeys(), c.getKeys());
+        } else if (command instanceof MSetCommand) {
+            MSetCommand c = (MSetCommand) command;
+            return keys(c.getRawKv(), c.getKv());
+        } else if (command instanceof MSetNxCommand) {
+            MSetNxCommand c = (MSetNxCommand) command;
+            return keys(c.getRawKv(), c.getKv());
+        } else if (command instanceof SMoveCommand) {
+            SMoveCommand c = (SMoveCommand) command;
+            return keys(key(c.getRawSource(), c.getSource()), key(c.getRawDestination(), c.getDestination()));
+        } else if (command instanceof RPopLPushCommand) {
+            RPopLPushCommand c = (RPopLPushCommand) command;
+            return keys(key(c.getRawSource(), c.getSource()), key(c.getRawDestination(), c.getDestination()));
+        } else if (command instanceof BRPopLPushCommand) {
+            BRPopLPushCommand c = (BRPopLPushCommand) command;
+            return keys(key(c.getRawSource(), c.getSource()), key(c.getRawDestination(), c.getDestination()));
+        } else if (command instanceof BitOpCommand) {
+            BitOpCommand c = (BitOpCommand) command;
+            return concat(key(c.getRawDestkey(), c.getDestkey()), keys(c.getRawKeys(), c.getKeys()));
+        } else if (command instanceof PFMergeCommand) {
+            PFMergeCommand c = (PFMergeCommand) command;
+            return concat(key(c.getRawDestkey(), c.getDestkey()), keys(c.getRawSourcekeys(), c.getSourcekeys()));
+        } else if (command instanceof SDiffStoreCommand) {
+            SDiffStoreCommand c = (SDiffStoreCommand) command;
+            return concat(key(c.getRawDestination(), c.getDestination()), keys(c.getRawKeys(), c.getKeys()));
+        } else if (command instanceof SInterStoreCommand) {
+            SInterStoreCommand c = (SInterStoreCommand) command;
+            return concat(key(c.getRawDestination(), c.getDestination()), keys(c.getRawKeys(), c.getKeys()));
+        } else if (command instanceof SUnionStoreCommand) {
+            SUnionStoreCommand c = (SUnionStoreCommand) command;
+            return concat(key(c.getRawDestination(), c.getDestination()), keys(c.getRawKeys(), c.getKeys()));
+        } else if (command instanceof ZInterStoreCommand) {
+            ZInterStoreCommand c = (ZInterStoreCommand) command;
+            return concat(key(c.getRawDestination(), c.getDestination()), keys(c.getRawKeys(), c.getKeys()));
+        } else if (command instanceof ZUnionStoreCommand) {
+            ZUnionStoreCommand c = (ZUnionStoreCommand) command;
+            return concat(key(c.getRawDestination(), c.getDestination()), keys(c.getRawKeys(), c.getKeys()));
+        } else if (command instanceof EvalCommand) {
+            EvalCommand c = (EvalCommand) command;
+            return keys(c.getRawKeys(), c.getKeys());
+        } else if (command instanceof EvalShaCommand) {
+            EvalShaCommand c = (EvalShaCommand) command;
+            return keys(c.getRawKeys(), c.getKeys());
+        }
+        return null;
+    }
+
+    protected void barrier() {
+        final CountDownLatch latch = new CountDownLatch(lanes.length);
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        };
+        for (Lane lane : lanes) lane.submit(task);
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new InterruptedIOException());
+        }
+        checkError();
+    }
+
+    protected void checkError() {
+        Throwable e = this.error;
+        if (e == null) return;
+        this.error = null;
+        if (e instanceof RuntimeException) throw (RuntimeException) e;
+        if (e instanceof Error) throw (Error) e;
+        throw new AssertionError(e);
+    }
+
+    private static byte[] key(byte[] raw, String key) {
+        if (raw != null) return raw;
+        return key == null ? null : key.getBytes(UTF_8);
+    }
+
+    private static byte[][] keys(byte[]... keys) {
+        return keys;
+    }
+
+    private static byte[][] keys(byte[][] raw, String[] keys) {
+        if (raw != null) return raw;
+        if (keys == null) return null;
+        byte[][] r = new byte[keys.length][];
+        for (int i = 0; i < keys.length; i++) r[i] = key(null, keys[i]);
+        return r;
+    }
+
+    private static byte[][] keys(Map<byte[], byte[]> raw, Map<String, String> kv) {
+        if (raw != null) return raw.keySet().toArray(new byte[raw.size()][]);
+        if (kv == null) return null;
+        return keys(null, kv.keySet().toArray(new String[kv.size()]));
+    }
+
+    private static byte[][] concat(byte[] key, byte[][] keys) {
+        if (keys == null) return null;
+        byte[][] r = new byte[keys.length + 1][];
+        r[0] = key;
+        System.arraycopy(keys, 0, r, 1, keys.length);
+        return r;
+    }
+
+    protected class Lane implements Runnable {
+        protected final Thread thread;
+        protected final BlockingQueue<Runnable> queue;
+
+        protected Lane(int index, int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.thread = new Thread(this, "command-lane-" + index);
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        protected void submit(Runnable task) {
+            try {
+                queue.put(task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UncheckedIOException(new InterruptedIOException());
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Runnable task;
+                try {
+                    task = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (task == STOP) return;
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    if (error == null) error = e;
+                    else logger.error("failed to handle command", e);
+                }
+            }
+        }
+    }
+}
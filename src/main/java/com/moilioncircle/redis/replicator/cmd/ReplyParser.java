@@ -33,18 +33,21 @@ import static com.moilioncircle.redis.replicator.Constants.STAR;
  * @since 2.1.0
  */
 public class ReplyParser {
+    private static final BulkReplyHandler SIMPLE_HANDLER = new BulkReplyHandler.SimpleBulkReplyHandler();
+
     private final RedisInputStream in;
+    private final ReplySlices slices = new ReplySlices();
 
     public ReplyParser(RedisInputStream in) {
         this.in = in;
     }
 
     public Object parse() throws IOException {
-        return parse(new BulkReplyHandler.SimpleBulkReplyHandler(), null);
+        return parse(SIMPLE_HANDLER, null);
     }
 
     public Object parse(OffsetHandler offsetHandler) throws IOException {
-        return parse(new BulkReplyHandler.SimpleBulkReplyHandler(), offsetHandler);
+        return parse(SIMPLE_HANDLER, offsetHandler);
     }
 
     public Object parse(BulkReplyHandler handler, OffsetHandler offsetHandler) throws IOException {
@@ -56,115 +59,152 @@ public class ReplyParser {
     }
 
     /**
-     * @param handler bulk reply handler
-     * @return Object[] or byte[] or Long
+     * Parse a RESP array of bulk strings and integers without allocating per argument.
+     * the returned slices are owned by this parser and reused by the next call.
+     *
+     * @param offsetHandler offset handler
+     * @return array arguments, or null if the reply is a null array or not an array.
      * @throws IOException when read timeout
+     * @since 2.6.0
      */
-    public Object parse(BulkReplyHandler handler) throws IOException {
-        while (true) {
-            int c = in.read();
-            switch (c) {
+    public ReplySlices parseSlices(OffsetHandler offsetHandler) throws IOException {
+        in.mark();
+        ReplySlices rs = parseSlices();
+        long len = in.unmark();
+        if (offsetHandler != null) offsetHandler.handle(len);
+        return rs;
+    }
+
+    private ReplySlices parseSlices() throws IOException {
+        int c;
+        while ((c = in.read()) == '\n') ;
+        if (c != STAR) {
+            parse(c, SIMPLE_HANDLER);
+            return null;
+        }
+        long len = readLength();
+        if (len == -1) return null;
+        slices.clear((int) len);
+        for (int i = 0; i < len; i++) {
+            switch (c = in.read()) {
                 case DOLLAR:
-                    //RESP Bulk Strings
-                    ByteBuilder builder = ByteBuilder.allocate(128);
-                    while (true) {
-                        while ((c = in.read()) != '\r') {
-                            builder.put((byte) c);
-                        }
-                        if ((c = in.read()) == '\n') {
-                            break;
-                        } else {
-                            builder.put((byte) c);
-                        }
+                    long size = readLength();
+                    if (size == -1) {
+                        slices.addNull();
+                        break;
                     }
-                    String payload = builder.toString();
-                    long len = -1;
-                    // disk-less replication
-                    // $EOF:<40 bytes delimiter>
-                    if (!payload.startsWith("EOF:")) {
-                        len = Long.parseLong(builder.toString());
-                        // $-1\r\n. this is called null string.
-                        // see http://redis.io/topics/protocol
-                        if (len == -1) return null;
-                    } else {
-                        if (handler instanceof BulkReplyHandler.SimpleBulkReplyHandler) {
-                            throw new AssertionError("Parse reply for disk-less replication can not use BulkReplyHandler.SimpleBulkReplyHandler.");
-                        }
-                    }
-                    if (handler != null) return handler.handle(len, in);
-                    throw new AssertionError("Callback is null");
+                    slices.addBulk(in, (int) size);
+                    readCRLF();
+                    break;
                 case COLON:
-                    // RESP Integers
-                    builder = ByteBuilder.allocate(128);
-                    while (true) {
-                        while ((c = in.read()) != '\r') {
-                            builder.put((byte) c);
-                        }
-                        if ((c = in.read()) == '\n') {
-                            break;
-                        } else {
-                            builder.put((byte) c);
-                        }
-                    }
-                    //as integer
-                    return Long.parseLong(builder.toString());
-                case STAR:
-                    // RESP Arrays
-                    builder = ByteBuilder.allocate(128);
-                    while (true) {
-                        while ((c = in.read()) != '\r') {
-                            builder.put((byte) c);
-                        }
-                        if ((c = in.read()) == '\n') {
-                            break;
-                        } else {
-                            builder.put((byte) c);
-                        }
+                    slices.addInteger(readLength());
+                    break;
+                default:
+                    throw new AssertionError("expect [$,:] but: " + (char) c);
+            }
+        }
+        return slices;
+    }
+
+    /**
+     * @param handler bulk reply handler
+     * @return Object[] or byte[] or Long
+     * @throws IOException when read timeout
+     */
+    public Object parse(BulkReplyHandler handler) throws IOException {
+        int c;
+        while ((c = in.read()) == '\n') ;
+        return parse(c, handler);
+    }
+
+    private Object parse(int c, BulkReplyHandler handler) throws IOException {
+        switch (c) {
+            case DOLLAR:
+                //RESP Bulk Strings
+                long len;
+                c = in.read();
+                // disk-less replication
+                // $EOF:<40 bytes delimiter>
+                if (c == 'E') {
+                    while (in.read() != '\r') ;
+                    if ((c = in.read()) != '\n') throw new AssertionError("expect '\\n' but :" + (char) c);
+                    if (handler instanceof BulkReplyHandler.SimpleBulkReplyHandler) {
+                        throw new AssertionError("Parse reply for disk-less replication can not use BulkReplyHandler.SimpleBulkReplyHandler.");
                     }
-                    len = Long.parseLong(builder.toString());
+                    len = -1;
+                } else {
+                    len = readLength(c);
+                    // $-1\r\n. this is called null string.
+                    // see http://redis.io/topics/protocol
                     if (len == -1) return null;
-                    Object[] ary = new Object[(int) len];
-                    for (int i = 0; i < len; i++) {
-                        Object obj = parse(new BulkReplyHandler.SimpleBulkReplyHandler());
-                        ary[i] = obj;
-                    }
-                    return ary;
-                case PLUS:
-                    // RESP Simple Strings
-                    builder = ByteBuilder.allocate(128);
-                    while (true) {
-                        while ((c = in.read()) != '\r') {
-                            builder.put((byte) c);
-                        }
-                        if ((c = in.read()) == '\n') {
-                            return builder.array();
-                        } else {
-                            builder.put((byte) c);
-                        }
+                }
+                if (handler != null) return handler.handle(len, in);
+                throw new AssertionError("Callback is null");
+            case COLON:
+                // RESP Integers
+                return readLength();
+            case STAR:
+                // RESP Arrays
+                len = readLength();
+                if (len == -1) return null;
+                Object[] ary = new Object[(int) len];
+                for (int i = 0; i < len; i++) {
+                    ary[i] = parse(SIMPLE_HANDLER);
+                }
+                return ary;
+            case PLUS:
+                // RESP Simple Strings
+            case MINUS:
+                // RESP Errors
+                ByteBuilder builder = ByteBuilder.allocate(128);
+                while (true) {
+                    while ((c = in.read()) != '\r') {
+                        builder.put((byte) c);
                     }
-                case MINUS:
-                    // RESP Errors
-                    builder = ByteBuilder.allocate(128);
-                    while (true) {
-                        while ((c = in.read()) != '\r') {
-                            builder.put((byte) c);
-                        }
-                        if ((c = in.read()) == '\n') {
-                            return builder.array();
-                        } else {
-                            builder.put((byte) c);
-                        }
+                    if ((c = in.read()) == '\n') {
+                        return builder.array();
+                    } else {
+                        builder.put((byte) c);
                     }
-                case '\n':
-                    //skip +CONTINUE\r\n[\n]
-                    //skip +FULLRESYNC 8de1787ba490483314a4d30f1c628bc5025eb761 2443808505[\n]$2443808505\r\nxxxxxxxxxxxxxxxx\r\n
-                    //At this stage just a newline works as a PING in order to take the connection live
-                    //bug fix
-                    break;
-                default:
-                    throw new AssertionError("expect [$,:,*,+,-] but: " + (char) c);
+                }
+            default:
+                //skip +CONTINUE\r\n[\n]
+                //skip +FULLRESYNC 8de1787ba490483314a4d30f1c628bc5025eb761 2443808505[\n]$2443808505\r\nxxxxxxxxxxxxxxxx\r\n
+                //At this stage just a newline works as a PING in order to take the connection live
+                //bug fix
+                //a leading '\n' is skipped by the caller
+                throw new AssertionError("expect [$,:,*,+,-] but: " + (char) c);
+        }
+    }
 
-            }
+    private long readLength() throws IOException {
+        return readLength(in.read());
+    }
+
+    /**
+     * parse a decimal line like "-1\r\n" directly from the stream, without building a string.
+     */
+    private long readLength(int c) throws IOException {
+        boolean negative = c == '-';
+        if (negative) c = in.read();
+        // accumulate negatively like Long.parseLong, so Long.MIN_VALUE is accepted and overflow is detected
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long r = 0;
+        int digits = 0;
+        for (; c != '\r'; c = in.read(), digits++) {
+            int d = c - '0';
+            if (d < 0 || d > 9) throw new AssertionError("expect digit but: " + (char) c);
+            if (r < limit / 10 || r * 10 < limit + d) throw new AssertionError("length overflows long");
+            r = r * 10 - d;
         }
+        if (digits == 0) throw new AssertionError("illegal length with 0 digits");
+        if ((c = in.read()) != '\n') throw new AssertionError("expect '\\n' but :" + (char) c);
+        return negative ? r : -r;
+    }
+
+    private void readCRLF() throws IOException {
+        int c;
+        if ((c = in.read()) != '\r') throw new AssertionError("expect '\\r' but :" + (char) c);
+        if ((c = in.read()) != '\n') throw new AssertionError("expect '\\n' but :" + (char) c);
     }
 }
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.cmd;
+
+import com.moilioncircle.redis.replicator.io.RedisInputStream;
+import com.moilioncircle.redis.replicator.util.ByteSlice;
+
+import java.io.IOException;
+
+/**
+ * Arguments of a RESP array reply owned by {@link ReplyParser}.
+ * <p>
+ * Bulk strings are read straight into arrays of their own length, so {@link #toArray()} hands them
+ * to the command parsers without copying. Integers are formatted into a shared arena.
+ * The slices and the arena are reused by the next {@link ReplyParser#parseSlices} call.
+ *
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+//@NonThreadSafe
+public class ReplySlices {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private int size;
+    private int position;
+    private byte[] arena = new byte[4096];
+    private byte[][] arrays = new byte[16][];
+    private int[] offsets = new int[16];
+    private int[] lengths = new int[16];
+    private boolean[] integers = new boolean[16];
+    private ByteSlice[] slices = new ByteSlice[16];
+
+    ReplySlices() {
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param idx argument index
+     * @return slice of the argument, or null if the argument is a null bulk string
+     */
+    public ByteSlice get(int idx) {
+        if (idx < 0 || idx >= size) throw new IndexOutOfBoundsException(String.valueOf(idx));
+        if (arrays[idx] == null) return null;
+        ByteSlice slice = slices[idx];
+        if (slice == null) slice = slices[idx] = new ByteSlice();
+        return slice.reset(arrays[idx], offsets[idx], lengths[idx]);
+    }
+
+    /**
+     * @param idx argument index
+     * @return true if the argument is a RESP integer
+     */
+    public boolean isInteger(int idx) {
+        if (idx < 0 || idx >= size) throw new IndexOutOfBoundsException(String.valueOf(idx));
+        return integers[idx];
+    }
+
+    /**
+     * @return the same result as {@link ReplyParser#parse()} for this array reply, the bulk strings are not copied
+     */
+    public Object[] toArray() {
+        Object[] ary = new Object[size];
+        for (int i = 0; i < size; i++) {
+            if (arrays[i] == null) continue;
+            ary[i] = integers[i] ? (Object) get(i).toLong() : arrays[i];
+        }
+        return ary;
+    }
+
+    void clear(int len) {
+        if (len > arrays.length) {
+            int cap = Math.max(len, arrays.length << 1);
+            arrays = new byte[cap][];
+            offsets = new int[cap];
+            lengths = new int[cap];
+            integers = new boolean[cap];
+            slices = new ByteSlice[cap];
+        }
+        for (int i = 0; i < size; i++) arrays[i] = null;
+        this.size = 0;
+        this.position = 0;
+    }
+
+    void addNull() {
+        arrays[size] = null;
+        integers[size++] = false;
+    }
+
+    void addInteger(long value) {
+        ensure(20);
+        int len = 0;
+        long v = value;
+        do {
+            len++;
+            v /= 10;
+        } while (v != 0);
+        if (value < 0) {
+            arena[position] = '-';
+            len++;
+        } else {
+            value = -value;
+        }
+        // value <= 0 here, so Long.MIN_VALUE does not overflow
+        int i = position + len;
+        do {
+            arena[--i] = (byte) ('0' - value % 10);
+            value /= 10;
+        } while (value != 0);
+        integers[size] = true;
+        arrays[size] = arena;
+        offsets[size] = position;
+        lengths[size++] = len;
+        position += len;
+    }
+
+    void addBulk(RedisInputStream in, int len) throws IOException {
+        integers[size] = false;
+        if (len == 0) {
+            arrays[size] = EMPTY;
+            offsets[size] = 0;
+            lengths[size++] = 0;
+            return;
+        }
+        byte[] bytes = new byte[len];
+        in.read(bytes, 0, len);
+        arrays[size] = bytes;
+        offsets[size] = 0;
+        lengths[size++] = len;
+    }
+
+    private void ensure(int len) {
+        if (position + len <= arena.length) return;
+        byte[] temp = new byte[Math.max(arena.length << 1, position + len)];
+        System.arraycopy(arena, 0, temp, 0, position);
+        for (int i = 0; i < size; i++) {
+            if (arrays[i] == arena) arrays[i] = temp;
+        }
+        arena = temp;
+    }
+}
@@ -16,7 +16,7 @@
 
 package com.moilioncircle.redis.replicator.cmd.impl;
 
-import com.moilioncircle.redis.replicator.cmd.Command;
+import com.moilioncircle.redis.replicator.cmd.KeyCommand;
 
 import java.util.Arrays;
 
@@ -24,7 +24,7 @@ import java.util.Arrays;
  * @author Leon Chen
  * @since 2.1.0
  */
-public class LPushCommand implements Command {
+public class LPushCommand implements KeyCommand {
 
     private static final long serialVersionUID = 1L;
 
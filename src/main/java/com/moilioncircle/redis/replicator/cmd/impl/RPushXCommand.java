@@ -16,7 +16,7 @@
 
 package com.moilioncircle.redis.replicator.cmd.impl;
 
-import com.moilioncircle.redis.replicator.cmd.Command;
+import com.moilioncircle.redis.replicator.cmd.KeyCommand;
 
 import java.util.Arrays;
 
@@ -25,7 +25,7 @@ import java.util.Arrays;
  * @version 2.1.1
  * @since 2.1.0
  */
-public class RPushXCommand implements Command {
+public class RPushXCommand implements KeyCommand {
 
     private static final long serialVersionUID = 1L;
 
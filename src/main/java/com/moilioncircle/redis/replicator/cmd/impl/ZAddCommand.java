@@ -16,7 +16,7 @@
 
 package com.moilioncircle.redis.replicator.cmd.impl;
 
-import com.moilioncircle.redis.replicator.cmd.Command;
+import com.moilioncircle.redis.replicator.cmd.KeyCommand;
 import com.moilioncircle.redis.replicator.rdb.datatype.ZSetEntry;
 
 import java.util.Arrays;
@@ -25,7 +25,7 @@ import java.util.Arrays;
  * @author Leon Chen
  * @since 2.1.0
  */
-public class ZAddCommand implements Command {
+public class ZAddCommand implements KeyCommand {
 
     private static final long serialVersionUID = 1L;
 
@@ -16,13 +16,13 @@
 
 package com.moilioncircle.redis.replicator.cmd.impl;
 
-import com.moilioncircle.redis.replicator.cmd.Command;
+import com.moilioncircle.redis.replicator.cmd.KeyCommand;
 
 /**
  * @author Leon Chen
  * @since 2.1.1
  */
-public class ZRemRangeByScoreCommand implements Command {
+public class ZRemRangeByScoreCommand implements KeyCommand {
 
     private static final long serialVersionUID = 1L;
 
@@ -18,7 +18,7 @@ package com.moilioncircle.redis.replicator.cmd.parser;
 
 import com.moilioncircle.redis.replicator.cmd.CommandParser;
 import com.moilioncircle.redis.replicator.cmd.impl.HMSetCommand;
-import com.moilioncircle.redis.replicator.util.ByteArrayMap;
+import com.moilioncircle.redis.replicator.util.ByteArrayHashMap;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -39,7 +39,7 @@ public class HMSetParser implements CommandParser<HMSetCommand> {
         byte[] rawKey = objToBytes(command[idx]);
         idx++;
         Map<String, String> fields = new LinkedHashMap<>();
-        ByteArrayMap<byte[]> rawFields = new ByteArrayMap<>();
+        ByteArrayHashMap<byte[]> rawFields = new ByteArrayHashMap<>();
         while (idx < command.length) {
             String field = objToString(command[idx]);
             byte[] rawField = objToBytes(command[idx]);
@@ -28,8 +28,23 @@ import static com.moilioncircle.redis.replicator.cmd.parser.CommandParsers.objTo
  */
 public class HSetParser implements CommandParser<HSetCommand> {
 
+    private final boolean lazy;
+
+    public HSetParser() {
+        this(false);
+    }
+
+    /**
+     * @param lazy hold the raw arguments and decode them on first access
+     * @since 2.6.0
+     */
+    public HSetParser(boolean lazy) {
+        this.lazy = lazy;
+    }
+
     @Override
     public HSetCommand parse(Object[] command) {
+        if (lazy) return new LazyHSetCommand(command);
         int idx = 1;
         String key = objToString(command[idx]);
         byte[] rawKey = objToBytes(command[idx]);
@@ -43,4 +58,62 @@ public class HSetParser implements CommandParser<HSetCommand> {
         return new HSetCommand(key, field, value, rawKey, rawField, rawValue);
     }
 
+    /**
+     * @since 2.6.0
+     */
+    protected static class LazyHSetCommand extends HSetCommand {
+        private static final long serialVersionUID = 1L;
+
+        private static final int KEY = 1, FIELD = 2, VALUE = 4;
+
+        private int decoded;
+
+        protected LazyHSetCommand(Object[] command) {
+            super(null, null, null, objToBytes(command[1]), objToBytes(command[2]), objToBytes(command[3]));
+        }
+
+        @Override
+        public String getKey() {
+            if ((decoded & KEY) == 0) setKey(objToString(getRawKey()));
+            return super.getKey();
+        }
+
+        @Override
+        public void setKey(String key) {
+            decoded |= KEY;
+            super.setKey(key);
+        }
+
+        @Override
+        public String getField() {
+            if ((decoded & FIELD) == 0) setField(objToString(getRawField()));
+            return super.getField();
+        }
+
+        @Override
+        public void setField(String field) {
+            decoded |= FIELD;
+            super.setField(field);
+        }
+
+        @Override
+        public String getValue() {
+            if ((decoded & VALUE) == 0) setValue(objToString(getRawValue()));
+            return super.getValue();
+        }
+
+        @Override
+        public void setValue(String value) {
+            decoded |= VALUE;
+            super.setValue(value);
+        }
+
+        @Override
+        public String toString() {
+            getKey();
+            getField();
+            getValue();
+            return super.toString();
+        }
+    }
 }
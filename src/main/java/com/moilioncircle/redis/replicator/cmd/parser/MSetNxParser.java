@@ -18,7 +18,7 @@ package com.moilioncircle.redis.replicator.cmd.parser;
 
 import com.moilioncircle.redis.replicator.cmd.CommandParser;
 import com.moilioncircle.redis.replicator.cmd.impl.MSetNxCommand;
-import com.moilioncircle.redis.replicator.util.ByteArrayMap;
+import com.moilioncircle.redis.replicator.util.ByteArrayHashMap;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -36,7 +36,7 @@ public class MSetNxParser implements CommandParser<MSetNxCommand> {
         if (command.length == 1) return new MSetNxCommand(null, null);
         int idx = 1;
         Map<String, String> kv = new LinkedHashMap<>();
-        ByteArrayMap<byte[]> rawKv = new ByteArrayMap<>();
+        ByteArrayHashMap<byte[]> rawKv = new ByteArrayHashMap<>();
         while (idx < command.length) {
             String key = objToString(command[idx]);
             byte[] rawKey = objToBytes(command[idx]);
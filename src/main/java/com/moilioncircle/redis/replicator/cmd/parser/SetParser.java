@@ -29,12 +29,29 @@ import static com.moilioncircle.redis.replicator.cmd.parser.CommandParsers.objTo
  */
 public class SetParser implements CommandParser<SetCommand> {
 
+    private final boolean lazy;
+
+    public SetParser() {
+        this(false);
+    }
+
+    /**
+     * @param lazy hold the raw arguments and decode them on first access
+     * @since 2.6.0
+     */
+    public SetParser(boolean lazy) {
+        this.lazy = lazy;
+    }
+
     @Override
     public SetCommand parse(Object[] command) {
-        String key = objToString(command[1]);
-        byte[] rawKey = objToBytes(command[1]);
-        String value = objToString(command[2]);
-        byte[] rawValue = objToBytes(command[2]);
+        if (lazy) return new LazySetCommand(command);
+        SetCommand set = new SetCommand(objToString(command[1]), objToString(command[2]), null, null, ExistType.NONE, objToBytes(command[1]), objToBytes(command[2]));
+        options(command, set);
+        return set;
+    }
+
+    protected static void options(Object[] command, SetCommand set) {
         int idx = 3;
         ExistType existType = ExistType.NONE;
         Integer ex = null;
@@ -58,7 +75,99 @@ public class SetParser implements CommandParser<SetCommand> {
                 st = true;
             }
         }
-        return new SetCommand(key, value, ex, px, existType, rawKey, rawValue);
+        set.setExistType(existType);
+        set.setEx(ex);
+        set.setPx(px);
     }
 
+    /**
+     * @since 2.6.0
+     */
+    protected static class LazySetCommand extends SetCommand {
+        private static final long serialVersionUID = 1L;
+
+        private static final int KEY = 1, VALUE = 2, OPTIONS = 4;
+
+        private final Object[] command;
+        private int decoded;
+
+        protected LazySetCommand(Object[] command) {
+            super(null, null, null, null, null, objToBytes(command[1]), objToBytes(command[2]));
+            this.command = command;
+        }
+
+        @Override
+        public String getKey() {
+            if ((decoded & KEY) == 0) setKey(objToString(getRawKey()));
+            return super.getKey();
+        }
+
+        @Override
+        public void setKey(String key) {
+            decoded |= KEY;
+            super.setKey(key);
+        }
+
+        @Override
+        public String getValue() {
+            if ((decoded & VALUE) == 0) setValue(objToString(getRawValue()));
+            return super.getValue();
+        }
+
+        @Override
+        public void setValue(String value) {
+            decoded |= VALUE;
+            super.setValue(value);
+        }
+
+        @Override
+        public Integer getEx() {
+            decodeOptions();
+            return super.getEx();
+        }
+
+        @Override
+        public Long getPx() {
+            decodeOptions();
+            return super.getPx();
+        }
+
+        @Override
+        public ExistType getExistType() {
+            decodeOptions();
+            return super.getExistType();
+        }
+
+        @Override
+        public void setEx(Integer ex) {
+            decodeOptions();
+            super.setEx(ex);
+        }
+
+        @Override
+        public void setPx(Long px) {
+            decodeOptions();
+            super.setPx(px);
+        }
+
+        @Override
+        public void setExistType(ExistType existType) {
+            decodeOptions();
+            super.setExistType(existType);
+        }
+
+        @Override
+        public String toString() {
+            getKey();
+            getValue();
+            getEx();
+            return super.toString();
+        }
+
+        private void decodeOptions() {
+            if ((decoded & OPTIONS) != 0) return;
+            decoded |= OPTIONS;
+            options(command, this);
+        }
+    }
 }
@@ -33,15 +33,33 @@ import static com.moilioncircle.redis.replicator.cmd.parser.CommandParsers.objTo
  */
 public class ZAddParser implements CommandParser<ZAddCommand> {
 
+    private final boolean lazy;
+
+    public ZAddParser() {
+        this(false);
+    }
+
+    /**
+     * @param lazy hold the raw arguments and decode them on first access
+     * @since 2.6.0
+     */
+    public ZAddParser(boolean lazy) {
+        this.lazy = lazy;
+    }
+
     @Override
     public ZAddCommand parse(Object[] command) {
-        int idx = 1;
+        if (lazy) return new LazyZAddCommand(command);
+        ZAddCommand zadd = new ZAddCommand(objToString(command[1]), null, null, null, null, objToBytes(command[1]));
+        options(command, zadd);
+        return zadd;
+    }
+
+    protected static void options(Object[] command, ZAddCommand zadd) {
+        int idx = 2;
         Boolean isCh = null, isIncr = null;
         ExistType existType = ExistType.NONE;
         List<ZSetEntry> list = new ArrayList<>();
-        String key = objToString(command[idx]);
-        byte[] rawKey = objToBytes(command[idx]);
-        idx++;
         boolean et = false;
         while (idx < command.length) {
             String param = objToString(command[idx]);
@@ -71,7 +89,105 @@ public class ZAddParser implements CommandParser<ZAddCommand> {
         }
         ZSetEntry[] zSetEntries = new ZSetEntry[list.size()];
         list.toArray(zSetEntries);
-        return new ZAddCommand(key, existType, isCh, isIncr, zSetEntries, rawKey);
+        zadd.setExistType(existType);
+        zadd.setCh(isCh);
+        zadd.setIncr(isIncr);
+        zadd.setzSetEntries(zSetEntries);
     }
 
+    /**
+     * @since 2.6.0
+     */
+    protected static class LazyZAddCommand extends ZAddCommand {
+        private static final long serialVersionUID = 1L;
+
+        private static final int KEY = 1, OPTIONS = 2;
+
+        private final Object[] command;
+        private int decoded;
+
+        protected LazyZAddCommand(Object[] command) {
+            super(null, null, null, null, null, objToBytes(command[1]));
+            this.command = command;
+        }
+
+        @Override
+        public String getKey() {
+            if ((decoded & KEY) == 0) setKey(objToString(getRawKey()));
+            return super.getKey();
+        }
+
+        @Override
+        public void setKey(String key) {
+            decoded |= KEY;
+            super.setKey(key);
+        }
+
+        @Override
+        public ExistType getExistType() {
+            decodeOptions();
+            return super.getExistType();
+        }
+
+        @Override
+        public void setExistType(ExistType existType) {
+            decodeOptions();
+            super.setExistType(existType);
+        }
+
+        @Override
+        public Boolean getCh() {
+            decodeOptions();
+            return super.getCh();
+        }
+
+        @Override
+        public void setCh(Boolean ch) {
+            decodeOptions();
+            super.setCh(ch);
+        }
+
+        @Override
+        public Boolean getIncr() {
+            decodeOptions();
+            return super.getIncr();
+        }
+
+        @Override
+        public void setIncr(Boolean incr) {
+            decodeOptions();
+            super.setIncr(incr);
+        }
+
+        @Override
+        public ZSetEntry[] getZSetEntries() {
+            decodeOptions();
+            return super.getZSetEntries();
+        }
+
+        @Override
+        public ZSetEntry[] getzSetEntries() {
+            decodeOptions();
+            return super.getzSetEntries();
+        }
+
+        @Override
+        public void setzSetEntries(ZSetEntry[] zSetEntries) {
+            decodeOptions();
+            super.setzSetEntries(zSetEntries);
+        }
+
+        @Override
+        public String toString() {
+            getKey();
+            decodeOptions();
+            return super.toString();
+        }
+
+        private void decodeOptions() {
+            if ((decoded & OPTIONS) != 0) return;
+            decoded |= OPTIONS;
+            options(command, this);
+        }
+    }
 }
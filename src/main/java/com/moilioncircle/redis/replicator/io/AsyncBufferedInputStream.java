@@ -26,10 +26,13 @@ import java.io.InputStream;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
 
 /**
+ * The worker thread is the single producer and the reading thread is the single consumer
+ * of a lock-free ring buffer. The waiting side spins, yields or parks according to {@link WaitStrategy}.
+ *
  * @author Jingqi Xu
  * @author andyqzb
  * @since 2.1.0
@@ -40,6 +43,8 @@ public final class AsyncBufferedInputStream extends InputStream implements Runna
 
     //
     private static final int DEFAULT_CAPACITY = 2 * 1024 * 1024;
+    private static final int SPIN_TRIES = 100;
+    private static final long PARK_NANOS = 100 * 1000L;
 
     //
     private final Thread worker;
@@ -47,10 +52,10 @@ public final class AsyncBufferedInputStream extends InputStream implements Runna
     private volatile IOException exception;
     private final ByteRingBuffer ringBuffer;
     private final ThreadFactory threadFactory;
-    private final ReentrantLock lock = new ReentrantLock(false);
+    private final WaitStrategy waitStrategy;
     private final AtomicBoolean closed = new AtomicBoolean(false);
-    private final Condition bufferNotFull = this.lock.newCondition();
-    private final Condition bufferNotEmpty = this.lock.newCondition();
+    private volatile Thread readerWaiter;
+    private volatile Thread writerWaiter;
 
 
     /*
@@ -65,8 +70,20 @@ public final class AsyncBufferedInputStream extends InputStream implements Runna
     }
 
     public AsyncBufferedInputStream(InputStream is, int size, ThreadFactory tf) {
+        this(is, size, tf, WaitStrategy.PARK);
+    }
+
+    /**
+     * @param is   input stream
+     * @param size ring buffer size, rounded up to a power of 2
+     * @param tf   worker thread factory
+     * @param ws   wait strategy of both reading and worker thread
+     * @since 2.6.0
+     */
+    public AsyncBufferedInputStream(InputStream is, int size, ThreadFactory tf, WaitStrategy ws) {
         //
         this.is = is;
+        this.waitStrategy = ws;
         this.threadFactory = tf;
         this.ringBuffer = new ByteRingBuffer(size);
 
@@ -126,104 +143,148 @@ public final class AsyncBufferedInputStream extends InputStream implements Runna
         try {
             this.is.close();
         } finally {
-            this.lock.lock();
-            try {
-                this.bufferNotFull.signalAll();
-                this.bufferNotEmpty.signalAll();
-            } finally {
-                this.lock.unlock();
-            }
+            LockSupport.unpark(this.readerWaiter);
+            LockSupport.unpark(this.writerWaiter);
         }
     }
 
     @Override
     public int read() throws IOException {
-        this.lock.lock();
-        try {
-            //
-            while (this.ringBuffer.isEmpty()) {
-                if (this.exception != null) throw this.exception;
-                this.bufferNotEmpty.awaitUninterruptibly();
-                if (this.closed.get()) throw new EOFException();
-            }
-
-            //
-            final int r = this.ringBuffer.read();
-            this.bufferNotFull.signal();
-            return r;
-        } finally {
-            this.lock.unlock();
-        }
+        if (this.ringBuffer.readable() == 0) awaitReadable();
+        final int r = this.ringBuffer.read();
+        final Thread waiter = this.writerWaiter;
+        if (waiter != null) LockSupport.unpark(waiter);
+        return r;
     }
 
     @Override
     public int read(byte b[], int off, int len) throws IOException {
-        this.lock.lock();
-        try {
-            //
-            while (this.ringBuffer.isEmpty()) {
+        if (this.ringBuffer.readable() == 0) awaitReadable();
+        final int r = this.ringBuffer.read(b, off, len);
+        final Thread waiter = this.writerWaiter;
+        if (waiter != null) LockSupport.unpark(waiter);
+        return r;
+    }
+
+    public int write(byte b[], int off, int len) throws IOException {
+        if (this.ringBuffer.writable() == 0) awaitWritable();
+        final int w = this.ringBuffer.write(b, off, len);
+        final Thread waiter = this.readerWaiter;
+        if (waiter != null) LockSupport.unpark(waiter);
+        return w;
+    }
+
+    /*
+     *
+     */
+    private void awaitReadable() throws IOException {
+        for (int spins = 0; this.ringBuffer.readable() == 0; spins++) {
+            if (this.exception != null || this.closed.get()) {
+                // the worker publishes the last bytes before the exception, check again
+                if (this.ringBuffer.readable() > 0) return;
                 if (this.exception != null) throw this.exception;
-                this.bufferNotEmpty.awaitUninterruptibly();
-                if (this.closed.get()) throw new EOFException();
+                throw new EOFException();
+            }
+            if (park(spins)) {
+                // publish the waiter before checking again, the worker unparks it after each write.
+                this.readerWaiter = Thread.currentThread();
+                if (this.ringBuffer.readable() == 0 && !this.closed.get()) LockSupport.parkNanos(this, PARK_NANOS);
+                this.readerWaiter = null;
             }
-
-            //
-            final int r = this.ringBuffer.read(b, off, len);
-            this.bufferNotFull.signal();
-            return r;
-        } finally {
-            this.lock.unlock();
         }
     }
 
-    public int write(byte b[], int off, int len) throws IOException {
-        this.lock.lock();
-        try {
-            //
-            while (this.ringBuffer.isFull()) {
-                this.bufferNotFull.awaitUninterruptibly();
-                if (this.closed.get()) throw new EOFException();
+    private void awaitWritable() throws IOException {
+        for (int spins = 0; this.ringBuffer.writable() == 0; spins++) {
+            if (this.closed.get()) throw new EOFException();
+            if (park(spins)) {
+                // publish the waiter before checking again, the reading thread unparks it after each read.
+                this.writerWaiter = Thread.currentThread();
+                if (this.ringBuffer.writable() == 0 && !this.closed.get()) LockSupport.parkNanos(this, PARK_NANOS);
+                this.writerWaiter = null;
             }
+        }
+    }
 
-            //
-            final int w = this.ringBuffer.write(b, off, len);
-            this.bufferNotEmpty.signal();
-            return w;
-        } finally {
-            this.lock.unlock();
+    /**
+     * @return true if the caller should park
+     */
+    private boolean park(int spins) {
+        switch (this.waitStrategy) {
+            case SPIN:
+                return false;
+            case YIELD:
+                if (spins >= SPIN_TRIES) Thread.yield();
+                return false;
+            default:
+                if (spins >= SPIN_TRIES << 1) return true;
+                if (spins >= SPIN_TRIES) Thread.yield();
+                return false;
         }
     }
 
+    /**
+     * @since 2.6.0
+     */
+    public enum WaitStrategy {
+        /**
+         * busy spin, lowest latency and a full core per waiting thread, never use it without a spare core
+         */
+        SPIN,
+        /**
+         * spin, then {@link Thread#yield()}
+         */
+        YIELD,
+        /**
+         * spin, yield, then park
+         */
+        PARK
+    }
+
     /*
-     *
+     * single producer single consumer ring buffer.
+     * the producer publishes its sequence once per write, the consumer once per read.
      */
-    private final class ByteRingBuffer {
+    private static final class ByteRingBuffer {
         //
-        private int size;
-        private int head; // Write
-        private int tail; // Read
+        private final int mask;
         private final byte[] buffer;
+        private final Sequence head = new Sequence(); // Write
+        private final Sequence tail = new Sequence(); // Read
+
+        // producer only
+        private long writeSeq;
+        private long cachedTail;
+
+        // consumer only
+        private long readSeq;
+        private long cachedHead;
 
         /*
          *
          */
         public ByteRingBuffer(int capacity) {
-            this.buffer = new byte[capacity];
+            int cap = 1;
+            while (cap < capacity && cap < (1 << 30)) cap <<= 1;
+            this.mask = cap - 1;
+            this.buffer = new byte[cap];
         }
 
         /*
          *
          */
         public int size() {
-            return this.size;
+            return (int) (this.head.get() - this.tail.get());
         }
 
-        public boolean isEmpty() {
-            return this.size == 0;
+        public int readable() {
+            if (this.cachedHead == this.readSeq) this.cachedHead = this.head.get();
+            return (int) (this.cachedHead - this.readSeq);
         }
 
-        public boolean isFull() {
-            return this.size == this.buffer.length;
+        public int writable() {
+            if (this.writeSeq - this.cachedTail == this.buffer.length) this.cachedTail = this.tail.get();
+            return this.buffer.length - (int) (this.writeSeq - this.cachedTail);
         }
 
         /*
@@ -231,46 +292,67 @@ public final class AsyncBufferedInputStream extends InputStream implements Runna
          */
         public int read() {
             //
-            final int r = this.buffer[this.tail] & 0xFF;
+            final int r = this.buffer[(int) this.readSeq & this.mask] & 0xFF;
 
             //
-            this.tail = (this.tail + 1) % this.buffer.length;
-            this.size -= 1;
+            this.tail.lazySet(++this.readSeq);
             return r;
         }
 
         public int read(byte b[], int off, int len) {
             //
-            final int r = Math.min(this.size, len);
-            if (this.head > this.tail) {
-                System.arraycopy(this.buffer, this.tail, b, off, r);
-            } else {
-                final int r1 = Math.min(this.buffer.length - this.tail, r);
-                System.arraycopy(this.buffer, this.tail, b, off, r1);
-                if (r1 < r) System.arraycopy(this.buffer, 0, b, off + r1, r - r1);
-            }
+            final int r = Math.min(readable(), len);
+            final int index = (int) this.readSeq & this.mask;
+            final int r1 = Math.min(this.buffer.length - index, r);
+            System.arraycopy(this.buffer, index, b, off, r1);
+            if (r1 < r) System.arraycopy(this.buffer, 0, b, off + r1, r - r1);
 
             //
-            this.tail = (this.tail + r) % this.buffer.length;
-            this.size -= r;
+            this.readSeq += r;
+            this.tail.lazySet(this.readSeq);
             return r;
         }
 
         public int write(byte b[], int off, int len) {
             //
-            final int w = Math.min(this.buffer.length - this.size, len);
-            if (this.head < this.tail) {
-                System.arraycopy(b, off, this.buffer, this.head, w);
-            } else {
-                final int w1 = Math.min(this.buffer.length - this.head, w);
-                System.arraycopy(b, off, this.buffer, this.head, w1);
-                if (w1 < w) System.arraycopy(b, off + w1, this.buffer, 0, w - w1);
-            }
+            final int w = Math.min(writable(), len);
+            final int index = (int) this.writeSeq & this.mask;
+            final int w1 = Math.min(this.buffer.length - index, w);
+            System.arraycopy(b, off, this.buffer, index, w1);
+            if (w1 < w) System.arraycopy(b, off + w1, this.buffer, 0, w - w1);
 
             //
-            this.head = (this.head + w) % this.buffer.length;
-            this.size += w;
+            this.writeSeq += w;
+            this.head.set(this.writeSeq);
             return w;
         }
     }
+
+    /*
+     * pad the sequence to its own cache line, so the producer and the consumer do not false share.
+     */
+    private static class LhsPadding {
+        protected long p1, p2, p3, p4, p5, p6, p7;
+    }
+
+    private static class Value extends LhsPadding {
+        protected volatile long value;
+    }
+
+    private static final class Sequence extends Value {
+        private static final AtomicLongFieldUpdater<Value> UPDATER = AtomicLongFieldUpdater.newUpdater(Value.class, "value");
+        protected long p9, p10, p11, p12, p13, p14, p15;
+
+        public long get() {
+            return this.value;
+        }
+
+        public void set(long value) {
+            this.value = value;
+        }
+
+        public void lazySet(long value) {
+            UPDATER.lazySet(this, value);
+        }
+    }
 }
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.io;
+
+import com.moilioncircle.redis.replicator.util.ByteArray;
+import com.moilioncircle.redis.replicator.util.DirectByteArray;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A {@link RedisInputStream} over a local file that is memory mapped in windows of at most
+ * {@code window} bytes, so files larger than 2 GB are supported.
+ * <p>
+ * Bytes are copied straight from the mapped window to the caller, and {@link #skip(long)} only moves
+ * the position when no raw byte listener is registered. The size of the file is fixed when the first window
+ * is mapped, bytes appended later are not read.
+ *
+ * @author Leon Chen
+ * @see com.moilioncircle.redis.replicator.Configuration#getMappedFileWindow()
+ * @since 2.6.0
+ */
+public class MappedRedisInputStream extends RedisInputStream {
+
+    protected final int window;
+    protected final FileChannel channel;
+
+    protected long size = -1;
+    protected long position;
+    protected long notifyPosition;
+    protected long windowPosition;
+    protected MappedByteBuffer buffer;
+
+    public MappedRedisInputStream(File file) throws FileNotFoundException {
+        this(file, 64 * 1024 * 1024);
+    }
+
+    public MappedRedisInputStream(File file, int window) throws FileNotFoundException {
+        this(new FileInputStream(file), window);
+    }
+
+    protected MappedRedisInputStream(FileInputStream in, int window) {
+        super(in, 1);
+        this.channel = in.getChannel();
+        this.window = Math.max(window, 4096);
+    }
+
+    @Override
+    public void flushRawBytes() {
+        if (!isReader()) return;
+        if (buffer != null && notifyPosition < position && rawByteListeners != null && !rawByteListeners.isEmpty()) {
+            // notified before the window moves, so the range is always in the current window
+            byte[] bytes = new byte[(int) (position - notifyPosition)];
+            MappedByteBuffer buffer = this.buffer;
+            int index = buffer.position();
+            buffer.position((int) (notifyPosition - windowPosition));
+            buffer.get(bytes);
+            buffer.position(index);
+            notify(bytes);
+        }
+        notifyPosition = position;
+    }
+
+    @Override
+    public int head() {
+        return buffer == null ? 0 : buffer.position();
+    }
+
+    @Override
+    public int tail() {
+        return buffer == null ? 0 : buffer.limit();
+    }
+
+    @Override
+    public int bufSize() {
+        return window;
+    }
+
+    @Override
+    public long total() {
+        return position;
+    }
+
+    @Override
+    public long position() {
+        return position;
+    }
+
+    @Override
+    public long readLong(int length, boolean littleEndian) throws IOException {
+        if (remaining() < length) return readLongSlowly(length, littleEndian);
+        MappedByteBuffer buffer = this.buffer;
+        long r = 0;
+        int index = buffer.position();
+        if (littleEndian) {
+            for (int i = length - 1; i >= 0; --i) {
+                r = (r << 8) | (buffer.get(index + i) & 0xff);
+            }
+        } else {
+            for (int i = 0; i < length; ++i) {
+                r = (r << 8) | (buffer.get(index + i) & 0xff);
+            }
+        }
+        buffer.position(index + length);
+        position += length;
+        if (mark) markLen += length;
+        return r;
+    }
+
+    @Override
+    public int peek() throws IOException {
+        if (remaining() == 0) fill();
+        return buffer.get(buffer.position()) & 0xff;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (remaining() == 0) fill();
+        if (mark) markLen += 1;
+        position++;
+        return buffer.get() & 0xff;
+    }
+
+    @Override
+    public long read(ByteArray bytes, long offset, long len) throws IOException {
+        if (!(bytes instanceof DirectByteArray)) {
+            byte[] first = bytes.first();
+            if (first != null && first.length == bytes.length()) {
+                read(first, (int) offset, (int) len);
+                return len;
+            }
+        }
+        // off-heap or larger than a single byte[], first() is not the storage of the array
+        byte[] b = new byte[(int) Math.min(len, window)];
+        for (long total = len; total > 0; ) {
+            int n = (int) Math.min(total, b.length);
+            read(b, 0, n);
+            ByteArray.arraycopy(new ByteArray(b), 0, bytes, offset + len - total, n);
+            total -= n;
+        }
+        return len;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int total = len;
+        int index = off;
+        while (total > 0) {
+            if (remaining() == 0) fill();
+            int n = Math.min(total, buffer.remaining());
+            buffer.get(b, index, n);
+            position += n;
+            index += n;
+            total -= n;
+        }
+        if (mark) markLen += len;
+        return len;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(Integer.MAX_VALUE, size() - position);
+    }
+
+    @Override
+    public long skip(long len, boolean notify) throws IOException {
+        if (!notify) flushRawBytes();
+        boolean listened = notify && rawByteListeners != null && !rawByteListeners.isEmpty();
+        long total = len;
+        while (total > 0) {
+            long remaining = remaining();
+            if (remaining >= total) {
+                buffer.position(buffer.position() + (int) total);
+                position += total;
+                break;
+            } else if (!listened) {
+                // nothing to notify, only move the position
+                long target = position + total;
+                buffer = null;
+                position = Math.min(target, size());
+                notifyPosition = position;
+                if (target > position) throw new EOFException("end of file or end of stream.");
+                break;
+            } else {
+                position += remaining;
+                total -= remaining;
+                fill();
+            }
+        }
+        if (!notify) notifyPosition = position;
+        return len;
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer = null;
+        channel.close();
+    }
+
+    @Override
+    protected void fill() throws IOException {
+        Thread current = Thread.currentThread();
+        if (reader != current) reader = current;
+        if (buffer != null) flushRawBytes();
+        long size = size();
+        if (position >= size) throw new EOFException("end of file or end of stream.");
+        windowPosition = position;
+        notifyPosition = position;
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(window, size - position));
+    }
+
+    protected long remaining() {
+        return buffer == null ? 0 : buffer.remaining();
+    }
+
+    protected long size() throws IOException {
+        if (size < 0) size = channel.size();
+        return size;
+    }
+}
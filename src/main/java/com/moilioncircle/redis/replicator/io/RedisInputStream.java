@@ -17,17 +17,23 @@
 package com.moilioncircle.redis.replicator.io;
 
 import com.moilioncircle.redis.replicator.util.ByteArray;
+import com.moilioncircle.redis.replicator.util.DirectByteArray;
 
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
+ * Raw byte listeners are notified in coalesced ranges rather than byte by byte.
+ * consumed bytes are delivered before the buffer is refilled, before the listener
+ * set changes and whenever {@link #flushRawBytes()} is called by the thread that reads this stream.
+ *
  * @author Leon Chen
  * @since 2.1.0
  */
@@ -40,6 +46,27 @@ public class RedisInputStream extends InputStream {
     protected boolean mark = false;
     protected final InputStream in;
     protected List<RawByteListener> rawByteListeners;
+    /**
+     * start of the consumed bytes in {@link #buf} that are not notified yet.
+     *
+     * @since 2.6.0
+     */
+    protected int notifyHead = 0;
+    /**
+     * the thread that fills {@link #buf}, only it moves {@link #notifyHead}.
+     *
+     * @since 2.6.0
+     */
+    protected volatile Thread reader;
+    protected final ByteArray bufArray;
+    /**
+     * off-heap arrays allocated since the last {@link #releaseOffHeap()}
+     *
+     * @since 2.6.0
+     */
+    protected List<ByteArray> offHeap;
+    protected long offHeapThreshold;
+    protected boolean offHeapMapped;
 
     public RedisInputStream(final InputStream in) {
         this(in, 8192);
@@ -48,6 +75,7 @@ public class RedisInputStream extends InputStream {
     public RedisInputStream(final InputStream in, int len) {
         this.in = in;
         this.buf = new byte[len];
+        this.bufArray = new ByteArray(buf);
     }
 
     /**
@@ -55,6 +83,7 @@ public class RedisInputStream extends InputStream {
      * @since 2.2.0
      */
     public synchronized void setRawByteListeners(List<RawByteListener> rawByteListeners) {
+        flushRawBytes();
         this.rawByteListeners = rawByteListeners;
     }
 
@@ -65,6 +94,7 @@ public class RedisInputStream extends InputStream {
      */
     @Deprecated
     public synchronized void addRawByteListener(RawByteListener rawByteListener) {
+        flushRawBytes();
         if (rawByteListeners != null) this.rawByteListeners.add(rawByteListener);
     }
 
@@ -75,6 +105,7 @@ public class RedisInputStream extends InputStream {
      */
     @Deprecated
     public synchronized void removeRawByteListener(RawByteListener rawByteListener) {
+        flushRawBytes();
         if (rawByteListeners != null) this.rawByteListeners.remove(rawByteListener);
     }
 
@@ -85,6 +116,30 @@ public class RedisInputStream extends InputStream {
         }
     }
 
+    /**
+     * Notify raw byte listeners with the bytes consumed since the last notification.
+     * called by another thread, such as a listener added from a user thread, it does nothing
+     * and the pending bytes are delivered by the next refill of the reading thread.
+     *
+     * @since 2.6.0
+     */
+    public void flushRawBytes() {
+        if (!isReader()) return;
+        if (notifyHead < head && rawByteListeners != null && !rawByteListeners.isEmpty()) {
+            notify(Arrays.copyOfRange(buf, notifyHead, head));
+        }
+        notifyHead = head;
+    }
+
+    /**
+     * @return true if the current thread reads this stream, or nothing is read yet
+     * @since 2.6.0
+     */
+    protected boolean isReader() {
+        Thread reader = this.reader;
+        return reader == null || reader == Thread.currentThread();
+    }
+
     public int head() {
         return head;
     }
@@ -119,13 +174,72 @@ public class RedisInputStream extends InputStream {
         return total;
     }
 
+    /**
+     * @return bytes consumed from this stream, {@link #total()} also counts the buffered bytes
+     * @since 2.6.0
+     */
+    public long position() {
+        return total - (tail - head);
+    }
+
     public ByteArray readBytes(long len) throws IOException {
-        ByteArray bytes = new ByteArray(len);
+        ByteArray bytes = allocate(len);
         this.read(bytes, 0, len);
-        if (mark) markLen += len;
         return bytes;
     }
 
+    /**
+     * @param threshold arrays of at least this length are allocated off-heap by {@link #allocate(long)}, 0 disables off-heap arrays
+     * @param mapped    true to map temp files instead of allocating direct buffers
+     * @since 2.6.0
+     */
+    public void setOffHeapThreshold(long threshold, boolean mapped) {
+        this.offHeapThreshold = threshold;
+        this.offHeapMapped = mapped;
+    }
+
+    /**
+     * @param len length
+     * @return a heap array, or a {@link DirectByteArray} that is freed by {@link #releaseOffHeap()}
+     * @throws IOException if the temp file of a mapped array can not be created
+     * @since 2.6.0
+     */
+    public ByteArray allocate(long len) throws IOException {
+        if (offHeapThreshold <= 0 || len < offHeapThreshold) return new ByteArray(len);
+        ByteArray bytes = new DirectByteArray(len, offHeapMapped);
+        if (offHeap == null) offHeap = new ArrayList<>();
+        offHeap.add(bytes);
+        return bytes;
+    }
+
+    /**
+     * free the off-heap arrays allocated by this stream, called when nothing refers to them any more.
+     *
+     * @since 2.6.0
+     */
+    public void releaseOffHeap() {
+        List<ByteArray> offHeap = this.offHeap;
+        if (offHeap == null || offHeap.isEmpty()) return;
+        for (ByteArray bytes : offHeap) bytes.release();
+        offHeap.clear();
+    }
+
+    /**
+     * @param bytes array allocated by {@link #allocate(long)}
+     * @return true if the caller now owns the off-heap array and must release it
+     * @since 2.6.0
+     */
+    public boolean detachOffHeap(ByteArray bytes) {
+        List<ByteArray> offHeap = this.offHeap;
+        if (offHeap == null) return false;
+        for (int i = offHeap.size() - 1; i >= 0; i--) {
+            if (offHeap.get(i) != bytes) continue;
+            offHeap.remove(i);
+            return true;
+        }
+        return false;
+    }
+
     public int readInt(int len) throws IOException {
         return readInt(len, true);
     }
@@ -135,17 +249,8 @@ public class RedisInputStream extends InputStream {
     }
 
     public int readInt(int length, boolean littleEndian) throws IOException {
-        int r = 0;
-        for (int i = 0; i < length; ++i) {
-            final int v = this.read();
-            if (littleEndian) {
-                r |= (v << (i << 3));
-            } else {
-                r = (r << 8) | v;
-            }
-        }
         int c;
-        return r << (c = (4 - length << 3)) >> c;
+        return (int) readLong(length, littleEndian) << (c = (4 - length << 3)) >> c;
     }
 
     public long readUInt(int length) throws IOException {
@@ -176,6 +281,26 @@ public class RedisInputStream extends InputStream {
     }
 
     public long readLong(int length, boolean littleEndian) throws IOException {
+        if (tail - head < length) return readLongSlowly(length, littleEndian);
+        // fast path, decode straight from buffer
+        long r = 0;
+        final byte[] buf = this.buf;
+        final int head = this.head;
+        if (littleEndian) {
+            for (int i = length - 1; i >= 0; --i) {
+                r = (r << 8) | (buf[head + i] & 0xff);
+            }
+        } else {
+            for (int i = 0; i < length; ++i) {
+                r = (r << 8) | (buf[head + i] & 0xff);
+            }
+        }
+        this.head = head + length;
+        if (mark) markLen += length;
+        return r;
+    }
+
+    protected long readLongSlowly(int length, boolean littleEndian) throws IOException {
         long r = 0;
         for (int i = 0; i < length; ++i) {
             final long v = this.read();
@@ -193,17 +318,26 @@ public class RedisInputStream extends InputStream {
     }
 
     public String readString(int len, Charset charset) throws IOException {
-        byte[] original = readBytes(len).first();
+        byte[] original = new byte[len];
+        read(original, 0, len);
         return new String(original, charset);
     }
 
+    /**
+     * @return the next byte without consuming it
+     * @throws IOException when read timeout
+     * @since 2.6.0
+     */
+    public int peek() throws IOException {
+        if (head >= tail) fill();
+        return buf[head] & 0xff;
+    }
+
     @Override
     public int read() throws IOException {
         if (head >= tail) fill();
         if (mark) markLen += 1;
-        byte b = buf[head++];
-        notify(b);
-        return b & 0xff;
+        return buf[head++] & 0xff;
     }
 
     public long read(ByteArray bytes, long offset, long len) throws IOException {
@@ -212,19 +346,18 @@ public class RedisInputStream extends InputStream {
         while (total > 0) {
             int available = tail - head;
             if (available >= total) {
-                ByteArray.arraycopy(new ByteArray(buf), head, bytes, index, total);
+                ByteArray.arraycopy(bufArray, head, bytes, index, total);
                 head += total;
                 break;
             } else {
-                ByteArray.arraycopy(new ByteArray(buf), head, bytes, index, available);
+                ByteArray.arraycopy(bufArray, head, bytes, index, available);
                 index += available;
                 total -= available;
+                head = tail;
                 fill();
             }
         }
-        for (byte[] b : bytes) {
-            notify(b);
-        }
+        if (mark) markLen += len;
         return len;
     }
 
@@ -235,7 +368,24 @@ public class RedisInputStream extends InputStream {
 
     @Override
     public int read(byte[] b, int off, int len) throws IOException {
-        return (int) read(new ByteArray(b), off, len);
+        int total = len;
+        int index = off;
+        while (total > 0) {
+            int available = tail - head;
+            if (available >= total) {
+                System.arraycopy(buf, head, b, index, total);
+                head += total;
+                break;
+            } else {
+                System.arraycopy(buf, head, b, index, available);
+                index += available;
+                total -= available;
+                head = tail;
+                fill();
+            }
+        }
+        if (mark) markLen += len;
+        return len;
     }
 
     @Override
@@ -244,19 +394,21 @@ public class RedisInputStream extends InputStream {
     }
 
     public long skip(long len, boolean notify) throws IOException {
+        if (!notify) flushRawBytes();
         long total = len;
         while (total > 0) {
             int available = tail - head;
             if (available >= total) {
-                if (notify) notify(Arrays.copyOfRange(buf, head, head + (int) total));
                 head += total;
                 break;
             } else {
-                if (notify) notify(Arrays.copyOfRange(buf, head, tail));
                 total -= available;
+                head = tail;
+                if (!notify) notifyHead = head;
                 fill();
             }
         }
+        if (!notify) notifyHead = head;
         return len;
     }
 
@@ -271,9 +423,13 @@ public class RedisInputStream extends InputStream {
     }
 
     protected void fill() throws IOException {
+        Thread current = Thread.currentThread();
+        if (reader != current) reader = current;
+        flushRawBytes();
         tail = in.read(buf, 0, buf.length);
         if (tail == -1) throw new EOFException("end of file or end of stream.");
         total += tail;
         head = 0;
+        notifyHead = 0;
     }
 }
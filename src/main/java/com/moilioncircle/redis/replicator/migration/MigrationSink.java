@@ -0,0 +1,553 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.migration;
+
+import com.moilioncircle.redis.replicator.Configuration;
+import com.moilioncircle.redis.replicator.RedisURI;
+import com.moilioncircle.redis.replicator.Replicator;
+import com.moilioncircle.redis.replicator.UncheckedIOException;
+import com.moilioncircle.redis.replicator.cmd.Command;
+import com.moilioncircle.redis.replicator.cmd.CommandListener;
+import com.moilioncircle.redis.replicator.cmd.ReplyParser;
+import com.moilioncircle.redis.replicator.cmd.impl.DefaultCommand;
+import com.moilioncircle.redis.replicator.io.RedisInputStream;
+import com.moilioncircle.redis.replicator.io.RedisOutputStream;
+import com.moilioncircle.redis.replicator.net.RedisSocketFactory;
+import com.moilioncircle.redis.replicator.rdb.RdbListener;
+import com.moilioncircle.redis.replicator.rdb.datatype.DB;
+import com.moilioncircle.redis.replicator.rdb.datatype.ExpiredType;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
+import com.moilioncircle.redis.replicator.rdb.dump.datatype.ChunkedKeyValuePair;
+import com.moilioncircle.redis.replicator.rdb.dump.datatype.DumpKeyValuePair;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.moilioncircle.redis.replicator.Constants.DOLLAR;
+import static com.moilioncircle.redis.replicator.Constants.MINUS;
+import static com.moilioncircle.redis.replicator.Constants.STAR;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Writes {@link DumpKeyValuePair}s as RESTORE, {@link ChunkedKeyValuePair}s as their chunks
+ * and {@link DefaultCommand}s as is to a target redis.
+ * <p>
+ * Requests are pipelined, at most {@link Configuration#getMigrationWindow()} requests are in flight and
+ * the replies are matched in order by a reader thread. SELECT is sent only when the db of a request differs
+ * from the db of the connection. Requests rejected by -LOADING are retried after
+ * {@link Configuration#getMigrationRetryInterval()} ms, a RESTORE rejected by -BUSYKEY is retried with REPLACE.
+ * Retried requests are sent in the order of their replies, and no new request is sent until they are replied,
+ * so a retry does not overwrite later writes. The full sync is awaited before the first command is sent.
+ * Other error replies are logged and counted.
+ * <p>
+ * Use {@link com.moilioncircle.redis.replicator.rdb.dump.DumpRdbVisitor} as the rdb visitor and
+ * {@link com.moilioncircle.redis.replicator.cmd.parser.DefaultCommandParser} as the command parser of the source replicator.
+ *
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class MigrationSink implements RdbListener, CommandListener, Closeable {
+
+    protected static final Log logger = LogFactory.getLog(MigrationSink.class);
+
+    protected static final byte[] DEL = "DEL".getBytes();
+    protected static final byte[] SELECT = "SELECT".getBytes();
+    protected static final byte[] PEXPIREAT = "PEXPIREAT".getBytes();
+    protected static final byte[] RESTORE = "RESTORE".getBytes();
+    protected static final byte[] REPLACE = "REPLACE".getBytes();
+
+    protected final String host;
+    protected final int port;
+    protected final int window;
+    protected final Configuration configuration;
+
+    protected Timer timer;
+    protected Socket socket;
+    protected Thread reader;
+    protected RedisInputStream in;
+    protected RedisOutputStream out;
+    protected volatile boolean closing;
+    protected volatile RuntimeException error;
+
+    /**
+     * guards {@link #out} and {@link #current}
+     */
+    protected final ReentrantLock lock = new ReentrantLock();
+    protected final Semaphore permits;
+    protected final Queue<Request> pending = new ConcurrentLinkedQueue<>();
+    protected final Queue<Request> retries = new ConcurrentLinkedQueue<>();
+
+    /**
+     * retried requests that are not replied yet, new requests wait until it is 0
+     */
+    protected final AtomicInteger stalled = new AtomicInteger();
+
+    /**
+     * db of the connection
+     */
+    protected int current = 0;
+
+    /**
+     * db of the next request
+     */
+    protected volatile int db = 0;
+
+    protected volatile long start;
+    protected final AtomicLong sent = new AtomicLong();
+    protected final AtomicLong acked = new AtomicLong();
+    protected final AtomicLong failed = new AtomicLong();
+    protected final AtomicLong retried = new AtomicLong();
+    protected final AtomicLong expired = new AtomicLong();
+
+    public MigrationSink(RedisURI uri) {
+        this(uri.getHost(), uri.getPort(), Configuration.valueOf(uri));
+    }
+
+    public MigrationSink(String host, int port, Configuration configuration) {
+        this.host = host;
+        this.port = port;
+        this.configuration = configuration;
+        this.window = Math.max(1, configuration.getMigrationWindow());
+        this.permits = new Semaphore(window);
+    }
+
+    public void open() throws IOException {
+        socket = new RedisSocketFactory(configuration).createSocket(host, port, configuration.getConnectionTimeout());
+        socket.setSoTimeout(0);
+        out = new RedisOutputStream(socket.getOutputStream());
+        in = new RedisInputStream(socket.getInputStream(), configuration.getBufferSize());
+        final ReplyParser parser = new ReplyParser(in);
+        String password = configuration.getAuthPassword();
+        if (password != null) {
+            write("AUTH".getBytes(), password.getBytes());
+            out.flush();
+            boolean error = in.peek() == MINUS;
+            Object reply = parser.parse();
+            if (error) throw new IOException("[AUTH] failed." + toString(reply));
+        }
+        start = System.currentTimeMillis();
+        timer = new Timer("migration-retry", true);
+        reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                read(parser);
+            }
+        }, "migration-reader");
+        reader.setDaemon(true);
+        reader.start();
+        logger.info("Connected to migration target[" + host + ":" + port + "]");
+    }
+
+    @Override
+    public void preFullSync(Replicator replicator) {
+        flush();
+    }
+
+    @Override
+    public void handle(Replicator replicator, KeyValuePair<?> kv) {
+        if (kv instanceof DumpKeyValuePair) {
+            restore((DumpKeyValuePair) kv);
+        } else if (kv instanceof ChunkedKeyValuePair) {
+            restore((ChunkedKeyValuePair) kv);
+        }
+    }
+
+    /**
+     * wait for the replies of the full sync, so a retried RESTORE can not overwrite the commands that follow
+     */
+    @Override
+    public void postFullSync(Replicator replicator, long checksum) {
+        await();
+    }
+
+    @Override
+    public void handle(Replicator replicator, Command command) {
+        send(command);
+        flush();
+    }
+
+    /**
+     * @param kv dumped key value pair, skipped if already expired
+     */
+    public void restore(DumpKeyValuePair kv) {
+        long ttl = 0L;
+        long ms = expireAt(kv);
+        if (ms != 0L && (ttl = ms - System.currentTimeMillis()) <= 0) {
+            expired.incrementAndGet();
+            return;
+        }
+        DB db = kv.getDb();
+        if (db != null) this.db = (int) db.getDbNumber();
+        send(RESTORE, kv.getRawKey(), String.valueOf(ttl).getBytes(), kv.getValue());
+    }
+
+    /**
+     * send DEL, the chunks and PEXPIREAT of a huge key. the chunks are consumed even if the key is already expired.
+     *
+     * @param kv chunked key value pair
+     */
+    public void restore(ChunkedKeyValuePair kv) {
+        Iterator<DefaultCommand> it = kv.getValue();
+        long ms = expireAt(kv);
+        if (ms != 0L && ms <= System.currentTimeMillis()) {
+            while (it.hasNext()) it.next();
+            expired.incrementAndGet();
+            return;
+        }
+        DB db = kv.getDb();
+        if (db != null) this.db = (int) db.getDbNumber();
+        send(DEL, kv.getRawKey());
+        while (it.hasNext()) {
+            DefaultCommand command = it.next();
+            send(command.getCommand(), command.getArgs());
+        }
+        if (ms != 0L) send(PEXPIREAT, kv.getRawKey(), String.valueOf(ms).getBytes());
+    }
+
+    /**
+     * @param command command, only {@link DefaultCommand} is sent. SELECT only changes the db of the following requests.
+     */
+    public void send(Command command) {
+        if (!(command instanceof DefaultCommand)) return;
+        DefaultCommand dc = (DefaultCommand) command;
+        if (Arrays.equals(dc.getCommand(), SELECT) && dc.getArgs().length == 1) {
+            this.db = Integer.parseInt(new String(dc.getArgs()[0], UTF_8));
+            return;
+        }
+        send(dc.getCommand(), dc.getArgs());
+    }
+
+    public void send(byte[] command, byte[]... args) {
+        checkError();
+        try {
+            if (!permits.tryAcquire()) {
+                flush();
+                while (!permits.tryAcquire(100, TimeUnit.MILLISECONDS)) checkError();
+            }
+            if (stalled.get() > 0) {
+                // keep the order of writes, the pipeline restarts once the retried requests are replied
+                flush();
+                while (stalled.get() > 0) {
+                    resend(true);
+                    checkError();
+                    TimeUnit.MILLISECONDS.sleep(1);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new IOException(e));
+        }
+        Request request = new Request(db, command, args);
+        lock.lock();
+        try {
+            send(request);
+            sent.incrementAndGet();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+        resend(false);
+    }
+
+    public void flush() {
+        checkError();
+        lock.lock();
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+        resend(true);
+    }
+
+    /**
+     * flush and wait until all in-flight requests are replied
+     */
+    public void await() {
+        flush();
+        try {
+            while (!permits.tryAcquire(window, 100, TimeUnit.MILLISECONDS)) {
+                resend(true);
+                checkError();
+            }
+            permits.release(window);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new IOException(e));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (error == null) await();
+        } finally {
+            closing = true;
+            if (timer != null) timer.cancel();
+            if (socket != null) socket.close();
+            if (reader != null) {
+                try {
+                    reader.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            logger.info("Closed migration target[" + host + ":" + port + "], sent:" + sent + ", acked:" + acked + ", failed:" + failed + ", retried:" + retried + ", expired:" + expired);
+        }
+    }
+
+    /**
+     * @return requests sent, retries excluded
+     */
+    public long getSentRequests() {
+        return sent.get();
+    }
+
+    public long getAckedRequests() {
+        return acked.get();
+    }
+
+    public long getFailedRequests() {
+        return failed.get();
+    }
+
+    public long getRetriedRequests() {
+        return retried.get();
+    }
+
+    /**
+     * @return key value pairs skipped because they were expired
+     */
+    public long getExpiredKeys() {
+        return expired.get();
+    }
+
+    public int getInflightRequests() {
+        return window - permits.availablePermits();
+    }
+
+    /**
+     * @return acked requests per second since open
+     */
+    public double getThroughput() {
+        long elapsed = System.currentTimeMillis() - start;
+        return elapsed <= 0 ? 0d : acked.get() * 1000d / elapsed;
+    }
+
+    /**
+     * @return ms since the oldest in-flight request was sent, 0 if no request is in flight
+     */
+    public long getLag() {
+        Request request = pending.peek();
+        return request == null ? 0L : Math.max(0L, System.currentTimeMillis() - request.timestamp);
+    }
+
+    /**
+     * @param kv key value pair
+     * @return expire time in ms, 0 if the key never expires
+     */
+    protected static long expireAt(KeyValuePair<?> kv) {
+        if (kv.getExpiredType() == ExpiredType.NONE || kv.getExpiredValue() == null) return 0L;
+        long ms = kv.getExpiredValue();
+        return kv.getExpiredType() == ExpiredType.SECOND ? ms * 1000L : ms;
+    }
+
+    protected void read(ReplyParser parser) {
+        try {
+            while (!closing) {
+                boolean error = in.peek() == MINUS;
+                Object reply = parser.parse();
+                Request request = pending.poll();
+                if (request == null) throw new AssertionError("unexpected reply: " + toString(reply));
+                if (request.select) {
+                    if (!error) continue;
+                    logger.warn("[SELECT " + request.db + "] failed." + toString(reply));
+                    // force the next request to select again
+                    lock.lock();
+                    try {
+                        current = -1;
+                    } finally {
+                        lock.unlock();
+                    }
+                    continue;
+                }
+                boolean retrying = request.attempts > 0;
+                if (!error) {
+                    if (retrying) stalled.decrementAndGet();
+                    acked.incrementAndGet();
+                    permits.release();
+                    continue;
+                }
+                String message = toString(reply);
+                if (request.attempts < configuration.getMigrationRetries() && retry(request, message)) {
+                    if (!retrying) stalled.incrementAndGet();
+                    retried.incrementAndGet();
+                    retries.add(request);
+                    schedule(request.due - System.currentTimeMillis());
+                    continue;
+                }
+                if (retrying) stalled.decrementAndGet();
+                logger.warn("[" + new String(request.command, UTF_8) + "] failed." + message);
+                failed.incrementAndGet();
+                permits.release();
+            }
+        } catch (IOException e) {
+            if (!closing) error = new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            if (!closing) error = e;
+        }
+    }
+
+    /**
+     * @param request request that is replied with an error
+     * @param message error reply
+     * @return true if the request should be sent again, not before {@link Request#due}
+     */
+    protected boolean retry(Request request, String message) {
+        if (message.startsWith("LOADING")) {
+            request.due = System.currentTimeMillis() + configuration.getMigrationRetryInterval();
+            request.attempts++;
+            return true;
+        }
+        if (message.startsWith("BUSYKEY") && Arrays.equals(request.command, RESTORE)) {
+            byte[][] args = Arrays.copyOf(request.args, request.args.length + 1);
+            args[args.length - 1] = REPLACE;
+            request.args = args;
+            request.due = 0L;
+            request.attempts++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * resend the due retries later in the timer thread, the reader thread never waits
+     */
+    protected void schedule(long delay) {
+        if (delay <= 0) {
+            resend(true);
+            return;
+        }
+        try {
+            timer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    resend(true);
+                }
+            }, delay);
+        } catch (IllegalStateException e) {
+            // the timer is cancelled on close
+        }
+    }
+
+    /**
+     * send the due retries in order by any thread that gets the lock, so a retry is not stuck when the source is idle
+     */
+    protected void resend(boolean flush) {
+        while (due() && lock.tryLock()) {
+            try {
+                Request request;
+                while (due() && (request = retries.poll()) != null) send(request);
+                if (flush) out.flush();
+            } catch (IOException e) {
+                if (!closing) error = new UncheckedIOException(e);
+                return;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    protected boolean due() {
+        Request request = retries.peek();
+        return request != null && request.due <= System.currentTimeMillis();
+    }
+
+    protected void send(Request request) throws IOException {
+        if (request.db >= 0 && request.db != current) {
+            Request select = new Request(request.db, SELECT, String.valueOf(request.db).getBytes());
+            select.select = true;
+            pending.add(select);
+            write(select.command, select.args);
+            current = request.db;
+        }
+        request.timestamp = System.currentTimeMillis();
+        pending.add(request);
+        write(request.command, request.args);
+    }
+
+    protected void write(byte[] command, byte[]... args) throws IOException {
+        out.write(STAR);
+        out.write(String.valueOf(args.length + 1).getBytes());
+        out.writeCrLf();
+        out.write(DOLLAR);
+        out.write(String.valueOf(command.length).getBytes());
+        out.writeCrLf();
+        out.write(command);
+        out.writeCrLf();
+        for (final byte[] arg : args) {
+            out.write(DOLLAR);
+            out.write(String.valueOf(arg.length).getBytes());
+            out.writeCrLf();
+            out.write(arg);
+            out.writeCrLf();
+        }
+    }
+
+    protected void checkError() {
+        RuntimeException e = this.error;
+        if (e != null) throw e;
+    }
+
+    protected static String toString(Object reply) {
+        if (reply instanceof byte[]) return new String((byte[]) reply, UTF_8);
+        return String.valueOf(reply);
+    }
+
+    protected static class Request {
+        protected final int db;
+        protected final byte[] command;
+        protected byte[][] args;
+        protected int attempts;
+        protected boolean select;
+        protected volatile long due;
+        protected volatile long timestamp;
+
+        protected Request(int db, byte[] command, byte[]... args) {
+            this.db = db;
+            this.args = args;
+            this.command = command;
+        }
+    }
+}
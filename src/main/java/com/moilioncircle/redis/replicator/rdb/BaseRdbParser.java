@@ -172,14 +172,22 @@ public class BaseRdbParser {
         //     return createObject(OBJ_STRING,val);
         // }
         if (plain) {
-            return Lzf.decode(in.readBytes(clen), len);
+            return rdbLoadLzf(clen, len);
         } else if (encode) {
-            return Lzf.decode(in.readBytes(clen), len);
+            return rdbLoadLzf(clen, len);
         } else {
-            return Lzf.decode(in.readBytes(clen), len);
+            return rdbLoadLzf(clen, len);
         }
     }
 
+    private ByteArray rdbLoadLzf(long clen, long len) throws IOException {
+        ByteArray bytes = in.readBytes(clen);
+        ByteArray out = Lzf.decode(bytes, in.allocate(len));
+        // the compressed bytes are never referred
+        bytes.release();
+        return out;
+    }
+
     /**
      * 1.|11xxxxxx|xxxxxxxx| remaining 6bit is 0, then an 8 bit integer follows
      * <p>
@@ -23,18 +23,26 @@ import com.moilioncircle.redis.replicator.io.RedisInputStream;
 import com.moilioncircle.redis.replicator.rdb.datatype.AuxField;
 import com.moilioncircle.redis.replicator.rdb.datatype.DB;
 import com.moilioncircle.redis.replicator.rdb.datatype.ExpiredType;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyStringValueByteArray;
 import com.moilioncircle.redis.replicator.rdb.datatype.KeyStringValueHash;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyStringValueIntSet;
 import com.moilioncircle.redis.replicator.rdb.datatype.KeyStringValueList;
 import com.moilioncircle.redis.replicator.rdb.datatype.KeyStringValueModule;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyStringValuePackedZSet;
 import com.moilioncircle.redis.replicator.rdb.datatype.KeyStringValueSet;
 import com.moilioncircle.redis.replicator.rdb.datatype.KeyStringValueString;
 import com.moilioncircle.redis.replicator.rdb.datatype.KeyStringValueZSet;
 import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
 import com.moilioncircle.redis.replicator.rdb.datatype.Module;
+import com.moilioncircle.redis.replicator.rdb.datatype.PackedZSet;
 import com.moilioncircle.redis.replicator.rdb.datatype.ZSetEntry;
 import com.moilioncircle.redis.replicator.rdb.module.ModuleParser;
+import com.moilioncircle.redis.replicator.rdb.skip.SkipRdbParser;
 import com.moilioncircle.redis.replicator.util.ByteArray;
-import com.moilioncircle.redis.replicator.util.ByteArrayMap;
+import com.moilioncircle.redis.replicator.util.ByteArrayHashMap;
+import com.moilioncircle.redis.replicator.util.DirectByteArray;
+import com.moilioncircle.redis.replicator.util.IntSetIterator;
+import com.moilioncircle.redis.replicator.util.ZipListIterator;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -82,6 +90,127 @@ public class DefaultRdbVisitor extends RdbVisitor {
         this.replicator = replicator;
     }
 
+    /**
+     * @return true if only the raw values are kept
+     * @see com.moilioncircle.redis.replicator.Configuration#isLazyDecodeValue()
+     * @since 2.6.0
+     */
+    protected boolean lazyDecodeValue() {
+        return replicator.getConfiguration().isLazyDecodeValue();
+    }
+
+    /**
+     * @return true if intset and sorted set are decoded into primitive arrays
+     * @see com.moilioncircle.redis.replicator.Configuration#isPrimitiveValue()
+     * @since 2.6.0
+     */
+    protected boolean primitiveValue() {
+        return replicator.getConfiguration().isPrimitiveValue();
+    }
+
+    /**
+     * evaluate {@link com.moilioncircle.redis.replicator.Configuration#getRdbFilter()} right after the key is read,
+     * and skip the value if the key is rejected.
+     *
+     * @param in      input stream
+     * @param db      db of the key
+     * @param type    rdb type of the value
+     * @param key     raw key
+     * @param version rdb version
+     * @return true if the value is skipped
+     * @throws IOException when read timeout
+     * @since 2.6.0
+     */
+    protected boolean skip(RedisInputStream in, DB db, int type, byte[] key, int version) throws IOException {
+        RdbFilter filter = replicator.getConfiguration().getRdbFilter();
+        if (filter == null || filter.accept(db, type, key)) return false;
+        skipValue(in, type, version);
+        return true;
+    }
+
+    /**
+     * skip the value of a record whose key is already read.
+     *
+     * @param in      input stream
+     * @param type    rdb type of the value
+     * @param version rdb version
+     * @throws IOException when read timeout
+     * @since 2.6.0
+     */
+    protected void skipValue(RedisInputStream in, int type, int version) throws IOException {
+        SkipRdbParser parser = new SkipRdbParser(in);
+        switch (type) {
+            case RDB_TYPE_STRING:
+                parser.rdbLoadEncodedStringObject();
+                break;
+            case RDB_TYPE_LIST:
+            case RDB_TYPE_SET:
+                long len = parser.rdbLoadLen().len;
+                for (long i = 0; i < len; i++) parser.rdbLoadEncodedStringObject();
+                break;
+            case RDB_TYPE_ZSET:
+                len = parser.rdbLoadLen().len;
+                for (long i = 0; i < len; i++) {
+                    parser.rdbLoadEncodedStringObject();
+                    parser.rdbLoadDoubleValue();
+                }
+                break;
+            case RDB_TYPE_ZSET_2:
+                len = parser.rdbLoadLen().len;
+                for (long i = 0; i < len; i++) {
+                    parser.rdbLoadEncodedStringObject();
+                    parser.rdbLoadBinaryDoubleValue();
+                }
+                break;
+            case RDB_TYPE_HASH:
+                len = parser.rdbLoadLen().len;
+                for (long i = 0; i < len; i++) {
+                    parser.rdbLoadEncodedStringObject();
+                    parser.rdbLoadEncodedStringObject();
+                }
+                break;
+            case RDB_TYPE_HASH_ZIPMAP:
+            case RDB_TYPE_LIST_ZIPLIST:
+            case RDB_TYPE_SET_INTSET:
+            case RDB_TYPE_ZSET_ZIPLIST:
+            case RDB_TYPE_HASH_ZIPLIST:
+                parser.rdbLoadPlainStringObject();
+                break;
+            case RDB_TYPE_LIST_QUICKLIST:
+                len = parser.rdbLoadLen().len;
+                for (long i = 0; i < len; i++) parser.rdbGenericLoadStringObject();
+                break;
+            case RDB_TYPE_MODULE:
+            case RDB_TYPE_MODULE_2:
+                // module values can only be skipped by their parser
+                char[] c = new char[9];
+                long moduleid = parser.rdbLoadLen().len;
+                for (int i = 0; i < c.length; i++) {
+                    c[i] = MODULE_SET[(int) (moduleid >>> (10 + (c.length - 1 - i) * 6) & 63)];
+                }
+                String moduleName = new String(c);
+                int moduleVersion = (int) (moduleid & 1023);
+                ModuleParser<? extends Module> moduleParser = lookupModuleParser(moduleName, moduleVersion);
+                if (moduleParser == null) {
+                    throw new NoSuchElementException("module[" + moduleName + "," + moduleVersion + "] not exist.");
+                }
+                moduleParser.parse(in, type == RDB_TYPE_MODULE ? 1 : 2);
+                if (type == RDB_TYPE_MODULE_2 && parser.rdbLoadLen().len != RDB_MODULE_OPCODE_EOF) {
+                    throw new UnsupportedOperationException("The RDB file contains module data for the module '" + moduleName + "' that is not terminated by the proper module value EOF marker");
+                }
+                break;
+            default:
+                throw new AssertionError("unexpected value type:" + type);
+        }
+    }
+
+    private static KeyStringValueZSet zset(PackedZSet packed) {
+        if (packed == null) return new KeyStringValueZSet();
+        KeyStringValuePackedZSet zset = new KeyStringValuePackedZSet();
+        zset.setPackedValue(packed);
+        return zset;
+    }
+
     @Override
     public String applyMagic(RedisInputStream in) throws IOException {
         String magicString = BaseRdbParser.StringHelper.str(in, 5);//REDIS
@@ -154,6 +283,7 @@ public class DefaultRdbVisitor extends RdbVisitor {
         int expiredSec = parser.rdbLoadTime();
         int valueType = applyType(in);
         KeyValuePair<?> kv = rdbLoadObject(in, db, valueType, version);
+        if (kv == null) return null;
         kv.setExpiredType(ExpiredType.SECOND);
         kv.setExpiredValue((long) expiredSec);
         return kv;
@@ -173,6 +303,7 @@ public class DefaultRdbVisitor extends RdbVisitor {
         long expiredMs = parser.rdbLoadMillisecondTime();
         int valueType = applyType(in);
         KeyValuePair<?> kv = rdbLoadObject(in, db, valueType, version);
+        if (kv == null) return null;
         kv.setExpiredType(ExpiredType.MS);
         kv.setExpiredValue(expiredMs);
         return kv;
@@ -206,12 +337,22 @@ public class DefaultRdbVisitor extends RdbVisitor {
          * |    string contents    |
          */
         BaseRdbParser parser = new BaseRdbParser(in);
-        KeyStringValueString o0 = new KeyStringValueString();
+        KeyStringValueString o0;
         byte[] key = parser.rdbLoadEncodedStringObject().first();
-        byte[] val = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_STRING, key, version)) return null;
+        ByteArray bytes = parser.rdbLoadEncodedStringObject();
+        if (bytes instanceof DirectByteArray && in.detachOffHeap(bytes)) {
+            // the event owns the off-heap value, it is released after the listeners return
+            KeyStringValueByteArray o = new KeyStringValueByteArray();
+            o.setByteArray(bytes);
+            o0 = o;
+        } else {
+            byte[] val = bytes.first();
+            o0 = new KeyStringValueString();
+            if (!lazyDecodeValue()) o0.setValue(new String(val, UTF_8));
+            o0.setRawValue(val);
+        }
         o0.setValueRdbType(RDB_TYPE_STRING);
-        o0.setValue(new String(val, UTF_8));
-        o0.setRawValue(val);
         o0.setDb(db);
         o0.setKey(new String(key, UTF_8));
         o0.setRawKey(key);
@@ -227,12 +368,13 @@ public class DefaultRdbVisitor extends RdbVisitor {
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyStringValueList o1 = new KeyStringValueList();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_LIST, key, version)) return null;
         long len = parser.rdbLoadLen().len;
-        List<String> list = new ArrayList<>();
+        List<String> list = lazyDecodeValue() ? null : new ArrayList<String>();
         List<byte[]> rawList = new ArrayList<>();
         for (int i = 0; i < len; i++) {
             byte[] element = parser.rdbLoadEncodedStringObject().first();
-            list.add(new String(element, UTF_8));
+            if (list != null) list.add(new String(element, UTF_8));
             rawList.add(element);
         }
         o1.setValueRdbType(RDB_TYPE_LIST);
@@ -253,12 +395,13 @@ public class DefaultRdbVisitor extends RdbVisitor {
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyStringValueSet o2 = new KeyStringValueSet();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_SET, key, version)) return null;
         long len = parser.rdbLoadLen().len;
-        Set<String> set = new LinkedHashSet<>();
+        Set<String> set = lazyDecodeValue() ? null : new LinkedHashSet<String>();
         Set<byte[]> rawSet = new LinkedHashSet<>();
         for (int i = 0; i < len; i++) {
             byte[] element = parser.rdbLoadEncodedStringObject().first();
-            set.add(new String(element, UTF_8));
+            if (set != null) set.add(new String(element, UTF_8));
             rawSet.add(element);
         }
         o2.setValueRdbType(RDB_TYPE_SET);
@@ -277,16 +420,23 @@ public class DefaultRdbVisitor extends RdbVisitor {
          * | 1 or 5 bytes |    string contents    |    double content    |
          */
         BaseRdbParser parser = new BaseRdbParser(in);
-        KeyStringValueZSet o3 = new KeyStringValueZSet();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_ZSET, key, version)) return null;
         long len = parser.rdbLoadLen().len;
-        Set<ZSetEntry> zset = new LinkedHashSet<>();
+        PackedZSet packed = primitiveValue() ? new PackedZSet((int) Math.min(len, Integer.MAX_VALUE)) : null;
+        Set<ZSetEntry> zset = packed == null ? new LinkedHashSet<ZSetEntry>() : null;
         while (len > 0) {
             byte[] element = parser.rdbLoadEncodedStringObject().first();
             double score = parser.rdbLoadDoubleValue();
-            zset.add(new ZSetEntry(new String(element, UTF_8), score, element));
+            if (packed != null && !packed.add(element, score)) {
+                // members beyond the 2GB arena, fall back to a plain set
+                zset = packed.toSet();
+                packed = null;
+            }
+            if (packed == null) zset.add(new ZSetEntry(new String(element, UTF_8), score, element));
             len--;
         }
+        KeyStringValueZSet o3 = zset(packed);
         o3.setValueRdbType(RDB_TYPE_ZSET);
         o3.setValue(zset);
         o3.setDb(db);
@@ -302,17 +452,24 @@ public class DefaultRdbVisitor extends RdbVisitor {
          * | 1 or 5 bytes |    string contents    |    binary double     |
          */
         BaseRdbParser parser = new BaseRdbParser(in);
-        KeyStringValueZSet o5 = new KeyStringValueZSet();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_ZSET_2, key, version)) return null;
         /* rdb version 8*/
         long len = parser.rdbLoadLen().len;
-        Set<ZSetEntry> zset = new LinkedHashSet<>();
+        PackedZSet packed = primitiveValue() ? new PackedZSet((int) Math.min(len, Integer.MAX_VALUE)) : null;
+        Set<ZSetEntry> zset = packed == null ? new LinkedHashSet<ZSetEntry>() : null;
         while (len > 0) {
             byte[] element = parser.rdbLoadEncodedStringObject().first();
             double score = parser.rdbLoadBinaryDoubleValue();
-            zset.add(new ZSetEntry(new String(element, UTF_8), score, element));
+            if (packed != null && !packed.add(element, score)) {
+                // members beyond the 2GB arena, fall back to a plain set
+                zset = packed.toSet();
+                packed = null;
+            }
+            if (packed == null) zset.add(new ZSetEntry(new String(element, UTF_8), score, element));
             len--;
         }
+        KeyStringValueZSet o5 = zset(packed);
         o5.setValueRdbType(RDB_TYPE_ZSET_2);
         o5.setValue(zset);
         o5.setDb(db);
@@ -330,13 +487,14 @@ public class DefaultRdbVisitor extends RdbVisitor {
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyStringValueHash o4 = new KeyStringValueHash();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_HASH, key, version)) return null;
         long len = parser.rdbLoadLen().len;
-        Map<String, String> map = new LinkedHashMap<>();
-        ByteArrayMap<byte[]> rawMap = new ByteArrayMap<>();
+        Map<String, String> map = lazyDecodeValue() ? null : new LinkedHashMap<String, String>();
+        ByteArrayHashMap<byte[]> rawMap = new ByteArrayHashMap<>((int) Math.min(len, Integer.MAX_VALUE));
         while (len > 0) {
             byte[] field = parser.rdbLoadEncodedStringObject().first();
             byte[] value = parser.rdbLoadEncodedStringObject().first();
-            map.put(new String(field, UTF_8), new String(value, UTF_8));
+            if (map != null) map.put(new String(field, UTF_8), new String(value, UTF_8));
             rawMap.put(field, value);
             len--;
         }
@@ -358,10 +516,11 @@ public class DefaultRdbVisitor extends RdbVisitor {
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyStringValueHash o9 = new KeyStringValueHash();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_HASH_ZIPMAP, key, version)) return null;
         ByteArray aux = parser.rdbLoadPlainStringObject();
         RedisInputStream stream = new RedisInputStream(new ByteArrayInputStream(aux));
-        Map<String, String> map = new LinkedHashMap<>();
-        ByteArrayMap<byte[]> rawMap = new ByteArrayMap<>();
+        Map<String, String> map = lazyDecodeValue() ? null : new LinkedHashMap<String, String>();
+        ByteArrayHashMap<byte[]> rawMap = new ByteArrayHashMap<>();
         BaseRdbParser.LenHelper.zmlen(stream); // zmlen
         while (true) {
             int zmEleLen = BaseRdbParser.LenHelper.zmElementLen(stream);
@@ -378,7 +537,7 @@ public class DefaultRdbVisitor extends RdbVisitor {
             zmEleLen = BaseRdbParser.LenHelper.zmElementLen(stream);
             if (zmEleLen == 255) {
                 //value is null
-                map.put(new String(field, UTF_8), null);
+                if (map != null) map.put(new String(field, UTF_8), null);
                 rawMap.put(field, null);
                 o9.setValueRdbType(RDB_TYPE_HASH_ZIPMAP);
                 o9.setValue(map);
@@ -391,7 +550,7 @@ public class DefaultRdbVisitor extends RdbVisitor {
             int free = BaseRdbParser.LenHelper.free(stream);
             byte[] value = BaseRdbParser.StringHelper.bytes(stream, zmEleLen);
             BaseRdbParser.StringHelper.skip(stream, free);
-            map.put(new String(field, UTF_8), new String(value, UTF_8));
+            if (map != null) map.put(new String(field, UTF_8), new String(value, UTF_8));
             rawMap.put(field, value);
         }
     }
@@ -405,23 +564,17 @@ public class DefaultRdbVisitor extends RdbVisitor {
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyStringValueList o10 = new KeyStringValueList();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_LIST_ZIPLIST, key, version)) return null;
         ByteArray aux = parser.rdbLoadPlainStringObject();
-        RedisInputStream stream = new RedisInputStream(new ByteArrayInputStream(aux));
 
-        List<String> list = new ArrayList<>();
+        List<String> list = lazyDecodeValue() ? null : new ArrayList<String>();
         List<byte[]> rawList = new ArrayList<>();
-        BaseRdbParser.LenHelper.zlbytes(stream); // zlbytes
-        BaseRdbParser.LenHelper.zltail(stream); // zltail
-        int zllen = BaseRdbParser.LenHelper.zllen(stream);
-        for (int i = 0; i < zllen; i++) {
-            byte[] e = BaseRdbParser.StringHelper.zipListEntry(stream);
-            list.add(new String(e, UTF_8));
+        ZipListIterator it = new ZipListIterator(aux);
+        while (it.hasNext()) {
+            byte[] e = it.next();
+            if (list != null) list.add(new String(e, UTF_8));
             rawList.add(e);
         }
-        int zlend = BaseRdbParser.LenHelper.zlend(stream);
-        if (zlend != 255) {
-            throw new AssertionError("zlend expect 255 but " + zlend);
-        }
         o10.setValueRdbType(RDB_TYPE_LIST_ZIPLIST);
         o10.setValue(list);
         o10.setRawValue(rawList);
@@ -438,35 +591,29 @@ public class DefaultRdbVisitor extends RdbVisitor {
          * | 4 bytes  |            4 bytes  | 2 bytes element| 4 bytes element | 8 bytes element |
          */
         BaseRdbParser parser = new BaseRdbParser(in);
-        KeyStringValueSet o11 = new KeyStringValueSet();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_SET_INTSET, key, version)) return null;
         ByteArray aux = parser.rdbLoadPlainStringObject();
-        RedisInputStream stream = new RedisInputStream(new ByteArrayInputStream(aux));
 
-        Set<String> set = new LinkedHashSet<>();
+        IntSetIterator it = new IntSetIterator(aux);
+        if (primitiveValue()) {
+            long[] longs = new long[(int) it.lenOfContent()];
+            for (int i = 0; i < longs.length; i++) longs[i] = it.nextLong();
+            KeyStringValueIntSet o11 = new KeyStringValueIntSet();
+            o11.setValueRdbType(RDB_TYPE_SET_INTSET);
+            o11.setLongValue(longs);
+            o11.setDb(db);
+            o11.setKey(new String(key, UTF_8));
+            o11.setRawKey(key);
+            return o11;
+        }
+        KeyStringValueSet o11 = new KeyStringValueSet();
+        Set<String> set = lazyDecodeValue() ? null : new LinkedHashSet<String>();
         Set<byte[]> rawSet = new LinkedHashSet<>();
-        int encoding = BaseRdbParser.LenHelper.encoding(stream);
-        long lenOfContent = BaseRdbParser.LenHelper.lenOfContent(stream);
-        for (long i = 0; i < lenOfContent; i++) {
-            switch (encoding) {
-                case 2:
-                    String element = String.valueOf(stream.readInt(2));
-                    set.add(element);
-                    rawSet.add(element.getBytes());
-                    break;
-                case 4:
-                    element = String.valueOf(stream.readInt(4));
-                    set.add(element);
-                    rawSet.add(element.getBytes());
-                    break;
-                case 8:
-                    element = String.valueOf(stream.readLong(8));
-                    set.add(element);
-                    rawSet.add(element.getBytes());
-                    break;
-                default:
-                    throw new AssertionError("expect encoding [2,4,8] but:" + encoding);
-            }
+        while (it.hasNext()) {
+            byte[] element = it.next();
+            if (set != null) set.add(new String(element, UTF_8));
+            rawSet.add(element);
         }
         o11.setValueRdbType(RDB_TYPE_SET_INTSET);
         o11.setValue(set);
@@ -484,26 +631,24 @@ public class DefaultRdbVisitor extends RdbVisitor {
          * | 4 bytes | 4 bytes | 2bytes | zipListEntry ...   | 1byte  |
          */
         BaseRdbParser parser = new BaseRdbParser(in);
-        KeyStringValueZSet o12 = new KeyStringValueZSet();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_ZSET_ZIPLIST, key, version)) return null;
         ByteArray aux = parser.rdbLoadPlainStringObject();
-        RedisInputStream stream = new RedisInputStream(new ByteArrayInputStream(aux));
 
-        Set<ZSetEntry> zset = new LinkedHashSet<>();
-        BaseRdbParser.LenHelper.zlbytes(stream); // zlbytes
-        BaseRdbParser.LenHelper.zltail(stream); // zltail
-        int zllen = BaseRdbParser.LenHelper.zllen(stream);
-        while (zllen > 0) {
-            byte[] element = BaseRdbParser.StringHelper.zipListEntry(stream);
-            zllen--;
-            double score = Double.valueOf(new String(BaseRdbParser.StringHelper.zipListEntry(stream), UTF_8));
-            zllen--;
-            zset.add(new ZSetEntry(new String(element, UTF_8), score, element));
-        }
-        int zlend = BaseRdbParser.LenHelper.zlend(stream);
-        if (zlend != 255) {
-            throw new AssertionError("zlend expect 255 but " + zlend);
+        ZipListIterator it = new ZipListIterator(aux);
+        PackedZSet packed = primitiveValue() ? new PackedZSet(it.zllen() / 2) : null;
+        Set<ZSetEntry> zset = packed == null ? new LinkedHashSet<ZSetEntry>() : null;
+        while (it.hasNext()) {
+            byte[] element = it.next();
+            double score = Double.valueOf(new String(it.next(), UTF_8));
+            if (packed != null && !packed.add(element, score)) {
+                // members beyond the 2GB arena, fall back to a plain set
+                zset = packed.toSet();
+                packed = null;
+            }
+            if (packed == null) zset.add(new ZSetEntry(new String(element, UTF_8), score, element));
         }
+        KeyStringValueZSet o12 = zset(packed);
         o12.setValueRdbType(RDB_TYPE_ZSET_ZIPLIST);
         o12.setValue(zset);
         o12.setDb(db);
@@ -521,26 +666,18 @@ public class DefaultRdbVisitor extends RdbVisitor {
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyStringValueHash o13 = new KeyStringValueHash();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_HASH_ZIPLIST, key, version)) return null;
         ByteArray aux = parser.rdbLoadPlainStringObject();
-        RedisInputStream stream = new RedisInputStream(new ByteArrayInputStream(aux));
 
-        Map<String, String> map = new LinkedHashMap<>();
-        ByteArrayMap<byte[]> rawMap = new ByteArrayMap<>();
-        BaseRdbParser.LenHelper.zlbytes(stream); // zlbytes
-        BaseRdbParser.LenHelper.zltail(stream); // zltail
-        int zllen = BaseRdbParser.LenHelper.zllen(stream);
-        while (zllen > 0) {
-            byte[] field = BaseRdbParser.StringHelper.zipListEntry(stream);
-            zllen--;
-            byte[] value = BaseRdbParser.StringHelper.zipListEntry(stream);
-            zllen--;
-            map.put(new String(field, UTF_8), new String(value, UTF_8));
+        Map<String, String> map = lazyDecodeValue() ? null : new LinkedHashMap<String, String>();
+        ByteArrayHashMap<byte[]> rawMap = new ByteArrayHashMap<>();
+        ZipListIterator it = new ZipListIterator(aux);
+        while (it.hasNext()) {
+            byte[] field = it.next();
+            byte[] value = it.next();
+            if (map != null) map.put(new String(field, UTF_8), new String(value, UTF_8));
             rawMap.put(field, value);
         }
-        int zlend = BaseRdbParser.LenHelper.zlend(stream);
-        if (zlend != 255) {
-            throw new AssertionError("zlend expect 255 but " + zlend);
-        }
         o13.setValueRdbType(RDB_TYPE_HASH_ZIPLIST);
         o13.setValue(map);
         o13.setRawValue(rawMap);
@@ -555,25 +692,18 @@ public class DefaultRdbVisitor extends RdbVisitor {
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyStringValueList o14 = new KeyStringValueList();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_LIST_QUICKLIST, key, version)) return null;
         long len = parser.rdbLoadLen().len;
-        List<String> list = new ArrayList<>();
+        List<String> list = lazyDecodeValue() ? null : new ArrayList<String>();
         List<byte[]> rawList = new ArrayList<>();
         for (int i = 0; i < len; i++) {
             ByteArray element = parser.rdbGenericLoadStringObject(RDB_LOAD_NONE);
-            RedisInputStream stream = new RedisInputStream(new ByteArrayInputStream(element));
-
-            BaseRdbParser.LenHelper.zlbytes(stream); // zlbytes
-            BaseRdbParser.LenHelper.zltail(stream); // zltail
-            int zllen = BaseRdbParser.LenHelper.zllen(stream);
-            for (int j = 0; j < zllen; j++) {
-                byte[] e = BaseRdbParser.StringHelper.zipListEntry(stream);
-                list.add(new String(e, UTF_8));
+            ZipListIterator it = new ZipListIterator(element);
+            while (it.hasNext()) {
+                byte[] e = it.next();
+                if (list != null) list.add(new String(e, UTF_8));
                 rawList.add(e);
             }
-            int zlend = BaseRdbParser.LenHelper.zlend(stream);
-            if (zlend != 255) {
-                throw new AssertionError("zlend expect 255 but " + zlend);
-            }
         }
         o14.setValueRdbType(RDB_TYPE_LIST_QUICKLIST);
         o14.setValue(list);
@@ -590,6 +720,7 @@ public class DefaultRdbVisitor extends RdbVisitor {
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyStringValueModule o6 = new KeyStringValueModule();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_MODULE, key, version)) return null;
         char[] c = new char[9];
         long moduleid = parser.rdbLoadLen().len;
         for (int i = 0; i < c.length; i++) {
@@ -623,6 +754,7 @@ public class DefaultRdbVisitor extends RdbVisitor {
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyStringValueModule o7 = new KeyStringValueModule();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_MODULE_2, key, version)) return null;
         char[] c = new char[9];
         long moduleid = parser.rdbLoadLen().len;
         for (int i = 0; i < c.length; i++) {
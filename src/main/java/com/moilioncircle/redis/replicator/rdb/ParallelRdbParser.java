@@ -0,0 +1,310 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb;
+
+import com.moilioncircle.redis.replicator.AbstractReplicator;
+import com.moilioncircle.redis.replicator.Configuration;
+import com.moilioncircle.redis.replicator.event.Event;
+import com.moilioncircle.redis.replicator.event.PostFullSyncEvent;
+import com.moilioncircle.redis.replicator.event.PreFullSyncEvent;
+import com.moilioncircle.redis.replicator.io.MappedRedisInputStream;
+import com.moilioncircle.redis.replicator.io.RedisInputStream;
+import com.moilioncircle.redis.replicator.rdb.datatype.DB;
+import com.moilioncircle.redis.replicator.rdb.dump.DumpRdbVisitor;
+import com.moilioncircle.redis.replicator.rdb.iterable.ValueIterableRdbVisitor;
+import com.moilioncircle.redis.replicator.rdb.skip.SkipRdbVisitor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static com.moilioncircle.redis.replicator.Constants.RDB_OPCODE_AUX;
+import static com.moilioncircle.redis.replicator.Constants.RDB_OPCODE_EOF;
+import static com.moilioncircle.redis.replicator.Constants.RDB_OPCODE_RESIZEDB;
+import static com.moilioncircle.redis.replicator.Constants.RDB_OPCODE_SELECTDB;
+import static com.moilioncircle.redis.replicator.Status.CONNECTED;
+
+/**
+ * Rdb parser that decodes a local rdb file in partitions.
+ * <p>
+ * The reading thread skips the records with {@link SkipRdbVisitor} and cuts the file into partitions of
+ * {@link Configuration#getRdbPartitionKeys()} records, a partition is described by its byte range, the rdb version
+ * and the db of its first record. An expired opcode is always read with its key, so a boundary never splits it.
+ * Every partition is decoded by a worker of a fork join pool that reads the file at the partition offset with
+ * its own stream, and the events of a partition are submitted together in the reading thread, in file order if
+ * {@link Configuration#isRdbDecodeOrdered()}, otherwise in completion order.
+ * <p>
+ * The rdb visitor and the module parsers must be thread safe. {@link DumpRdbVisitor} depends on the raw bytes of
+ * the reading thread and {@link ValueIterableRdbVisitor} reads values after the event is submitted, so both fall
+ * back to {@link RdbParser}.
+ *
+ * @author Leon Chen
+ * @see com.moilioncircle.redis.replicator.ParallelRdbReplicator
+ * @since 2.6.0
+ */
+public class ParallelRdbParser extends RdbParser {
+
+    protected final File file;
+    protected final int threads;
+    protected final int window;
+    protected final int keys;
+    protected final boolean ordered;
+    protected final RdbVisitor skipper;
+
+    public ParallelRdbParser(RedisInputStream in, AbstractReplicator replicator, File file) {
+        super(in, replicator);
+        Configuration configuration = replicator.getConfiguration();
+        int threads = configuration.getRdbDecodeThreads();
+        this.file = file;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.window = this.threads * 2;
+        this.keys = Math.max(1, configuration.getRdbPartitionKeys());
+        this.ordered = configuration.isRdbDecodeOrdered();
+        this.skipper = new SkipRdbVisitor(replicator);
+    }
+
+    @Override
+    public long parse() throws IOException {
+        if (rdbVisitor instanceof DumpRdbVisitor || rdbVisitor instanceof ValueIterableRdbVisitor) {
+            logger.warn(rdbVisitor.getClass().getSimpleName() + " can not decode in parallel, fall back to RdbParser.");
+            return super.parse();
+        }
+        ExecutorService executor = new ForkJoinPool(threads);
+        try {
+            return parse(ordered ? new OrderedPartitions(executor) : new UnorderedPartitions(executor));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    protected long parse(Partitions partitions) throws IOException {
+        this.replicator.submitEvent(new PreFullSyncEvent());
+        beginChecksum();
+        try {
+            rdbVisitor.applyMagic(in);
+            int version = rdbVisitor.applyVersion(in);
+            DB db = null;
+            DB from = null;
+            long start = 0L;
+            int count = 0;
+            loop:
+            while (this.replicator.getStatus() == CONNECTED) {
+                long offset = in.position();
+                int type = rdbVisitor.applyType(in);
+                Event event = null;
+                switch (type) {
+                    case RDB_OPCODE_AUX:
+                        if (count > 0) partitions.submit(partition(start, offset, from, version));
+                        count = 0;
+                        partitions.drain();
+                        event = rdbVisitor.applyAux(in, version);
+                        break;
+                    case RDB_OPCODE_RESIZEDB:
+                        rdbVisitor.applyResizeDB(in, db, version);
+                        break;
+                    case RDB_OPCODE_SELECTDB:
+                        db = rdbVisitor.applySelectDB(in, version);
+                        break;
+                    case RDB_OPCODE_EOF:
+                        if (count > 0) partitions.submit(partition(start, offset, from, version));
+                        partitions.drain();
+                        endChecksum();
+                        long checksum = rdbVisitor.applyEof(in, version);
+                        verifyChecksum(checksum, version);
+                        this.replicator.submitEvent(new PostFullSyncEvent(checksum));
+                        break loop;
+                    default:
+                        if (count == keys) {
+                            partitions.submit(partition(start, offset, from, version));
+                            count = 0;
+                        }
+                        if (count++ == 0) {
+                            start = offset;
+                            from = db;
+                        }
+                        applyRecord(skipper, in, db, type, version);
+                        break;
+                }
+                if (event == null) continue;
+                submit(event);
+            }
+        } finally {
+            endChecksum();
+        }
+        return in.total();
+    }
+
+    protected void submit(Event event) {
+        if (replicator.verbose() && logger.isDebugEnabled()) logger.debug(event);
+        this.replicator.submitEvent(event);
+    }
+
+    protected void submit(List<Event> events) {
+        for (Event event : events) submit(event);
+    }
+
+    /**
+     * @param start   offset of the first record
+     * @param end     offset after the last record
+     * @param db      db of the first record
+     * @param version rdb version
+     * @return task that decodes the records in [start, end)
+     */
+    protected Callable<List<Event>> partition(final long start, final long end, final DB db, final int version) {
+        return new Callable<List<Event>>() {
+            @Override
+            public List<Event> call() throws Exception {
+                try (RedisInputStream in = open(start)) {
+                    return decode(in, in.position() + end - start, db, version);
+                }
+            }
+        };
+    }
+
+    protected RedisInputStream open(long offset) throws IOException {
+        Configuration configuration = replicator.getConfiguration();
+        if (configuration.getMappedFileWindow() > 0) {
+            RedisInputStream in = new MappedRedisInputStream(file, configuration.getMappedFileWindow());
+            in.setOffHeapThreshold(configuration.getOffHeapThreshold(), configuration.isOffHeapMapped());
+            in.skip(offset, false);
+            return in;
+        }
+        FileInputStream file = new FileInputStream(this.file);
+        file.getChannel().position(offset);
+        RedisInputStream in = new RedisInputStream(file, configuration.getBufferSize());
+        in.setOffHeapThreshold(configuration.getOffHeapThreshold(), configuration.isOffHeapMapped());
+        return in;
+    }
+
+    protected List<Event> decode(RedisInputStream in, long end, DB db, int version) throws IOException {
+        List<Event> events = new ArrayList<>();
+        while (in.position() < end) {
+            int type = rdbVisitor.applyType(in);
+            switch (type) {
+                case RDB_OPCODE_RESIZEDB:
+                    rdbVisitor.applyResizeDB(in, db, version);
+                    break;
+                case RDB_OPCODE_SELECTDB:
+                    db = rdbVisitor.applySelectDB(in, version);
+                    break;
+                default:
+                    Event event = applyRecord(rdbVisitor, in, db, type, version);
+                    if (event != null) events.add(event);
+                    // off-heap values owned by the events are detached, the replicator releases them once consumed
+                    in.releaseOffHeap();
+                    break;
+            }
+        }
+        return events;
+    }
+
+    protected List<Event> get(Future<List<Event>> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new AssertionError(cause);
+        }
+    }
+
+    protected interface Partitions {
+        void submit(Callable<List<Event>> partition) throws IOException;
+
+        void drain() throws IOException;
+    }
+
+    protected class OrderedPartitions implements Partitions {
+        protected final ExecutorService executor;
+        protected final Deque<Future<List<Event>>> futures = new ArrayDeque<>();
+
+        protected OrderedPartitions(ExecutorService executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public void submit(Callable<List<Event>> partition) throws IOException {
+            futures.offer(executor.submit(partition));
+            while (!futures.isEmpty() && (futures.size() >= window || futures.peek().isDone())) {
+                ParallelRdbParser.this.submit(get(futures.poll()));
+            }
+        }
+
+        @Override
+        public void drain() throws IOException {
+            while (!futures.isEmpty()) {
+                ParallelRdbParser.this.submit(get(futures.poll()));
+            }
+        }
+    }
+
+    protected class UnorderedPartitions implements Partitions {
+        protected int pending;
+        protected final CompletionService<List<Event>> service;
+
+        protected UnorderedPartitions(ExecutorService executor) {
+            this.service = new ExecutorCompletionService<>(executor);
+        }
+
+        @Override
+        public void submit(Callable<List<Event>> partition) throws IOException {
+            service.submit(partition);
+            pending++;
+            Future<List<Event>> future;
+            while (pending > 0 && ((future = service.poll()) != null || pending >= window)) {
+                if (future == null) future = take();
+                pending--;
+                ParallelRdbParser.this.submit(get(future));
+            }
+        }
+
+        @Override
+        public void drain() throws IOException {
+            while (pending > 0) {
+                Future<List<Event>> future = take();
+                pending--;
+                ParallelRdbParser.this.submit(get(future));
+            }
+        }
+
+        protected Future<List<Event>> take() throws IOException {
+            try {
+                return service.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb;
+
+import com.moilioncircle.redis.replicator.AbstractReplicator;
+import com.moilioncircle.redis.replicator.event.Event;
+import com.moilioncircle.redis.replicator.event.PostFullSyncEvent;
+import com.moilioncircle.redis.replicator.event.PreFullSyncEvent;
+import com.moilioncircle.redis.replicator.io.RawByteListener;
+import com.moilioncircle.redis.replicator.io.RedisInputStream;
+import com.moilioncircle.redis.replicator.rdb.datatype.DB;
+import com.moilioncircle.redis.replicator.rdb.dump.DumpRdbVisitor;
+import com.moilioncircle.redis.replicator.rdb.skip.SkipRdbVisitor;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.moilioncircle.redis.replicator.Constants.RDB_OPCODE_AUX;
+import static com.moilioncircle.redis.replicator.Constants.RDB_OPCODE_EOF;
+import static com.moilioncircle.redis.replicator.Constants.RDB_OPCODE_EXPIRETIME;
+import static com.moilioncircle.redis.replicator.Constants.RDB_OPCODE_EXPIRETIME_MS;
+import static com.moilioncircle.redis.replicator.Constants.RDB_OPCODE_RESIZEDB;
+import static com.moilioncircle.redis.replicator.Constants.RDB_OPCODE_SELECTDB;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_MODULE;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_MODULE_2;
+import static com.moilioncircle.redis.replicator.Status.CONNECTED;
+
+/**
+ * Rdb parser that decodes key value pairs in a thread pool.
+ * <p>
+ * The reading thread only frames the raw bytes of every record with {@link SkipRdbVisitor},
+ * {@link com.moilioncircle.redis.replicator.Configuration#getRdbDecodeThreads()} workers decode the records with the replicator's
+ * {@link RdbVisitor}, and events are still submitted in the reading thread. If
+ * {@link com.moilioncircle.redis.replicator.Configuration#isRdbDecodeOrdered()} is false, events are submitted in completion order.
+ * <p>
+ * The rdb visitor must be thread safe. records of modules are decoded in the reading thread,
+ * {@link DumpRdbVisitor} depends on the raw bytes of the reading thread, so it falls back to
+ * {@link RdbParser}.
+ *
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class PipelinedRdbParser extends RdbParser {
+
+    protected final int threads;
+    protected final boolean ordered;
+    protected final int window;
+    protected final RdbVisitor framer;
+    protected final RecordListener recorder = new RecordListener();
+
+    public PipelinedRdbParser(RedisInputStream in, AbstractReplicator replicator) {
+        super(in, replicator);
+        this.threads = Math.max(1, replicator.getConfiguration().getRdbDecodeThreads());
+        this.ordered = replicator.getConfiguration().isRdbDecodeOrdered();
+        this.window = threads * 64;
+        this.framer = new SkipRdbVisitor(replicator);
+    }
+
+    @Override
+    public long parse() throws IOException {
+        if (rdbVisitor instanceof DumpRdbVisitor) {
+            logger.warn("DumpRdbVisitor can not decode in parallel, fall back to RdbParser.");
+            return super.parse();
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            return parse(ordered ? new OrderedPipeline(executor) : new UnorderedPipeline(executor));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    protected long parse(Pipeline pipeline) throws IOException {
+        this.replicator.submitEvent(new PreFullSyncEvent());
+        beginChecksum();
+        replicator.addRawByteListener(recorder);
+        try {
+            rdbVisitor.applyMagic(in);
+            int version = rdbVisitor.applyVersion(in);
+            DB db = null;
+            loop:
+            while (this.replicator.getStatus() == CONNECTED) {
+                int type = rdbVisitor.applyType(in);
+                Event event = null;
+                switch (type) {
+                    case RDB_OPCODE_AUX:
+                        pipeline.drain();
+                        event = rdbVisitor.applyAux(in, version);
+                        break;
+                    case RDB_OPCODE_RESIZEDB:
+                        rdbVisitor.applyResizeDB(in, db, version);
+                        break;
+                    case RDB_OPCODE_SELECTDB:
+                        db = rdbVisitor.applySelectDB(in, version);
+                        break;
+                    case RDB_OPCODE_EOF:
+                        pipeline.drain();
+                        endChecksum();
+                        long checksum = rdbVisitor.applyEof(in, version);
+                        verifyChecksum(checksum, version);
+                        this.replicator.submitEvent(new PostFullSyncEvent(checksum));
+                        break loop;
+                    case RDB_TYPE_MODULE:
+                    case RDB_TYPE_MODULE_2:
+                        // module parsers are not required to be thread safe
+                        pipeline.drain();
+                        event = applyRecord(rdbVisitor, in, db, type, version);
+                        break;
+                    default:
+                        RawRecord record = frame(in, db, type, version);
+                        if (isModule(record)) {
+                            pipeline.drain();
+                            event = decode(record, db, version);
+                        } else {
+                            pipeline.submit(record, db, version);
+                        }
+                        break;
+                }
+                if (event == null) continue;
+                submit(event);
+            }
+        } finally {
+            replicator.removeRawByteListener(recorder);
+            endChecksum();
+        }
+        return in.total();
+    }
+
+    protected void submit(Event event) {
+        if (replicator.verbose() && logger.isDebugEnabled()) logger.debug(event);
+        this.replicator.submitEvent(event);
+    }
+
+    /**
+     * the raw bytes are collected by the {@link #recorder} that is installed for the whole parse,
+     * the bytes read before the record are flushed to the other listeners first.
+     *
+     * @return raw bytes of the record, starting with the type or expired opcode
+     */
+    protected RawRecord frame(RedisInputStream in, DB db, int type, int version) throws IOException {
+        in.flushRawBytes();
+        recorder.begin(type);
+        try {
+            applyRecord(framer, in, db, type, version);
+            in.flushRawBytes();
+            return recorder.record;
+        } finally {
+            recorder.record = null;
+        }
+    }
+
+    protected Event decode(RawRecord record, DB db, int version) throws IOException {
+        RedisInputStream in = new RedisInputStream(record.getInputStream(), (int) Math.min(record.length(), 8192));
+        return applyRecord(rdbVisitor, in, db, in.read(), version);
+    }
+
+    protected boolean isModule(RawRecord record) {
+        int type;
+        switch (record.get(0) & 0xff) {
+            case RDB_OPCODE_EXPIRETIME:
+                type = record.get(5) & 0xff;
+                break;
+            case RDB_OPCODE_EXPIRETIME_MS:
+                type = record.get(9) & 0xff;
+                break;
+            default:
+                type = record.get(0) & 0xff;
+                break;
+        }
+        return type == RDB_TYPE_MODULE || type == RDB_TYPE_MODULE_2;
+    }
+
+    protected Event get(Future<Event> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new AssertionError(cause);
+        }
+    }
+
+    protected Callable<Event> task(final RawRecord record, final DB db, final int version) {
+        return new Callable<Event>() {
+            @Override
+            public Event call() throws Exception {
+                return decode(record, db, version);
+            }
+        };
+    }
+
+    protected interface Pipeline {
+        void submit(RawRecord record, DB db, int version) throws IOException;
+
+        void drain() throws IOException;
+    }
+
+    protected class OrderedPipeline implements Pipeline {
+        protected final ExecutorService executor;
+        protected final Deque<Future<Event>> futures = new ArrayDeque<>();
+
+        protected OrderedPipeline(ExecutorService executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public void submit(RawRecord record, DB db, int version) throws IOException {
+            futures.offer(executor.submit(task(record, db, version)));
+            while (!futures.isEmpty() && (futures.size() >= window || futures.peek().isDone())) {
+                Event event = get(futures.poll());
+                if (event != null) PipelinedRdbParser.this.submit(event);
+            }
+        }
+
+        @Override
+        public void drain() throws IOException {
+            while (!futures.isEmpty()) {
+                Event event = get(futures.poll());
+                if (event != null) PipelinedRdbParser.this.submit(event);
+            }
+        }
+    }
+
+    protected class UnorderedPipeline implements Pipeline {
+        protected int pending;
+        protected final CompletionService<Event> service;
+
+        protected UnorderedPipeline(ExecutorService executor) {
+            this.service = new ExecutorCompletionService<>(executor);
+        }
+
+        @Override
+        public void submit(RawRecord record, DB db, int version) throws IOException {
+            service.submit(task(record, db, version));
+            pending++;
+            Future<Event> future;
+            while (pending > 0 && ((future = service.poll()) != null || pending >= window)) {
+                if (future == null) future = take();
+                pending--;
+                Event event = get(future);
+                if (event != null) PipelinedRdbParser.this.submit(event);
+            }
+        }
+
+        @Override
+        public void drain() throws IOException {
+            while (pending > 0) {
+                Future<Event> future = take();
+                pending--;
+                Event event = get(future);
+                if (event != null) PipelinedRdbParser.this.submit(event);
+            }
+        }
+
+        protected Future<Event> take() throws IOException {
+            try {
+                return service.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
+    protected static class RecordListener implements RawByteListener {
+        protected RawRecord record;
+
+        protected void begin(int type) {
+            this.record = new RawRecord(type);
+        }
+
+        @Override
+        public void handle(byte... rawBytes) {
+            if (record != null) record.add(rawBytes);
+        }
+    }
+
+    /**
+     * raw bytes of a record, kept as the chunks that were read so a large record is never joined.
+     */
+    protected static class RawRecord {
+        protected long length;
+        protected final List<byte[]> chunks = new ArrayList<>(2);
+
+        protected RawRecord(int type) {
+            add(new byte[]{(byte) type});
+        }
+
+        protected void add(byte[] chunk) {
+            chunks.add(chunk);
+            length += chunk.length;
+        }
+
+        public long length() {
+            return length;
+        }
+
+        public byte get(long index) {
+            for (byte[] chunk : chunks) {
+                if (index < chunk.length) return chunk[(int) index];
+                index -= chunk.length;
+            }
+            throw new IndexOutOfBoundsException();
+        }
+
+        public InputStream getInputStream() {
+            List<InputStream> list = new ArrayList<>(chunks.size());
+            for (byte[] chunk : chunks) list.add(new ByteArrayInputStream(chunk));
+            return new SequenceInputStream(Collections.enumeration(list));
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb;
+
+import com.moilioncircle.redis.replicator.rdb.datatype.DB;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Selects the key value pairs of a rdb before their values are decoded.
+ * <p>
+ * The filter is evaluated by {@link DefaultRdbVisitor} and its subclasses right after the key is read.
+ * The value of a rejected key is skipped with {@link com.moilioncircle.redis.replicator.rdb.skip.SkipRdbParser},
+ * without decompressing or allocating it, and no event is submitted for it.
+ * <pre>
+ * configuration.setRdbFilter(RdbFilter.and(RdbFilter.db(0), RdbFilter.glob("user:*")));
+ * </pre>
+ *
+ * @author Leon Chen
+ * @see com.moilioncircle.redis.replicator.Configuration#setRdbFilter(RdbFilter)
+ * @since 2.6.0
+ */
+public abstract class RdbFilter {
+
+    /**
+     * @param db   db of the key, null if the rdb has no select db opcode
+     * @param type rdb type of the value, e.g. {@link com.moilioncircle.redis.replicator.Constants#RDB_TYPE_STRING}
+     * @param key  raw key
+     * @return true if the key value pair is decoded
+     */
+    public abstract boolean accept(DB db, int type, byte[] key);
+
+    public static RdbFilter db(final long... dbs) {
+        return new RdbFilter() {
+            @Override
+            public boolean accept(DB db, int type, byte[] key) {
+                long number = db == null ? 0L : db.getDbNumber();
+                for (long v : dbs) if (v == number) return true;
+                return false;
+            }
+        };
+    }
+
+    public static RdbFilter type(final int... types) {
+        return new RdbFilter() {
+            @Override
+            public boolean accept(DB db, int type, byte[] key) {
+                for (int v : types) if (v == type) return true;
+                return false;
+            }
+        };
+    }
+
+    public static RdbFilter prefix(String... prefixes) {
+        final byte[][] ary = new byte[prefixes.length][];
+        for (int i = 0; i < prefixes.length; i++) ary[i] = prefixes[i].getBytes(UTF_8);
+        return new RdbFilter() {
+            @Override
+            public boolean accept(DB db, int type, byte[] key) {
+                for (byte[] prefix : ary) if (startsWith(key, prefix)) return true;
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @param pattern glob-style pattern with the same syntax as the redis KEYS command: {@code * ? [abc] [^a] [a-z] \x}
+     * @return filter
+     */
+    public static RdbFilter glob(String pattern) {
+        final byte[] ary = pattern.getBytes(UTF_8);
+        return new RdbFilter() {
+            @Override
+            public boolean accept(DB db, int type, byte[] key) {
+                return match(ary, 0, key, 0);
+            }
+        };
+    }
+
+    public static RdbFilter and(final RdbFilter... filters) {
+        return new RdbFilter() {
+            @Override
+            public boolean accept(DB db, int type, byte[] key) {
+                for (RdbFilter filter : filters) if (!filter.accept(db, type, key)) return false;
+                return true;
+            }
+        };
+    }
+
+    public static RdbFilter or(final RdbFilter... filters) {
+        return new RdbFilter() {
+            @Override
+            public boolean accept(DB db, int type, byte[] key) {
+                for (RdbFilter filter : filters) if (filter.accept(db, type, key)) return true;
+                return false;
+            }
+        };
+    }
+
+    public static RdbFilter not(final RdbFilter filter) {
+        return new RdbFilter() {
+            @Override
+            public boolean accept(DB db, int type, byte[] key) {
+                return !filter.accept(db, type, key);
+            }
+        };
+    }
+
+    private static boolean startsWith(byte[] key, byte[] prefix) {
+        if (key.length < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) if (key[i] != prefix[i]) return false;
+        return true;
+    }
+
+    /*
+     * port of stringmatchlen in redis util.c
+     */
+    private static boolean match(byte[] p, int pi, byte[] s, int si) {
+        while (pi < p.length) {
+            switch (p[pi]) {
+                case '*':
+                    while (pi + 1 < p.length && p[pi + 1] == '*') pi++;
+                    if (pi + 1 == p.length) return true;
+                    for (; si < s.length; si++) {
+                        if (match(p, pi + 1, s, si)) return true;
+                    }
+                    return false;
+                case '?':
+                    if (si >= s.length) return false;
+                    si++;
+                    break;
+                case '[':
+                    if (si >= s.length) return false;
+                    pi++;
+                    boolean not = pi < p.length && p[pi] == '^';
+                    if (not) pi++;
+                    boolean matched = false;
+                    int c = s[si] & 0xff;
+                    while (true) {
+                        if (pi >= p.length) {
+                            pi--;
+                            break;
+                        } else if (p[pi] == '\\' && pi + 1 < p.length) {
+                            pi++;
+                            if ((p[pi] & 0xff) == c) matched = true;
+                        } else if (p[pi] == ']') {
+                            break;
+                        } else if (pi + 2 < p.length && p[pi + 1] == '-') {
+                            int start = p[pi] & 0xff;
+                            int end = p[pi + 2] & 0xff;
+                            if (start > end) {
+                                int t = start;
+                                start = end;
+                                end = t;
+                            }
+                            pi += 2;
+                            if (c >= start && c <= end) matched = true;
+                        } else if ((p[pi] & 0xff) == c) {
+                            matched = true;
+                        }
+                        pi++;
+                    }
+                    if (not) matched = !matched;
+                    if (!matched) return false;
+                    si++;
+                    break;
+                case '\\':
+                    if (pi + 1 < p.length) pi++;
+                    if (si >= s.length || p[pi] != s[si]) return false;
+                    si++;
+                    break;
+                default:
+                    if (si >= s.length || p[pi] != s[si]) return false;
+                    si++;
+                    break;
+            }
+            pi++;
+        }
+        return si == s.length;
+    }
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb;
+
+import com.moilioncircle.redis.replicator.Replicator;
+import com.moilioncircle.redis.replicator.io.RedisInputStream;
+import com.moilioncircle.redis.replicator.rdb.datatype.DB;
+import com.moilioncircle.redis.replicator.rdb.datatype.ExpiredType;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
+import com.moilioncircle.redis.replicator.util.CRC64;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.moilioncircle.redis.replicator.Constants.RDB_OPCODE_AUX;
+import static com.moilioncircle.redis.replicator.Constants.RDB_OPCODE_EOF;
+import static com.moilioncircle.redis.replicator.Constants.RDB_OPCODE_EXPIRETIME;
+import static com.moilioncircle.redis.replicator.Constants.RDB_OPCODE_EXPIRETIME_MS;
+import static com.moilioncircle.redis.replicator.Constants.RDB_OPCODE_RESIZEDB;
+import static com.moilioncircle.redis.replicator.Constants.RDB_OPCODE_SELECTDB;
+
+/**
+ * Sidecar index of the keys of a local rdb file.
+ * <p>
+ * {@link #build(File, File, Replicator)} reads the rdb once, only the keys are decoded, and writes an entry of
+ * the crc64 of the key, the offset of the record, the db, the value type and the expire time for every key,
+ * sorted by the hash. {@link #get(byte[])} binary searches the index file and decodes the records at the matched
+ * offsets with {@link DefaultRdbVisitor}, so a lookup only reads a few pages of both files.
+ * <p>
+ * The replicator is only used for its configuration and module parsers, it is never opened.
+ * An index is bound to the length and the modification time of its rdb file.
+ *
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class RdbKeyIndex implements Closeable {
+
+    protected static final int MAGIC = 0x52494458; // RIDX
+    protected static final int FORMAT = 1;
+    protected static final int HEADER = 36;
+    protected static final int ENTRY = 30;
+
+    protected final File rdb;
+    protected final int version;
+    protected final long count;
+    protected final RandomAccessFile index;
+    protected final DefaultRdbVisitor visitor;
+
+    protected RdbKeyIndex(File rdb, RandomAccessFile index, Replicator replicator) throws IOException {
+        this.rdb = rdb;
+        this.index = index;
+        this.visitor = new DefaultRdbVisitor(replicator);
+        if (index.length() < HEADER || index.readInt() != MAGIC || index.readInt() != FORMAT) {
+            throw new AssertionError("not a rdb key index");
+        }
+        if (index.readLong() != rdb.length() || index.readLong() != rdb.lastModified()) {
+            throw new IOException("stale index of " + rdb);
+        }
+        this.version = index.readInt();
+        this.count = index.readLong();
+    }
+
+    public static RdbKeyIndex open(File rdb, File index, Replicator replicator) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(index, "r");
+        try {
+            return new RdbKeyIndex(rdb, file, replicator);
+        } catch (IOException | RuntimeException | Error e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    public static void build(File rdb, File index, Replicator replicator) throws IOException {
+        Entries entries = new Entries();
+        int version;
+        try (RedisInputStream in = new RedisInputStream(new FileInputStream(rdb), replicator.getConfiguration().getBufferSize())) {
+            Indexer indexer = new Indexer(replicator);
+            indexer.applyMagic(in);
+            version = indexer.applyVersion(in);
+            DB db = new DB(0);
+            loop:
+            while (true) {
+                long offset = in.position();
+                int type = indexer.applyType(in);
+                int expiredType = 0;
+                long expiredValue = 0L;
+                switch (type) {
+                    case RDB_OPCODE_AUX:
+                        indexer.applyAux(in, version);
+                        continue;
+                    case RDB_OPCODE_RESIZEDB:
+                        indexer.applyResizeDB(in, db, version);
+                        continue;
+                    case RDB_OPCODE_SELECTDB:
+                        db = indexer.applySelectDB(in, version);
+                        continue;
+                    case RDB_OPCODE_EOF:
+                        break loop;
+                    case RDB_OPCODE_EXPIRETIME:
+                        expiredType = 1;
+                        expiredValue = new BaseRdbParser(in).rdbLoadTime();
+                        type = indexer.applyType(in);
+                        break;
+                    case RDB_OPCODE_EXPIRETIME_MS:
+                        expiredType = 2;
+                        expiredValue = new BaseRdbParser(in).rdbLoadMillisecondTime();
+                        type = indexer.applyType(in);
+                        break;
+                    default:
+                        break;
+                }
+                indexer.rdbLoadObject(in, db, type, version);
+                long meta = db.getDbNumber() << 16 | type << 8 | expiredType;
+                entries.add(CRC64.crc64(indexer.key), offset, meta, expiredValue);
+            }
+        }
+        entries.sort();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(index)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeLong(rdb.length());
+            out.writeLong(rdb.lastModified());
+            out.writeInt(version);
+            out.writeLong(entries.size);
+            long[] a = entries.entries;
+            for (int i = 0; i < entries.size * 4; i += 4) {
+                out.writeLong(a[i]);
+                out.writeLong(a[i + 1]);
+                out.writeInt((int) (a[i + 2] >>> 16));
+                out.writeByte((int) (a[i + 2] >>> 8));
+                out.writeByte((int) a[i + 2]);
+                out.writeLong(a[i + 3]);
+            }
+        }
+    }
+
+    public long size() {
+        return count;
+    }
+
+    /**
+     * @param key raw key
+     * @return entries whose hash equals the hash of the key, may contain entries of other keys
+     * @throws IOException if an I/O error occurs
+     */
+    public synchronized List<Entry> lookup(byte[] key) throws IOException {
+        long hash = CRC64.crc64(key);
+        long lo = 0, hi = count - 1;
+        while (lo <= hi) {
+            long mid = (lo + hi) >>> 1;
+            index.seek(HEADER + mid * ENTRY);
+            long h = index.readLong();
+            if (h < hash) lo = mid + 1;
+            else hi = mid - 1;
+        }
+        List<Entry> r = new ArrayList<>(1);
+        for (long i = lo; i < count; i++) {
+            index.seek(HEADER + i * ENTRY);
+            if (index.readLong() != hash) break;
+            Entry entry = new Entry();
+            entry.offset = index.readLong();
+            entry.db = index.readInt();
+            entry.type = index.readUnsignedByte();
+            int expiredType = index.readUnsignedByte();
+            entry.expiredType = expiredType == 1 ? ExpiredType.SECOND : expiredType == 2 ? ExpiredType.MS : ExpiredType.NONE;
+            entry.expiredValue = index.readLong();
+            r.add(entry);
+        }
+        return r;
+    }
+
+    /**
+     * @param key raw key
+     * @return the key value pairs of the key in all dbs
+     * @throws IOException if an I/O error occurs
+     */
+    public List<KeyValuePair<?>> get(byte[] key) throws IOException {
+        List<KeyValuePair<?>> r = new ArrayList<>(1);
+        for (Entry entry : lookup(key)) {
+            KeyValuePair<?> kv = decode(entry);
+            if (kv != null && Arrays.equals(kv.getRawKey(), key)) r.add(kv);
+        }
+        return r;
+    }
+
+    /**
+     * @param db  db number
+     * @param key raw key
+     * @return the key value pair or null if the key is not in the db
+     * @throws IOException if an I/O error occurs
+     */
+    public KeyValuePair<?> get(long db, byte[] key) throws IOException {
+        for (Entry entry : lookup(key)) {
+            if (entry.db != db) continue;
+            KeyValuePair<?> kv = decode(entry);
+            if (kv != null && Arrays.equals(kv.getRawKey(), key)) return kv;
+        }
+        return null;
+    }
+
+    /**
+     * @param entry entry
+     * @return the key value pair at the offset of the entry, null if filtered by the rdb filter
+     * @throws IOException if an I/O error occurs
+     */
+    public KeyValuePair<?> decode(Entry entry) throws IOException {
+        FileInputStream file = new FileInputStream(rdb);
+        try (RedisInputStream in = new RedisInputStream(file, 8192)) {
+            file.getChannel().position(entry.offset);
+            DB db = new DB(entry.db);
+            int type = visitor.applyType(in);
+            switch (type) {
+                case RDB_OPCODE_EXPIRETIME:
+                    return (KeyValuePair<?>) visitor.applyExpireTime(in, db, version);
+                case RDB_OPCODE_EXPIRETIME_MS:
+                    return (KeyValuePair<?>) visitor.applyExpireTimeMs(in, db, version);
+                default:
+                    return visitor.rdbLoadObject(in, db, type, version);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        index.close();
+    }
+
+    public static class Entry {
+        private long offset;
+        private long db;
+        private int type;
+        private ExpiredType expiredType;
+        private long expiredValue;
+
+        /**
+         * @return offset of the record in the rdb file
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getDb() {
+            return db;
+        }
+
+        /**
+         * @return rdb type of the value
+         */
+        public int getType() {
+            return type;
+        }
+
+        public ExpiredType getExpiredType() {
+            return expiredType;
+        }
+
+        public long getExpiredValue() {
+            return expiredValue;
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{" +
+                    "offset=" + offset +
+                    ", db=" + db +
+                    ", type=" + type +
+                    ", expiredType=" + expiredType +
+                    ", expiredValue=" + expiredValue +
+                    '}';
+        }
+    }
+
+    /**
+     * decodes the keys and skips the values.
+     */
+    protected static class Indexer extends DefaultRdbVisitor {
+        protected byte[] key;
+
+        protected Indexer(Replicator replicator) {
+            super(replicator);
+        }
+
+        @Override
+        protected boolean skip(RedisInputStream in, DB db, int type, byte[] key, int version) throws IOException {
+            this.key = key;
+            skipValue(in, type, version);
+            return true;
+        }
+    }
+
+    /**
+     * entries packed in 4 longs: hash, offset, db &lt;&lt; 16 | type &lt;&lt; 8 | expired type, expired value.
+     */
+    protected static class Entries {
+        protected int size;
+        protected long[] entries = new long[1024];
+
+        protected void add(long hash, long offset, long meta, long expiredValue) {
+            if ((size + 1) * 4 > entries.length) {
+                if (entries.length >= Integer.MAX_VALUE / 2) throw new OutOfMemoryError("too many keys");
+                entries = Arrays.copyOf(entries, entries.length * 2);
+            }
+            int i = size++ * 4;
+            entries[i] = hash;
+            entries[i + 1] = offset;
+            entries[i + 2] = meta;
+            entries[i + 3] = expiredValue;
+        }
+
+        protected void sort() {
+            sort(0, size - 1);
+        }
+
+        protected void sort(int lo, int hi) {
+            while (lo < hi) {
+                long pivot = entries[((lo + hi) >>> 1) * 4];
+                int i = lo, j = hi;
+                while (i <= j) {
+                    while (entries[i * 4] < pivot) i++;
+                    while (entries[j * 4] > pivot) j--;
+                    if (i <= j) swap(i++, j--);
+                }
+                // recurse into the smaller half
+                if (j - lo < hi - i) {
+                    sort(lo, j);
+                    lo = i;
+                } else {
+                    sort(i, hi);
+                    hi = j;
+                }
+            }
+        }
+
+        protected void swap(int i, int j) {
+            for (int k = 0; k < 4; k++) {
+                long t = entries[i * 4 + k];
+                entries[i * 4 + k] = entries[j * 4 + k];
+                entries[j * 4 + k] = t;
+            }
+        }
+    }
+}
@@ -20,8 +20,10 @@ import com.moilioncircle.redis.replicator.AbstractReplicator;
 import com.moilioncircle.redis.replicator.event.Event;
 import com.moilioncircle.redis.replicator.event.PostFullSyncEvent;
 import com.moilioncircle.redis.replicator.event.PreFullSyncEvent;
+import com.moilioncircle.redis.replicator.io.RawByteListener;
 import com.moilioncircle.redis.replicator.io.RedisInputStream;
 import com.moilioncircle.redis.replicator.rdb.datatype.DB;
+import com.moilioncircle.redis.replicator.util.CRC64;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -65,6 +67,14 @@ public class RdbParser {
     protected final AbstractReplicator replicator;
     protected static final Log logger = LogFactory.getLog(RdbParser.class);
 
+    protected CRC64 crc64;
+    protected final RawByteListener crc64Listener = new RawByteListener() {
+        @Override
+        public void handle(byte... rawBytes) {
+            crc64.update(rawBytes, 0, rawBytes.length);
+        }
+    };
+
     public RdbParser(RedisInputStream in, AbstractReplicator replicator) {
         this.in = in;
         this.replicator = replicator;
@@ -128,86 +138,134 @@ public class RdbParser {
          * ----------------------------
          */
         this.replicator.submitEvent(new PreFullSyncEvent());
-        rdbVisitor.applyMagic(in);
-        int version = rdbVisitor.applyVersion(in);
-        DB db = null;
-        /*
-         * rdb
-         */
-        loop:
-        while (this.replicator.getStatus() == CONNECTED) {
-            int type = rdbVisitor.applyType(in);
-            Event event = null;
-            switch (type) {
-                case RDB_OPCODE_EXPIRETIME:
-                    event = rdbVisitor.applyExpireTime(in, db, version);
-                    break;
-                case RDB_OPCODE_EXPIRETIME_MS:
-                    event = rdbVisitor.applyExpireTimeMs(in, db, version);
-                    break;
-                case RDB_OPCODE_AUX:
-                    event = rdbVisitor.applyAux(in, version);
-                    break;
-                case RDB_OPCODE_RESIZEDB:
-                    rdbVisitor.applyResizeDB(in, db, version);
-                    break;
-                case RDB_OPCODE_SELECTDB:
-                    db = rdbVisitor.applySelectDB(in, version);
-                    break;
-                case RDB_OPCODE_EOF:
-                    long checksum = rdbVisitor.applyEof(in, version);
-                    this.replicator.submitEvent(new PostFullSyncEvent(checksum));
-                    break loop;
-                case RDB_TYPE_STRING:
-                    event = rdbVisitor.applyString(in, db, version);
-                    break;
-                case RDB_TYPE_LIST:
-                    event = rdbVisitor.applyList(in, db, version);
-                    break;
-                case RDB_TYPE_SET:
-                    event = rdbVisitor.applySet(in, db, version);
-                    break;
-                case RDB_TYPE_ZSET:
-                    event = rdbVisitor.applyZSet(in, db, version);
-                    break;
-                case RDB_TYPE_ZSET_2:
-                    event = rdbVisitor.applyZSet2(in, db, version);
-                    break;
-                case RDB_TYPE_HASH:
-                    event = rdbVisitor.applyHash(in, db, version);
-                    break;
-                case RDB_TYPE_HASH_ZIPMAP:
-                    event = rdbVisitor.applyHashZipMap(in, db, version);
-                    break;
-                case RDB_TYPE_LIST_ZIPLIST:
-                    event = rdbVisitor.applyListZipList(in, db, version);
-                    break;
-                case RDB_TYPE_SET_INTSET:
-                    event = rdbVisitor.applySetIntSet(in, db, version);
-                    break;
-                case RDB_TYPE_ZSET_ZIPLIST:
-                    event = rdbVisitor.applyZSetZipList(in, db, version);
-                    break;
-                case RDB_TYPE_HASH_ZIPLIST:
-                    event = rdbVisitor.applyHashZipList(in, db, version);
-                    break;
-                case RDB_TYPE_LIST_QUICKLIST:
-                    event = rdbVisitor.applyListQuickList(in, db, version);
-                    break;
-                case RDB_TYPE_MODULE:
-                    event = rdbVisitor.applyModule(in, db, version);
-                    break;
-                case RDB_TYPE_MODULE_2:
-                    event = rdbVisitor.applyModule2(in, db, version);
-                    break;
-                default:
-                    throw new AssertionError("unexpected value type:" + type + ", check your ModuleParser or ValueIterableRdbVisitor.");
+        beginChecksum();
+        try {
+            rdbVisitor.applyMagic(in);
+            int version = rdbVisitor.applyVersion(in);
+            DB db = null;
+            /*
+             * rdb
+             */
+            loop:
+            while (this.replicator.getStatus() == CONNECTED) {
+                int type = rdbVisitor.applyType(in);
+                Event event = null;
+                switch (type) {
+                    case RDB_OPCODE_AUX:
+                        event = rdbVisitor.applyAux(in, version);
+                        break;
+                    case RDB_OPCODE_RESIZEDB:
+                        rdbVisitor.applyResizeDB(in, db, version);
+                        break;
+                    case RDB_OPCODE_SELECTDB:
+                        db = rdbVisitor.applySelectDB(in, version);
+                        break;
+                    case RDB_OPCODE_EOF:
+                        endChecksum();
+                        long checksum = rdbVisitor.applyEof(in, version);
+                        verifyChecksum(checksum, version);
+                        this.replicator.submitEvent(new PostFullSyncEvent(checksum));
+                        break loop;
+                    default:
+                        event = applyRecord(rdbVisitor, in, db, type, version);
+                        break;
+                }
+                if (event != null) {
+                    if (replicator.verbose() && logger.isDebugEnabled()) logger.debug(event);
+                    this.replicator.submitEvent(event);
+                }
+                // off-heap values owned by the event are detached, the replicator releases them once consumed
+                in.releaseOffHeap();
             }
-            if (event == null) continue;
-            if (replicator.verbose() && logger.isDebugEnabled()) logger.debug(event);
-            this.replicator.submitEvent(event);
+        } finally {
+            endChecksum();
         }
         return in.total();
     }
+
+    /**
+     * start to compute the crc64 of the raw bytes if {@link com.moilioncircle.redis.replicator.Configuration#isVerifyRdbChecksum()}
+     *
+     * @since 2.6.0
+     */
+    protected void beginChecksum() {
+        if (!replicator.getConfiguration().isVerifyRdbChecksum()) return;
+        crc64 = new CRC64();
+        replicator.addRawByteListener(crc64Listener);
+    }
+
+    /**
+     * stop to compute the crc64, must be called after the eof opcode and before the checksum is read
+     *
+     * @since 2.6.0
+     */
+    protected void endChecksum() {
+        if (crc64 != null) replicator.removeRawByteListener(crc64Listener);
+    }
+
+    /**
+     * @param checksum checksum at the end of the rdb, 0 means the checksum is disabled by the server
+     * @param version  rdb version
+     * @since 2.6.0
+     */
+    protected void verifyChecksum(long checksum, int version) {
+        CRC64 crc64 = this.crc64;
+        this.crc64 = null;
+        if (crc64 == null || version < 5 || checksum == 0L) return;
+        if (crc64.getValue() != checksum) {
+            throw new AssertionError("rdb checksum mismatch, expect " + Long.toHexString(checksum) + " but " + Long.toHexString(crc64.getValue()));
+        }
+    }
+
+    /**
+     * RECORD = [EXPIRED], KEY, VALUE;
+     *
+     * @param visitor rdb visitor
+     * @param in      input stream
+     * @param db      current db
+     * @param type    expired opcode or value type
+     * @param version rdb version
+     * @return event or null
+     * @throws IOException when read timeout
+     * @since 2.6.0
+     */
+    protected Event applyRecord(RdbVisitor visitor, RedisInputStream in, DB db, int type, int version) throws IOException {
+        switch (type) {
+            case RDB_OPCODE_EXPIRETIME:
+                return visitor.applyExpireTime(in, db, version);
+            case RDB_OPCODE_EXPIRETIME_MS:
+                return visitor.applyExpireTimeMs(in, db, version);
+            case RDB_TYPE_STRING:
+                return visitor.applyString(in, db, version);
+            case RDB_TYPE_LIST:
+                return visitor.applyList(in, db, version);
+            case RDB_TYPE_SET:
+                return visitor.applySet(in, db, version);
+            case RDB_TYPE_ZSET:
+                return visitor.applyZSet(in, db, version);
+            case RDB_TYPE_ZSET_2:
+                return visitor.applyZSet2(in, db, version);
+            case RDB_TYPE_HASH:
+                return visitor.applyHash(in, db, version);
+            case RDB_TYPE_HASH_ZIPMAP:
+                return visitor.applyHashZipMap(in, db, version);
+            case RDB_TYPE_LIST_ZIPLIST:
+                return visitor.applyListZipList(in, db, version);
+            case RDB_TYPE_SET_INTSET:
+                return visitor.applySetIntSet(in, db, version);
+            case RDB_TYPE_ZSET_ZIPLIST:
+                return visitor.applyZSetZipList(in, db, version);
+            case RDB_TYPE_HASH_ZIPLIST:
+                return visitor.applyHashZipList(in, db, version);
+            case RDB_TYPE_LIST_QUICKLIST:
+                return visitor.applyListQuickList(in, db, version);
+            case RDB_TYPE_MODULE:
+                return visitor.applyModule(in, db, version);
+            case RDB_TYPE_MODULE_2:
+                return visitor.applyModule2(in, db, version);
+            default:
+                throw new AssertionError("unexpected value type:" + type + ", check your ModuleParser or ValueIterableRdbVisitor.");
+        }
+    }
 }
 
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb;
+
+import com.moilioncircle.redis.replicator.Replicator;
+import com.moilioncircle.redis.replicator.UncheckedIOException;
+import com.moilioncircle.redis.replicator.io.RedisInputStream;
+import com.moilioncircle.redis.replicator.rdb.datatype.DB;
+import com.moilioncircle.redis.replicator.util.CRC16;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Splits a rdb into N rdbs by the cluster slot of the keys.
+ * <p>
+ * The records are framed as in {@link RdbTransformer} and the raw bytes of every record are routed to the
+ * output of its slot ({@link CRC16#slot(byte[])}), AUX, SELECTDB and RESIZEDB go to all outputs. Every output
+ * has its own {@link RdbWriter} in its own thread, the reading thread only copies the bytes into chunks of
+ * {@link com.moilioncircle.redis.replicator.Configuration#getBufferSize()} bytes and hands them over, so the
+ * checksums and the disk writes of the outputs run in parallel. Every output is a complete rdb with the
+ * version of the source, its own EOF opcode and crc64 checksum.
+ * <p>
+ * By default output i owns the i-th of N contiguous and even slot ranges, override {@link #route(DB, int, byte[])}
+ * for another layout.
+ *
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class RdbSplitter extends RdbTransformer {
+
+    protected static final Runnable STOP = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    protected Lane[] lanes;
+    protected volatile Throwable error;
+
+    public RdbSplitter(Replicator replicator) {
+        this(replicator, new Rule() {
+            @Override
+            public byte[] apply(DB db, int type, byte[] key) {
+                return key;
+            }
+        });
+    }
+
+    /**
+     * @param replicator replicator
+     * @param rule       applied before the key is routed, a renamed key is routed by its new slot
+     */
+    public RdbSplitter(Replicator replicator, Rule rule) {
+        super(replicator, rule);
+    }
+
+    public void split(File src, File... dests) throws IOException {
+        WritableByteChannel[] channels = new WritableByteChannel[dests.length];
+        try (InputStream in = new FileInputStream(src)) {
+            for (int i = 0; i < dests.length; i++) channels[i] = new FileOutputStream(dests[i]).getChannel();
+            split(in, channels);
+        } catch (IOException | RuntimeException | Error e) {
+            for (WritableByteChannel channel : channels) {
+                if (channel == null) continue;
+                try {
+                    channel.close();
+                } catch (IOException ignore) {
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @param src   source rdb
+     * @param dests outputs, closed after their EOF opcode and checksum are written
+     * @throws IOException if an I/O error occurs
+     */
+    public void split(InputStream src, WritableByteChannel... dests) throws IOException {
+        if (dests.length == 0) throw new IllegalArgumentException("no output");
+        RedisInputStream in = input(src);
+        Copier copier = new Copier(replicator);
+        copier.applyMagic(in);
+        int version = copier.applyVersion(in);
+        int size = replicator.getConfiguration().getBufferSize();
+        this.error = null;
+        this.lanes = new Lane[dests.length];
+        for (int i = 0; i < dests.length; i++) {
+            lanes[i] = new Lane(i, new RdbWriter(dests[i], version, size, false), size);
+        }
+        boolean success = false;
+        try {
+            copy(copier, in, version);
+            success = true;
+        } finally {
+            for (Lane lane : lanes) lane.close(success);
+            this.lanes = null;
+        }
+        checkError();
+    }
+
+    @Override
+    protected int route(DB db, int type, byte[] key) {
+        return (int) ((long) CRC16.slot(key) * lanes.length / CRC16.SLOTS);
+    }
+
+    @Override
+    protected void write(int output, byte[] bytes, int offset, int length) throws IOException {
+        checkError();
+        lanes[output].write(bytes, offset, length);
+    }
+
+    @Override
+    protected void writeKey(final int output, final byte[] key) throws IOException {
+        checkError();
+        final Lane lane = lanes[output];
+        lane.flush();
+        lane.submit(new Runnable() {
+            @Override
+            public void run() {
+                lane.put(key);
+            }
+        });
+    }
+
+    @Override
+    protected void writeAll(byte[] bytes, int offset, int length) throws IOException {
+        checkError();
+        for (Lane lane : lanes) lane.write(bytes, offset, length);
+    }
+
+    protected void checkError() throws IOException {
+        Throwable e = this.error;
+        if (e == null) return;
+        if (e instanceof IOException) throw (IOException) e;
+        if (e instanceof RuntimeException) throw (RuntimeException) e;
+        if (e instanceof Error) throw (Error) e;
+        throw new AssertionError(e);
+    }
+
+    protected class Lane implements Runnable {
+        protected final RdbWriter writer;
+        protected final Thread thread;
+        protected final BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(16);
+        // chunks written by the lane, reused by the reading thread
+        protected final BlockingQueue<byte[]> free = new ArrayBlockingQueue<>(32);
+
+        protected int length;
+        protected byte[] chunk;
+
+        protected Lane(int index, RdbWriter writer, int size) {
+            this.writer = writer;
+            this.chunk = new byte[size];
+            this.thread = new Thread(this, "rdb-split-" + index);
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        protected void write(byte[] bytes, int offset, int length) throws InterruptedIOException {
+            while (length > 0) {
+                int n = Math.min(length, chunk.length - this.length);
+                System.arraycopy(bytes, offset, chunk, this.length, n);
+                this.length += n;
+                offset += n;
+                length -= n;
+                if (this.length == chunk.length) flush();
+            }
+        }
+
+        protected void flush() throws InterruptedIOException {
+            if (length == 0) return;
+            final byte[] bytes = chunk;
+            final int length = this.length;
+            byte[] next = free.poll();
+            this.chunk = next != null ? next : new byte[bytes.length];
+            this.length = 0;
+            submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        writer.put(bytes, 0, length);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    free.offer(bytes);
+                }
+            });
+        }
+
+        protected void put(byte[] key) {
+            try {
+                writer.putString(key);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        protected void submit(Runnable task) throws InterruptedIOException {
+            try {
+                queue.put(task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+
+        /**
+         * @param success true to write the EOF opcode and the checksum before the output is closed
+         */
+        protected void close(final boolean success) {
+            try {
+                if (success) flush();
+                submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            if (success && error == null) writer.close();
+                            else writer.channel.close();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                });
+                submit(STOP);
+                thread.join();
+            } catch (InterruptedIOException | InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (error == null) error = new InterruptedIOException();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                writer.header();
+            } catch (IOException e) {
+                if (error == null) error = e;
+            }
+            while (true) {
+                Runnable task;
+                try {
+                    task = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (task == STOP) return;
+                try {
+                    task.run();
+                } catch (UncheckedIOException e) {
+                    if (error == null) error = e.getCause();
+                } catch (Throwable e) {
+                    if (error == null) error = e;
+                }
+            }
+        }
+    }
+}
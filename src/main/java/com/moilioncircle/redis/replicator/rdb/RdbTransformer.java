@@ -0,0 +1,340 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb;
+
+import com.moilioncircle.redis.replicator.Replicator;
+import com.moilioncircle.redis.replicator.UncheckedIOException;
+import com.moilioncircle.redis.replicator.io.RawByteListener;
+import com.moilioncircle.redis.replicator.io.RedisInputStream;
+import com.moilioncircle.redis.replicator.rdb.datatype.DB;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.moilioncircle.redis.replicator.Constants.RDB_OPCODE_AUX;
+import static com.moilioncircle.redis.replicator.Constants.RDB_OPCODE_EOF;
+import static com.moilioncircle.redis.replicator.Constants.RDB_OPCODE_EXPIRETIME;
+import static com.moilioncircle.redis.replicator.Constants.RDB_OPCODE_EXPIRETIME_MS;
+import static com.moilioncircle.redis.replicator.Constants.RDB_OPCODE_RESIZEDB;
+import static com.moilioncircle.redis.replicator.Constants.RDB_OPCODE_SELECTDB;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Rewrites a rdb into another rdb without decoding the values.
+ * <p>
+ * Only the keys are decoded, the values are skipped with {@link com.moilioncircle.redis.replicator.rdb.skip.SkipRdbParser}
+ * and the consumed bytes are copied to a {@link RdbWriter} as they are, so ziplists, intsets and quicklists are
+ * never expanded. The {@link Rule} decides for every key whether the record is copied, dropped or copied with
+ * another key. AUX fields, SELECTDB and RESIZEDB are copied, the db sizes of RESIZEDB are hints and are not
+ * adjusted for the dropped keys. The crc64 trailer is computed by the writer over the written bytes.
+ * <pre>
+ * new RdbTransformer(replicator, RdbTransformer.Rule.drop(RdbFilter.prefix("session:"))).transform(src, dest);
+ * </pre>
+ * The replicator is only used for its configuration and module parsers, it is never opened.
+ *
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class RdbTransformer {
+
+    protected final Rule rule;
+    protected final Replicator replicator;
+
+    protected long copiedKeys;
+    protected long renamedKeys;
+    protected long droppedKeys;
+    protected RdbWriter writer;
+
+    public RdbTransformer(Replicator replicator, Rule rule) {
+        this.rule = rule;
+        this.replicator = replicator;
+    }
+
+    public void transform(File src, File dest) throws IOException {
+        try (InputStream in = new FileInputStream(src); FileOutputStream out = new FileOutputStream(dest)) {
+            transform(in, out.getChannel());
+        }
+    }
+
+    /**
+     * @param src  source rdb
+     * @param dest destination, closed after the EOF opcode and the checksum are written
+     * @throws IOException if an I/O error occurs
+     */
+    public void transform(InputStream src, WritableByteChannel dest) throws IOException {
+        RedisInputStream in = input(src);
+        Copier copier = new Copier(replicator);
+        copier.applyMagic(in);
+        int version = copier.applyVersion(in);
+        try (RdbWriter writer = new RdbWriter(dest, version, replicator.getConfiguration().getBufferSize(), false)) {
+            writer.header();
+            this.writer = writer;
+            copy(copier, in, version);
+        } finally {
+            this.writer = null;
+        }
+    }
+
+    protected RedisInputStream input(InputStream src) {
+        if (src instanceof RedisInputStream) return (RedisInputStream) src;
+        return new RedisInputStream(src, replicator.getConfiguration().getBufferSize());
+    }
+
+    /**
+     * copies the records after the version of the rdb, except the EOF opcode and the checksum.
+     */
+    protected void copy(Copier copier, RedisInputStream in, int version) throws IOException {
+        copier.in = in;
+        in.setRawByteListeners(Collections.<RawByteListener>singletonList(copier));
+        try {
+            records(copier, in, version);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            in.setRawByteListeners(null);
+        }
+    }
+
+    /**
+     * @param db   db of the key
+     * @param type rdb type of the value
+     * @param key  key to write
+     * @return index of the output of the record
+     */
+    protected int route(DB db, int type, byte[] key) {
+        return 0;
+    }
+
+    protected void write(int output, byte[] bytes, int offset, int length) throws IOException {
+        writer.put(bytes, offset, length);
+    }
+
+    protected void writeKey(int output, byte[] key) throws IOException {
+        writer.putString(key);
+    }
+
+    /**
+     * write AUX, SELECTDB and RESIZEDB to all outputs
+     */
+    protected void writeAll(byte[] bytes, int offset, int length) throws IOException {
+        writer.put(bytes, offset, length);
+    }
+
+    protected void records(Copier copier, RedisInputStream in, int version) throws IOException {
+        DB db = new DB(0);
+        loop:
+        while (true) {
+            copier.begin();
+            int type = copier.applyType(in);
+            switch (type) {
+                case RDB_OPCODE_AUX:
+                    copier.applyAux(in, version);
+                    continue;
+                case RDB_OPCODE_RESIZEDB:
+                    copier.applyResizeDB(in, db, version);
+                    continue;
+                case RDB_OPCODE_SELECTDB:
+                    db = copier.applySelectDB(in, version);
+                    continue;
+                case RDB_OPCODE_EOF:
+                    // the writer appends its own EOF and checksum
+                    in.flushRawBytes();
+                    copier.mode = Copier.DROP;
+                    break loop;
+                case RDB_OPCODE_EXPIRETIME:
+                    new BaseRdbParser(in).rdbLoadTime();
+                    type = copier.applyType(in);
+                    break;
+                case RDB_OPCODE_EXPIRETIME_MS:
+                    new BaseRdbParser(in).rdbLoadMillisecondTime();
+                    type = copier.applyType(in);
+                    break;
+                default:
+                    break;
+            }
+            copier.key = in.position();
+            copier.rdbLoadObject(in, db, type, version);
+        }
+    }
+
+    /**
+     * @return keys copied as they are
+     */
+    public long getCopiedKeys() {
+        return copiedKeys;
+    }
+
+    /**
+     * @return keys copied with another key
+     */
+    public long getRenamedKeys() {
+        return renamedKeys;
+    }
+
+    public long getDroppedKeys() {
+        return droppedKeys;
+    }
+
+    /**
+     * Decides what to do with a record after its key is read.
+     */
+    public static abstract class Rule {
+
+        /**
+         * @param db   db of the key
+         * @param type rdb type of the value, e.g. {@link com.moilioncircle.redis.replicator.Constants#RDB_TYPE_STRING}
+         * @param key  raw key
+         * @return the key itself to copy the record as is, another key to rename it or null to drop it
+         */
+        public abstract byte[] apply(DB db, int type, byte[] key);
+
+        /**
+         * @param filter the keys to drop
+         * @return rule
+         */
+        public static Rule drop(final RdbFilter filter) {
+            return new Rule() {
+                @Override
+                public byte[] apply(DB db, int type, byte[] key) {
+                    return filter.accept(db, type, key) ? null : key;
+                }
+            };
+        }
+
+        /**
+         * @param from old prefix
+         * @param to   new prefix
+         * @return rule that replaces the prefix of the keys that start with {@code from}
+         */
+        public static Rule rename(String from, String to) {
+            final byte[] f = from.getBytes(UTF_8);
+            final byte[] t = to.getBytes(UTF_8);
+            return new Rule() {
+                @Override
+                public byte[] apply(DB db, int type, byte[] key) {
+                    if (key.length < f.length) return key;
+                    for (int i = 0; i < f.length; i++) if (key[i] != f[i]) return key;
+                    byte[] r = new byte[key.length - f.length + t.length];
+                    System.arraycopy(t, 0, r, 0, t.length);
+                    System.arraycopy(key, f.length, r, t.length, key.length - f.length);
+                    return r;
+                }
+            };
+        }
+
+        /**
+         * @param rules rules applied in order to the key returned by the previous rule
+         * @return rule
+         */
+        public static Rule chain(final Rule... rules) {
+            return new Rule() {
+                @Override
+                public byte[] apply(DB db, int type, byte[] key) {
+                    byte[] r = key;
+                    for (Rule rule : rules) {
+                        byte[] next = rule.apply(db, type, r);
+                        if (next == null) return null;
+                        // keep the identity of the original key if no rule renamed it
+                        if (next != r) r = next;
+                    }
+                    return r;
+                }
+            };
+        }
+    }
+
+    /**
+     * buffers the bytes of the current record until its key is decided, then copies or drops the rest of it.
+     */
+    protected class Copier extends DefaultRdbVisitor implements RawByteListener {
+        protected static final int PENDING = 0;
+        protected static final int COPY = 1;
+        protected static final int DROP = 2;
+
+        protected int mode;
+        protected long key;
+        protected long start;
+        protected int output;
+        protected RedisInputStream in;
+        protected int length;
+        protected byte[] pending = new byte[256];
+
+        protected Copier(Replicator replicator) {
+            super(replicator);
+        }
+
+        protected void begin() throws IOException {
+            in.flushRawBytes();
+            if (mode == PENDING) writeAll(pending, 0, length);
+            length = 0;
+            mode = PENDING;
+            start = in.position();
+        }
+
+        @Override
+        public void handle(byte... rawBytes) {
+            switch (mode) {
+                case PENDING:
+                    if (length + rawBytes.length > pending.length) {
+                        pending = Arrays.copyOf(pending, Math.max(pending.length * 2, length + rawBytes.length));
+                    }
+                    System.arraycopy(rawBytes, 0, pending, length, rawBytes.length);
+                    length += rawBytes.length;
+                    break;
+                case COPY:
+                    try {
+                        write(output, rawBytes, 0, rawBytes.length);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        protected boolean skip(RedisInputStream in, DB db, int type, byte[] key, int version) throws IOException {
+            in.flushRawBytes();
+            byte[] r = rule.apply(db, type, key);
+            if (r == null) {
+                droppedKeys++;
+                mode = DROP;
+            } else if (r == key) {
+                copiedKeys++;
+                output = route(db, type, r);
+                write(output, pending, 0, length);
+                mode = COPY;
+            } else {
+                renamedKeys++;
+                output = route(db, type, r);
+                // expire time and type as they are, then the new key
+                write(output, pending, 0, (int) (this.key - start));
+                writeKey(output, r);
+                mode = COPY;
+            }
+            skipValue(in, type, version);
+            return true;
+        }
+    }
+}
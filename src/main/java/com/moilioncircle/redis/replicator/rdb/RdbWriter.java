@@ -0,0 +1,390 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb;
+
+import com.moilioncircle.redis.replicator.rdb.datatype.DB;
+import com.moilioncircle.redis.replicator.rdb.datatype.ExpiredType;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyStringValueHash;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyStringValueList;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyStringValuePackedZSet;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyStringValueSet;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyStringValueString;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyStringValueZSet;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
+import com.moilioncircle.redis.replicator.rdb.datatype.PackedZSet;
+import com.moilioncircle.redis.replicator.rdb.datatype.ZSetEntry;
+import com.moilioncircle.redis.replicator.rdb.dump.datatype.DumpKeyValuePair;
+import com.moilioncircle.redis.replicator.util.CRC64;
+import com.moilioncircle.redis.replicator.util.Lzf;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.moilioncircle.redis.replicator.Constants.RDB_32BITLEN;
+import static com.moilioncircle.redis.replicator.Constants.RDB_64BITLEN;
+import static com.moilioncircle.redis.replicator.Constants.RDB_ENCVAL;
+import static com.moilioncircle.redis.replicator.Constants.RDB_ENC_INT16;
+import static com.moilioncircle.redis.replicator.Constants.RDB_ENC_INT32;
+import static com.moilioncircle.redis.replicator.Constants.RDB_ENC_INT8;
+import static com.moilioncircle.redis.replicator.Constants.RDB_ENC_LZF;
+import static com.moilioncircle.redis.replicator.Constants.RDB_OPCODE_AUX;
+import static com.moilioncircle.redis.replicator.Constants.RDB_OPCODE_EOF;
+import static com.moilioncircle.redis.replicator.Constants.RDB_OPCODE_EXPIRETIME;
+import static com.moilioncircle.redis.replicator.Constants.RDB_OPCODE_EXPIRETIME_MS;
+import static com.moilioncircle.redis.replicator.Constants.RDB_OPCODE_RESIZEDB;
+import static com.moilioncircle.redis.replicator.Constants.RDB_OPCODE_SELECTDB;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_HASH;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_LIST;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_SET;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_STRING;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_ZSET;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_ZSET_2;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Serializes key value pairs into a rdb.
+ * <p>
+ * The header is written before the first opcode, a SELECTDB is written whenever the db of a key value pair
+ * changes and {@link #close()} writes the EOF opcode and the crc64 checksum. The value of a
+ * {@link DumpKeyValuePair} is copied as is, other values are written as plain strings, lists, sets, sorted sets
+ * and hashes from their raw values. Strings longer than 20 bytes are compressed with LZF if enabled.
+ * Modules and chunked key value pairs are not supported.
+ * <p>
+ * The output is buffered in a direct {@link ByteBuffer}, this class is not thread safe.
+ *
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class RdbWriter implements Closeable {
+
+    protected final int version;
+    protected final boolean compress;
+    protected final ByteBuffer buffer;
+    protected final WritableByteChannel channel;
+
+    protected long crc;
+    protected long db = -1;
+    protected boolean header;
+    protected boolean eof;
+    protected byte[] lzf;
+
+    public RdbWriter(OutputStream out) {
+        this(Channels.newChannel(out));
+    }
+
+    public RdbWriter(WritableByteChannel channel) {
+        this(channel, 8, 64 * 1024, false);
+    }
+
+    /**
+     * @param channel    output
+     * @param version    rdb version, the dump version of {@link DumpKeyValuePair} must not be greater
+     * @param bufferSize size of the output buffer
+     * @param compress   true to compress strings with LZF
+     */
+    public RdbWriter(WritableByteChannel channel, int version, int bufferSize, boolean compress) {
+        this.channel = channel;
+        this.version = version;
+        this.compress = compress;
+        this.buffer = ByteBuffer.allocateDirect(Math.max(bufferSize, 64));
+    }
+
+    public void writeAux(String key, String value) throws IOException {
+        writeAux(key.getBytes(UTF_8), value.getBytes(UTF_8));
+    }
+
+    public void writeAux(byte[] key, byte[] value) throws IOException {
+        header();
+        put(RDB_OPCODE_AUX);
+        putString(key);
+        putString(value);
+    }
+
+    public void writeSelectDB(long db) throws IOException {
+        header();
+        put(RDB_OPCODE_SELECTDB);
+        putLen(db);
+        this.db = db;
+    }
+
+    public void writeResizeDB(long dbsize, long expires) throws IOException {
+        header();
+        put(RDB_OPCODE_RESIZEDB);
+        putLen(dbsize);
+        putLen(expires);
+    }
+
+    public void write(KeyValuePair<?> kv) throws IOException {
+        header();
+        DB db = kv.getDb();
+        long number = db == null ? 0L : db.getDbNumber();
+        if (number != this.db) writeSelectDB(number);
+        ExpiredType type = kv.getExpiredType();
+        if (type == ExpiredType.MS) {
+            put(RDB_OPCODE_EXPIRETIME_MS);
+            putLong(kv.getExpiredValue(), 8);
+        } else if (type == ExpiredType.SECOND) {
+            put(RDB_OPCODE_EXPIRETIME);
+            putLong(kv.getExpiredValue(), 4);
+        }
+        byte[] key = kv.getRawKey() != null ? kv.getRawKey() : kv.getKey().getBytes(UTF_8);
+        if (kv instanceof DumpKeyValuePair) {
+            // type | payload | version 2 bytes | crc64 8 bytes
+            byte[] value = ((DumpKeyValuePair) kv).getValue();
+            put(value[0] & 0xff);
+            putString(key);
+            put(value, 1, value.length - 11);
+        } else if (kv instanceof KeyStringValueString) {
+            KeyStringValueString o = (KeyStringValueString) kv;
+            put(RDB_TYPE_STRING);
+            putString(key);
+            putString(o.getRawValue() != null ? o.getRawValue() : o.getValue().getBytes(UTF_8));
+        } else if (kv instanceof KeyStringValueList) {
+            KeyStringValueList o = (KeyStringValueList) kv;
+            put(RDB_TYPE_LIST);
+            putString(key);
+            List<byte[]> raw = o.getRawValue();
+            if (raw != null) putStrings(raw);
+            else putStrings(o.getValue());
+        } else if (kv instanceof KeyStringValueSet) {
+            KeyStringValueSet o = (KeyStringValueSet) kv;
+            put(RDB_TYPE_SET);
+            putString(key);
+            Set<byte[]> raw = o.getRawValue();
+            if (raw != null) putStrings(raw);
+            else putStrings(o.getValue());
+        } else if (kv instanceof KeyStringValuePackedZSet) {
+            PackedZSet zset = ((KeyStringValuePackedZSet) kv).getPackedValue();
+            put(version >= 8 ? RDB_TYPE_ZSET_2 : RDB_TYPE_ZSET);
+            putString(key);
+            putLen(zset.size());
+            for (int i = 0; i < zset.size(); i++) {
+                putString(zset.arena(), zset.memberOffset(i), zset.memberLength(i));
+                putScore(zset.score(i));
+            }
+        } else if (kv instanceof KeyStringValueZSet) {
+            Set<ZSetEntry> zset = ((KeyStringValueZSet) kv).getValue();
+            put(version >= 8 ? RDB_TYPE_ZSET_2 : RDB_TYPE_ZSET);
+            putString(key);
+            putLen(zset.size());
+            for (ZSetEntry entry : zset) {
+                putString(entry.getRawElement() != null ? entry.getRawElement() : entry.getElement().getBytes(UTF_8));
+                putScore(entry.getScore());
+            }
+        } else if (kv instanceof KeyStringValueHash) {
+            KeyStringValueHash o = (KeyStringValueHash) kv;
+            put(RDB_TYPE_HASH);
+            putString(key);
+            Map<byte[], byte[]> raw = o.getRawValue();
+            if (raw != null) {
+                putLen(raw.size());
+                for (Map.Entry<byte[], byte[]> entry : raw.entrySet()) {
+                    putString(entry.getKey());
+                    putString(entry.getValue());
+                }
+            } else {
+                Map<String, String> map = o.getValue();
+                putLen(map.size());
+                for (Map.Entry<String, String> entry : map.entrySet()) {
+                    putString(entry.getKey().getBytes(UTF_8));
+                    putString(entry.getValue().getBytes(UTF_8));
+                }
+            }
+        } else {
+            throw new UnsupportedOperationException("can not write " + kv.getClass().getSimpleName() + ", use DumpRdbVisitor instead.");
+        }
+    }
+
+    /**
+     * write the EOF opcode and the checksum, then flush
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeEof() throws IOException {
+        if (eof) return;
+        header();
+        put(RDB_OPCODE_EOF);
+        drain();
+        if (version >= 5) {
+            buffer.put(CRC64.longToByteArray(crc));
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+        eof = true;
+    }
+
+    public void flush() throws IOException {
+        drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            writeEof();
+        } finally {
+            channel.close();
+        }
+    }
+
+    protected void header() throws IOException {
+        if (header) return;
+        header = true;
+        put(String.format("REDIS%04d", version).getBytes(UTF_8));
+    }
+
+    protected void put(int b) throws IOException {
+        if (!buffer.hasRemaining()) drain();
+        buffer.put((byte) b);
+    }
+
+    protected void put(byte[] bytes) throws IOException {
+        put(bytes, 0, bytes.length);
+    }
+
+    protected void put(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!buffer.hasRemaining()) drain();
+            int n = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, n);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * @param value value
+     * @param n     bytes in little endian
+     * @throws IOException if an I/O error occurs
+     */
+    protected void putLong(long value, int n) throws IOException {
+        for (int i = 0; i < n; i++) put((int) (value >>> (i * 8)));
+    }
+
+    protected void putLen(long len) throws IOException {
+        if (len < (1 << 6)) {
+            put((int) len);
+        } else if (len < (1 << 14)) {
+            put((int) (len >> 8) | 0x40);
+            put((int) len);
+        } else if (len <= 0xffffffffL) {
+            put(RDB_32BITLEN);
+            for (int i = 3; i >= 0; i--) put((int) (len >>> (i * 8)));
+        } else {
+            put(RDB_64BITLEN);
+            for (int i = 7; i >= 0; i--) put((int) (len >>> (i * 8)));
+        }
+    }
+
+    protected void putStrings(Collection<?> values) throws IOException {
+        putLen(values.size());
+        for (Object value : values) {
+            putString(value instanceof byte[] ? (byte[]) value : ((String) value).getBytes(UTF_8));
+        }
+    }
+
+    protected void putString(byte[] bytes) throws IOException {
+        putString(bytes, 0, bytes.length);
+    }
+
+    protected void putString(byte[] bytes, int offset, int length) throws IOException {
+        if (length <= 11 && putInteger(bytes, offset, length)) return;
+        if (compress && length > 20 && putLzf(bytes, offset, length)) return;
+        putLen(length);
+        put(bytes, offset, length);
+    }
+
+    /**
+     * the integer encoding of redis, only if the string is the canonical form of a 32 bits integer
+     */
+    protected boolean putInteger(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0 || length > 11) return false;
+        long value = 0;
+        boolean negative = bytes[offset] == '-';
+        int i = negative ? offset + 1 : offset;
+        int end = offset + length;
+        if (i == end || (bytes[i] == '0' && end - i > 1)) return false;
+        for (; i < end; i++) {
+            int c = bytes[i];
+            if (c < '0' || c > '9') return false;
+            value = value * 10 + (c - '0');
+        }
+        if (negative) {
+            if (value == 0) return false;
+            value = -value;
+        }
+        if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            put((RDB_ENCVAL << 6) | RDB_ENC_INT8);
+            putLong(value, 1);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            put((RDB_ENCVAL << 6) | RDB_ENC_INT16);
+            putLong(value, 2);
+        } else if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            put((RDB_ENCVAL << 6) | RDB_ENC_INT32);
+            putLong(value, 4);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    protected boolean putLzf(byte[] bytes, int offset, int length) throws IOException {
+        byte[] in = bytes;
+        if (offset != 0) {
+            in = new byte[length];
+            System.arraycopy(bytes, offset, in, 0, length);
+        }
+        int max = length - 4;
+        if (lzf == null || lzf.length < max) lzf = new byte[Math.max(max, 1024)];
+        int clen = Lzf.encode(in, length, lzf, max);
+        if (clen == 0) return false;
+        put((RDB_ENCVAL << 6) | RDB_ENC_LZF);
+        putLen(clen);
+        putLen(length);
+        put(lzf, 0, clen);
+        return true;
+    }
+
+    protected void putScore(double score) throws IOException {
+        if (version >= 8) {
+            putLong(Double.doubleToLongBits(score), 8);
+        } else if (Double.isNaN(score)) {
+            put(253);
+        } else if (Double.isInfinite(score)) {
+            put(score > 0 ? 254 : 255);
+        } else {
+            byte[] bytes = (score == Math.rint(score) && Math.abs(score) < 1e17 ? String.valueOf((long) score) : String.valueOf(score)).getBytes(UTF_8);
+            put(bytes.length);
+            put(bytes);
+        }
+    }
+
+    protected void drain() throws IOException {
+        buffer.flip();
+        crc = CRC64.crc64(buffer.duplicate(), crc);
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+}
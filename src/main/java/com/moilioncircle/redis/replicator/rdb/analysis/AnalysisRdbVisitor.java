@@ -0,0 +1,348 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb.analysis;
+
+import com.moilioncircle.redis.replicator.Replicator;
+import com.moilioncircle.redis.replicator.event.Event;
+import com.moilioncircle.redis.replicator.io.RedisInputStream;
+import com.moilioncircle.redis.replicator.rdb.BaseRdbParser;
+import com.moilioncircle.redis.replicator.rdb.datatype.DB;
+import com.moilioncircle.redis.replicator.rdb.skip.SkipRdbParser;
+import com.moilioncircle.redis.replicator.rdb.skip.SkipRdbVisitor;
+import com.moilioncircle.redis.replicator.util.ByteArray;
+import com.moilioncircle.redis.replicator.util.IntSetIterator;
+import com.moilioncircle.redis.replicator.util.ZipListIterator;
+
+import java.io.IOException;
+
+import static com.moilioncircle.redis.replicator.Constants.RDB_ENC_INT16;
+import static com.moilioncircle.redis.replicator.Constants.RDB_ENC_INT32;
+import static com.moilioncircle.redis.replicator.Constants.RDB_ENC_INT8;
+import static com.moilioncircle.redis.replicator.Constants.RDB_ENC_LZF;
+import static com.moilioncircle.redis.replicator.Constants.RDB_LOAD_NONE;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_HASH;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_HASH_ZIPLIST;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_HASH_ZIPMAP;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_LIST;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_LIST_QUICKLIST;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_LIST_ZIPLIST;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_MODULE;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_MODULE_2;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_SET;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_SET_INTSET;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_STRING;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_ZSET;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_ZSET_2;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_ZSET_ZIPLIST;
+
+/**
+ * Measures every key into a {@link RdbAnalyzer} and submits no key value pair.
+ * <p>
+ * The size of a key is the number of bytes of its key and value in the rdb. Values are skipped with
+ * {@link SkipRdbParser}, only the headers of ziplists, intsets, zipmaps and quicklist nodes are read to
+ * count their elements, a whole one is read only if it is lzf compressed or its header can not hold the count.
+ * <p>
+ * Whether a key expires is passed along with the record rather than kept in the visitor, so a visitor
+ * could decode the records of {@link com.moilioncircle.redis.replicator.rdb.PipelinedRdbParser} in many threads.
+ *
+ * @author Leon Chen
+ * @see RdbAnalyzer
+ * @since 2.6.0
+ */
+public class AnalysisRdbVisitor extends SkipRdbVisitor {
+
+    protected final RdbAnalyzer analyzer;
+
+    public AnalysisRdbVisitor(Replicator replicator, RdbAnalyzer analyzer) {
+        super(replicator);
+        this.analyzer = analyzer;
+    }
+
+    public RdbAnalyzer getAnalyzer() {
+        return analyzer;
+    }
+
+    @Override
+    public DB applySelectDB(RedisInputStream in, int version) throws IOException {
+        return new DB(new BaseRdbParser(in).rdbLoadLen().len);
+    }
+
+    @Override
+    public Event applyExpireTime(RedisInputStream in, DB db, int version) throws IOException {
+        new SkipRdbParser(in).rdbLoadTime();
+        return analyze(in, db, applyType(in), version, true);
+    }
+
+    @Override
+    public Event applyExpireTimeMs(RedisInputStream in, DB db, int version) throws IOException {
+        new SkipRdbParser(in).rdbLoadMillisecondTime();
+        return analyze(in, db, applyType(in), version, true);
+    }
+
+    @Override
+    public Event applyString(RedisInputStream in, DB db, int version) throws IOException {
+        return analyze(in, db, RDB_TYPE_STRING, version, false);
+    }
+
+    @Override
+    public Event applyList(RedisInputStream in, DB db, int version) throws IOException {
+        return analyze(in, db, RDB_TYPE_LIST, version, false);
+    }
+
+    @Override
+    public Event applySet(RedisInputStream in, DB db, int version) throws IOException {
+        return analyze(in, db, RDB_TYPE_SET, version, false);
+    }
+
+    @Override
+    public Event applyZSet(RedisInputStream in, DB db, int version) throws IOException {
+        return analyze(in, db, RDB_TYPE_ZSET, version, false);
+    }
+
+    @Override
+    public Event applyZSet2(RedisInputStream in, DB db, int version) throws IOException {
+        return analyze(in, db, RDB_TYPE_ZSET_2, version, false);
+    }
+
+    @Override
+    public Event applyHash(RedisInputStream in, DB db, int version) throws IOException {
+        return analyze(in, db, RDB_TYPE_HASH, version, false);
+    }
+
+    @Override
+    public Event applyHashZipMap(RedisInputStream in, DB db, int version) throws IOException {
+        return analyze(in, db, RDB_TYPE_HASH_ZIPMAP, version, false);
+    }
+
+    @Override
+    public Event applyListZipList(RedisInputStream in, DB db, int version) throws IOException {
+        return analyze(in, db, RDB_TYPE_LIST_ZIPLIST, version, false);
+    }
+
+    @Override
+    public Event applySetIntSet(RedisInputStream in, DB db, int version) throws IOException {
+        return analyze(in, db, RDB_TYPE_SET_INTSET, version, false);
+    }
+
+    @Override
+    public Event applyZSetZipList(RedisInputStream in, DB db, int version) throws IOException {
+        return analyze(in, db, RDB_TYPE_ZSET_ZIPLIST, version, false);
+    }
+
+    @Override
+    public Event applyHashZipList(RedisInputStream in, DB db, int version) throws IOException {
+        return analyze(in, db, RDB_TYPE_HASH_ZIPLIST, version, false);
+    }
+
+    @Override
+    public Event applyListQuickList(RedisInputStream in, DB db, int version) throws IOException {
+        return analyze(in, db, RDB_TYPE_LIST_QUICKLIST, version, false);
+    }
+
+    @Override
+    public Event applyModule(RedisInputStream in, DB db, int version) throws IOException {
+        return analyze(in, db, RDB_TYPE_MODULE, version, false);
+    }
+
+    @Override
+    public Event applyModule2(RedisInputStream in, DB db, int version) throws IOException {
+        return analyze(in, db, RDB_TYPE_MODULE_2, version, false);
+    }
+
+    /**
+     * @param in       input stream positioned at the key of the record
+     * @param db       db of the record
+     * @param type     value type of the record
+     * @param version  rdb version
+     * @param expiring true if the record has an expire time
+     * @return always null
+     * @throws IOException when read timeout
+     */
+    protected Event analyze(RedisInputStream in, DB db, int type, int version, boolean expiring) throws IOException {
+        long start = in.position();
+        byte[] key = new BaseRdbParser(in).rdbLoadEncodedStringObject().first();
+        if (skip(in, db, type, key, version)) return null;
+        long elements;
+        switch (type) {
+            case RDB_TYPE_STRING:
+                new SkipRdbParser(in).rdbLoadEncodedStringObject();
+                elements = 1L;
+                break;
+            case RDB_TYPE_LIST:
+            case RDB_TYPE_SET:
+                elements = skipCollection(in, 1);
+                break;
+            case RDB_TYPE_HASH:
+                elements = skipCollection(in, 2);
+                break;
+            case RDB_TYPE_ZSET:
+            case RDB_TYPE_ZSET_2:
+                elements = skipZSet(in, type == RDB_TYPE_ZSET_2);
+                break;
+            case RDB_TYPE_HASH_ZIPMAP:
+                elements = zmlen(in);
+                break;
+            case RDB_TYPE_SET_INTSET:
+                elements = intsetlen(in);
+                break;
+            case RDB_TYPE_LIST_ZIPLIST:
+                elements = zllen(in);
+                break;
+            case RDB_TYPE_ZSET_ZIPLIST:
+            case RDB_TYPE_HASH_ZIPLIST:
+                elements = zllen(in) / 2;
+                break;
+            case RDB_TYPE_LIST_QUICKLIST:
+                long len = new BaseRdbParser(in).rdbLoadLen().len;
+                elements = 0L;
+                for (long i = 0; i < len; i++) elements += zllen(in);
+                break;
+            case RDB_TYPE_MODULE:
+            case RDB_TYPE_MODULE_2:
+                skipValue(in, type, version);
+                elements = 1L;
+                break;
+            default:
+                throw new AssertionError("unexpected value type:" + type);
+        }
+        analyzer.add(db == null ? 0L : db.getDbNumber(), type, key, in.position() - start, elements, expiring);
+        return null;
+    }
+
+    protected long skipCollection(RedisInputStream in, int width) throws IOException {
+        SkipRdbParser parser = new SkipRdbParser(in);
+        long len = parser.rdbLoadLen().len;
+        for (long i = 0; i < len * width; i++) {
+            parser.rdbLoadEncodedStringObject();
+        }
+        return len;
+    }
+
+    protected long skipZSet(RedisInputStream in, boolean binary) throws IOException {
+        SkipRdbParser parser = new SkipRdbParser(in);
+        long len = parser.rdbLoadLen().len;
+        for (long i = 0; i < len; i++) {
+            parser.rdbLoadEncodedStringObject();
+            if (binary) parser.rdbLoadBinaryDoubleValue();
+            else parser.rdbLoadDoubleValue();
+        }
+        return len;
+    }
+
+    protected long zllen(RedisInputStream in) throws IOException {
+        /*
+         * |<zlbytes>|<zltail>|<zllen>|<entry> ... <entry>|<zlend>|
+         * | 4 bytes | 4 bytes| 2bytes|                    | 1 byte|
+         */
+        BaseRdbParser.Len len = new BaseRdbParser(in).rdbLoadLen();
+        if (len.isencoded || len.len < 10) return zllen(rdbLoadString(in, len));
+        ByteArray header = in.readBytes(10);
+        int zllen = (header.get(8) & 0xff) | (header.get(9) & 0xff) << 8;
+        if (zllen < 65535) {
+            in.skip(len.len - 10);
+            return zllen;
+        }
+        return zllen(concat(header, in.readBytes(len.len - 10)));
+    }
+
+    protected long intsetlen(RedisInputStream in) throws IOException {
+        /*
+         * |<encoding>| <length-of-contents>|              <contents>                            |
+         * | 4 bytes  |            4 bytes  | 2 bytes element| 4 bytes element | 8 bytes element |
+         */
+        BaseRdbParser.Len len = new BaseRdbParser(in).rdbLoadLen();
+        if (len.isencoded || len.len < 8) return new IntSetIterator(rdbLoadString(in, len)).lenOfContent();
+        in.skip(4);
+        long length = in.readUInt(4);
+        in.skip(len.len - 8);
+        return length;
+    }
+
+    protected long zmlen(RedisInputStream in) throws IOException {
+        BaseRdbParser.Len len = new BaseRdbParser(in).rdbLoadLen();
+        if (len.isencoded || len.len < 1) return zmlen(rdbLoadString(in, len));
+        ByteArray header = in.readBytes(1);
+        int zmlen = header.get(0) & 0xff;
+        if (zmlen < 254) {
+            in.skip(len.len - 1);
+            return zmlen;
+        }
+        return zmlen(concat(header, in.readBytes(len.len - 1)));
+    }
+
+    /**
+     * @param in  input stream positioned after the length of the string
+     * @param len length of the string, read by {@link BaseRdbParser#rdbLoadLen()}
+     * @return the rest of the string, decompressed if it is lzf compressed
+     * @throws IOException when read timeout
+     */
+    protected ByteArray rdbLoadString(RedisInputStream in, BaseRdbParser.Len len) throws IOException {
+        if (!len.isencoded) return in.readBytes(len.len);
+        BaseRdbParser parser = new BaseRdbParser(in);
+        switch ((int) len.len) {
+            case RDB_ENC_INT8:
+            case RDB_ENC_INT16:
+            case RDB_ENC_INT32:
+                return parser.rdbLoadIntegerObject((int) len.len, RDB_LOAD_NONE);
+            case RDB_ENC_LZF:
+                return parser.rdbLoadLzfStringObject(RDB_LOAD_NONE);
+            default:
+                throw new AssertionError("unknown RdbParser encoding type:" + len.len);
+        }
+    }
+
+    protected static ByteArray concat(ByteArray header, ByteArray rest) {
+        ByteArray bytes = new ByteArray(header.length() + rest.length());
+        ByteArray.arraycopy(header, 0, bytes, 0, header.length());
+        ByteArray.arraycopy(rest, 0, bytes, header.length(), rest.length());
+        return bytes;
+    }
+
+    protected static long zllen(ByteArray bytes) {
+        ZipListIterator it = new ZipListIterator(bytes);
+        if (it.zllen() < 65535) return it.zllen();
+        long len = 0L;
+        for (; it.hasNext(); it.next()) len++;
+        return len;
+    }
+
+    protected static long zmlen(ByteArray bytes) {
+        /*
+         * |<zmlen> |   <len>   |"foo"|   <len>   | <free> |   "bar" |<zmend> |
+         * | 1 byte | 1/5 bytes |     | 1/5 bytes | 1 byte |         | 1 byte |
+         */
+        int zmlen = bytes.get(0) & 0xff;
+        if (zmlen < 254) return zmlen;
+        long len = 0L;
+        long pos = 1;
+        while ((bytes.get(pos) & 0xff) != 255) {
+            pos = zmElementEnd(bytes, pos); // field
+            int free = bytes.get(pos + ((bytes.get(pos) & 0xff) == 254 ? 5 : 1)) & 0xff;
+            pos = zmElementEnd(bytes, pos) + 1 + free; // value
+            len++;
+        }
+        return len;
+    }
+
+    protected static long zmElementEnd(ByteArray bytes, long pos) {
+        int len = bytes.get(pos) & 0xff;
+        if (len < 254) return pos + 1 + len;
+        long r = 0L;
+        for (int i = 1; i <= 4; i++) r = (r << 8) | (bytes.get(pos + i) & 0xff);
+        return pos + 5 + r;
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb.analysis;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Bounded memory report of the keys of a rdb: totals and element counts per rdb type, a log2 histogram
+ * of element counts, the top N biggest keys, the heaviest key prefixes by a {@link SpaceSaving} sketch and
+ * distinct keys and prefixes by {@link HyperLogLog}.
+ * <p>
+ * Sizes are bytes in the rdb, not the memory used by redis. The report is updated as the keys are measured
+ * and can be written at any time, all methods are thread safe.
+ *
+ * @author Leon Chen
+ * @see AnalysisRdbVisitor
+ * @since 2.6.0
+ */
+public class RdbAnalyzer {
+
+    protected static final String[] TYPES = {
+            "string", "list", "set", "zset", "hash", "zset_2", "module", "module_2", "", "hash_zipmap",
+            "list_ziplist", "set_intset", "zset_ziplist", "hash_ziplist", "list_quicklist"
+    };
+
+    protected final int topKeys;
+    protected final byte delimiter;
+
+    protected long keys;
+    protected long bytes;
+    protected long expiring;
+    protected final long[] typeKeys = new long[TYPES.length];
+    protected final long[] typeBytes = new long[TYPES.length];
+    protected final long[] typeElements = new long[TYPES.length];
+    protected final long[] histogram = new long[64];
+    protected final PriorityQueue<BigKey> bigKeys = new PriorityQueue<>();
+    protected final SpaceSaving prefixes;
+    protected final HyperLogLog distinctKeys = new HyperLogLog();
+    protected final HyperLogLog distinctPrefixes = new HyperLogLog();
+
+    public RdbAnalyzer() {
+        this(100, 1024, ':');
+    }
+
+    /**
+     * @param topKeys     number of the biggest keys to keep
+     * @param topPrefixes number of counters of the prefix sketch
+     * @param delimiter   the prefix of a key ends before the first delimiter
+     */
+    public RdbAnalyzer(int topKeys, int topPrefixes, char delimiter) {
+        this.topKeys = topKeys;
+        this.delimiter = (byte) delimiter;
+        this.prefixes = new SpaceSaving(topPrefixes);
+    }
+
+    /**
+     * @param db       db number
+     * @param type     rdb type of the value
+     * @param key      raw key
+     * @param bytes    bytes of the key and the value in the rdb
+     * @param elements elements of the value, 1 for strings and modules
+     * @param expiring true if the key has an expire time
+     */
+    public synchronized void add(long db, int type, byte[] key, long bytes, long elements, boolean expiring) {
+        this.keys++;
+        this.bytes += bytes;
+        if (expiring) this.expiring++;
+        if (type >= 0 && type < TYPES.length) {
+            typeKeys[type]++;
+            typeBytes[type] += bytes;
+            typeElements[type] += elements;
+        }
+        histogram[64 - Long.numberOfLeadingZeros(Math.max(0L, elements))]++;
+        if (topKeys > 0 && (bigKeys.size() < topKeys || bigKeys.peek().bytes < bytes)) {
+            if (bigKeys.size() >= topKeys) bigKeys.poll();
+            bigKeys.offer(new BigKey(db, type, new String(key, UTF_8), bytes, elements));
+        }
+        distinctKeys.add(key);
+        byte[] prefix = prefix(key);
+        distinctPrefixes.add(prefix);
+        prefixes.add(new String(prefix, UTF_8), bytes);
+    }
+
+    public synchronized long getKeys() {
+        return keys;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized long getExpiring() {
+        return expiring;
+    }
+
+    public synchronized long getDistinctKeys() {
+        return distinctKeys.cardinality();
+    }
+
+    public synchronized long getDistinctPrefixes() {
+        return distinctPrefixes.cardinality();
+    }
+
+    /**
+     * @return the biggest keys from the biggest to the smallest
+     */
+    public synchronized List<BigKey> getBigKeys() {
+        List<BigKey> r = new ArrayList<>(bigKeys);
+        Collections.sort(r, Collections.reverseOrder());
+        return r;
+    }
+
+    /**
+     * @return prefix counters weighted by bytes, from the heaviest to the lightest
+     */
+    public synchronized List<SpaceSaving.Counter> getPrefixes() {
+        return prefixes.top();
+    }
+
+    /**
+     * @return keys by element count, the keys of bucket i have [2^(i-1), 2^i - 1] elements, bucket 0 has 0 elements
+     */
+    public synchronized long[] getHistogram() {
+        return histogram.clone();
+    }
+
+    public synchronized void writeJson(Appendable out) throws IOException {
+        out.append("{\"keys\":").append(String.valueOf(keys));
+        out.append(",\"bytes\":").append(String.valueOf(bytes));
+        out.append(",\"expiring\":").append(String.valueOf(expiring));
+        out.append(",\"distinctKeys\":").append(String.valueOf(getDistinctKeys()));
+        out.append(",\"distinctPrefixes\":").append(String.valueOf(getDistinctPrefixes()));
+        out.append(",\"types\":[");
+        String sep = "";
+        for (int i = 0; i < TYPES.length; i++) {
+            if (typeKeys[i] == 0) continue;
+            out.append(sep).append("{\"type\":\"").append(TYPES[i]).append('"');
+            out.append(",\"keys\":").append(String.valueOf(typeKeys[i]));
+            out.append(",\"bytes\":").append(String.valueOf(typeBytes[i]));
+            out.append(",\"elements\":").append(String.valueOf(typeElements[i])).append('}');
+            sep = ",";
+        }
+        out.append("],\"histogram\":[");
+        sep = "";
+        for (int i = 0; i < histogram.length; i++) {
+            if (histogram[i] == 0) continue;
+            out.append(sep).append("{\"min\":").append(String.valueOf(min(i)));
+            out.append(",\"max\":").append(String.valueOf(max(i)));
+            out.append(",\"keys\":").append(String.valueOf(histogram[i])).append('}');
+            sep = ",";
+        }
+        out.append("],\"bigKeys\":[");
+        sep = "";
+        for (BigKey key : getBigKeys()) {
+            out.append(sep).append("{\"db\":").append(String.valueOf(key.db));
+            out.append(",\"key\":");
+            json(out, key.key);
+            out.append(",\"type\":\"").append(type(key.type)).append('"');
+            out.append(",\"bytes\":").append(String.valueOf(key.bytes));
+            out.append(",\"elements\":").append(String.valueOf(key.elements)).append('}');
+            sep = ",";
+        }
+        out.append("],\"prefixes\":[");
+        sep = "";
+        for (SpaceSaving.Counter counter : prefixes.top()) {
+            out.append(sep).append("{\"prefix\":");
+            json(out, counter.getItem());
+            out.append(",\"keys\":").append(String.valueOf(counter.getCount()));
+            out.append(",\"bytes\":").append(String.valueOf(counter.getWeight()));
+            out.append(",\"error\":").append(String.valueOf(counter.getError())).append('}');
+            sep = ",";
+        }
+        out.append("]}");
+    }
+
+    /**
+     * one row per line: section,name,db,type,keys,bytes,elements,error
+     */
+    public synchronized void writeCsv(Appendable out) throws IOException {
+        out.append("section,name,db,type,keys,bytes,elements,error\n");
+        out.append("total,,,,").append(String.valueOf(keys)).append(',').append(String.valueOf(bytes)).append(",,\n");
+        out.append("expiring,,,,").append(String.valueOf(expiring)).append(",,,\n");
+        out.append("distinct,keys,,,").append(String.valueOf(getDistinctKeys())).append(",,,\n");
+        out.append("distinct,prefixes,,,").append(String.valueOf(getDistinctPrefixes())).append(",,,\n");
+        for (int i = 0; i < TYPES.length; i++) {
+            if (typeKeys[i] == 0) continue;
+            out.append("type,").append(TYPES[i]).append(",,").append(TYPES[i]).append(',');
+            out.append(String.valueOf(typeKeys[i])).append(',').append(String.valueOf(typeBytes[i])).append(',');
+            out.append(String.valueOf(typeElements[i])).append(",\n");
+        }
+        for (int i = 0; i < histogram.length; i++) {
+            if (histogram[i] == 0) continue;
+            out.append("histogram,").append(String.valueOf(min(i))).append('-').append(String.valueOf(max(i)));
+            out.append(",,,").append(String.valueOf(histogram[i])).append(",,,\n");
+        }
+        for (BigKey key : getBigKeys()) {
+            out.append("bigkey,");
+            csv(out, key.key);
+            out.append(',').append(String.valueOf(key.db)).append(',').append(type(key.type)).append(",1,");
+            out.append(String.valueOf(key.bytes)).append(',').append(String.valueOf(key.elements)).append(",\n");
+        }
+        for (SpaceSaving.Counter counter : prefixes.top()) {
+            out.append("prefix,");
+            csv(out, counter.getItem());
+            out.append(",,,").append(String.valueOf(counter.getCount())).append(',').append(String.valueOf(counter.getWeight()));
+            out.append(",,").append(String.valueOf(counter.getError())).append('\n');
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        try {
+            writeJson(builder);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return builder.toString();
+    }
+
+    protected byte[] prefix(byte[] key) {
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] == delimiter) {
+                byte[] prefix = new byte[i];
+                System.arraycopy(key, 0, prefix, 0, i);
+                return prefix;
+            }
+        }
+        return key;
+    }
+
+    protected static String type(int type) {
+        return type >= 0 && type < TYPES.length ? TYPES[type] : String.valueOf(type);
+    }
+
+    protected static long min(int bucket) {
+        return bucket == 0 ? 0L : 1L << (bucket - 1);
+    }
+
+    protected static long max(int bucket) {
+        return bucket == 0 ? 0L : (1L << (bucket - 1)) * 2 - 1;
+    }
+
+    protected static void json(Appendable out, String s) throws IOException {
+        out.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    protected static void csv(Appendable out, String s) throws IOException {
+        if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0 && s.indexOf('\r') < 0) {
+            out.append(s);
+            return;
+        }
+        out.append('"').append(s.replace("\"", "\"\"")).append('"');
+    }
+
+    public static class BigKey implements Comparable<BigKey> {
+        private final long db;
+        private final int type;
+        private final String key;
+        private final long bytes;
+        private final long elements;
+
+        private BigKey(long db, int type, String key, long bytes, long elements) {
+            this.db = db;
+            this.type = type;
+            this.key = key;
+            this.bytes = bytes;
+            this.elements = elements;
+        }
+
+        public long getDb() {
+            return db;
+        }
+
+        public int getType() {
+            return type;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getElements() {
+            return elements;
+        }
+
+        @Override
+        public int compareTo(BigKey that) {
+            return this.bytes < that.bytes ? -1 : (this.bytes == that.bytes ? 0 : 1);
+        }
+
+        @Override
+        public String toString() {
+            return "BigKey{" +
+                    "db=" + db +
+                    ", type=" + type(type) +
+                    ", key='" + key + '\'' +
+                    ", bytes=" + bytes +
+                    ", elements=" + elements +
+                    '}';
+        }
+    }
+}
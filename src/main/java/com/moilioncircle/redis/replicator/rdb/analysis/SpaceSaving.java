@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb.analysis;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Space-saving sketch of the heaviest items of a weighted stream, keeps at most {@code capacity} counters.
+ * <p>
+ * An item that is not counted replaces the lightest counter and inherits its weight as error,
+ * so the weight of a counter overestimates the real weight by at most its error.
+ *
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class SpaceSaving {
+
+    protected final int capacity;
+    protected long sequence;
+    protected final Map<String, Counter> counters = new HashMap<>();
+    protected final TreeSet<Counter> order = new TreeSet<>();
+
+    public SpaceSaving(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    public void add(String item, long weight) {
+        Counter counter = counters.get(item);
+        if (counter == null) {
+            counter = new Counter(item, sequence++);
+            if (counters.size() >= capacity) {
+                Counter min = order.pollFirst();
+                counters.remove(min.item);
+                counter.error = min.weight;
+                counter.weight = min.weight;
+                counter.count = min.count;
+            }
+            counters.put(item, counter);
+        } else {
+            order.remove(counter);
+        }
+        counter.weight += weight;
+        counter.count++;
+        order.add(counter);
+    }
+
+    /**
+     * @return counters from the heaviest to the lightest
+     */
+    public List<Counter> top() {
+        return new ArrayList<>(order.descendingSet());
+    }
+
+    public static class Counter implements Comparable<Counter> {
+        private final String item;
+        private final long id;
+        private long weight;
+        private long count;
+        private long error;
+
+        private Counter(String item, long id) {
+            this.item = item;
+            this.id = id;
+        }
+
+        public String getItem() {
+            return item;
+        }
+
+        /**
+         * @return estimated weight, overestimated by at most {@link #getError()}
+         */
+        public long getWeight() {
+            return weight;
+        }
+
+        /**
+         * @return estimated count of adds, overestimated like the weight
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return max overestimation of the weight
+         */
+        public long getError() {
+            return error;
+        }
+
+        @Override
+        public int compareTo(Counter that) {
+            if (this.weight != that.weight) return this.weight < that.weight ? -1 : 1;
+            return this.id < that.id ? -1 : (this.id == that.id ? 0 : 1);
+        }
+    }
+}
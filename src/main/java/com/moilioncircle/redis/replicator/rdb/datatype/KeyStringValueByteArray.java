@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb.datatype;
+
+import com.moilioncircle.redis.replicator.util.ByteArray;
+
+import java.io.ObjectStreamException;
+
+/**
+ * A string value of at least {@link com.moilioncircle.redis.replicator.Configuration#getOffHeapThreshold()} bytes
+ * that is kept off-heap.
+ * <p>
+ * {@link #getByteArray()} refers to the off-heap value, it is freed after the listeners return, so copy it to keep it.
+ * {@link #getRawValue()} and {@link #getValue()} copy the value to the heap on first access,
+ * the first 2 GB only if the value is larger. Serializing the pair copies the value to the heap as well.
+ *
+ * @author Leon Chen
+ * @see com.moilioncircle.redis.replicator.util.DirectByteArray
+ * @since 2.6.0
+ */
+public class KeyStringValueByteArray extends KeyStringValueString {
+
+    private static final long serialVersionUID = 1L;
+
+    protected transient ByteArray byteArray;
+
+    public ByteArray getByteArray() {
+        return byteArray;
+    }
+
+    public void setByteArray(ByteArray byteArray) {
+        this.byteArray = byteArray;
+    }
+
+    @Override
+    @Deprecated
+    public byte[] getRawBytes() {
+        return getRawValue();
+    }
+
+    @Override
+    public byte[] getRawValue() {
+        if (rawValue == null && byteArray != null) rawValue = toBytes(byteArray);
+        return rawValue;
+    }
+
+    @Override
+    public String getValue() {
+        if (value == null) getRawValue();
+        return super.getValue();
+    }
+
+    /**
+     * free the off-heap value
+     */
+    public void release() {
+        ByteArray byteArray = this.byteArray;
+        this.byteArray = null;
+        if (byteArray != null) byteArray.release();
+    }
+
+    /**
+     * @param bytes off-heap value
+     * @return the first 2 GB of the value in one heap array, across the 1 GB chunks of the value
+     */
+    protected static byte[] toBytes(ByteArray bytes) {
+        long length = Math.min(bytes.length(), Integer.MAX_VALUE - 8);
+        byte[] r = new byte[(int) length];
+        ByteArray.arraycopy(bytes, 0, new ByteArray(r), 0, length);
+        return r;
+    }
+
+    protected Object writeReplace() throws ObjectStreamException {
+        // the fields of the super class are written first
+        getRawValue();
+        return this;
+    }
+}
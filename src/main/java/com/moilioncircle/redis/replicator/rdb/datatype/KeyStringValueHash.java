@@ -16,8 +16,11 @@
 
 package com.moilioncircle.redis.replicator.rdb.datatype;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 /**
  * @author Leon Chen
  * @since 2.1.0
@@ -35,4 +38,21 @@ public class KeyStringValueHash extends KeyValuePair<Map<String, String>> {
     public void setRawValue(Map<byte[], byte[]> rawValue) {
         this.rawValue = rawValue;
     }
+
+    /**
+     * @return the String value, decoded from the raw value on first access if
+     * {@link com.moilioncircle.redis.replicator.Configuration#isLazyDecodeValue()} is enabled
+     */
+    @Override
+    public Map<String, String> getValue() {
+        if (value == null && rawValue != null) {
+            Map<String, String> map = new LinkedHashMap<>();
+            for (Map.Entry<byte[], byte[]> entry : rawValue.entrySet()) {
+                byte[] v = entry.getValue();
+                map.put(new String(entry.getKey(), UTF_8), v == null ? null : new String(v, UTF_8));
+            }
+            value = map;
+        }
+        return value;
+    }
 }
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb.datatype;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * An intset decoded into a sorted {@code long[]} when
+ * {@link com.moilioncircle.redis.replicator.Configuration#isPrimitiveValue()} is enabled.
+ * The String and raw sets of {@link #getValue()} and {@link #getRawValue()} are built from the longs on first access.
+ *
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class KeyStringValueIntSet extends KeyStringValueSet {
+
+    private static final long serialVersionUID = 1L;
+
+    protected long[] longValue;
+
+    public long[] getLongValue() {
+        return longValue;
+    }
+
+    public void setLongValue(long[] longValue) {
+        this.longValue = longValue;
+    }
+
+    @Override
+    public Set<String> getValue() {
+        if (value == null && longValue != null) {
+            Set<String> set = new LinkedHashSet<>();
+            for (long element : longValue) set.add(String.valueOf(element));
+            value = set;
+        }
+        return super.getValue();
+    }
+
+    @Override
+    public Set<byte[]> getRawValue() {
+        if (rawValue == null && longValue != null) {
+            Set<byte[]> set = new LinkedHashSet<>();
+            for (long element : longValue) set.add(String.valueOf(element).getBytes());
+            rawValue = set;
+        }
+        return rawValue;
+    }
+}
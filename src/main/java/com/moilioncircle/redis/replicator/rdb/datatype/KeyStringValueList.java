@@ -16,8 +16,11 @@
 
 package com.moilioncircle.redis.replicator.rdb.datatype;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 /**
  * @author Leon Chen
  * @since 2.1.0
@@ -35,4 +38,18 @@ public class KeyStringValueList extends KeyValuePair<List<String>> {
     public void setRawValue(List<byte[]> rawValue) {
         this.rawValue = rawValue;
     }
+
+    /**
+     * @return the String value, decoded from the raw value on first access if
+     * {@link com.moilioncircle.redis.replicator.Configuration#isLazyDecodeValue()} is enabled
+     */
+    @Override
+    public List<String> getValue() {
+        if (value == null && rawValue != null) {
+            List<String> list = new ArrayList<>(rawValue.size());
+            for (byte[] element : rawValue) list.add(new String(element, UTF_8));
+            value = list;
+        }
+        return value;
+    }
 }
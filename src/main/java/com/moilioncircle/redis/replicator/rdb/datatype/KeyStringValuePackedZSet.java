@@ -0,0 +1,48 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb.datatype;
+
+import java.util.Set;
+
+/**
+ * A sorted set decoded into a {@link PackedZSet} when
+ * {@link com.moilioncircle.redis.replicator.Configuration#isPrimitiveValue()} is enabled.
+ * The {@code Set<ZSetEntry>} of {@link #getValue()} is built from the packed value on first access.
+ *
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class KeyStringValuePackedZSet extends KeyStringValueZSet {
+
+    private static final long serialVersionUID = 1L;
+
+    protected PackedZSet packedValue;
+
+    public PackedZSet getPackedValue() {
+        return packedValue;
+    }
+
+    public void setPackedValue(PackedZSet packedValue) {
+        this.packedValue = packedValue;
+    }
+
+    @Override
+    public Set<ZSetEntry> getValue() {
+        if (value == null && packedValue != null) value = packedValue.toSet();
+        return value;
+    }
+}
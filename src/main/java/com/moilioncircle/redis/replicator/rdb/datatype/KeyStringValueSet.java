@@ -16,8 +16,11 @@
 
 package com.moilioncircle.redis.replicator.rdb.datatype;
 
+import java.util.LinkedHashSet;
 import java.util.Set;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 /**
  * @author Leon Chen
  * @since 2.1.0
@@ -35,4 +38,18 @@ public class KeyStringValueSet extends KeyValuePair<Set<String>> {
     public void setRawValue(Set<byte[]> rawValue) {
         this.rawValue = rawValue;
     }
+
+    /**
+     * @return the String value, decoded from the raw value on first access if
+     * {@link com.moilioncircle.redis.replicator.Configuration#isLazyDecodeValue()} is enabled
+     */
+    @Override
+    public Set<String> getValue() {
+        if (value == null && rawValue != null) {
+            Set<String> set = new LinkedHashSet<>();
+            for (byte[] element : rawValue) set.add(new String(element, UTF_8));
+            value = set;
+        }
+        return value;
+    }
 }
@@ -16,6 +16,8 @@
 
 package com.moilioncircle.redis.replicator.rdb.datatype;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 /**
  * @author Leon Chen
  * @since 2.1.0
@@ -53,4 +55,14 @@ public class KeyStringValueString extends KeyValuePair<String> {
     public void setRawValue(byte[] rawValue) {
         this.rawValue = rawValue;
     }
+
+    /**
+     * @return the String value, decoded from the raw value on first access if
+     * {@link com.moilioncircle.redis.replicator.Configuration#isLazyDecodeValue()} is enabled
+     */
+    @Override
+    public String getValue() {
+        if (value == null && rawValue != null) value = new String(rawValue, UTF_8);
+        return value;
+    }
 }
@@ -113,42 +113,42 @@ public class KeyValuePair<T> implements Event {
      * @return RDB_TYPE_STRING
      */
     public String getValueAsString() {
-        return (String) value;
+        return (String) getValue();
     }
 
     /**
      * @return RDB_TYPE_HASH, RDB_TYPE_HASH_ZIPMAP, RDB_TYPE_HASH_ZIPLIST
      */
     public Map<String, String> getValueAsHash() {
-        return (Map<String, String>) value;
+        return (Map<String, String>) getValue();
     }
 
     /**
      * @return RDB_TYPE_SET, RDB_TYPE_SET_INTSET
      */
     public Set<String> getValueAsSet() {
-        return (Set<String>) value;
+        return (Set<String>) getValue();
     }
 
     /**
      * @return RDB_TYPE_ZSET, RDB_TYPE_ZSET_2, RDB_TYPE_ZSET_ZIPLIST
      */
     public Set<ZSetEntry> getValueAsZSet() {
-        return (Set<ZSetEntry>) value;
+        return (Set<ZSetEntry>) getValue();
     }
 
     /**
      * @return RDB_TYPE_LIST, RDB_TYPE_LIST_ZIPLIST, RDB_TYPE_LIST_QUICKLIST
      */
     public List<String> getValueAsStringList() {
-        return (List<String>) value;
+        return (List<String>) getValue();
     }
 
     /**
      * @return RDB_TYPE_MODULE
      */
     public Module getValueAsModule() {
-        return (Module) value;
+        return (Module) getValue();
     }
 
     @Override
@@ -159,7 +159,7 @@ public class KeyValuePair<T> implements Event {
                 ", expiredType=" + expiredType +
                 ", expiredValue=" + expiredValue +
                 ", key='" + key + '\'' +
-                ", value=" + value +
+                ", value=" + getValue() +
                 '}';
     }
 }
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb.datatype;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A sorted set stored as parallel arrays: the scores in a {@code double[]} and the members
+ * packed one after another in a single byte arena.
+ * <p>
+ * Compared to a {@code Set<ZSetEntry>} there is no object per member, listeners can iterate
+ * the members in rdb order with {@link #score(int)}, {@link #memberOffset(int)} and {@link #memberLength(int)}
+ * over {@link #arena()}.
+ * <p>
+ * The arena is a single array and holds at most 2GB of members, {@link #add(byte[], double)} refuses a member
+ * beyond that and the caller falls back to {@link #toSet()}.
+ *
+ * @author Leon Chen
+ * @see KeyStringValuePackedZSet
+ * @since 2.6.0
+ */
+public class PackedZSet implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private int size;
+    private double[] scores;
+    private int[] offsets;
+    private byte[] arena;
+
+    public PackedZSet() {
+        this(16);
+    }
+
+    public PackedZSet(int capacity) {
+        capacity = Math.max(1, Math.min(capacity, MAX_ARRAY_SIZE - 1));
+        this.scores = new double[capacity];
+        this.offsets = new int[capacity + 1];
+        this.arena = new byte[Math.min(capacity, 1 << 17) << 3];
+    }
+
+    /**
+     * @param member member to append
+     * @param score  score of the member
+     * @return false and nothing is added if the member does not fit in the arena
+     */
+    public boolean add(byte[] member, double score) {
+        int offset = offsets[size];
+        if (member.length > MAX_ARRAY_SIZE - offset || size == MAX_ARRAY_SIZE - 1) return false;
+        if (size == scores.length) {
+            int capacity = grow(size + 1, size);
+            scores = Arrays.copyOf(scores, capacity);
+            offsets = Arrays.copyOf(offsets, capacity + 1);
+        }
+        int end = offset + member.length;
+        if (end > arena.length) arena = Arrays.copyOf(arena, grow(end, arena.length));
+        System.arraycopy(member, 0, arena, offset, member.length);
+        scores[size] = score;
+        offsets[++size] = end;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double score(int index) {
+        check(index);
+        return scores[index];
+    }
+
+    /**
+     * @param index index of the member
+     * @return a copy of the member
+     */
+    public byte[] member(int index) {
+        check(index);
+        return Arrays.copyOfRange(arena, offsets[index], offsets[index + 1]);
+    }
+
+    public int memberOffset(int index) {
+        check(index);
+        return offsets[index];
+    }
+
+    public int memberLength(int index) {
+        check(index);
+        return offsets[index + 1] - offsets[index];
+    }
+
+    /**
+     * @return the backing arena, only the first {@code memberOffset(size() - 1) + memberLength(size() - 1)} bytes are valid
+     */
+    public byte[] arena() {
+        return arena;
+    }
+
+    /**
+     * @return the backing scores, only the first {@code size()} scores are valid
+     */
+    public double[] scores() {
+        return scores;
+    }
+
+    /**
+     * @return the members and scores in rdb order
+     */
+    public Set<ZSetEntry> toSet() {
+        Set<ZSetEntry> zset = new LinkedHashSet<>();
+        for (int i = 0; i < size; i++) {
+            byte[] element = member(i);
+            zset.add(new ZSetEntry(new String(element, UTF_8), scores[i], element));
+        }
+        return zset;
+    }
+
+    private void check(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("index:" + index + ", size:" + size);
+    }
+
+    private static int grow(int min, int current) {
+        int capacity = current + (current >> 1);
+        if (capacity - min < 0) capacity = min;
+        if (capacity - MAX_ARRAY_SIZE > 0) capacity = MAX_ARRAY_SIZE;
+        return capacity;
+    }
+}
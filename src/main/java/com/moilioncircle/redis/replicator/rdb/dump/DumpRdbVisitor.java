@@ -17,6 +17,8 @@
 package com.moilioncircle.redis.replicator.rdb.dump;
 
 import com.moilioncircle.redis.replicator.Replicator;
+import com.moilioncircle.redis.replicator.UncheckedIOException;
+import com.moilioncircle.redis.replicator.cmd.impl.DefaultCommand;
 import com.moilioncircle.redis.replicator.event.Event;
 import com.moilioncircle.redis.replicator.io.RawByteListener;
 import com.moilioncircle.redis.replicator.io.RedisInputStream;
@@ -24,15 +26,23 @@ import com.moilioncircle.redis.replicator.rdb.BaseRdbParser;
 import com.moilioncircle.redis.replicator.rdb.DefaultRdbVisitor;
 import com.moilioncircle.redis.replicator.rdb.datatype.DB;
 import com.moilioncircle.redis.replicator.rdb.datatype.Module;
+import com.moilioncircle.redis.replicator.rdb.dump.datatype.ChunkedKeyValuePair;
 import com.moilioncircle.redis.replicator.rdb.dump.datatype.DumpKeyValuePair;
 import com.moilioncircle.redis.replicator.rdb.module.ModuleParser;
 import com.moilioncircle.redis.replicator.rdb.skip.SkipRdbParser;
+import com.moilioncircle.redis.replicator.util.ByteArray;
 import com.moilioncircle.redis.replicator.util.ByteBuilder;
+import com.moilioncircle.redis.replicator.util.CRC64;
+import com.moilioncircle.redis.replicator.util.ZipListIterator;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 import static com.moilioncircle.redis.replicator.Constants.MODULE_SET;
+import static com.moilioncircle.redis.replicator.Constants.RDB_LOAD_NONE;
 import static com.moilioncircle.redis.replicator.Constants.RDB_MODULE_OPCODE_EOF;
 import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_HASH;
 import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_HASH_ZIPLIST;
@@ -48,7 +58,6 @@ import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_STRING;
 import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_ZSET;
 import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_ZSET_2;
 import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_ZSET_ZIPLIST;
-import static com.moilioncircle.redis.replicator.util.CRC64.crc64;
 import static com.moilioncircle.redis.replicator.util.CRC64.longToByteArray;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
@@ -61,10 +70,12 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
     private class DefaultRawByteListener implements RawByteListener {
         private final int version;
         private final ByteBuilder builder;
+        private final CRC64 crc64 = new CRC64();
 
         private DefaultRawByteListener(byte type, int version) {
             this.builder = ByteBuilder.allocate(DumpRdbVisitor.this.size);
             this.builder.put(type);
+            this.crc64.update(type);
             int ver = DumpRdbVisitor.this.version;
             this.version = ver == -1 ? version : ver;
         }
@@ -72,13 +83,15 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
         @Override
         public void handle(byte... rawBytes) {
             for (byte b : rawBytes) this.builder.put(b);
+            this.crc64.update(rawBytes, 0, rawBytes.length);
         }
 
         public byte[] getBytes() {
             this.builder.put((byte) version);
             this.builder.put((byte) 0x00);
-            byte[] bytes = this.builder.array();
-            byte[] crc = longToByteArray(crc64(bytes));
+            this.crc64.update(version);
+            this.crc64.update(0x00);
+            byte[] crc = longToByteArray(crc64.getValue());
             for (byte b : crc) {
                 this.builder.put(b);
             }
@@ -88,6 +101,13 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
 
     private final int size;
     private final int version;
+    private final int chunkSize;
+    private final long chunkBytes;
+
+    /**
+     * commands of the last chunked record
+     */
+    private ChunkIter chunks;
 
     public DumpRdbVisitor(Replicator replicator) {
         this(replicator, -1);
@@ -103,9 +123,27 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
     }
 
     public DumpRdbVisitor(Replicator replicator, int version, int size) {
+        this(replicator, version, size, 0, 0);
+    }
+
+    /**
+     * A list, set, sorted set or hash with more than chunkSize elements is not dumped,
+     * but emitted as a {@link ChunkedKeyValuePair} whose commands add at most chunkSize elements
+     * or a little more than chunkBytes bytes each. ziplist, intset and zipmap encoded values are always dumped.
+     *
+     * @param replicator the replicator
+     * @param version    dumped version, -1 means dumped version = rdb version
+     * @param size       initial buffer size of a dumped value
+     * @param chunkSize  max elements of a command, 0 means never chunk
+     * @param chunkBytes max bytes of a command, 0 means unlimited
+     * @since 2.6.0
+     */
+    public DumpRdbVisitor(Replicator replicator, int version, int size, int chunkSize, long chunkBytes) {
         super(replicator);
         this.version = version;
         this.size = size;
+        this.chunkSize = chunkSize;
+        this.chunkBytes = chunkBytes;
     }
 
     @Override
@@ -113,6 +151,7 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
         BaseRdbParser parser = new BaseRdbParser(in);
         DumpKeyValuePair o0 = new DumpKeyValuePair();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_STRING, key, version)) return null;
         DefaultRawByteListener listener = new DefaultRawByteListener((byte) RDB_TYPE_STRING, version);
         replicator.addRawByteListener(listener);
         new SkipRdbParser(in).rdbLoadEncodedStringObject();
@@ -130,10 +169,23 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
         BaseRdbParser parser = new BaseRdbParser(in);
         DumpKeyValuePair o1 = new DumpKeyValuePair();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_LIST, key, version)) return null;
         DefaultRawByteListener listener = new DefaultRawByteListener((byte) RDB_TYPE_LIST, version);
         replicator.addRawByteListener(listener);
         SkipRdbParser skipParser = new SkipRdbParser(in);
         long len = skipParser.rdbLoadLen().len;
+        if (chunkSize > 0 && len > chunkSize) {
+            replicator.removeRawByteListener(listener);
+            return chunk(key, db, RDB_TYPE_LIST, new ChunkIter("RPUSH", key, len, parser) {
+                @Override
+                protected long element(List<byte[]> args) throws IOException {
+                    byte[] element = parser.rdbLoadEncodedStringObject().first();
+                    args.add(element);
+                    condition--;
+                    return element.length;
+                }
+            });
+        }
         for (int i = 0; i < len; i++) {
             skipParser.rdbLoadEncodedStringObject();
         }
@@ -151,10 +203,23 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
         BaseRdbParser parser = new BaseRdbParser(in);
         DumpKeyValuePair o2 = new DumpKeyValuePair();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_SET, key, version)) return null;
         DefaultRawByteListener listener = new DefaultRawByteListener((byte) RDB_TYPE_SET, version);
         replicator.addRawByteListener(listener);
         SkipRdbParser skipParser = new SkipRdbParser(in);
         long len = skipParser.rdbLoadLen().len;
+        if (chunkSize > 0 && len > chunkSize) {
+            replicator.removeRawByteListener(listener);
+            return chunk(key, db, RDB_TYPE_SET, new ChunkIter("SADD", key, len, parser) {
+                @Override
+                protected long element(List<byte[]> args) throws IOException {
+                    byte[] element = parser.rdbLoadEncodedStringObject().first();
+                    args.add(element);
+                    condition--;
+                    return element.length;
+                }
+            });
+        }
         for (int i = 0; i < len; i++) {
             skipParser.rdbLoadEncodedStringObject();
         }
@@ -172,10 +237,25 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
         BaseRdbParser parser = new BaseRdbParser(in);
         DumpKeyValuePair o3 = new DumpKeyValuePair();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_ZSET, key, version)) return null;
         DefaultRawByteListener listener = new DefaultRawByteListener((byte) RDB_TYPE_ZSET, version);
         replicator.addRawByteListener(listener);
         SkipRdbParser skipParser = new SkipRdbParser(in);
         long len = skipParser.rdbLoadLen().len;
+        if (chunkSize > 0 && len > chunkSize) {
+            replicator.removeRawByteListener(listener);
+            return chunk(key, db, RDB_TYPE_ZSET, new ChunkIter("ZADD", key, len, parser) {
+                @Override
+                protected long element(List<byte[]> args) throws IOException {
+                    byte[] element = parser.rdbLoadEncodedStringObject().first();
+                    byte[] score = score(parser.rdbLoadDoubleValue());
+                    args.add(score);
+                    args.add(element);
+                    condition--;
+                    return element.length + score.length;
+                }
+            });
+        }
         while (len > 0) {
             skipParser.rdbLoadEncodedStringObject();
             skipParser.rdbLoadDoubleValue();
@@ -195,10 +275,25 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
         BaseRdbParser parser = new BaseRdbParser(in);
         DumpKeyValuePair o5 = new DumpKeyValuePair();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_ZSET_2, key, version)) return null;
         DefaultRawByteListener listener = new DefaultRawByteListener((byte) RDB_TYPE_ZSET_2, version);
         replicator.addRawByteListener(listener);
         SkipRdbParser skipParser = new SkipRdbParser(in);
         long len = skipParser.rdbLoadLen().len;
+        if (chunkSize > 0 && len > chunkSize) {
+            replicator.removeRawByteListener(listener);
+            return chunk(key, db, RDB_TYPE_ZSET_2, new ChunkIter("ZADD", key, len, parser) {
+                @Override
+                protected long element(List<byte[]> args) throws IOException {
+                    byte[] element = parser.rdbLoadEncodedStringObject().first();
+                    byte[] score = score(parser.rdbLoadBinaryDoubleValue());
+                    args.add(score);
+                    args.add(element);
+                    condition--;
+                    return element.length + score.length;
+                }
+            });
+        }
         while (len > 0) {
             skipParser.rdbLoadEncodedStringObject();
             skipParser.rdbLoadBinaryDoubleValue();
@@ -218,10 +313,25 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
         BaseRdbParser parser = new BaseRdbParser(in);
         DumpKeyValuePair o4 = new DumpKeyValuePair();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_HASH, key, version)) return null;
         DefaultRawByteListener listener = new DefaultRawByteListener((byte) RDB_TYPE_HASH, version);
         replicator.addRawByteListener(listener);
         SkipRdbParser skipParser = new SkipRdbParser(in);
         long len = skipParser.rdbLoadLen().len;
+        if (chunkSize > 0 && len > chunkSize) {
+            replicator.removeRawByteListener(listener);
+            return chunk(key, db, RDB_TYPE_HASH, new ChunkIter("HMSET", key, len, parser) {
+                @Override
+                protected long element(List<byte[]> args) throws IOException {
+                    byte[] field = parser.rdbLoadEncodedStringObject().first();
+                    byte[] value = parser.rdbLoadEncodedStringObject().first();
+                    args.add(field);
+                    args.add(value);
+                    condition--;
+                    return field.length + value.length;
+                }
+            });
+        }
         while (len > 0) {
             skipParser.rdbLoadEncodedStringObject();
             skipParser.rdbLoadEncodedStringObject();
@@ -241,6 +351,7 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
         BaseRdbParser parser = new BaseRdbParser(in);
         DumpKeyValuePair o9 = new DumpKeyValuePair();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_HASH_ZIPMAP, key, version)) return null;
         DefaultRawByteListener listener = new DefaultRawByteListener((byte) RDB_TYPE_HASH_ZIPMAP, version);
         replicator.addRawByteListener(listener);
         new SkipRdbParser(in).rdbLoadPlainStringObject();
@@ -258,6 +369,7 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
         BaseRdbParser parser = new BaseRdbParser(in);
         DumpKeyValuePair o10 = new DumpKeyValuePair();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_LIST_ZIPLIST, key, version)) return null;
         DefaultRawByteListener listener = new DefaultRawByteListener((byte) RDB_TYPE_LIST_ZIPLIST, version);
         replicator.addRawByteListener(listener);
         new SkipRdbParser(in).rdbLoadPlainStringObject();
@@ -275,6 +387,7 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
         BaseRdbParser parser = new BaseRdbParser(in);
         DumpKeyValuePair o11 = new DumpKeyValuePair();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_SET_INTSET, key, version)) return null;
         DefaultRawByteListener listener = new DefaultRawByteListener((byte) RDB_TYPE_SET_INTSET, version);
         replicator.addRawByteListener(listener);
         new SkipRdbParser(in).rdbLoadPlainStringObject();
@@ -292,6 +405,7 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
         BaseRdbParser parser = new BaseRdbParser(in);
         DumpKeyValuePair o12 = new DumpKeyValuePair();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_ZSET_ZIPLIST, key, version)) return null;
         DefaultRawByteListener listener = new DefaultRawByteListener((byte) RDB_TYPE_ZSET_ZIPLIST, version);
         replicator.addRawByteListener(listener);
         new SkipRdbParser(in).rdbLoadPlainStringObject();
@@ -309,6 +423,7 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
         BaseRdbParser parser = new BaseRdbParser(in);
         DumpKeyValuePair o13 = new DumpKeyValuePair();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_HASH_ZIPLIST, key, version)) return null;
         DefaultRawByteListener listener = new DefaultRawByteListener((byte) RDB_TYPE_HASH_ZIPLIST, version);
         replicator.addRawByteListener(listener);
         new SkipRdbParser(in).rdbLoadPlainStringObject();
@@ -326,10 +441,20 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
         BaseRdbParser parser = new BaseRdbParser(in);
         DumpKeyValuePair o14 = new DumpKeyValuePair();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_LIST_QUICKLIST, key, version)) return null;
         DefaultRawByteListener listener = new DefaultRawByteListener((byte) RDB_TYPE_LIST_QUICKLIST, version);
         replicator.addRawByteListener(listener);
         SkipRdbParser skipParser = new SkipRdbParser(in);
         long len = skipParser.rdbLoadLen().len;
+        if (chunkSize > 0 && len > 0) {
+            // the nodes are filled alike, so the first node tells whether the list has more than chunkSize elements
+            ZipListIterator first = new ZipListIterator(parser.rdbGenericLoadStringObject(RDB_LOAD_NONE));
+            len--;
+            if ((len + 1) * first.zllen() > chunkSize) {
+                replicator.removeRawByteListener(listener);
+                return chunk(key, db, RDB_TYPE_LIST_QUICKLIST, new QuickListChunkIter(key, len, first, parser));
+            }
+        }
         for (int i = 0; i < len; i++) {
             skipParser.rdbGenericLoadStringObject();
         }
@@ -347,6 +472,7 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
         BaseRdbParser parser = new BaseRdbParser(in);
         DumpKeyValuePair o6 = new DumpKeyValuePair();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_MODULE, key, version)) return null;
         DefaultRawByteListener listener = new DefaultRawByteListener((byte) RDB_TYPE_MODULE, version);
         replicator.addRawByteListener(listener);
         SkipRdbParser skipParser = new SkipRdbParser(in);
@@ -376,6 +502,7 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
         BaseRdbParser parser = new BaseRdbParser(in);
         DumpKeyValuePair o7 = new DumpKeyValuePair();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_MODULE_2, key, version)) return null;
         DefaultRawByteListener listener = new DefaultRawByteListener((byte) RDB_TYPE_MODULE_2, version);
         replicator.addRawByteListener(listener);
         SkipRdbParser skipParser = new SkipRdbParser(in);
@@ -404,4 +531,116 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
         return o7;
     }
 
+    /**
+     * skip the elements that the listeners did not read, before the type of the next record is read
+     */
+    @Override
+    public int applyType(RedisInputStream in) throws IOException {
+        ChunkIter chunks = this.chunks;
+        if (chunks != null) {
+            this.chunks = null;
+            while (chunks.hasNext()) chunks.next();
+        }
+        return super.applyType(in);
+    }
+
+    private ChunkedKeyValuePair chunk(byte[] key, DB db, int type, ChunkIter chunks) {
+        this.chunks = chunks;
+        ChunkedKeyValuePair kv = new ChunkedKeyValuePair();
+        kv.setValueRdbType(type);
+        kv.setValue(chunks);
+        kv.setDb(db);
+        kv.setKey(new String(key, UTF_8));
+        kv.setRawKey(key);
+        return kv;
+    }
+
+    private static byte[] score(double score) {
+        if (score == Double.POSITIVE_INFINITY) return "inf".getBytes();
+        if (score == Double.NEGATIVE_INFINITY) return "-inf".getBytes();
+        return String.valueOf(score).getBytes();
+    }
+
+    private abstract class ChunkIter implements Iterator<DefaultCommand> {
+
+        protected long condition;
+        protected final byte[] key;
+        protected final byte[] command;
+        protected final BaseRdbParser parser;
+
+        private ChunkIter(String command, byte[] key, long condition, BaseRdbParser parser) {
+            this.key = key;
+            this.parser = parser;
+            this.condition = condition;
+            this.command = command.getBytes();
+        }
+
+        /**
+         * read an element and count it down
+         *
+         * @param args arguments of the command
+         * @return bytes of the element
+         * @throws IOException when read timeout
+         */
+        protected abstract long element(List<byte[]> args) throws IOException;
+
+        @Override
+        public boolean hasNext() {
+            return condition > 0;
+        }
+
+        @Override
+        public DefaultCommand next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            try {
+                List<byte[]> args = new ArrayList<>();
+                args.add(key);
+                long bytes = 0;
+                int count = 0;
+                do {
+                    bytes += element(args);
+                    count++;
+                } while (hasNext() && count < chunkSize && (chunkBytes <= 0 || bytes < chunkBytes));
+                return new DefaultCommand(command, args.toArray(new byte[args.size()][]));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private class QuickListChunkIter extends ChunkIter {
+
+        protected ZipListIterator it;
+
+        private QuickListChunkIter(byte[] key, long condition, ZipListIterator first, BaseRdbParser parser) {
+            super("RPUSH", key, condition, parser);
+            this.it = first;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while ((it == null || !it.hasNext()) && condition > 0) {
+                    condition--;
+                    ByteArray node = parser.rdbGenericLoadStringObject(RDB_LOAD_NONE);
+                    it = new ZipListIterator(node);
+                }
+                return it != null && it.hasNext();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        protected long element(List<byte[]> args) throws IOException {
+            byte[] element = it.next();
+            args.add(element);
+            return element.length;
+        }
+    }
 }
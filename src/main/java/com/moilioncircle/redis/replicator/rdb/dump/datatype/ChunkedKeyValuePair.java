@@ -0,0 +1,37 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb.dump.datatype;
+
+import com.moilioncircle.redis.replicator.cmd.impl.DefaultCommand;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
+
+import java.util.Iterator;
+
+/**
+ * A huge collection decoded as a sequence of bounded RPUSH, SADD, ZADD or HMSET commands.
+ * <p>
+ * The commands are decoded lazily from the rdb stream, so the iterator is only valid in the listener
+ * that receives this key value pair. The commands that are not read are skipped before the next record.
+ * The commands only add elements, delete the key before and apply the expire time after if needed.
+ *
+ * @author Leon Chen
+ * @see com.moilioncircle.redis.replicator.rdb.dump.DumpRdbVisitor
+ * @since 2.6.0
+ */
+public class ChunkedKeyValuePair extends KeyValuePair<Iterator<DefaultCommand>> {
+    private static final long serialVersionUID = 1L;
+}
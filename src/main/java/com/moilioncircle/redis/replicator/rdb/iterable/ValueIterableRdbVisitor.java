@@ -29,6 +29,8 @@ import com.moilioncircle.redis.replicator.rdb.iterable.datatype.KeyStringValueBy
 import com.moilioncircle.redis.replicator.rdb.iterable.datatype.KeyStringValueMapEntryIterator;
 import com.moilioncircle.redis.replicator.rdb.iterable.datatype.KeyStringValueZSetEntryIterator;
 import com.moilioncircle.redis.replicator.util.ByteArray;
+import com.moilioncircle.redis.replicator.util.IntSetIterator;
+import com.moilioncircle.redis.replicator.util.ZipListIterator;
 
 import java.io.IOException;
 import java.util.AbstractMap;
@@ -68,6 +70,7 @@ public class ValueIterableRdbVisitor extends DefaultRdbVisitor {
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyStringValueByteArrayIterator o1 = new KeyStringValueByteArrayIterator();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_LIST, key, version)) return null;
         long len = parser.rdbLoadLen().len;
         o1.setValue(new Iter<byte[]>(len, parser) {
             @Override
@@ -102,6 +105,7 @@ public class ValueIterableRdbVisitor extends DefaultRdbVisitor {
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyStringValueByteArrayIterator o2 = new KeyStringValueByteArrayIterator();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_SET, key, version)) return null;
         long len = parser.rdbLoadLen().len;
         o2.setValue(new Iter<byte[]>(len, parser) {
             @Override
@@ -136,6 +140,7 @@ public class ValueIterableRdbVisitor extends DefaultRdbVisitor {
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyStringValueZSetEntryIterator o3 = new KeyStringValueZSetEntryIterator();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_ZSET, key, version)) return null;
         long len = parser.rdbLoadLen().len;
         o3.setValue(new Iter<ZSetEntry>(len, parser) {
             @Override
@@ -171,6 +176,7 @@ public class ValueIterableRdbVisitor extends DefaultRdbVisitor {
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyStringValueZSetEntryIterator o5 = new KeyStringValueZSetEntryIterator();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_ZSET_2, key, version)) return null;
         /* rdb version 8*/
         long len = parser.rdbLoadLen().len;
         o5.setValue(new Iter<ZSetEntry>(len, parser) {
@@ -207,6 +213,7 @@ public class ValueIterableRdbVisitor extends DefaultRdbVisitor {
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyStringValueMapEntryIterator o4 = new KeyStringValueMapEntryIterator();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_HASH, key, version)) return null;
         long len = parser.rdbLoadLen().len;
         o4.setValue(new Iter<Map.Entry<byte[], byte[]>>(len, parser) {
             @Override
@@ -242,6 +249,7 @@ public class ValueIterableRdbVisitor extends DefaultRdbVisitor {
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyStringValueMapEntryIterator o9 = new KeyStringValueMapEntryIterator();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_HASH_ZIPMAP, key, version)) return null;
         ByteArray aux = parser.rdbLoadPlainStringObject();
         RedisInputStream stream = new RedisInputStream(new ByteArrayInputStream(aux));
         BaseRdbParser.LenHelper.zmlen(stream); // zmlen
@@ -262,38 +270,9 @@ public class ValueIterableRdbVisitor extends DefaultRdbVisitor {
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyStringValueByteArrayIterator o10 = new KeyStringValueByteArrayIterator();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_LIST_ZIPLIST, key, version)) return null;
         ByteArray aux = parser.rdbLoadPlainStringObject();
-        final RedisInputStream stream = new RedisInputStream(new ByteArrayInputStream(aux));
-
-        BaseRdbParser.LenHelper.zlbytes(stream); // zlbytes
-        BaseRdbParser.LenHelper.zltail(stream); // zltail
-        int zllen = BaseRdbParser.LenHelper.zllen(stream);
-        o10.setValue(new Iter<byte[]>(zllen, null) {
-            @Override
-            public boolean hasNext() {
-                if (condition > 0) return true;
-                try {
-                    int zlend = BaseRdbParser.LenHelper.zlend(stream);
-                    if (zlend != 255) {
-                        throw new AssertionError("zlend expect 255 but " + zlend);
-                    }
-                    return false;
-                } catch (IOException e) {
-                    throw new UncheckedIOException(e);
-                }
-            }
-
-            @Override
-            public byte[] next() {
-                try {
-                    byte[] e = BaseRdbParser.StringHelper.zipListEntry(stream);
-                    condition--;
-                    return e;
-                } catch (IOException e) {
-                    throw new UncheckedIOException(e);
-                }
-            }
-        });
+        o10.setValue(new ZipListIterator(aux));
         o10.setValueRdbType(RDB_TYPE_LIST_ZIPLIST);
         o10.setDb(db);
         o10.setKey(new String(key, UTF_8));
@@ -310,41 +289,9 @@ public class ValueIterableRdbVisitor extends DefaultRdbVisitor {
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyStringValueByteArrayIterator o11 = new KeyStringValueByteArrayIterator();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_SET_INTSET, key, version)) return null;
         ByteArray aux = parser.rdbLoadPlainStringObject();
-        final RedisInputStream stream = new RedisInputStream(new ByteArrayInputStream(aux));
-
-        final int encoding = BaseRdbParser.LenHelper.encoding(stream);
-        long lenOfContent = BaseRdbParser.LenHelper.lenOfContent(stream);
-        o11.setValue(new Iter<byte[]>(lenOfContent, null) {
-            @Override
-            public boolean hasNext() {
-                return condition > 0;
-            }
-
-            @Override
-            public byte[] next() {
-                try {
-                    switch (encoding) {
-                        case 2:
-                            String element = String.valueOf(stream.readInt(2));
-                            condition--;
-                            return element.getBytes();
-                        case 4:
-                            element = String.valueOf(stream.readInt(4));
-                            condition--;
-                            return element.getBytes();
-                        case 8:
-                            element = String.valueOf(stream.readLong(8));
-                            condition--;
-                            return element.getBytes();
-                        default:
-                            throw new AssertionError("expect encoding [2,4,8] but:" + encoding);
-                    }
-                } catch (IOException e) {
-                    throw new UncheckedIOException(e);
-                }
-            }
-        });
+        o11.setValue(new IntSetIterator(aux));
         o11.setValueRdbType(RDB_TYPE_SET_INTSET);
         o11.setDb(db);
         o11.setKey(new String(key, UTF_8));
@@ -361,38 +308,20 @@ public class ValueIterableRdbVisitor extends DefaultRdbVisitor {
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyStringValueZSetEntryIterator o12 = new KeyStringValueZSetEntryIterator();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_ZSET_ZIPLIST, key, version)) return null;
         ByteArray aux = parser.rdbLoadPlainStringObject();
-        final RedisInputStream stream = new RedisInputStream(new ByteArrayInputStream(aux));
-
-        BaseRdbParser.LenHelper.zlbytes(stream); // zlbytes
-        BaseRdbParser.LenHelper.zltail(stream); // zltail
-        int zllen = BaseRdbParser.LenHelper.zllen(stream);
-        o12.setValue(new Iter<ZSetEntry>(zllen, null) {
+        final ZipListIterator it = new ZipListIterator(aux);
+        o12.setValue(new Iter<ZSetEntry>(0, null) {
             @Override
             public boolean hasNext() {
-                if (condition > 0) return true;
-                try {
-                    int zlend = BaseRdbParser.LenHelper.zlend(stream);
-                    if (zlend != 255) {
-                        throw new AssertionError("zlend expect 255 but " + zlend);
-                    }
-                    return false;
-                } catch (IOException e) {
-                    throw new UncheckedIOException(e);
-                }
+                return it.hasNext();
             }
 
             @Override
             public ZSetEntry next() {
-                try {
-                    byte[] element = BaseRdbParser.StringHelper.zipListEntry(stream);
-                    condition--;
-                    double score = Double.valueOf(new String(BaseRdbParser.StringHelper.zipListEntry(stream), UTF_8));
-                    condition--;
-                    return new ZSetEntry(new String(element, UTF_8), score, element);
-                } catch (IOException e) {
-                    throw new UncheckedIOException(e);
-                }
+                byte[] element = it.next();
+                double score = Double.valueOf(new String(it.next(), UTF_8));
+                return new ZSetEntry(new String(element, UTF_8), score, element);
             }
         });
         o12.setValueRdbType(RDB_TYPE_ZSET_ZIPLIST);
@@ -411,38 +340,20 @@ public class ValueIterableRdbVisitor extends DefaultRdbVisitor {
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyStringValueMapEntryIterator o13 = new KeyStringValueMapEntryIterator();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_HASH_ZIPLIST, key, version)) return null;
         ByteArray aux = parser.rdbLoadPlainStringObject();
-        final RedisInputStream stream = new RedisInputStream(new ByteArrayInputStream(aux));
-
-        BaseRdbParser.LenHelper.zlbytes(stream); // zlbytes
-        BaseRdbParser.LenHelper.zltail(stream); // zltail
-        int zllen = BaseRdbParser.LenHelper.zllen(stream);
-        o13.setValue(new Iter<Map.Entry<byte[], byte[]>>(zllen, null) {
+        final ZipListIterator it = new ZipListIterator(aux);
+        o13.setValue(new Iter<Map.Entry<byte[], byte[]>>(0, null) {
             @Override
             public boolean hasNext() {
-                if (condition > 0) return true;
-                try {
-                    int zlend = BaseRdbParser.LenHelper.zlend(stream);
-                    if (zlend != 255) {
-                        throw new AssertionError("zlend expect 255 but " + zlend);
-                    }
-                    return false;
-                } catch (IOException e) {
-                    throw new UncheckedIOException(e);
-                }
+                return it.hasNext();
             }
 
             @Override
             public Map.Entry<byte[], byte[]> next() {
-                try {
-                    byte[] field = BaseRdbParser.StringHelper.zipListEntry(stream);
-                    condition--;
-                    byte[] value = BaseRdbParser.StringHelper.zipListEntry(stream);
-                    condition--;
-                    return new AbstractMap.SimpleEntry<>(field, value);
-                } catch (IOException e) {
-                    throw new UncheckedIOException(e);
-                }
+                byte[] field = it.next();
+                byte[] value = it.next();
+                return new AbstractMap.SimpleEntry<>(field, value);
             }
         });
         o13.setValueRdbType(RDB_TYPE_HASH_ZIPLIST);
@@ -457,6 +368,7 @@ public class ValueIterableRdbVisitor extends DefaultRdbVisitor {
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyStringValueByteArrayIterator o14 = new KeyStringValueByteArrayIterator();
         byte[] key = parser.rdbLoadEncodedStringObject().first();
+        if (skip(in, db, RDB_TYPE_LIST_QUICKLIST, key, version)) return null;
         long len = parser.rdbLoadLen().len;
         o14.setValue(new QuickListIter(len, parser));
         o14.setValueRdbType(RDB_TYPE_LIST_QUICKLIST);
@@ -521,8 +433,7 @@ public class ValueIterableRdbVisitor extends DefaultRdbVisitor {
 
     private static class QuickListIter extends Iter<byte[]> {
 
-        protected int zllen = -1;
-        protected RedisInputStream stream;
+        protected ZipListIterator it;
 
         private QuickListIter(long condition, BaseRdbParser parser) {
             super(condition, parser);
@@ -530,44 +441,23 @@ public class ValueIterableRdbVisitor extends DefaultRdbVisitor {
 
         @Override
         public boolean hasNext() {
-            return zllen > 0 || condition > 0;
-        }
-
-        @Override
-        public byte[] next() {
             try {
-                if (zllen == -1 && condition > 0) {
+                while (it == null || !it.hasNext()) {
+                    if (condition <= 0) return false;
                     ByteArray element = parser.rdbGenericLoadStringObject(RDB_LOAD_NONE);
-                    this.stream = new RedisInputStream(new ByteArrayInputStream(element));
-                    BaseRdbParser.LenHelper.zlbytes(stream); // zlbytes
-                    BaseRdbParser.LenHelper.zltail(stream); // zltail
-                    this.zllen = BaseRdbParser.LenHelper.zllen(stream);
-                    if (zllen == 0) {
-                        int zlend = BaseRdbParser.LenHelper.zlend(stream);
-                        if (zlend != 255) {
-                            throw new AssertionError("zlend expect 255 but " + zlend);
-                        }
-                        zllen = -1;
-                        condition--;
-                    }
-                    if (hasNext()) return next();
-                    throw new IllegalStateException("end of iterator");
-                } else {
-                    byte[] e = BaseRdbParser.StringHelper.zipListEntry(stream);
-                    zllen--;
-                    if (zllen == 0) {
-                        int zlend = BaseRdbParser.LenHelper.zlend(stream);
-                        if (zlend != 255) {
-                            throw new AssertionError("zlend expect 255 but " + zlend);
-                        }
-                        zllen = -1;
-                        condition--;
-                    }
-                    return e;
+                    this.it = new ZipListIterator(element);
+                    condition--;
                 }
+                return true;
             } catch (IOException e) {
                 throw new UncheckedIOException(e);
             }
         }
+
+        @Override
+        public byte[] next() {
+            if (!hasNext()) throw new IllegalStateException("end of iterator");
+            return it.next();
+        }
     }
 }
@@ -52,10 +52,22 @@ public class ByteArray implements Iterable<byte[]> {
     }
 
     public ByteArray(long length, int cap) {
+        this(length, cap, true);
+    }
+
+    /**
+     * @param length   length
+     * @param cap      max length of a single heap array
+     * @param allocate false for subclasses that allocate their own storage
+     * @since 2.6.0
+     */
+    protected ByteArray(long length, int cap, boolean allocate) {
         this.cap = cap;
         this.length = length;
         if (length > MAX_VALUE || length < 0) {
             throw new IllegalArgumentException(String.valueOf(length));
+        } else if (!allocate) {
+            return;
         } else if (length <= cap) {
             this.smallBytes = new byte[(int) length];
         } else {
@@ -90,6 +102,15 @@ public class ByteArray implements Iterable<byte[]> {
         return this.length;
     }
 
+    /**
+     * free the storage of this array, it must not be used after.
+     * a no-op for heap arrays.
+     *
+     * @since 2.6.0
+     */
+    public void release() {
+    }
+
     public byte[] first() {
         Iterator<byte[]> it = this.iterator();
         return it.hasNext() ? it.next() : null;
@@ -104,6 +125,10 @@ public class ByteArray implements Iterable<byte[]> {
         if (srcPos + length > src.length || destPos + length > dest.length) {
             throw new IndexOutOfBoundsException();
         }
+        if (src instanceof DirectByteArray || dest instanceof DirectByteArray) {
+            DirectByteArray.copy(src, srcPos, dest, destPos, length);
+            return;
+        }
         if (srcPos + length <= src.cap && destPos + length <= dest.cap) {
             System.arraycopy(src.smallBytes, (int) srcPos, dest.smallBytes, (int) destPos, (int) length);
             return;
@@ -123,6 +148,26 @@ public class ByteArray implements Iterable<byte[]> {
         assert length == 0;
     }
 
+    /**
+     * @param idx index
+     * @return the heap array that holds the index
+     * @since 2.6.0
+     */
+    protected byte[] array(long idx) {
+        if (smallBytes != null) return smallBytes;
+        return largeBytes[(int) (idx >> BITS)];
+    }
+
+    /**
+     * @param idx index
+     * @return offset of the index in {@link #array(long)}
+     * @since 2.6.0
+     */
+    protected int offset(long idx) {
+        if (smallBytes != null) return (int) idx;
+        return (int) (idx & MASK);
+    }
+
     protected class Iter implements Iterator<byte[]> {
         protected int index = 0;
 
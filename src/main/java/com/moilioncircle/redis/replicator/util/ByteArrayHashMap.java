@@ -0,0 +1,452 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.util;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An insertion ordered map of byte[] keys compared by content.
+ * <p>
+ * Keys, values and hashes of the entries are kept in parallel arrays in insertion order, and an open addressing
+ * table with linear probing holds the indexes of the entries, so an entry costs no object besides its key and
+ * value and the hash of a key is computed once. {@link #get(byte[], int, int)} looks a key up by a range of
+ * a larger array without copying it.
+ * <p>
+ * Removed entries leave a hole in the arrays until the next resize, this map is meant for maps that are built
+ * once and read, such as the fields of a hash.
+ *
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+//@NonThreadSafe
+public class ByteArrayHashMap<V> extends AbstractMap<byte[], V> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final byte[] REMOVED = new byte[0];
+
+    protected transient int size;
+    protected transient int count; // entries including the removed ones
+    protected transient int modCount;
+    protected transient int[] table; // index of the entry + 1, 0 is an empty slot
+    protected transient int[] hashes;
+    protected transient byte[][] keys;
+    protected transient Object[] values;
+
+    public ByteArrayHashMap() {
+        this(16);
+    }
+
+    public ByteArrayHashMap(int initialCapacity) {
+        init(initialCapacity);
+    }
+
+    public ByteArrayHashMap(Map<? extends byte[], ? extends V> m) {
+        this(m == null ? 16 : m.size());
+        if (m != null) putAll(m);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (key != null && !(key instanceof byte[])) return false;
+        return indexOf((byte[]) key) >= 0;
+    }
+
+    public boolean containsKey(byte[] bytes, int offset, int length) {
+        return indexOf(bytes, offset, length, hash(bytes, offset, length)) >= 0;
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        for (int i = 0; i < count; i++) {
+            if (keys[i] == REMOVED) continue;
+            if (value == null ? values[i] == null : value.equals(values[i])) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public V get(Object key) {
+        if (key != null && !(key instanceof byte[])) return null;
+        int i = indexOf((byte[]) key);
+        return i < 0 ? null : value(i);
+    }
+
+    /**
+     * @param bytes  array that holds the key
+     * @param offset offset of the key
+     * @param length length of the key
+     * @return value of the key or null
+     */
+    public V get(byte[] bytes, int offset, int length) {
+        int i = indexOf(bytes, offset, length, hash(bytes, offset, length));
+        return i < 0 ? null : value(i);
+    }
+
+    @Override
+    public V put(byte[] key, V value) {
+        int hash = key == null ? 0 : hash(key, 0, key.length);
+        int i = key == null ? indexOfNull() : indexOf(key, 0, key.length, hash);
+        if (i >= 0) {
+            V old = value(i);
+            values[i] = value;
+            return old;
+        }
+        if (count == keys.length) grow();
+        i = count++;
+        hashes[i] = hash;
+        keys[i] = key;
+        values[i] = value;
+        insert(i);
+        size++;
+        modCount++;
+        return null;
+    }
+
+    @Override
+    public V remove(Object key) {
+        if (key != null && !(key instanceof byte[])) return null;
+        int i = indexOf((byte[]) key);
+        if (i < 0) return null;
+        V old = value(i);
+        removeAt(i);
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(table, 0);
+        Arrays.fill(keys, 0, count, null);
+        Arrays.fill(values, 0, count, null);
+        size = 0;
+        count = 0;
+        modCount++;
+    }
+
+    @Override
+    public Set<byte[]> keySet() {
+        return new AbstractSet<byte[]>() {
+            @Override
+            public Iterator<byte[]> iterator() {
+                return new Iter<byte[]>() {
+                    @Override
+                    protected byte[] get(int i) {
+                        return keys[i];
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return containsKey(o);
+            }
+
+            @Override
+            public boolean remove(Object o) {
+                if (o != null && !(o instanceof byte[])) return false;
+                int i = indexOf((byte[]) o);
+                if (i < 0) return false;
+                removeAt(i);
+                return true;
+            }
+
+            @Override
+            public void clear() {
+                ByteArrayHashMap.this.clear();
+            }
+        };
+    }
+
+    @Override
+    public Collection<V> values() {
+        return new AbstractCollection<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new Iter<V>() {
+                    @Override
+                    protected V get(int i) {
+                        return value(i);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public void clear() {
+                ByteArrayHashMap.this.clear();
+            }
+        };
+    }
+
+    @Override
+    public Set<Entry<byte[], V>> entrySet() {
+        return new AbstractSet<Entry<byte[], V>>() {
+            @Override
+            public Iterator<Entry<byte[], V>> iterator() {
+                return new Iter<Entry<byte[], V>>() {
+                    @Override
+                    protected Entry<byte[], V> get(int i) {
+                        return new Node(i);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public void clear() {
+                ByteArrayHashMap.this.clear();
+            }
+        };
+    }
+
+    protected void init(int initialCapacity) {
+        int capacity = Math.max(4, initialCapacity);
+        this.hashes = new int[capacity];
+        this.keys = new byte[capacity][];
+        this.values = new Object[capacity];
+        this.table = new int[tableSize(capacity)];
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size);
+        for (int i = 0; i < count; i++) {
+            if (keys[i] == REMOVED) continue;
+            out.writeObject(keys[i]);
+            out.writeObject(values[i]);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int size = in.readInt();
+        init(size);
+        for (int i = 0; i < size; i++) put((byte[]) in.readObject(), (V) in.readObject());
+    }
+
+    @SuppressWarnings("unchecked")
+    protected V value(int i) {
+        return (V) values[i];
+    }
+
+    protected int indexOf(byte[] key) {
+        if (key == null) return indexOfNull();
+        return indexOf(key, 0, key.length, hash(key, 0, key.length));
+    }
+
+    protected int indexOfNull() {
+        int mask = table.length - 1;
+        for (int slot = 0; ; slot = (slot + 1) & mask) {
+            int i = table[slot] - 1;
+            if (i < 0) return -1;
+            if (hashes[i] == 0 && keys[i] == null) return i;
+        }
+    }
+
+    protected int indexOf(byte[] bytes, int offset, int length, int hash) {
+        int mask = table.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int i = table[slot] - 1;
+            if (i < 0) return -1;
+            if (hashes[i] != hash) continue;
+            byte[] key = keys[i];
+            if (key == null || key == REMOVED || key.length != length) continue;
+            if (equals(key, bytes, offset, length)) return i;
+        }
+    }
+
+    protected void insert(int i) {
+        int mask = table.length - 1;
+        int slot = hashes[i] & mask;
+        while (table[slot] != 0) slot = (slot + 1) & mask;
+        table[slot] = i + 1;
+    }
+
+    protected void removeAt(int i) {
+        // the slot keeps pointing to the removed entry so that the probe sequences of other keys are not broken
+        keys[i] = REMOVED;
+        values[i] = null;
+        size--;
+        modCount++;
+    }
+
+    /**
+     * compact the removed entries and double the capacity if needed, then rebuild the table.
+     */
+    protected void grow() {
+        int capacity = size >= keys.length / 2 ? keys.length * 2 : keys.length;
+        if (capacity < 0) throw new OutOfMemoryError("too many entries");
+        int[] hashes = new int[capacity];
+        byte[][] keys = new byte[capacity][];
+        Object[] values = new Object[capacity];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            if (this.keys[i] == REMOVED) continue;
+            hashes[n] = this.hashes[i];
+            keys[n] = this.keys[i];
+            values[n] = this.values[i];
+            n++;
+        }
+        this.hashes = hashes;
+        this.keys = keys;
+        this.values = values;
+        this.count = n;
+        this.table = new int[tableSize(capacity)];
+        for (int i = 0; i < n; i++) insert(i);
+        modCount++;
+    }
+
+    /**
+     * the table is at most half full
+     */
+    protected static int tableSize(int capacity) {
+        int n = Integer.highestOneBit(capacity);
+        if (n < capacity) n <<= 1;
+        return n * 2;
+    }
+
+    protected static int hash(byte[] bytes, int offset, int length) {
+        int h = 1;
+        for (int i = offset, end = offset + length; i < end; i++) h = 31 * h + bytes[i];
+        // spread the low bits that select the slot
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    protected static boolean equals(byte[] key, byte[] bytes, int offset, int length) {
+        for (int i = 0; i < length; i++) if (key[i] != bytes[offset + i]) return false;
+        return true;
+    }
+
+    protected abstract class Iter<T> implements Iterator<T> {
+        protected int next = skip(0);
+        protected int last = -1;
+        protected int expectedModCount = modCount;
+
+        protected abstract T get(int i);
+
+        protected int skip(int i) {
+            while (i < count && keys[i] == REMOVED) i++;
+            return i;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < count;
+        }
+
+        @Override
+        public T next() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            if (next >= count) throw new NoSuchElementException();
+            last = next;
+            next = skip(next + 1);
+            return get(last);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) throw new IllegalStateException();
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            removeAt(last);
+            last = -1;
+            expectedModCount = modCount;
+        }
+    }
+
+    protected class Node implements Entry<byte[], V> {
+        protected final int index;
+
+        protected Node(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public byte[] getKey() {
+            return keys[index];
+        }
+
+        @Override
+        public V getValue() {
+            return value(index);
+        }
+
+        @Override
+        public V setValue(V value) {
+            V old = value(index);
+            values[index] = value;
+            return old;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Entry)) return false;
+            Entry<?, ?> e = (Entry<?, ?>) o;
+            if (!(e.getKey() == null || e.getKey() instanceof byte[])) return false;
+            V value = getValue();
+            return Arrays.equals(getKey(), (byte[]) e.getKey()) && (value == null ? e.getValue() == null : value.equals(e.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            V value = getValue();
+            return Arrays.hashCode(getKey()) ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(getKey()) + "=" + getValue();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A reusable offset/length view of a byte array.
+ * <p>
+ * The view does not own the underlying array. It is only valid until its owner reuses it,
+ * use {@link #toBytes()} to keep a copy.
+ *
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+//@NonThreadSafe
+public class ByteSlice {
+
+    protected byte[] array;
+    protected int offset;
+    protected int length;
+
+    public ByteSlice() {
+    }
+
+    public ByteSlice(byte[] array) {
+        this(array, 0, array.length);
+    }
+
+    public ByteSlice(byte[] array, int offset, int length) {
+        reset(array, offset, length);
+    }
+
+    public ByteSlice reset(byte[] array, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > array.length) {
+            throw new IndexOutOfBoundsException("offset:" + offset + ", length:" + length);
+        }
+        this.array = array;
+        this.offset = offset;
+        this.length = length;
+        return this;
+    }
+
+    public byte[] array() {
+        return array;
+    }
+
+    public int offset() {
+        return offset;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public byte get(int idx) {
+        if (idx < 0 || idx >= length) throw new IndexOutOfBoundsException(String.valueOf(idx));
+        return array[offset + idx];
+    }
+
+    public byte[] toBytes() {
+        byte[] bytes = new byte[length];
+        System.arraycopy(array, offset, bytes, 0, length);
+        return bytes;
+    }
+
+    /**
+     * @return decimal value of this slice
+     * @throws NumberFormatException if this slice is not a decimal long
+     */
+    public long toLong() {
+        if (length == 0) throw new NumberFormatException(toString());
+        int i = offset, end = offset + length;
+        boolean negative = array[i] == '-';
+        if (negative && ++i == end) throw new NumberFormatException(toString());
+        long r = 0;
+        for (; i < end; i++) {
+            int d = array[i] - '0';
+            if (d < 0 || d > 9 || r < Long.MIN_VALUE / 10) throw new NumberFormatException(toString());
+            r *= 10;
+            if (r < Long.MIN_VALUE + d) throw new NumberFormatException(toString());
+            r -= d;
+        }
+        if (!negative && r == Long.MIN_VALUE) throw new NumberFormatException(toString());
+        return negative ? r : -r;
+    }
+
+    public boolean contentEquals(byte[] bytes) {
+        if (bytes == null || bytes.length != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (array[offset + i] != bytes[i]) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return new String(array, offset, length, UTF_8);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.util;
+
+/**
+ * CRC16-CCITT (XMODEM) used by redis cluster to map keys to slots.
+ *
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class CRC16 {
+
+    public static final int SLOTS = 16384;
+
+    private static final int[] LOOKUP_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 8;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+            LOOKUP_TABLE[i] = crc & 0xFFFF;
+        }
+    }
+
+    public static int crc16(byte[] bytes) {
+        return crc16(bytes, 0, bytes.length);
+    }
+
+    public static int crc16(byte[] bytes, int start, int length) {
+        int crc = 0;
+        for (int i = start; i < start + length; i++) {
+            crc = ((crc << 8) ^ LOOKUP_TABLE[((crc >>> 8) ^ bytes[i]) & 0xFF]) & 0xFFFF;
+        }
+        return crc;
+    }
+
+    /**
+     * @param key key
+     * @return cluster slot of the key, only the content of the first non-empty {...} hash tag is hashed
+     */
+    public static int slot(byte[] key) {
+        int s = -1;
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] == '{') {
+                s = i;
+                break;
+            }
+        }
+        if (s >= 0) {
+            for (int e = s + 1; e < key.length; e++) {
+                if (key[e] != '}') continue;
+                if (e != s + 1) return crc16(key, s + 1, e - s - 1) & (SLOTS - 1);
+                break;
+            }
+        }
+        return crc16(key) & (SLOTS - 1);
+    }
+}
@@ -16,11 +16,20 @@
 
 package com.moilioncircle.redis.replicator.util;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.Checksum;
+
 /**
+ * CRC-64-Jones used by redis for rdb checksums and dump payloads.
+ * <p>
+ * The static methods process 8 bytes per step with slice-by-8 tables,
+ * an instance accumulates a checksum incrementally.
+ *
  * @author Leon Chen
  * @since 2.5.0
  */
-public class CRC64 {
+public class CRC64 implements Checksum {
     public static final long[] LOOKUP_TABLE = {
             0x0000000000000000L, 0x7AD870C830358979L, 0xF5B0E190606B12F2L, 0x8F689158505E9B8BL,
             0xC038E5739841B68FL, 0xBAE095BBA8743FF6L, 0x358804E3F82AA47DL, 0x4F50742BC81F2D04L,
@@ -88,6 +97,21 @@ public class CRC64 {
             0xA6DF411FBFB21CA3L, 0xDC0731D78F8795DAL, 0x536FA08FDFD90E51L, 0x29B7D047EFEC8728L,
     };
 
+    /**
+     * SLICE_TABLE[k][n] is the crc of byte n followed by k zero bytes.
+     */
+    private static final long[][] SLICE_TABLE = new long[8][256];
+
+    static {
+        SLICE_TABLE[0] = LOOKUP_TABLE.clone();
+        for (int k = 1; k < 8; k++) {
+            for (int n = 0; n < 256; n++) {
+                long crc = SLICE_TABLE[k - 1][n];
+                SLICE_TABLE[k][n] = (crc >>> 8) ^ LOOKUP_TABLE[(int) crc & 0xFF];
+            }
+        }
+    }
+
     public static long crc64(byte[] bytes) {
         return crc64(bytes, 0, bytes.length);
     }
@@ -101,12 +125,120 @@ public class CRC64 {
     }
 
     public static long crc64(byte[] bytes, int start, int length, long sum) {
-        for (int i = start; i < start + length; i++) {
+        int i = start;
+        int end = start + length;
+        for (; i + 8 <= end; i += 8) {
+            long x = sum ^ ((bytes[i] & 0xFFL)
+                    | (bytes[i + 1] & 0xFFL) << 8
+                    | (bytes[i + 2] & 0xFFL) << 16
+                    | (bytes[i + 3] & 0xFFL) << 24
+                    | (bytes[i + 4] & 0xFFL) << 32
+                    | (bytes[i + 5] & 0xFFL) << 40
+                    | (bytes[i + 6] & 0xFFL) << 48
+                    | (bytes[i + 7] & 0xFFL) << 56);
+            sum = slice8(x);
+        }
+        for (; i < end; i++) {
             sum = (sum >>> 8) ^ LOOKUP_TABLE[((int) sum ^ bytes[i]) & 0xFF];
         }
         return sum;
     }
 
+    /**
+     * @param buffer bytes between position and limit, the position is moved to the limit
+     * @param sum    initial checksum
+     * @return checksum
+     * @since 2.6.0
+     */
+    public static long crc64(ByteBuffer buffer, long sum) {
+        if (buffer.hasArray()) {
+            int start = buffer.arrayOffset() + buffer.position();
+            sum = crc64(buffer.array(), start, buffer.remaining(), sum);
+            buffer.position(buffer.limit());
+            return sum;
+        }
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            while (buffer.remaining() >= 8) {
+                sum = slice8(sum ^ buffer.getLong());
+            }
+            while (buffer.hasRemaining()) {
+                sum = (sum >>> 8) ^ LOOKUP_TABLE[((int) sum ^ buffer.get()) & 0xFF];
+            }
+            return sum;
+        } finally {
+            buffer.order(order);
+        }
+    }
+
+    private static long slice8(long x) {
+        return SLICE_TABLE[7][(int) x & 0xFF]
+                ^ SLICE_TABLE[6][(int) (x >>> 8) & 0xFF]
+                ^ SLICE_TABLE[5][(int) (x >>> 16) & 0xFF]
+                ^ SLICE_TABLE[4][(int) (x >>> 24) & 0xFF]
+                ^ SLICE_TABLE[3][(int) (x >>> 32) & 0xFF]
+                ^ SLICE_TABLE[2][(int) (x >>> 40) & 0xFF]
+                ^ SLICE_TABLE[1][(int) (x >>> 48) & 0xFF]
+                ^ SLICE_TABLE[0][(int) (x >>> 56) & 0xFF];
+    }
+
+    private long sum;
+
+    /**
+     * @since 2.6.0
+     */
+    public CRC64() {
+    }
+
+    /**
+     * @since 2.6.0
+     */
+    @Override
+    public void update(int b) {
+        sum = (sum >>> 8) ^ LOOKUP_TABLE[((int) sum ^ b) & 0xFF];
+    }
+
+    /**
+     * @since 2.6.0
+     */
+    @Override
+    public void update(byte[] bytes, int off, int len) {
+        sum = crc64(bytes, off, len, sum);
+    }
+
+    /**
+     * @param bytes bytes
+     * @since 2.6.0
+     */
+    public void update(byte[] bytes) {
+        sum = crc64(bytes, 0, bytes.length, sum);
+    }
+
+    /**
+     * @param buffer bytes between position and limit, the position is moved to the limit
+     * @since 2.6.0
+     */
+    public void update(ByteBuffer buffer) {
+        sum = crc64(buffer, sum);
+    }
+
+    /**
+     * @since 2.6.0
+     */
+    @Override
+    public long getValue() {
+        return sum;
+    }
+
+    /**
+     * @since 2.6.0
+     */
+    @Override
+    public void reset() {
+        sum = 0L;
+    }
+
     public static byte[] longToByteArray(long value) {
         return new byte[]{
                 (byte) value,
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+
+/**
+ * A {@link ByteArray} stored outside of the java heap, in direct buffers or in a memory mapped temp file,
+ * in chunks of 1 GB.
+ * <p>
+ * The memory is freed by {@link #release()}, or by the garbage collector if the array is never released.
+ * {@link #iterator()} and {@link #first()} copy the chunks to the heap.
+ *
+ * @author Leon Chen
+ * @see com.moilioncircle.redis.replicator.Configuration#setOffHeapThreshold(long)
+ * @since 2.6.0
+ */
+//@NonThreadSafe
+public class DirectByteArray extends ByteArray {
+
+    protected ByteBuffer[] buffers;
+
+    /**
+     * @param length length
+     * @param mapped true to map a temp file, false to allocate direct buffers
+     * @throws IOException if the temp file can not be created
+     */
+    public DirectByteArray(long length, boolean mapped) throws IOException {
+        super(length, Integer.MAX_VALUE, false);
+        int x = (int) (length >> BITS);
+        int y = (int) (length & MASK);
+        this.buffers = new ByteBuffer[y == 0 && x > 0 ? x : x + 1];
+        if (!mapped) {
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i] = ByteBuffer.allocateDirect(i < x ? MAGIC : y);
+            }
+            return;
+        }
+        File file = File.createTempFile("redis-replicator", ".tmp");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length);
+            FileChannel channel = raf.getChannel();
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i << BITS, i < x ? MAGIC : y);
+            }
+        } catch (IOException | RuntimeException | Error e) {
+            release();
+            throw e;
+        } finally {
+            // the mapping outlives the file on posix systems
+            if (!file.delete()) file.deleteOnExit();
+        }
+    }
+
+    @Override
+    public void set(long idx, byte value) {
+        buffers[(int) (idx >> BITS)].put((int) (idx & MASK), value);
+    }
+
+    @Override
+    public byte get(long idx) {
+        return buffers[(int) (idx >> BITS)].get((int) (idx & MASK));
+    }
+
+    @Override
+    public void release() {
+        ByteBuffer[] buffers = this.buffers;
+        if (buffers == null) return;
+        this.buffers = null;
+        for (ByteBuffer buffer : buffers) free(buffer);
+    }
+
+    @Override
+    public Iterator<byte[]> iterator() {
+        return new Iterator<byte[]>() {
+            protected int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < buffers.length;
+            }
+
+            @Override
+            public byte[] next() {
+                ByteBuffer buffer = buffers[index++].duplicate();
+                buffer.clear();
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                return bytes;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * @param idx    index
+     * @param length length
+     * @return a view of the chunk of the index, from the index to the index plus the length
+     */
+    protected ByteBuffer buffer(long idx, int length) {
+        ByteBuffer buffer = buffers[(int) (idx >> BITS)].duplicate();
+        int offset = (int) (idx & MASK);
+        buffer.limit(offset + length).position(offset);
+        return buffer;
+    }
+
+    static void copy(ByteArray src, long srcPos, ByteArray dest, long destPos, long length) {
+        while (length > 0) {
+            int n = (int) Math.min(length, Math.min(run(src, srcPos), run(dest, destPos)));
+            if (src instanceof DirectByteArray) {
+                ByteBuffer s = ((DirectByteArray) src).buffer(srcPos, n);
+                if (dest instanceof DirectByteArray) ((DirectByteArray) dest).buffer(destPos, n).put(s);
+                else s.get(dest.array(destPos), dest.offset(destPos), n);
+            } else {
+                ((DirectByteArray) dest).buffer(destPos, n).put(src.array(srcPos), src.offset(srcPos), n);
+            }
+            srcPos += n;
+            destPos += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * @return bytes from the index to the end of its chunk
+     */
+    private static long run(ByteArray array, long idx) {
+        if (array.smallBytes != null) return array.smallBytes.length - idx;
+        return MAGIC - (idx & MASK);
+    }
+
+    /*
+     * unmap or free the buffer now instead of waiting for the garbage collector.
+     */
+    private static void free(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) return;
+        try {
+            // java 9+
+            Class<?> clazz = Class.forName("sun.misc.Unsafe");
+            Field field = clazz.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Method method = clazz.getMethod("invokeCleaner", ByteBuffer.class);
+            method.invoke(field.get(null), buffer);
+            return;
+        } catch (Throwable ignore) {
+        }
+        try {
+            // java 7 and 8
+            Method cleaner = buffer.getClass().getMethod("cleaner");
+            cleaner.setAccessible(true);
+            Object o = cleaner.invoke(buffer);
+            if (o != null) o.getClass().getMethod("clean").invoke(o);
+        } catch (Throwable ignore) {
+        }
+    }
+}
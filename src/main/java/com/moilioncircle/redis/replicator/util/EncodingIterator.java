@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.util;
+
+import java.util.Iterator;
+
+/**
+ * Base class of the iterators that decode the compact encodings of redis (ziplist, intset)
+ * in place from a {@link ByteArray}, without wrapping it in a stream.
+ *
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public abstract class EncodingIterator<T> implements Iterator<T> {
+
+    protected long pos;
+    protected final ByteArray bytes;
+
+    protected EncodingIterator(ByteArray bytes) {
+        this.bytes = bytes;
+    }
+
+    protected int read() {
+        if (pos >= bytes.length()) throw new AssertionError("unexpected end of encoding, length:" + bytes.length());
+        return bytes.get(pos++) & 0xff;
+    }
+
+    /**
+     * @param len 1 to 8 bytes
+     * @return little endian signed long
+     */
+    protected long readLong(int len) {
+        long r = 0;
+        for (int i = 0; i < len; i++) {
+            r |= (long) read() << (i << 3);
+        }
+        int c = 64 - (len << 3);
+        return r << c >> c;
+    }
+
+    protected int readInt(int len) {
+        return (int) readLong(len);
+    }
+
+    protected byte[] readBytes(int len) {
+        if (len < 0 || pos + len > bytes.length()) throw new AssertionError("unexpected end of encoding, length:" + bytes.length());
+        byte[] r = new byte[len];
+        ByteArray.arraycopy(bytes, pos, new ByteArray(r), 0, len);
+        pos += len;
+        return r;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.util;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates the elements of an intset in place.
+ * <pre>
+ * |&lt;encoding&gt;| &lt;length-of-contents&gt;|              &lt;contents&gt;                            |
+ * | 4 bytes  |            4 bytes  | 2 bytes element| 4 bytes element | 8 bytes element |
+ * </pre>
+ *
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class IntSetIterator extends EncodingIterator<byte[]> {
+
+    protected final int encoding;
+    protected final long lenOfContent;
+    protected long index;
+
+    public IntSetIterator(ByteArray bytes) {
+        super(bytes);
+        this.encoding = readInt(4);
+        if (encoding != 2 && encoding != 4 && encoding != 8) {
+            throw new AssertionError("expect encoding [2,4,8] but:" + encoding);
+        }
+        this.lenOfContent = readLong(4) & 0xFFFFFFFFL;
+    }
+
+    public long lenOfContent() {
+        return lenOfContent;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return index < lenOfContent;
+    }
+
+    @Override
+    public byte[] next() {
+        return String.valueOf(nextLong()).getBytes();
+    }
+
+    /**
+     * @return next element without converting it to a decimal string
+     */
+    public long nextLong() {
+        if (!hasNext()) throw new NoSuchElementException();
+        index++;
+        return readLong(encoding);
+    }
+}
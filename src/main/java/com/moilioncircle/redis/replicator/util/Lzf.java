@@ -22,9 +22,103 @@ package com.moilioncircle.redis.replicator.util;
  */
 public class Lzf {
 
+    private static final int HLOG = 14;
+    private static final int HSIZE = 1 << HLOG;
+    private static final int MAX_LIT = 1 << 5;
+    private static final int MAX_OFF = 1 << 13;
+    private static final int MAX_REF = (1 << 8) + (1 << 3);
+
+    /**
+     * compress like lzf_compress of liblzf.
+     *
+     * @param in     input
+     * @param inLen  length of the input
+     * @param out    output
+     * @param outLen max length of the output
+     * @return length of the compressed bytes, 0 if they do not fit in outLen
+     * @since 2.6.0
+     */
+    public static int encode(byte[] in, int inLen, byte[] out, int outLen) {
+        int[] htab = new int[HSIZE];
+        int ip = 0, op = 0;
+        int lit = 0;
+        op++; // start run
+        int hval = inLen < 2 ? 0 : ((in[0] & 0xff) << 8) | (in[1] & 0xff);
+        while (ip < inLen - 2) {
+            hval = (hval << 8) | (in[ip + 2] & 0xff);
+            int slot = ((hval >>> (3 * 8 - HLOG)) - hval) & (HSIZE - 1);
+            int ref = htab[slot];
+            htab[slot] = ip;
+            int off = ip - ref - 1;
+            if (off < MAX_OFF && ref > 0 && in[ref + 2] == in[ip + 2] && in[ref + 1] == in[ip + 1] && in[ref] == in[ip]) {
+                // match found at ref
+                int len = 2;
+                int maxlen = Math.min(inLen - ip - len, MAX_REF);
+                if (op - (lit == 0 ? 1 : 0) + 3 + 1 >= outLen) return 0;
+                out[op - lit - 1] = (byte) (lit - 1); // stop run
+                if (lit == 0) op--; // undo run if length is zero
+                do {
+                    len++;
+                } while (len < maxlen && in[ref + len] == in[ip + len]);
+                len -= 2; // len is now #octets - 1
+                ip++;
+                if (len < 7) {
+                    out[op++] = (byte) ((off >> 8) + (len << 5));
+                } else {
+                    out[op++] = (byte) ((off >> 8) + (7 << 5));
+                    out[op++] = (byte) (len - 7);
+                }
+                out[op++] = (byte) off;
+                lit = 0;
+                op++; // start run
+                ip += len + 1;
+                if (ip >= inLen - 2) break;
+                ip -= 2;
+                hval = ((in[ip] & 0xff) << 8) | (in[ip + 1] & 0xff);
+                for (int i = 0; i < 2; i++) {
+                    hval = (hval << 8) | (in[ip + 2] & 0xff);
+                    htab[((hval >>> (3 * 8 - HLOG)) - hval) & (HSIZE - 1)] = ip;
+                    ip++;
+                }
+            } else {
+                // one more literal byte we must copy
+                if (op >= outLen) return 0;
+                lit++;
+                out[op++] = in[ip++];
+                if (lit == MAX_LIT) {
+                    out[op - lit - 1] = (byte) (lit - 1); // stop run
+                    lit = 0;
+                    op++; // start run
+                }
+            }
+        }
+        if (op + 3 > outLen) return 0; // at most 3 bytes can be missing here
+        while (ip < inLen) {
+            lit++;
+            out[op++] = in[ip++];
+            if (lit == MAX_LIT) {
+                out[op - lit - 1] = (byte) (lit - 1);
+                lit = 0;
+                op++;
+            }
+        }
+        out[op - lit - 1] = (byte) (lit - 1); // end run
+        if (lit == 0) op--;
+        return op;
+    }
+
     public static ByteArray decode(ByteArray bytes, long len) {
-        ByteArray out = new ByteArray(len);
-        decode(bytes, 0, out, 0, len);
+        return decode(bytes, new ByteArray(len));
+    }
+
+    /**
+     * @param bytes compressed bytes
+     * @param out   output, its length is the length of the uncompressed bytes
+     * @return out
+     * @since 2.6.0
+     */
+    public static ByteArray decode(ByteArray bytes, ByteArray out) {
+        decode(bytes, 0, out, 0, out.length());
         return out;
     }
 
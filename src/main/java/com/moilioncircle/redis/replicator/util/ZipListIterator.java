@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.util;
+
+import java.util.NoSuchElementException;
+
+import static com.moilioncircle.redis.replicator.Constants.ZIP_INT_16B;
+import static com.moilioncircle.redis.replicator.Constants.ZIP_INT_24B;
+import static com.moilioncircle.redis.replicator.Constants.ZIP_INT_32B;
+import static com.moilioncircle.redis.replicator.Constants.ZIP_INT_64B;
+import static com.moilioncircle.redis.replicator.Constants.ZIP_INT_8B;
+
+/**
+ * Iterates the entries of a ziplist in place.
+ * <pre>
+ * |&lt;zlbytes&gt;| &lt;zltail&gt;| &lt;zllen&gt;| &lt;entry&gt; ...&lt;entry&gt; | &lt;zlend&gt;|
+ * | 4 bytes | 4 bytes | 2bytes | zipListEntry ...   | 1byte  |
+ * </pre>
+ * The iteration stops at zlend, so ziplists with more than 65535 entries are supported.
+ *
+ * @author Leon Chen
+ * @see com.moilioncircle.redis.replicator.rdb.BaseRdbParser.StringHelper#zipListEntry
+ * @since 2.6.0
+ */
+public class ZipListIterator extends EncodingIterator<byte[]> {
+
+    protected static final int ZIP_END = 255;
+
+    protected final int zllen;
+
+    public ZipListIterator(ByteArray bytes) {
+        super(bytes);
+        readInt(4); // zlbytes
+        readInt(4); // zltail
+        this.zllen = readInt(2) & 0xffff;
+    }
+
+    /**
+     * @return the number of entries in the header, 65535 means the ziplist must be traversed to count
+     */
+    public int zllen() {
+        return zllen;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (pos >= bytes.length()) throw new AssertionError("zlend expect 255 but EOF");
+        return (bytes.get(pos) & 0xff) != ZIP_END;
+    }
+
+    @Override
+    public byte[] next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        int prevlen = read();
+        if (prevlen >= 254) {
+            readInt(4);
+        }
+        int special = read();
+        switch (special >> 6) {
+            case 0:
+                return readBytes(special & 0x3f);
+            case 1:
+                return readBytes(((special & 0x3f) << 8) | read());
+            case 2:
+                //bigEndian
+                int len = 0;
+                for (int i = 0; i < 4; i++) len = (len << 8) | read();
+                return readBytes(len);
+            default:
+                break;
+        }
+        switch (special) {
+            case ZIP_INT_8B:
+                return String.valueOf(readInt(1)).getBytes();
+            case ZIP_INT_16B:
+                return String.valueOf(readInt(2)).getBytes();
+            case ZIP_INT_24B:
+                return String.valueOf(readInt(3)).getBytes();
+            case ZIP_INT_32B:
+                return String.valueOf(readInt(4)).getBytes();
+            case ZIP_INT_64B:
+                return String.valueOf(readLong(8)).getBytes();
+            default:
+                //6BIT
+                return String.valueOf(special - 0xf1).getBytes();
+        }
+    }
+}
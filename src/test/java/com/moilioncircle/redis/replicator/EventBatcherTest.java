@@ -0,0 +1,144 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator;
+
+import com.moilioncircle.redis.replicator.cmd.Command;
+import com.moilioncircle.redis.replicator.cmd.CommandBatchListener;
+import com.moilioncircle.redis.replicator.cmd.CommandListener;
+import com.moilioncircle.redis.replicator.cmd.impl.SetCommand;
+import com.moilioncircle.redis.replicator.rdb.RdbBatchListener;
+import com.moilioncircle.redis.replicator.rdb.RdbListener;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class EventBatcherTest {
+
+    @Test
+    public void testRdbBatch() throws Exception {
+        for (Configuration configuration : new Configuration[]{Configuration.defaultSetting(), Configuration.defaultSetting().setEventQueueSize(8)}) {
+            final List<Object> expected = new ArrayList<>();
+            final List<Object> actual = new ArrayList<>();
+            final List<Integer> sizes = new ArrayList<>();
+            configuration.setListenerBatchSize(3).setListenerBatchLinger(0);
+            RedisReplicator r = new RedisReplicator(EventBatcherTest.class.getClassLoader().getResourceAsStream("dumpV7.rdb"), FileType.RDB, configuration);
+            r.addRdbListener(new RdbListener.Adaptor() {
+                @Override
+                public void handle(Replicator replicator, KeyValuePair<?> kv) {
+                    expected.add(kv);
+                }
+
+                @Override
+                public void postFullSync(Replicator replicator, long checksum) {
+                    actual.add("post");
+                }
+            });
+            r.addRdbBatchListener(new RdbBatchListener() {
+                @Override
+                public void handle(Replicator replicator, List<KeyValuePair<?>> kvs) {
+                    sizes.add(kvs.size());
+                    actual.addAll(kvs);
+                }
+            });
+            r.open();
+            expected.add("post");
+            assertEquals(expected, actual);
+            assertTrue(sizes.size() > 1);
+            assertTrue(Collections.max(sizes) <= 3);
+        }
+    }
+
+    @Test
+    public void testCommandBatch() throws Exception {
+        final List<Command> expected = new ArrayList<>();
+        final List<Command> actual = new ArrayList<>();
+        final List<Integer> sizes = new ArrayList<>();
+        Configuration configuration = Configuration.defaultSetting().setListenerBatchBytes(512);
+        RedisReplicator r = new RedisReplicator(EventBatcherTest.class.getClassLoader().getResourceAsStream("appendonly5.aof"), FileType.AOF, configuration);
+        r.addCommandListener(new CommandListener() {
+            @Override
+            public void handle(Replicator replicator, Command command) {
+                expected.add(command);
+            }
+        });
+        r.addCommandBatchListener(new CommandBatchListener() {
+            @Override
+            public void handle(Replicator replicator, List<Command> commands) {
+                sizes.add(commands.size());
+                actual.addAll(commands);
+            }
+        });
+        r.open();
+        assertEquals(expected, actual);
+        assertTrue(sizes.size() > 1);
+    }
+
+    @Test
+    public void testOffset() throws Exception {
+        Configuration configuration = Configuration.defaultSetting().setReplOffset(0).setListenerBatchSize(3).setListenerBatchLinger(0);
+        RedisAofReplicator replicator = new RedisAofReplicator(new ByteArrayInputStream(new byte[0]), configuration);
+        final List<Command> actual = new ArrayList<>();
+        replicator.addCommandBatchListener(new CommandBatchListener() {
+            @Override
+            public void handle(Replicator replicator, List<Command> commands) {
+                actual.addAll(commands);
+            }
+        });
+        replicator.submitEvent(new SetCommand(), 10);
+        replicator.submitEvent(null, 5);
+        replicator.submitEvent(new SetCommand(), 10);
+        assertEquals(0L, configuration.getReplOffset());
+        replicator.submitEvent(new SetCommand(), 10);
+        assertEquals(35L, configuration.getReplOffset());
+        assertEquals(3, actual.size());
+        replicator.submitEvent(new SetCommand(), 10);
+        assertEquals(35L, configuration.getReplOffset());
+        replicator.doCloseEventDispatcher();
+        assertEquals(45L, configuration.getReplOffset());
+        assertEquals(4, actual.size());
+    }
+
+    @Test
+    public void testLinger() throws Exception {
+        Configuration configuration = Configuration.defaultSetting().setReplOffset(0).setListenerBatchLinger(20);
+        RedisAofReplicator replicator = new RedisAofReplicator(new ByteArrayInputStream(new byte[0]), configuration);
+        final List<Command> actual = Collections.synchronizedList(new ArrayList<Command>());
+        replicator.addCommandBatchListener(new CommandBatchListener() {
+            @Override
+            public void handle(Replicator replicator, List<Command> commands) {
+                actual.addAll(commands);
+            }
+        });
+        replicator.submitEvent(new SetCommand(), 10);
+        replicator.submitEvent(new SetCommand(), 10);
+        for (int i = 0; i < 100 && actual.size() < 2; i++) Thread.sleep(10);
+        assertEquals(2, actual.size());
+        assertEquals(20L, configuration.getReplOffset());
+        replicator.doCloseEventDispatcher();
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator;
+
+import com.moilioncircle.redis.replicator.cmd.Command;
+import com.moilioncircle.redis.replicator.cmd.CommandListener;
+import com.moilioncircle.redis.replicator.cmd.impl.SetCommand;
+import com.moilioncircle.redis.replicator.rdb.RdbBatchListener;
+import com.moilioncircle.redis.replicator.rdb.RdbListener;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyStringValueModule;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyStringValueString;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
+import com.moilioncircle.redis.replicator.rdb.datatype.Module;
+import com.moilioncircle.redis.replicator.rdb.iterable.ValueIterableRdbVisitor;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class EventDispatcherTest {
+
+    @Test
+    public void testBlock() throws Exception {
+        List<String> expected = parse(Configuration.defaultSetting(), 0);
+        assertEquals(expected, parse(Configuration.defaultSetting().setEventQueueSize(4).setEventBatchSize(3), 1));
+    }
+
+    @Test
+    public void testSpill() throws Exception {
+        List<String> expected = parse(Configuration.defaultSetting(), 0);
+        Configuration configuration = Configuration.defaultSetting().setEventQueueSize(2).setEventQueuePolicy(EventDispatcher.Policy.SPILL);
+        assertEquals(expected, parse(configuration, 1));
+    }
+
+    @Test
+    public void testDrop() throws Exception {
+        final List<String> expected = parse(Configuration.defaultSetting(), 0);
+        Configuration configuration = Configuration.defaultSetting().setEventQueueSize(1).setEventQueuePolicy(EventDispatcher.Policy.DROP);
+        List<String> actual = parse(configuration, 5);
+        assertEquals("pre", actual.get(0));
+        assertEquals("post", actual.get(actual.size() - 1));
+        assertTrue(actual.size() < expected.size());
+        assertTrue(expected.containsAll(actual));
+    }
+
+    @Test
+    public void testOffset() throws Exception {
+        Configuration configuration = Configuration.defaultSetting().setEventQueueSize(16).setReplOffset(0);
+        RedisAofReplicator replicator = new RedisAofReplicator(new ByteArrayInputStream(new byte[0]), configuration);
+        final CountDownLatch latch = new CountDownLatch(1);
+        replicator.addCommandListener(new CommandListener() {
+            @Override
+            public void handle(Replicator replicator, Command command) {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        for (int i = 0; i < 10; i++) replicator.submitEvent(new SetCommand(), 10);
+        replicator.submitEvent(null, 5);
+        assertEquals(0L, configuration.getReplOffset());
+        latch.countDown();
+        replicator.doCloseEventDispatcher();
+        assertEquals(105L, configuration.getReplOffset());
+        assertEquals(10L, replicator.getEventDispatcher().getConsumedEvents());
+    }
+
+    @Test
+    public void testError() throws Exception {
+        Configuration configuration = Configuration.defaultSetting().setEventQueueSize(1);
+        RedisAofReplicator replicator = new RedisAofReplicator(new ByteArrayInputStream(new byte[0]), configuration);
+        replicator.addCommandListener(new CommandListener() {
+            @Override
+            public void handle(Replicator replicator, Command command) {
+                throw new UncheckedIOException(new IOException("broken"));
+            }
+        });
+        try {
+            for (int i = 0; i < 100; i++) replicator.submitEvent(new SetCommand(), 1);
+            fail();
+        } catch (UncheckedIOException e) {
+            assertEquals("broken", e.getCause().getMessage());
+        }
+        replicator.doCloseEventDispatcher();
+    }
+
+    @Test
+    public void testCloseInListener() throws Exception {
+        Configuration configuration = Configuration.defaultSetting().setEventQueueSize(4).setReplOffset(0);
+        final RedisAofReplicator replicator = new RedisAofReplicator(new ByteArrayInputStream(new byte[0]), configuration);
+        replicator.addCommandListener(new CommandListener() {
+            @Override
+            public void handle(Replicator r, Command command) {
+                // must not wait for the dispatcher thread itself
+                replicator.doCloseEventDispatcher();
+            }
+        });
+        for (int i = 0; i < 10; i++) replicator.submitEvent(new SetCommand(), 1);
+        replicator.doCloseEventDispatcher();
+        assertEquals(10L, configuration.getReplOffset());
+        assertEquals(10L, replicator.getEventDispatcher().getConsumedEvents());
+    }
+
+    @Test
+    public void testDrain() throws Exception {
+        Configuration configuration = Configuration.defaultSetting().setEventQueueSize(4).setReplOffset(0);
+        RedisAofReplicator replicator = new RedisAofReplicator(new ByteArrayInputStream(new byte[0]), configuration);
+        final Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+        replicator.addCommandListener(new CommandListener() {
+            @Override
+            public void handle(Replicator replicator, Command command) {
+                threads.add(Thread.currentThread());
+            }
+        });
+        long start = System.nanoTime();
+        for (int i = 0; i < 200; i++) {
+            replicator.submitEvent(new SetCommand(), 1);
+            replicator.getEventDispatcher().drain();
+            assertEquals(i + 1, configuration.getReplOffset());
+            assertEquals(i + 1, replicator.getEventDispatcher().getConsumedEvents());
+        }
+        // the dispatcher thread is neither stopped nor waited for by a poll timeout
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertEquals(1, threads.size());
+        replicator.doCloseEventDispatcher();
+        assertEquals(200L, configuration.getReplOffset());
+    }
+
+    @Test
+    public void testValueIterable() throws Exception {
+        List<String> expected = iterate(Configuration.defaultSetting(), false);
+        assertEquals(expected, iterate(Configuration.defaultSetting().setEventQueueSize(2), false));
+        assertEquals(expected, iterate(Configuration.defaultSetting().setEventQueueSize(1).setEventQueuePolicy(EventDispatcher.Policy.SPILL), false));
+        List<String> actual = iterate(Configuration.defaultSetting().setEventQueueSize(2).setListenerBatchSize(3), true);
+        int batches = 0;
+        for (Iterator<String> it = actual.iterator(); it.hasNext(); ) {
+            if (!it.next().startsWith("batch ")) continue;
+            it.remove();
+            batches++;
+        }
+        assertEquals(expected, actual);
+        assertTrue(batches > 0);
+    }
+
+    @Test
+    public void testSpillModule() throws Exception {
+        Configuration configuration = Configuration.defaultSetting().setEventQueueSize(1).setEventQueuePolicy(EventDispatcher.Policy.SPILL);
+        RedisAofReplicator replicator = new RedisAofReplicator(new ByteArrayInputStream(new byte[0]), configuration);
+        final List<String> events = new ArrayList<>();
+        replicator.addRdbListener(new RdbListener.Adaptor() {
+            @Override
+            public void handle(Replicator replicator, KeyValuePair<?> kv) {
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                events.add(kv.getKey());
+            }
+        });
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            KeyValuePair<?> kv;
+            if (i % 5 == 4) {
+                // module values are not serializable
+                KeyStringValueModule module = new KeyStringValueModule();
+                module.setValue(new Module() {
+                });
+                kv = module;
+            } else {
+                kv = new KeyStringValueString();
+            }
+            kv.setKey(String.valueOf(i));
+            expected.add(kv.getKey());
+            replicator.submitEvent(kv, 1);
+        }
+        replicator.doCloseEventDispatcher();
+        assertEquals(expected, events);
+        assertTrue(replicator.getEventDispatcher().getSpilledEvents() > 0);
+    }
+
+    private List<String> iterate(Configuration configuration, boolean batch) throws IOException {
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        Replicator r = new RedisReplicator(EventDispatcherTest.class.getClassLoader().getResourceAsStream("dump-huge-kv.rdb"), FileType.RDB, configuration);
+        r.setRdbVisitor(new ValueIterableRdbVisitor(r));
+        r.addRdbListener(new RdbListener.Adaptor() {
+            @Override
+            public void handle(Replicator replicator, KeyValuePair<?> kv) {
+                int n = 0;
+                if (kv.getValue() instanceof Iterator<?>) {
+                    Iterator<?> it = (Iterator<?>) kv.getValue();
+                    while (it.hasNext()) {
+                        it.next();
+                        n++;
+                    }
+                }
+                events.add(kv.getKey() + " " + n);
+            }
+        });
+        if (batch) {
+            r.addRdbBatchListener(new RdbBatchListener() {
+                @Override
+                public void handle(Replicator replicator, List<KeyValuePair<?>> kvs) {
+                    events.add("batch " + kvs.size());
+                }
+            });
+        }
+        r.open();
+        return new ArrayList<>(events);
+    }
+
+    private List<String> parse(Configuration configuration, final long sleep) throws IOException {
+        final List<String> events = new ArrayList<>();
+        RedisReplicator r = new RedisReplicator(EventDispatcherTest.class.getClassLoader().getResourceAsStream("dumpV7.rdb"), FileType.RDB, configuration);
+        r.addRdbListener(new RdbListener() {
+            @Override
+            public void preFullSync(Replicator replicator) {
+                events.add("pre");
+            }
+
+            @Override
+            public void handle(Replicator replicator, KeyValuePair<?> kv) {
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                events.add(kv.getDb().getDbNumber() + " " + kv.getKey() + " " + kv.getValueRdbType() + " " + kv.getValue());
+            }
+
+            @Override
+            public void postFullSync(Replicator replicator, long checksum) {
+                events.add("post");
+            }
+        });
+        r.open();
+        if (configuration.getEventQueuePolicy() == EventDispatcher.Policy.SPILL) {
+            assertTrue(r.getEventDispatcher().getSpilledEvents() > 0);
+        }
+        if (configuration.getEventQueuePolicy() == EventDispatcher.Policy.DROP) {
+            assertTrue(r.getEventDispatcher().getDroppedEvents() > 0);
+        }
+        return events;
+    }
+}
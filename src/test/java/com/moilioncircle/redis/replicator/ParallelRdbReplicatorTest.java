@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator;
+
+import com.moilioncircle.redis.replicator.rdb.RdbListener;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class ParallelRdbReplicatorTest {
+
+    private static final String[] FILES = {"dumpV6.rdb", "dumpV7.rdb", "dumpV8.rdb", "dictionary.rdb", "multiple_databases.rdb", "keys_with_expiry.rdb", "empty_database.rdb"};
+
+    @Test
+    public void testOrdered() throws Exception {
+        for (String name : FILES) {
+            List<String> expected = open(new RedisRdbReplicator(file(name), Configuration.defaultSetting()));
+            assertEquals(expected, open(new ParallelRdbReplicator(file(name), Configuration.defaultSetting().setRdbDecodeThreads(2).setRdbPartitionKeys(3))));
+            assertEquals(expected, open(new ParallelRdbReplicator(file(name), Configuration.defaultSetting().setRdbPartitionKeys(1).setMappedFileWindow(4096))));
+        }
+    }
+
+    @Test
+    public void testUnordered() throws Exception {
+        for (String name : FILES) {
+            List<String> expected = open(new RedisRdbReplicator(file(name), Configuration.defaultSetting()));
+            List<String> actual = open(new ParallelRdbReplicator(file(name), Configuration.defaultSetting().setRdbDecodeThreads(3).setRdbPartitionKeys(2).setRdbDecodeOrdered(false)));
+            assertEquals(expected.get(expected.size() - 1), actual.get(actual.size() - 1));
+            Collections.sort(expected);
+            Collections.sort(actual);
+            assertEquals(expected, actual);
+        }
+    }
+
+    private static File file(String name) {
+        return new File(ParallelRdbReplicatorTest.class.getClassLoader().getResource(name).getPath());
+    }
+
+    private static List<String> open(Replicator replicator) throws IOException {
+        final List<String> r = new ArrayList<>();
+        replicator.addRdbListener(new RdbListener.Adaptor() {
+            @Override
+            public void handle(Replicator replicator, KeyValuePair<?> kv) {
+                r.add(kv.toString());
+            }
+
+            @Override
+            public void postFullSync(Replicator replicator, long checksum) {
+                r.add(String.valueOf(checksum));
+            }
+        });
+        replicator.open();
+        return r;
+    }
+}
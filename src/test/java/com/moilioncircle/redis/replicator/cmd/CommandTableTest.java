@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.cmd;
+
+import com.moilioncircle.redis.replicator.Configuration;
+import com.moilioncircle.redis.replicator.RedisAofReplicator;
+import com.moilioncircle.redis.replicator.cmd.parser.DelParser;
+import com.moilioncircle.redis.replicator.cmd.parser.SetParser;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Iterator;
+import java.util.Map;
+
+import static com.moilioncircle.redis.replicator.cmd.CommandName.name;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class CommandTableTest {
+
+    @Test
+    public void test() {
+        CommandTable table = new CommandTable();
+        SetParser set = new SetParser();
+        DelParser del = new DelParser();
+        assertNull(table.put(name("set"), set));
+        assertNull(table.put(name("DEL"), del));
+        assertEquals(2, table.size());
+        assertSame(set, table.get("SET".getBytes()));
+        assertSame(set, table.get("sEt".getBytes()));
+        assertSame(del, table.get("del".getBytes()));
+        assertSame(del, table.get(name("Del")));
+        assertNull(table.get("SE".getBytes()));
+        assertNull(table.get("SETX".getBytes()));
+        assertNull(table.get("S{T".getBytes()));
+        assertSame(set, table.get("*delSETx".getBytes(), 4, 3));
+        assertSame(del, table.get("*delSETx".getBytes(), 1, 3));
+        assertNull(table.get("*delSETx".getBytes(), 4, 4));
+
+        assertSame(set, table.put(name("SET"), new SetParser()));
+        assertEquals(2, table.size());
+        assertSame(del, table.remove(name("del")));
+        assertNull(table.remove(name("del")));
+        assertNull(table.get("DEL".getBytes()));
+        assertEquals(1, table.size());
+
+        for (int i = 0; i < 1000; i++) table.put(name("cmd" + i), set);
+        assertEquals(1001, table.size());
+        for (int i = 0; i < 1000; i++) assertSame(set, table.get(("CMD" + i).getBytes()));
+        assertNull(table.get("cmd1000".getBytes()));
+    }
+
+    @Test
+    public void testAsMap() {
+        CommandTable table = new CommandTable();
+        Map<CommandName, CommandParser<? extends Command>> map = table.asMap();
+        SetParser set = new SetParser();
+        DelParser del = new DelParser();
+        assertNull(map.put(name("set"), set));
+        assertSame(set, table.get("SET".getBytes()));
+        table.put(name("del"), del);
+        assertEquals(2, map.size());
+        assertSame(del, map.get(name("DEL")));
+        assertTrue(map.containsKey(name("Set")));
+        assertFalse(map.containsKey("SET"));
+        assertTrue(map.keySet().contains(name("del")));
+        assertTrue(map.values().contains(set));
+
+        Iterator<Map.Entry<CommandName, CommandParser<? extends Command>>> it = map.entrySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().getValue() == del) it.remove();
+        }
+        assertNull(table.get("DEL".getBytes()));
+        assertSame(set, map.remove(name("SET")));
+        assertTrue(map.isEmpty());
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void testReplicator() throws Exception {
+        RedisAofReplicator replicator = new RedisAofReplicator(new ByteArrayInputStream(new byte[0]), Configuration.defaultSetting());
+        assertEquals(SetParser.class, replicator.getCommandParser(name("set")).getClass());
+        assertEquals(SetParser.class, replicator.getCommandParser(name("SET")).getClass());
+        assertNull(replicator.removeCommandParser(name("unknown")));
+        assertEquals(SetParser.class, replicator.removeCommandParser(name("Set")).getClass());
+        assertNull(replicator.getCommandParser(name("SET")));
+    }
+}
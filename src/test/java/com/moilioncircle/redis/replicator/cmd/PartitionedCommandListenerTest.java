@@ -0,0 +1,153 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.cmd;
+
+import com.moilioncircle.redis.replicator.Replicator;
+import com.moilioncircle.redis.replicator.cmd.impl.ExecCommand;
+import com.moilioncircle.redis.replicator.cmd.impl.MSetCommand;
+import com.moilioncircle.redis.replicator.cmd.impl.MultiCommand;
+import com.moilioncircle.redis.replicator.cmd.impl.SelectCommand;
+import com.moilioncircle.redis.replicator.cmd.impl.SetCommand;
+import com.moilioncircle.redis.replicator.util.CRC16;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class PartitionedCommandListenerTest {
+
+    @Test
+    public void testSlot() {
+        assertEquals(0x31C3, CRC16.crc16("123456789".getBytes(UTF_8)));
+        assertEquals(12182, CRC16.slot("foo".getBytes(UTF_8)));
+        assertEquals(CRC16.slot("user1000".getBytes(UTF_8)), CRC16.slot("{user1000}.following".getBytes(UTF_8)));
+        assertEquals(CRC16.slot("foo{}{bar}".getBytes(UTF_8)), CRC16.crc16("foo{}{bar}".getBytes(UTF_8)) & 16383);
+    }
+
+    @Test
+    public void testOrder() {
+        List<Command> commands = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            if (i % 500 == 499) {
+                commands.add(new SelectCommand(i % 16));
+            } else if (i % 300 == 299) {
+                Map<String, String> kv = new LinkedHashMap<>();
+                kv.put(key(i), "m" + i);
+                kv.put(key(i + 1), "m" + i);
+                commands.add(new MSetCommand(kv));
+            } else if (i % 700 == 699) {
+                commands.add(new MultiCommand());
+                commands.add(set(key(i), "t" + i));
+                commands.add(set("{" + key(i) + "}.other", "t" + i));
+                commands.add(new ExecCommand());
+            } else {
+                commands.add(set(key(i), "v" + i));
+            }
+        }
+
+        final List<Command> actual = Collections.synchronizedList(new ArrayList<Command>());
+        PartitionedCommandListener listener = new PartitionedCommandListener(new CommandListener() {
+            @Override
+            public void handle(Replicator replicator, Command command) {
+                actual.add(command);
+            }
+        }, 4, 16);
+        for (Command command : commands) listener.handle(null, command);
+        listener.close();
+
+        assertEquals(commands.size(), actual.size());
+        assertEquals(new HashSet<>(commands), new HashSet<>(actual));
+        for (int i = 0; i < 40; i++) {
+            assertEquals(filter(commands, key(i)), filter(actual, key(i)));
+        }
+        for (int i = 0; i < commands.size(); i++) {
+            Command command = commands.get(i);
+            if (!(command instanceof SelectCommand)) continue;
+            int j = actual.indexOf(command);
+            assertEquals(new HashSet<>(commands.subList(0, i)), new HashSet<>(actual.subList(0, j)));
+        }
+        for (int i = 0; i < commands.size(); i++) {
+            if (!(commands.get(i) instanceof MultiCommand)) continue;
+            // both keys of a transaction share the hash tag, so the block is handled by one lane in order
+            int j = actual.indexOf(commands.get(i));
+            assertTrue(j < actual.indexOf(commands.get(i + 1)));
+            assertTrue(actual.indexOf(commands.get(i + 1)) < actual.indexOf(commands.get(i + 2)));
+            assertTrue(actual.indexOf(commands.get(i + 2)) < actual.indexOf(commands.get(i + 3)));
+        }
+    }
+
+    @Test
+    public void testError() {
+        PartitionedCommandListener listener = new PartitionedCommandListener(new CommandListener() {
+            @Override
+            public void handle(Replicator replicator, Command command) {
+                throw new IllegalStateException("broken");
+            }
+        }, 2);
+        listener.handle(null, set("a", "b"));
+        try {
+            listener.handle(null, new SelectCommand(0));
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("broken", e.getMessage());
+        }
+        listener.close();
+    }
+
+    @Test
+    public void testKeys() {
+        PartitionedCommandListener listener = new PartitionedCommandListener(null, 3);
+        assertEquals(-1, listener.lane(Collections.<Command>singletonList(new SelectCommand(1))));
+        Map<String, String> kv = new LinkedHashMap<>();
+        kv.put("{a}1", "1");
+        kv.put("{a}2", "2");
+        assertNotEquals(-1, listener.lane(Collections.<Command>singletonList(new MSetCommand(kv))));
+        assertEquals(CRC16.slot("a".getBytes(UTF_8)) % 3, listener.lane(Collections.<Command>singletonList(new MSetCommand(kv))));
+        listener.close();
+    }
+
+    private static String key(int i) {
+        return "k" + (i % 40);
+    }
+
+    private static SetCommand set(String key, String value) {
+        return new SetCommand(key, value, null, null, null, key.getBytes(UTF_8), value.getBytes(UTF_8));
+    }
+
+    private static List<Command> filter(List<Command> commands, String key) {
+        List<Command> r = new ArrayList<>();
+        for (Command command : commands) {
+            if (command instanceof SetCommand && ((SetCommand) command).getKey().equals(key)) r.add(command);
+            if (command instanceof MSetCommand && ((MSetCommand) command).getKv().containsKey(key)) r.add(command);
+        }
+        return r;
+    }
+}
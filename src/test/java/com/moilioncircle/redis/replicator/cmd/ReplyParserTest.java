@@ -17,11 +17,19 @@
 package com.moilioncircle.redis.replicator.cmd;
 
 import com.moilioncircle.redis.replicator.io.RedisInputStream;
+import com.moilioncircle.redis.replicator.util.ByteArray;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 
 /**
  * @author Leon Chen
@@ -39,4 +47,92 @@ public class ReplyParserTest {
         }
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testOffHeap() throws Exception {
+        final List<ByteArray> allocated = new ArrayList<>();
+        RedisInputStream in = new RedisInputStream(new ByteArrayInputStream("*2\r\n$3\r\nset\r\n$20\r\n01234567890123456789\r\n".getBytes())) {
+            @Override
+            public ByteArray allocate(long len) throws IOException {
+                ByteArray bytes = super.allocate(len);
+                allocated.add(bytes);
+                return bytes;
+            }
+        };
+        in.setOffHeapThreshold(4, false);
+        Object[] ary = (Object[]) new ReplyParser(in).parse();
+        assertArrayEquals("01234567890123456789".getBytes(), (byte[]) ary[1]);
+        // nothing releases the off-heap arrays on the command path
+        assertEquals(0, allocated.size());
+    }
+
+    @Test
+    public void testParseLength() throws Exception {
+        RedisInputStream in = new RedisInputStream(new ByteArrayInputStream(":-12\r\n$-1\r\n*-1\r\n\n$3\r\nabc\r\n*2\r\n$0\r\n\r\n:1\r\n".getBytes()));
+        ReplyParser replyParser = new ReplyParser(in);
+        assertEquals(-12L, replyParser.parse());
+        assertNull(replyParser.parse());
+        assertNull(replyParser.parse());
+        assertArrayEquals("abc".getBytes(), (byte[]) replyParser.parse());
+        Object[] ary = (Object[]) replyParser.parse();
+        assertArrayEquals(new byte[0], (byte[]) ary[0]);
+        assertEquals(1L, ary[1]);
+    }
+
+    @Test
+    public void testParseLengthOverflow() throws Exception {
+        RedisInputStream in = new RedisInputStream(new ByteArrayInputStream(":9223372036854775807\r\n:-9223372036854775808\r\n".getBytes()));
+        ReplyParser replyParser = new ReplyParser(in);
+        assertEquals(Long.MAX_VALUE, replyParser.parse());
+        assertEquals(Long.MIN_VALUE, replyParser.parse());
+        for (String reply : new String[]{":9223372036854775808\r\n", ":-9223372036854775809\r\n", "$18446744073709551621\r\n", "*99999999999999999999\r\n"}) {
+            replyParser = new ReplyParser(new RedisInputStream(new ByteArrayInputStream(reply.getBytes())));
+            try {
+                replyParser.parse();
+                fail(reply);
+            } catch (AssertionError e) {
+                assertEquals("length overflows long", e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void testParseSlices() throws Exception {
+        String cmd = "*3\r\n$3\r\nset\r\n$3\r\nkey\r\n$5\r\nvalue\r\n";
+        String cmd1 = "\n*4\r\n$6\r\nexpire\r\n$-1\r\n:-9223372036854775808\r\n:0\r\n";
+        RedisInputStream in = new RedisInputStream(new ByteArrayInputStream((cmd + cmd1).getBytes()), 7);
+        ReplyParser replyParser = new ReplyParser(in);
+        final long[] offset = new long[1];
+        OffsetHandler handler = new OffsetHandler() {
+            @Override
+            public void handle(long len) {
+                offset[0] = len;
+            }
+        };
+        ReplySlices slices = replyParser.parseSlices(handler);
+        assertEquals(cmd.length(), offset[0]);
+        assertEquals(3, slices.size());
+        assertEquals("set", slices.get(0).toString());
+        assertEquals("key", slices.get(1).toString());
+        assertArrayEquals("value".getBytes(), slices.get(2).toBytes());
+        Object[] ary = slices.toArray();
+        assertArrayEquals("value".getBytes(), (byte[]) ary[2]);
+        // handed over without a copy and not reused by the next parse
+        assertSame(slices.get(2).array(), ary[2]);
+        Object[] first = ary;
+
+        slices = replyParser.parseSlices(handler);
+        assertEquals(cmd1.length(), offset[0]);
+        assertEquals(4, slices.size());
+        assertEquals("expire", slices.get(0).toString());
+        assertNull(slices.get(1));
+        assertEquals(Long.MIN_VALUE, slices.get(2).toLong());
+        assertEquals(0L, slices.get(3).toLong());
+        ary = slices.toArray();
+        assertNull(ary[1]);
+        assertEquals(Long.MIN_VALUE, ary[2]);
+        assertEquals(0L, ary[3]);
+        assertArrayEquals("key".getBytes(), (byte[]) first[1]);
+        assertArrayEquals("value".getBytes(), (byte[]) first[2]);
+    }
+}
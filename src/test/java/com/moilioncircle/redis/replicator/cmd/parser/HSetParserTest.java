@@ -0,0 +1,44 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.cmd.parser;
+
+import com.moilioncircle.redis.replicator.cmd.impl.HSetCommand;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class HSetParserTest extends AbstractParserTest {
+    @Test
+    public void parse() throws Exception {
+        for (HSetParser parser : new HSetParser[]{new HSetParser(), new HSetParser(true)}) {
+            HSetCommand cmd = parser.parse(toObjectArray("hset key field value".split(" ")));
+            assertEquals("key", new String(cmd.getRawKey()));
+            assertEquals("field", new String(cmd.getRawField()));
+            assertEquals("value", new String(cmd.getRawValue()));
+            assertEquals("key", cmd.getKey());
+            assertEquals("field", cmd.getField());
+            assertEquals("value", cmd.getValue());
+            cmd.setValue("other");
+            assertEquals("other", cmd.getValue());
+            assertEquals("HSetCommand{key='key', field='field', value='other'}", cmd.toString());
+        }
+    }
+}
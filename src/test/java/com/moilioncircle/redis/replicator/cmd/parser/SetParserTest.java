@@ -53,4 +53,27 @@ public class SetParserTest extends AbstractParserTest {
 
     }
 
+    @Test
+    public void parseLazy() throws Exception {
+        SetParser parser = new SetParser(true);
+        SetCommand cmd = parser.parse(toObjectArray("set a b ex 15 nx".split(" ")));
+        assertEquals("a", new String(cmd.getRawKey()));
+        assertEquals("b", new String(cmd.getRawValue()));
+        assertEquals("a", cmd.getKey());
+        assertEquals("b", cmd.getValue());
+        assertEquals(15, cmd.getEx().intValue());
+        assertEquals(null, cmd.getPx());
+        assertEquals(ExistType.NX, cmd.getExistType());
+
+        cmd = parser.parse(toObjectArray("set a b px 123 xx".split(" ")));
+        cmd.setKey("c");
+        cmd.setEx(10);
+        assertEquals("c", cmd.getKey());
+        assertEquals("b", cmd.getValue());
+        assertEquals(10, cmd.getEx().intValue());
+        assertEquals(123L, cmd.getPx().longValue());
+        assertEquals(ExistType.XX, cmd.getExistType());
+        assertEquals(new SetParser().parse(toObjectArray("set c b px 123 xx".split(" "))).toString().replace("ex=null", "ex=10"), cmd.toString());
+    }
+
 }
\ No newline at end of file
@@ -98,4 +98,25 @@ public class ZAddParserTest extends AbstractParserTest {
 
     }
 
+    @Test
+    public void parseLazy() throws Exception {
+        ZAddParser parser = new ZAddParser(true);
+        ZAddCommand cmd = parser.parse(toObjectArray("zadd abc nx ch 1 b 2.5 c".split(" ")));
+        assertEquals("abc", new String(cmd.getRawKey()));
+        assertEquals("abc", cmd.getKey());
+        assertEquals(ExistType.NX, cmd.getExistType());
+        assertEquals(Boolean.TRUE, cmd.getCh());
+        assertEquals(null, cmd.getIncr());
+        assertEquals(2, cmd.getZSetEntries().length);
+        assertEquals(2.5, cmd.getzSetEntries()[1].getScore(), 0);
+        assertEquals("c", cmd.getZSetEntries()[1].getElement());
+
+        cmd = parser.parse(toObjectArray("zadd abc incr 1 b".split(" ")));
+        cmd.setIncr(false);
+        assertEquals(Boolean.FALSE, cmd.getIncr());
+        assertEquals(ExistType.NONE, cmd.getExistType());
+        assertEquals("b", cmd.getZSetEntries()[0].getElement());
+        System.out.println(cmd);
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.io;
+
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class AsyncBufferedInputStreamTest {
+
+    @Test
+    public void testTransfer() throws Exception {
+        byte[] bytes = new byte[3 * 1024 * 1024 + 7];
+        new Random(0).nextBytes(bytes);
+        for (AsyncBufferedInputStream.WaitStrategy strategy : AsyncBufferedInputStream.WaitStrategy.values()) {
+            // a spinning reader holds the only core of a small machine until it is preempted
+            int size = strategy == AsyncBufferedInputStream.WaitStrategy.SPIN ? 64 * 1024 : 1000;
+            AsyncBufferedInputStream in = new AsyncBufferedInputStream(new java.io.ByteArrayInputStream(bytes), size, Executors.defaultThreadFactory(), strategy);
+            byte[] actual = new byte[bytes.length];
+            int offset = 0;
+            while (offset < actual.length) {
+                if (offset % 3 == 0) {
+                    actual[offset++] = (byte) in.read();
+                } else {
+                    offset += in.read(actual, offset, Math.min(777, actual.length - offset));
+                }
+            }
+            assertArrayEquals(strategy.name(), bytes, actual);
+            try {
+                in.read();
+                fail();
+            } catch (EOFException e) {
+            }
+            in.close();
+        }
+    }
+
+    @Test
+    public void testException() throws Exception {
+        InputStream is = new InputStream() {
+            private int count;
+
+            @Override
+            public int read() throws IOException {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (count++ > 0) throw new IOException("broken");
+                b[off] = 1;
+                return 1;
+            }
+        };
+        AsyncBufferedInputStream in = new AsyncBufferedInputStream(is, 16);
+        assertEquals(1, in.read());
+        try {
+            in.read();
+            fail();
+        } catch (IOException e) {
+            assertEquals("broken", e.getMessage());
+        }
+        in.close();
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.io;
+
+import com.moilioncircle.redis.replicator.Configuration;
+import com.moilioncircle.redis.replicator.RedisAofReplicator;
+import com.moilioncircle.redis.replicator.RedisRdbReplicator;
+import com.moilioncircle.redis.replicator.Replicator;
+import com.moilioncircle.redis.replicator.cmd.Command;
+import com.moilioncircle.redis.replicator.cmd.CommandListener;
+import com.moilioncircle.redis.replicator.rdb.RdbListener;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
+import com.moilioncircle.redis.replicator.rdb.dump.DumpRdbVisitor;
+import com.moilioncircle.redis.replicator.util.ByteArray;
+import com.moilioncircle.redis.replicator.util.DirectByteArray;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class MappedRedisInputStreamTest {
+
+    @Test
+    public void testRead() throws Exception {
+        byte[] bytes = new byte[10000];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = (byte) i;
+        File file = File.createTempFile("mapped", ".bin");
+        try {
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                out.write(bytes);
+            }
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            List<RawByteListener> listeners = new ArrayList<>();
+            listeners.add(new RawByteListener() {
+                @Override
+                public void handle(byte... rawBytes) {
+                    out.write(rawBytes, 0, rawBytes.length);
+                }
+            });
+            MappedRedisInputStream in = new MappedRedisInputStream(file, 4096);
+            in.setRawByteListeners(listeners);
+            assertEquals(0, in.read());
+            assertEquals(0x04030201, in.readInt(4));
+            byte[] b = new byte[5000];
+            in.read(b, 0, b.length);
+            assertArrayEquals(Arrays.copyOfRange(bytes, 5, 5005), b);
+            // across the window
+            in.skip(2000);
+            assertEquals(7005, in.position());
+            assertEquals(bytes[7005] & 0xff, in.peek());
+            in.skip(1000, false);
+            assertEquals(bytes[8005] & 0xff, in.read());
+            assertArrayEquals(Arrays.copyOfRange(bytes, 8006, 9006), in.readBytes(1000).first());
+            in.flushRawBytes();
+            byte[] expected = new byte[9006 - 1000];
+            System.arraycopy(bytes, 0, expected, 0, 7005);
+            System.arraycopy(bytes, 8005, expected, 7005, 1001);
+            assertArrayEquals(expected, out.toByteArray());
+
+            // no listener, only the position moves
+            in.setRawByteListeners(null);
+            in.skip(900);
+            assertEquals(bytes[9906] & 0xff, in.read());
+            assertEquals(93, in.available());
+            try {
+                in.skip(94);
+                fail();
+            } catch (EOFException e) {
+            }
+            in.close();
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testOffHeap() throws Exception {
+        byte[] bytes = new byte[10000];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = (byte) (i % 97 + 1);
+        File file = File.createTempFile("mapped", ".bin");
+        try {
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                out.write(bytes);
+            }
+            MappedRedisInputStream in = new MappedRedisInputStream(file, 4096);
+            in.setOffHeapThreshold(16, false);
+            ByteArray small = in.readBytes(10);
+            assertFalse(small instanceof DirectByteArray);
+            ByteArray direct = in.readBytes(50);
+            assertTrue(direct instanceof DirectByteArray);
+            assertArrayEquals(Arrays.copyOfRange(bytes, 10, 60), direct.first());
+            in.skip(4000);
+            // across the window
+            direct = in.readBytes(5000);
+            assertArrayEquals(Arrays.copyOfRange(bytes, 4060, 9060), direct.first());
+            in.releaseOffHeap();
+            in.close();
+        } finally {
+            file.delete();
+        }
+
+        for (String name : new String[]{"dumpV7.rdb", "dump-huge-kv.rdb", "zipmap_with_big_values.rdb"}) {
+            List<String> expected = kvs(name, Configuration.defaultSetting());
+            assertEquals(name, expected, kvs(name, Configuration.defaultSetting().setMappedFileWindow(4096).setOffHeapThreshold(16)));
+            assertEquals(name, expected, kvs(name, Configuration.defaultSetting().setMappedFileWindow(4096).setOffHeapThreshold(16).setOffHeapMapped(true)));
+        }
+    }
+
+    @Test
+    public void testRdb() throws Exception {
+        for (String name : new String[]{"dumpV7.rdb", "dump-huge-kv.rdb", "dumpV8.rdb", "dictionary.rdb"}) {
+            assertEquals(rdb(name, 0), rdb(name, 4096));
+        }
+    }
+
+    @Test
+    public void testAof() throws Exception {
+        for (String name : new String[]{"appendonly2.aof", "appendonly6.aof"}) {
+            assertEquals(aof(name, 0), aof(name, 4096));
+        }
+    }
+
+    private static List<String> rdb(String name, int window) throws IOException {
+        final List<String> r = new ArrayList<>();
+        File file = new File(MappedRedisInputStreamTest.class.getClassLoader().getResource(name).getPath());
+        Replicator replicator = new RedisRdbReplicator(file, Configuration.defaultSetting().setMappedFileWindow(window));
+        replicator.setRdbVisitor(new DumpRdbVisitor(replicator));
+        replicator.addRdbListener(new RdbListener.Adaptor() {
+            @Override
+            public void handle(Replicator replicator, KeyValuePair<?> kv) {
+                r.add(kv.getKey() + " " + Arrays.hashCode((byte[]) kv.getValue()));
+            }
+
+            @Override
+            public void postFullSync(Replicator replicator, long checksum) {
+                r.add(String.valueOf(checksum));
+            }
+        });
+        replicator.open();
+        return r;
+    }
+
+    private static List<String> kvs(String name, Configuration configuration) throws IOException {
+        final List<String> r = new ArrayList<>();
+        File file = new File(MappedRedisInputStreamTest.class.getClassLoader().getResource(name).getPath());
+        Replicator replicator = new RedisRdbReplicator(file, configuration);
+        replicator.addRdbListener(new RdbListener.Adaptor() {
+            @Override
+            public void handle(Replicator replicator, KeyValuePair<?> kv) {
+                Object value = kv.getValue();
+                r.add(kv.getKey() + " " + (value instanceof byte[] ? Arrays.toString((byte[]) value) : String.valueOf(value)));
+            }
+        });
+        replicator.open();
+        return r;
+    }
+
+    private static List<String> aof(String name, int window) throws IOException {
+        final List<String> r = new ArrayList<>();
+        File file = new File(MappedRedisInputStreamTest.class.getClassLoader().getResource(name).getPath());
+        Replicator replicator = new RedisAofReplicator(file, Configuration.defaultSetting().setMappedFileWindow(window));
+        replicator.addCommandListener(new CommandListener() {
+            @Override
+            public void handle(Replicator replicator, Command command) {
+                r.add(command.toString());
+            }
+        });
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        replicator.addRawByteListener(new RawByteListener() {
+            @Override
+            public void handle(byte... rawBytes) {
+                out.write(rawBytes, 0, rawBytes.length);
+            }
+        });
+        replicator.open();
+        // the raw bytes are notified in different chunks
+        r.add(out.size() + " " + Arrays.hashCode(out.toByteArray()));
+        return r;
+    }
+}
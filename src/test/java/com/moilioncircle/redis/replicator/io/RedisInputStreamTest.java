@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.io;
+
+import com.moilioncircle.redis.replicator.util.ByteArray;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class RedisInputStreamTest {
+
+    @Test
+    public void testReadInt() throws Exception {
+        byte[] bytes = new byte[]{1, 2, 3, 4, (byte) 0xfe, (byte) 0xff, 1, 2, 3, 4, 5, 6, 7, (byte) 0x80};
+        for (int size : new int[]{3, 8192}) {
+            RedisInputStream in = new RedisInputStream(new ByteArrayInputStream(new ByteArray(bytes)), size);
+            assertEquals(0x04030201, in.readInt(4));
+            assertEquals(-2, in.readInt(2));
+            assertEquals(0x8007060504030201L, in.readLong(8));
+            in = new RedisInputStream(new ByteArrayInputStream(new ByteArray(bytes)), size);
+            assertEquals(0x010203, in.readInt(3, false));
+            assertEquals(0x04feff, in.readInt(3, false));
+            assertEquals(0x0102030405060780L, in.readLong(8, false));
+        }
+    }
+
+    @Test
+    public void testRawByteListener() throws Exception {
+        byte[] bytes = new byte[10000];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = (byte) i;
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final List<byte[]> notified = new ArrayList<>();
+        List<RawByteListener> listeners = new ArrayList<>();
+        listeners.add(new RawByteListener() {
+            @Override
+            public void handle(byte... rawBytes) {
+                notified.add(rawBytes);
+                out.write(rawBytes, 0, rawBytes.length);
+            }
+        });
+        RedisInputStream in = new RedisInputStream(new ByteArrayInputStream(new ByteArray(bytes)), 1024);
+        in.setRawByteListeners(listeners);
+        for (int i = 0; i < 2000; i++) in.read();
+        in.readBytes(3000);
+        in.readLong(8);
+        in.skip(100, false);
+        in.skip(892);
+        in.read(new byte[2000], 0, 2000);
+        in.flushRawBytes();
+        in.skip(2000, false);
+        in.flushRawBytes();
+
+        byte[] expected = new byte[7900];
+        System.arraycopy(bytes, 0, expected, 0, 5008);
+        System.arraycopy(bytes, 5108, expected, 5008, 2892);
+        assertArrayEquals(expected, out.toByteArray());
+        assertTrue(notified.size() < 20);
+    }
+
+    @Test
+    public void testFlushFromOtherThread() throws Exception {
+        byte[] bytes = new byte[3000];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = (byte) i;
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<RawByteListener> listeners = new ArrayList<>();
+        listeners.add(new RawByteListener() {
+            @Override
+            public void handle(byte... rawBytes) {
+                out.write(rawBytes, 0, rawBytes.length);
+            }
+        });
+        final RedisInputStream in = new RedisInputStream(new ByteArrayInputStream(new ByteArray(bytes)), 1024);
+        in.setRawByteListeners(listeners);
+        in.readBytes(100);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                in.flushRawBytes();
+            }
+        });
+        thread.start();
+        thread.join();
+        assertEquals(0, out.size());
+        in.readBytes(2000);
+        assertEquals(2048, out.size());
+        in.flushRawBytes();
+        assertArrayEquals(Arrays.copyOf(bytes, 2100), out.toByteArray());
+    }
+}
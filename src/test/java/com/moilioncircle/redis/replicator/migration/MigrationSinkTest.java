@@ -0,0 +1,206 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.migration;
+
+import com.moilioncircle.redis.replicator.Configuration;
+import com.moilioncircle.redis.replicator.cmd.ReplyParser;
+import com.moilioncircle.redis.replicator.cmd.impl.DefaultCommand;
+import com.moilioncircle.redis.replicator.io.RedisInputStream;
+import com.moilioncircle.redis.replicator.rdb.datatype.DB;
+import com.moilioncircle.redis.replicator.rdb.datatype.ExpiredType;
+import com.moilioncircle.redis.replicator.rdb.dump.datatype.DumpKeyValuePair;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class MigrationSinkTest {
+
+    @Test
+    public void testMigrate() throws Exception {
+        FakeServer server = new FakeServer(3);
+        server.start();
+        Configuration configuration = Configuration.defaultSetting().setMigrationWindow(4).setMigrationRetryInterval(1);
+        MigrationSink sink = new MigrationSink("127.0.0.1", server.port(), configuration);
+        sink.open();
+        for (int i = 0; i < 10; i++) {
+            sink.restore(kv(i < 5 ? 0 : 1, "k" + i, null, null));
+        }
+        sink.restore(kv(1, "busy", null, null));
+        sink.restore(kv(1, "ttl", ExpiredType.MS, System.currentTimeMillis() + 60000L));
+        sink.restore(kv(1, "expired", ExpiredType.SECOND, System.currentTimeMillis() / 1000 - 10));
+        sink.send(new DefaultCommand("SELECT".getBytes(), new byte[][]{"2".getBytes()}));
+        sink.send(new DefaultCommand("SET".getBytes(), new byte[][]{"a".getBytes(), "b".getBytes()}));
+        sink.send(new DefaultCommand("INCR".getBytes(), new byte[][]{"a".getBytes()}));
+        sink.close();
+        server.join();
+
+        assertEquals(14, sink.getSentRequests());
+        assertEquals(13, sink.getAckedRequests());
+        assertEquals(1, sink.getFailedRequests());
+        assertEquals(4, sink.getRetriedRequests());
+        assertEquals(1, sink.getExpiredKeys());
+        assertEquals(0, sink.getInflightRequests());
+        assertEquals(0, sink.getLag());
+
+        List<String> commands = server.commands;
+        // the first 3 requests are rejected by -LOADING, and sent again after the requests in flight
+        assertEquals(Arrays.asList("RESTORE k0", "RESTORE k1", "RESTORE k2"), prefix(commands.subList(0, 3)));
+        for (int i = 0; i < 10; i++) {
+            int idx = commands.lastIndexOf("RESTORE k" + i + " 0 k" + i);
+            assertTrue(idx >= 3);
+            assertEquals(i < 5 ? 0 : 1, db(commands, idx));
+        }
+        // no new request is sent until the retried requests are replied
+        int retried = commands.lastIndexOf("RESTORE k2 0 k2");
+        for (int i = 0; i < 10; i++) {
+            if (commands.indexOf("RESTORE k" + i + " 0 k" + i) > 2) assertTrue(i == 3 || commands.indexOf("RESTORE k" + i + " 0 k" + i) > retried);
+        }
+        assertTrue(commands.indexOf("RESTORE busy 0 busy") < commands.indexOf("RESTORE busy 0 busy REPLACE"));
+        assertEquals(1, db(commands, commands.lastIndexOf("RESTORE busy 0 busy REPLACE")));
+        assertEquals(2, db(commands, commands.indexOf("SET a b")));
+        List<String> accepted = server.accepted;
+        for (String s : accepted) {
+            if (!s.startsWith("RESTORE ttl ")) continue;
+            long ttl = Long.parseLong(s.split(" ")[2]);
+            assertTrue(ttl > 0 && ttl <= 60000L);
+        }
+        assertTrue(!accepted.toString().contains("expired"));
+    }
+
+    @Test
+    public void testRetryOrder() throws Exception {
+        FakeServer server = new FakeServer(1);
+        server.start();
+        Configuration configuration = Configuration.defaultSetting().setMigrationWindow(2).setMigrationRetryInterval(50);
+        MigrationSink sink = new MigrationSink("127.0.0.1", server.port(), configuration);
+        sink.open();
+        for (int i = 0; i < 4; i++) {
+            sink.send(new DefaultCommand("SET".getBytes(), new byte[][]{"a".getBytes(), String.valueOf(i).getBytes()}));
+        }
+        sink.postFullSync(null, 0L);
+        assertEquals(0, sink.getInflightRequests());
+        sink.close();
+        server.join();
+        // SET a 0 is in flight with SET a 1 when it is rejected, the following requests wait for the retry
+        assertEquals(Arrays.asList("SET a 0", "SET a 1", "SET a 0", "SET a 2", "SET a 3"), server.commands);
+        assertEquals(Arrays.asList("SET a 1", "SET a 0", "SET a 2", "SET a 3"), server.accepted);
+    }
+
+    private static int db(List<String> commands, int idx) {
+        for (int i = idx; i >= 0; i--) {
+            String command = commands.get(i);
+            if (command.startsWith("SELECT ")) return Integer.parseInt(command.substring(7));
+        }
+        return 0;
+    }
+
+    private static List<String> prefix(List<String> commands) {
+        List<String> r = new ArrayList<>();
+        for (String command : commands) {
+            String[] ary = command.split(" ");
+            r.add(ary.length > 1 ? ary[0] + " " + ary[1] : ary[0]);
+        }
+        return r;
+    }
+
+    private static DumpKeyValuePair kv(int db, String key, ExpiredType type, Long value) {
+        DumpKeyValuePair kv = new DumpKeyValuePair();
+        kv.setDb(new DB(db));
+        kv.setKey(key);
+        kv.setRawKey(key.getBytes(UTF_8));
+        kv.setValue(key.getBytes(UTF_8));
+        if (type != null) {
+            kv.setExpiredType(type);
+            kv.setExpiredValue(value);
+        }
+        return kv;
+    }
+
+    /**
+     * replies -LOADING to the first requests, -BUSYKEY to RESTORE busy without REPLACE,
+     * -ERR to INCR and +OK to others.
+     */
+    private static class FakeServer extends Thread {
+        private final int loading;
+        private final ServerSocket server;
+        private final List<String> commands = new ArrayList<>();
+        private final List<String> accepted = new ArrayList<>();
+
+        private FakeServer(int loading) throws IOException {
+            this.loading = loading;
+            this.server = new ServerSocket(0);
+        }
+
+        private int port() {
+            return server.getLocalPort();
+        }
+
+        @Override
+        public void run() {
+            try (Socket socket = server.accept()) {
+                ReplyParser parser = new ReplyParser(new RedisInputStream(socket.getInputStream()));
+                OutputStream out = socket.getOutputStream();
+                int count = 0;
+                while (true) {
+                    Object[] ary;
+                    try {
+                        ary = (Object[]) parser.parse();
+                    } catch (IOException e) {
+                        break;
+                    }
+                    StringBuilder builder = new StringBuilder();
+                    for (Object o : ary) {
+                        if (builder.length() > 0) builder.append(' ');
+                        builder.append(new String((byte[]) o, UTF_8));
+                    }
+                    String command = builder.toString();
+                    commands.add(command);
+                    String reply;
+                    if (count++ < loading) {
+                        reply = "-LOADING Redis is loading the dataset in memory\r\n";
+                    } else if (command.startsWith("RESTORE busy") && !command.endsWith("REPLACE")) {
+                        reply = "-BUSYKEY Target key name already exists.\r\n";
+                    } else if (command.startsWith("INCR")) {
+                        reply = "-ERR value is not an integer or out of range\r\n";
+                    } else {
+                        accepted.add(command);
+                        reply = "+OK\r\n";
+                    }
+                    out.write(reply.getBytes(UTF_8));
+                    out.flush();
+                }
+                server.close();
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
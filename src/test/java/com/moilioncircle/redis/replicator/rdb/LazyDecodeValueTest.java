@@ -0,0 +1,77 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb;
+
+import com.moilioncircle.redis.replicator.Configuration;
+import com.moilioncircle.redis.replicator.FileType;
+import com.moilioncircle.redis.replicator.RedisReplicator;
+import com.moilioncircle.redis.replicator.Replicator;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyStringValueHash;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyStringValueList;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyStringValueSet;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyStringValueString;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class LazyDecodeValueTest {
+
+    @Test
+    public void testLazyDecodeValue() throws Exception {
+        String[] files = {"dumpV7.rdb", "dictionary.rdb", "hash_as_ziplist.rdb", "intset_64.rdb", "linkedlist.rdb",
+                "non_ascii_values.rdb", "regular_set.rdb", "ziplist_with_integers.rdb", "zipmap_with_big_values.rdb"};
+        for (String file : files) {
+            List<KeyValuePair<?>> expected = parse(file, false);
+            List<KeyValuePair<?>> actual = parse(file, true);
+            assertEquals(expected.size(), actual.size());
+            int lazy = 0;
+            for (int i = 0; i < expected.size(); i++) {
+                KeyValuePair<?> kv = actual.get(i);
+                if (kv instanceof KeyStringValueString || kv instanceof KeyStringValueList
+                        || kv instanceof KeyStringValueSet || kv instanceof KeyStringValueHash) lazy++;
+                assertEquals(expected.get(i).getKey(), kv.getKey());
+                assertEquals(expected.get(i).getValue(), kv.getValue());
+                assertSame(kv.getValue(), kv.getValue());
+            }
+            assertTrue(file, lazy > 0);
+        }
+    }
+
+    private static List<KeyValuePair<?>> parse(String file, boolean lazy) throws Exception {
+        final List<KeyValuePair<?>> list = new ArrayList<>();
+        Configuration configuration = Configuration.defaultSetting().setLazyDecodeValue(lazy);
+        Replicator r = new RedisReplicator(LazyDecodeValueTest.class.getClassLoader().getResourceAsStream(file), FileType.RDB, configuration);
+        r.addRdbListener(new RdbListener.Adaptor() {
+            @Override
+            public void handle(Replicator replicator, KeyValuePair<?> kv) {
+                list.add(kv);
+            }
+        });
+        r.open();
+        return list;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb;
+
+import com.moilioncircle.redis.replicator.Configuration;
+import com.moilioncircle.redis.replicator.FileType;
+import com.moilioncircle.redis.replicator.RedisReplicator;
+import com.moilioncircle.redis.replicator.Replicator;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class PipelinedRdbParserTest {
+
+    @Test
+    public void testParse() throws Exception {
+        String[] resources = new String[]{"dictionary.rdb",
+                "easily_compressible_string_key.rdb", "empty_database.rdb",
+                "hash_as_ziplist.rdb", "integer_keys.rdb", "intset_16.rdb",
+                "intset_32.rdb", "intset_64.rdb", "keys_with_expiry.rdb",
+                "linkedlist.rdb", "multiple_databases.rdb",
+                "parser_filters.rdb", "rdb_version_5_with_checksum.rdb", "regular_set.rdb",
+                "regular_sorted_set.rdb", "sorted_set_as_ziplist.rdb", "uncompressible_string_keys.rdb",
+                "ziplist_that_compresses_easily.rdb", "ziplist_that_doesnt_compress.rdb",
+                "ziplist_with_integers.rdb", "zipmap_that_compresses_easily.rdb",
+                "zipmap_that_doesnt_compress.rdb", "zipmap_with_big_values.rdb",
+                "dumpV6.rdb", "dumpV7.rdb", "dumpV8.rdb", "binarydump.rdb"};
+        for (String resource : resources) {
+            List<String> expected = parse(resource, Configuration.defaultSetting());
+            List<String> ordered = parse(resource, Configuration.defaultSetting().setRdbDecodeThreads(4));
+            assertEquals(resource, expected, ordered);
+            List<String> unordered = parse(resource, Configuration.defaultSetting().setRdbDecodeThreads(4).setRdbDecodeOrdered(false));
+            assertTrue(resource, unordered.remove("post"));
+            Collections.sort(unordered);
+            expected.remove("post");
+            Collections.sort(expected);
+            assertEquals(resource, expected, unordered);
+        }
+    }
+
+    @Test
+    public void testRawRecord() throws Exception {
+        PipelinedRdbParser.RawRecord record = new PipelinedRdbParser.RawRecord(0xfc);
+        record.add(new byte[]{1, 2, 3, 4});
+        record.add(new byte[0]);
+        record.add(new byte[]{5, 6, 7, 8, 9});
+        assertEquals(10, record.length());
+        assertEquals((byte) 0xfc, record.get(0));
+        assertEquals(5, record.get(5));
+        assertEquals(9, record.get(9));
+        InputStream in = record.getInputStream();
+        assertEquals(0xfc, in.read());
+        for (int i = 1; i < 10; i++) assertEquals(i, in.read());
+        assertEquals(-1, in.read());
+    }
+
+    private List<String> parse(String resource, Configuration configuration) throws IOException {
+        final List<String> events = new ArrayList<>();
+        Replicator r = new RedisReplicator(PipelinedRdbParserTest.class.getClassLoader().getResourceAsStream(resource), FileType.RDB, configuration);
+        r.addRdbListener(new RdbListener.Adaptor() {
+            @Override
+            public void handle(Replicator replicator, KeyValuePair<?> kv) {
+                events.add(kv.getDb().getDbNumber() + " " + kv.getKey() + " " + kv.getValueRdbType() + " "
+                        + kv.getExpiredType() + " " + kv.getExpiredValue() + " " + kv.getValue());
+            }
+
+            @Override
+            public void postFullSync(Replicator replicator, long checksum) {
+                events.add("post");
+            }
+        });
+        r.open();
+        return events;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb;
+
+import com.moilioncircle.redis.replicator.Configuration;
+import com.moilioncircle.redis.replicator.FileType;
+import com.moilioncircle.redis.replicator.RedisReplicator;
+import com.moilioncircle.redis.replicator.Replicator;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyStringValueIntSet;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyStringValuePackedZSet;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyStringValueSet;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
+import com.moilioncircle.redis.replicator.rdb.datatype.PackedZSet;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class PrimitiveValueTest {
+
+    @Test
+    public void testPrimitiveValue() throws Exception {
+        String[] files = {"intset_16.rdb", "intset_32.rdb", "intset_64.rdb", "regular_sorted_set.rdb",
+                "sorted_set_as_ziplist.rdb", "dumpV7.rdb", "dumpV8.rdb"};
+        int intsets = 0, zsets = 0;
+        for (String file : files) {
+            List<KeyValuePair<?>> expected = parse(file, false);
+            List<KeyValuePair<?>> actual = parse(file, true);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                KeyValuePair<?> kv = actual.get(i);
+                if (kv instanceof KeyStringValueIntSet) {
+                    intsets++;
+                    KeyStringValueIntSet o = (KeyStringValueIntSet) kv;
+                    List<String> longs = new ArrayList<>();
+                    for (long v : o.getLongValue()) longs.add(String.valueOf(v));
+                    assertEquals(new ArrayList<>(((KeyStringValueSet) expected.get(i)).getValue()), longs);
+                    assertEquals(((KeyStringValueSet) expected.get(i)).getRawValue().size(), o.getRawValue().size());
+                } else if (kv instanceof KeyStringValuePackedZSet) {
+                    zsets++;
+                    PackedZSet packed = ((KeyStringValuePackedZSet) kv).getPackedValue();
+                    assertEquals(((Set<?>) expected.get(i).getValue()).size(), packed.size());
+                }
+                assertEquals(expected.get(i).getValueRdbType(), kv.getValueRdbType());
+                assertEquals(expected.get(i).getKey(), kv.getKey());
+                assertEquals(expected.get(i).getValue(), kv.getValue());
+            }
+        }
+        assertTrue(intsets >= 3);
+        assertTrue(zsets >= 2);
+    }
+
+    @Test
+    public void testPackedZSet() {
+        PackedZSet zset = new PackedZSet(1);
+        for (int i = 0; i < 1000; i++) {
+            zset.add(String.valueOf(i).getBytes(), i / 2d);
+        }
+        assertEquals(1000, zset.size());
+        int offset = 0;
+        for (int i = 0; i < 1000; i++) {
+            byte[] member = String.valueOf(i).getBytes();
+            assertArrayEquals(member, zset.member(i));
+            assertEquals(i / 2d, zset.score(i), 0d);
+            assertEquals(i / 2d, zset.scores()[i], 0d);
+            assertEquals(offset, zset.memberOffset(i));
+            assertEquals(member.length, zset.memberLength(i));
+            offset += member.length;
+        }
+        zset.add(new byte[0], 1d);
+        assertEquals(0, zset.memberLength(1000));
+        try {
+            zset.score(1001);
+            throw new AssertionError();
+        } catch (IndexOutOfBoundsException e) {
+        }
+    }
+
+    private static List<KeyValuePair<?>> parse(String file, boolean primitive) throws Exception {
+        final List<KeyValuePair<?>> list = new ArrayList<>();
+        Configuration configuration = Configuration.defaultSetting().setPrimitiveValue(primitive);
+        Replicator r = new RedisReplicator(PrimitiveValueTest.class.getClassLoader().getResourceAsStream(file), FileType.RDB, configuration);
+        r.addRdbListener(new RdbListener.Adaptor() {
+            @Override
+            public void handle(Replicator replicator, KeyValuePair<?> kv) {
+                list.add(kv);
+            }
+        });
+        r.open();
+        return list;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb;
+
+import com.moilioncircle.redis.replicator.Configuration;
+import com.moilioncircle.redis.replicator.FileType;
+import com.moilioncircle.redis.replicator.RedisReplicator;
+import com.moilioncircle.redis.replicator.Replicator;
+import com.moilioncircle.redis.replicator.rdb.datatype.DB;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
+import com.moilioncircle.redis.replicator.rdb.dump.DumpRdbVisitor;
+import com.moilioncircle.redis.replicator.rdb.iterable.ValueIterableRdbVisitor;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_STRING;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_ZSET_ZIPLIST;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class RdbFilterTest {
+
+    @Test
+    public void testGlob() {
+        assertTrue(match("*", ""));
+        assertTrue(match("*", "abc"));
+        assertTrue(match("a*", "abc"));
+        assertTrue(match("*c", "abc"));
+        assertTrue(match("a*c", "ac"));
+        assertFalse(match("a*c", "ab"));
+        assertTrue(match("a?c", "abc"));
+        assertFalse(match("a?c", "ac"));
+        assertTrue(match("h[ae]llo", "hello"));
+        assertFalse(match("h[ae]llo", "hillo"));
+        assertTrue(match("h[^e]llo", "hallo"));
+        assertFalse(match("h[^e]llo", "hello"));
+        assertTrue(match("h[a-b]llo", "hbllo"));
+        assertTrue(match("h[b-a]llo", "hbllo"));
+        assertFalse(match("h[a-b]llo", "hcllo"));
+        assertTrue(match("h\\*llo", "h*llo"));
+        assertFalse(match("h\\*llo", "hello"));
+        assertTrue(match("user:*:name", "user:1:name"));
+        assertFalse(match("user:*:name", "user:1:age"));
+    }
+
+    @Test
+    public void testFilter() {
+        RdbFilter filter = RdbFilter.and(RdbFilter.db(0, 2), RdbFilter.or(RdbFilter.prefix("a", "b"), RdbFilter.type(RDB_TYPE_ZSET_ZIPLIST)));
+        assertTrue(filter.accept(new DB(0), RDB_TYPE_STRING, "abc".getBytes()));
+        assertTrue(filter.accept(null, RDB_TYPE_STRING, "b".getBytes()));
+        assertTrue(filter.accept(new DB(2), RDB_TYPE_ZSET_ZIPLIST, "c".getBytes()));
+        assertFalse(filter.accept(new DB(1), RDB_TYPE_STRING, "abc".getBytes()));
+        assertFalse(filter.accept(new DB(2), RDB_TYPE_STRING, "c".getBytes()));
+        assertFalse(RdbFilter.not(filter).accept(new DB(0), RDB_TYPE_STRING, "abc".getBytes()));
+    }
+
+    @Test
+    public void testSkip() throws Exception {
+        String[] files = {"dumpV7.rdb", "dumpV8.rdb", "keys_with_expiry.rdb", "multiple_databases.rdb", "linkedlist.rdb",
+                "regular_sorted_set.rdb", "zipmap_with_big_values.rdb", "intset_64.rdb", "dictionary.rdb"};
+        RdbFilter[] filters = {RdbFilter.glob("*a*"), RdbFilter.db(1), RdbFilter.not(RdbFilter.type(RDB_TYPE_STRING))};
+        for (String file : files) {
+            for (RdbFilter filter : filters) {
+                for (int visitor = 0; visitor < 3; visitor++) {
+                    List<String> expected = new ArrayList<>();
+                    for (KeyValuePair<?> kv : parse(file, null, visitor)) {
+                        if (filter.accept(kv.getDb(), kv.getValueRdbType(), kv.getRawKey())) expected.add(toString(kv));
+                    }
+                    List<String> actual = new ArrayList<>();
+                    for (KeyValuePair<?> kv : parse(file, filter, visitor)) actual.add(toString(kv));
+                    assertEquals(file, expected, actual);
+                }
+            }
+        }
+    }
+
+    private static boolean match(String pattern, String key) {
+        return RdbFilter.glob(pattern).accept(null, RDB_TYPE_STRING, key.getBytes());
+    }
+
+    private static String toString(KeyValuePair<?> kv) {
+        return kv.getDb().getDbNumber() + " " + kv.getKey() + " " + kv.getValueRdbType() + " " + kv.getExpiredValue();
+    }
+
+    private static List<KeyValuePair<?>> parse(String file, RdbFilter filter, int visitor) throws Exception {
+        final List<KeyValuePair<?>> list = new ArrayList<>();
+        Configuration configuration = Configuration.defaultSetting().setRdbFilter(filter);
+        Replicator r = new RedisReplicator(RdbFilterTest.class.getClassLoader().getResourceAsStream(file), FileType.RDB, configuration);
+        if (visitor == 1) r.setRdbVisitor(new DumpRdbVisitor(r));
+        if (visitor == 2) r.setRdbVisitor(new ValueIterableRdbVisitor(r));
+        r.addRdbListener(new RdbListener.Adaptor() {
+            @Override
+            public void handle(Replicator replicator, KeyValuePair<?> kv) {
+                if (kv.getValue() instanceof Iterator) {
+                    Iterator<?> it = (Iterator<?>) kv.getValue();
+                    while (it.hasNext()) it.next();
+                }
+                list.add(kv);
+            }
+        });
+        r.open();
+        return list;
+    }
+}
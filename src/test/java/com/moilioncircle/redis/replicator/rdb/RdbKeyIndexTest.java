@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb;
+
+import com.moilioncircle.redis.replicator.Configuration;
+import com.moilioncircle.redis.replicator.RedisRdbReplicator;
+import com.moilioncircle.redis.replicator.Replicator;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class RdbKeyIndexTest {
+
+    @Test
+    public void testGet() throws Exception {
+        for (String name : new String[]{"dumpV7.rdb", "dumpV6.rdb", "multiple_databases.rdb", "keys_with_expiry.rdb", "integer_keys.rdb", "empty_database.rdb"}) {
+            File rdb = new File(RdbKeyIndexTest.class.getClassLoader().getResource(name).getPath());
+            File index = File.createTempFile("rdb", ".idx");
+            try {
+                Replicator replicator = new RedisRdbReplicator(rdb, Configuration.defaultSetting());
+                RdbKeyIndex.build(rdb, index, replicator);
+                List<KeyValuePair<?>> kvs = kvs(rdb);
+                try (RdbKeyIndex keys = RdbKeyIndex.open(rdb, index, replicator)) {
+                    assertEquals(kvs.size(), keys.size());
+                    for (KeyValuePair<?> expected : kvs) {
+                        KeyValuePair<?> actual = keys.get(expected.getDb().getDbNumber(), expected.getRawKey());
+                        assertEquals(expected.getDb().getDbNumber(), actual.getDb().getDbNumber());
+                        assertEquals(toString(expected), toString(actual));
+                        boolean found = false;
+                        for (KeyValuePair<?> kv : keys.get(expected.getRawKey())) {
+                            found |= toString(kv).equals(toString(expected));
+                        }
+                        assertTrue(found);
+                        boolean matched = false;
+                        for (RdbKeyIndex.Entry entry : keys.lookup(expected.getRawKey())) {
+                            if (entry.getDb() != expected.getDb().getDbNumber()) continue;
+                            matched = true;
+                            assertEquals(expected.getValueRdbType(), entry.getType());
+                            assertEquals(expected.getExpiredType(), entry.getExpiredType());
+                            if (expected.getExpiredValue() != null) assertEquals(expected.getExpiredValue().longValue(), entry.getExpiredValue());
+                        }
+                        assertTrue(matched);
+                    }
+                    assertNull(keys.get(0, "not exist".getBytes()));
+                    assertEquals(0, keys.get("not exist".getBytes()).size());
+                }
+            } finally {
+                index.delete();
+            }
+        }
+    }
+
+    @Test
+    public void testStale() throws Exception {
+        File rdb = File.createTempFile("dump", ".rdb");
+        File index = File.createTempFile("rdb", ".idx");
+        try {
+            try (InputStream in = RdbKeyIndexTest.class.getClassLoader().getResourceAsStream("dumpV7.rdb");
+                 OutputStream out = new FileOutputStream(rdb)) {
+                byte[] buf = new byte[4096];
+                for (int n; (n = in.read(buf)) > 0; ) out.write(buf, 0, n);
+            }
+            Replicator replicator = new RedisRdbReplicator(rdb, Configuration.defaultSetting());
+            RdbKeyIndex.build(rdb, index, replicator);
+            RdbKeyIndex.open(rdb, index, replicator).close();
+            assertTrue(rdb.setLastModified(rdb.lastModified() - 10000));
+            try {
+                RdbKeyIndex.open(rdb, index, replicator);
+                fail();
+            } catch (IOException e) {
+            }
+        } finally {
+            rdb.delete();
+            index.delete();
+        }
+    }
+
+    /**
+     * db size and expires of the resize db opcode are not indexed
+     */
+    private static String toString(KeyValuePair<?> kv) {
+        return kv.getKey() + " " + kv.getValueRdbType() + " " + kv.getExpiredType() + " " + kv.getExpiredValue() + " " + kv.getValue();
+    }
+
+    private static List<KeyValuePair<?>> kvs(File rdb) throws IOException {
+        final List<KeyValuePair<?>> r = new ArrayList<>();
+        Replicator replicator = new RedisRdbReplicator(rdb, Configuration.defaultSetting());
+        replicator.addRdbListener(new RdbListener.Adaptor() {
+            @Override
+            public void handle(Replicator replicator, KeyValuePair<?> kv) {
+                r.add(kv);
+            }
+        });
+        replicator.open();
+        return r;
+    }
+}
@@ -24,6 +24,10 @@ import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
 import com.moilioncircle.redis.replicator.rdb.datatype.ZSetEntry;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
@@ -33,6 +37,7 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 /**
@@ -189,4 +194,32 @@ public class RdbParserTest {
             fail();
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testVerifyChecksum() throws Exception {
+        for (int threads : new int[]{0, 2}) {
+            for (String file : new String[]{"dumpV7.rdb", "dumpV8.rdb", "dictionary.rdb", "rdb_version_5_with_checksum.rdb"}) {
+                Configuration configuration = Configuration.defaultSetting().setVerifyRdbChecksum(true).setRdbDecodeThreads(threads);
+                new RedisReplicator(RdbParserTest.class.getClassLoader().getResourceAsStream(file), FileType.RDB, configuration).open();
+            }
+            byte[] bytes = readAll(RdbParserTest.class.getClassLoader().getResourceAsStream("dumpV7.rdb"));
+            bytes[bytes.length - 1] ^= 1;
+            Configuration configuration = Configuration.defaultSetting().setVerifyRdbChecksum(true).setRdbDecodeThreads(threads);
+            try {
+                new RedisReplicator(new ByteArrayInputStream(bytes), FileType.RDB, configuration).open();
+                fail();
+            } catch (AssertionError e) {
+                assertTrue(e.getMessage().startsWith("rdb checksum mismatch"));
+            }
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int len;
+        while ((len = in.read(buf)) != -1) out.write(buf, 0, len);
+        in.close();
+        return out.toByteArray();
+    }
+}
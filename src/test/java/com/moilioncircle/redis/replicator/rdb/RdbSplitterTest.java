@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb;
+
+import com.moilioncircle.redis.replicator.Configuration;
+import com.moilioncircle.redis.replicator.RedisRdbReplicator;
+import com.moilioncircle.redis.replicator.Replicator;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
+import com.moilioncircle.redis.replicator.util.CRC16;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class RdbSplitterTest {
+
+    @Test
+    public void testSplit() throws Exception {
+        for (String name : new String[]{"dumpV7.rdb", "dumpV6.rdb", "multiple_databases.rdb", "keys_with_expiry.rdb",
+                "integer_keys.rdb", "zipmap_with_big_values.rdb", "rdb_version_8_with_64b_length_and_scores.rdb", "empty_database.rdb"}) {
+            for (int n : new int[]{1, 3, 4}) {
+                byte[] src = read(name);
+                ByteArrayOutputStream[] outs = new ByteArrayOutputStream[n];
+                WritableByteChannel[] channels = new WritableByteChannel[n];
+                for (int i = 0; i < n; i++) {
+                    outs[i] = new ByteArrayOutputStream();
+                    channels[i] = Channels.newChannel(outs[i]);
+                }
+                Replicator replicator = new RedisRdbReplicator(new ByteArrayInputStream(src), Configuration.defaultSetting().setBufferSize(64));
+                RdbSplitter splitter = new RdbSplitter(replicator);
+                splitter.split(new ByteArrayInputStream(src), channels);
+
+                List<String> expected = new ArrayList<>();
+                for (KeyValuePair<?> kv : kvs(src)) expected.add(toString(kv));
+                List<String> actual = new ArrayList<>();
+                for (int i = 0; i < n; i++) {
+                    int last = -1;
+                    for (KeyValuePair<?> kv : kvs(outs[i].toByteArray())) {
+                        int slot = CRC16.slot(kv.getRawKey());
+                        assertEquals(i, slot * n / CRC16.SLOTS);
+                        // the order of the source is kept in every output
+                        int idx = expected.indexOf(toString(kv));
+                        assertTrue(idx > last);
+                        last = idx;
+                        actual.add(toString(kv));
+                    }
+                }
+                assertEquals(name, expected.size(), actual.size());
+                assertTrue(name, expected.containsAll(actual));
+                assertEquals(expected.size(), splitter.getCopiedKeys());
+            }
+        }
+    }
+
+    @Test
+    public void testRename() throws Exception {
+        byte[] src = read("dumpV7.rdb");
+        ByteArrayOutputStream[] outs = {new ByteArrayOutputStream(), new ByteArrayOutputStream()};
+        Replicator replicator = new RedisRdbReplicator(new ByteArrayInputStream(src), Configuration.defaultSetting());
+        RdbSplitter splitter = new RdbSplitter(replicator, RdbTransformer.Rule.rename("", "{tag}"));
+        splitter.split(new ByteArrayInputStream(src), Channels.newChannel(outs[0]), Channels.newChannel(outs[1]));
+        int expected = kvs(src).size();
+        int slot = CRC16.slot("{tag}".getBytes());
+        List<KeyValuePair<?>> kvs = kvs(outs[slot * 2 / CRC16.SLOTS].toByteArray());
+        assertEquals(expected, kvs.size());
+        for (KeyValuePair<?> kv : kvs) assertTrue(kv.getKey().startsWith("{tag}"));
+        assertEquals(0, kvs(outs[1 - slot * 2 / CRC16.SLOTS].toByteArray()).size());
+    }
+
+    private static String toString(KeyValuePair<?> kv) {
+        return kv.getDb().getDbNumber() + " " + kv.getKey() + " " + kv.getExpiredType() + " " + kv.getExpiredValue() + " " + kv.getValue();
+    }
+
+    private static byte[] read(String name) throws IOException {
+        try (InputStream in = RdbSplitterTest.class.getClassLoader().getResourceAsStream(name)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            for (int n; (n = in.read(buf)) > 0; ) out.write(buf, 0, n);
+            return out.toByteArray();
+        }
+    }
+
+    private static List<KeyValuePair<?>> kvs(byte[] rdb) throws IOException {
+        final List<KeyValuePair<?>> r = new ArrayList<>();
+        Replicator replicator = new RedisRdbReplicator(new ByteArrayInputStream(rdb), Configuration.defaultSetting().setVerifyRdbChecksum(true));
+        replicator.addRdbListener(new RdbListener.Adaptor() {
+            @Override
+            public void handle(Replicator replicator, KeyValuePair<?> kv) {
+                r.add(kv);
+            }
+        });
+        replicator.open();
+        return r;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb;
+
+import com.moilioncircle.redis.replicator.Configuration;
+import com.moilioncircle.redis.replicator.RedisRdbReplicator;
+import com.moilioncircle.redis.replicator.Replicator;
+import com.moilioncircle.redis.replicator.rdb.datatype.DB;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class RdbTransformerTest {
+
+    private static final String[] RDBS = {"dumpV7.rdb", "dumpV6.rdb", "multiple_databases.rdb", "keys_with_expiry.rdb",
+            "integer_keys.rdb", "ziplist_that_compresses_easily.rdb", "zipmap_with_big_values.rdb", "intset_64.rdb",
+            "rdb_version_8_with_64b_length_and_scores.rdb", "empty_database.rdb"};
+
+    @Test
+    public void testCopy() throws Exception {
+        for (String name : new String[]{"dumpV7.rdb", "rdb_version_8_with_64b_length_and_scores.rdb"}) {
+            byte[] src = read(name);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Replicator replicator = new RedisRdbReplicator(new ByteArrayInputStream(src), Configuration.defaultSetting().setBufferSize(64));
+            RdbTransformer transformer = new RdbTransformer(replicator, RdbTransformer.Rule.drop(RdbFilter.prefix("not exist")));
+            transformer.transform(new ByteArrayInputStream(src), Channels.newChannel(out));
+            assertArrayEquals(name, src, out.toByteArray());
+            assertEquals(0, transformer.getDroppedKeys());
+            assertTrue(transformer.getCopiedKeys() > 0);
+        }
+    }
+
+    @Test
+    public void testTransform() throws Exception {
+        for (String name : RDBS) {
+            byte[] src = read(name);
+            List<KeyValuePair<?>> kvs = kvs(src);
+            RdbTransformer.Rule rule = RdbTransformer.Rule.chain(new RdbTransformer.Rule() {
+                int i;
+
+                @Override
+                public byte[] apply(DB db, int type, byte[] key) {
+                    return i++ % 3 == 0 ? null : key;
+                }
+            }, new RdbTransformer.Rule() {
+                int i;
+
+                @Override
+                public byte[] apply(DB db, int type, byte[] key) {
+                    return i++ % 2 == 0 ? ("renamed:" + new String(key, UTF_8)).getBytes(UTF_8) : key;
+                }
+            });
+            StringBuilder expected = new StringBuilder();
+            for (int i = 0, j = 0; i < kvs.size(); i++) {
+                if (i % 3 == 0) continue;
+                String prefix = j++ % 2 == 0 ? "renamed:" : "";
+                expected.append(toString(prefix, kvs.get(i)));
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Replicator replicator = new RedisRdbReplicator(new ByteArrayInputStream(src), Configuration.defaultSetting().setBufferSize(128));
+            RdbTransformer transformer = new RdbTransformer(replicator, rule);
+            transformer.transform(new ByteArrayInputStream(src), Channels.newChannel(out));
+            StringBuilder actual = new StringBuilder();
+            for (KeyValuePair<?> kv : kvs(out.toByteArray())) actual.append(toString("", kv));
+            assertEquals(name, expected.toString(), actual.toString());
+            assertEquals(kvs.size(), transformer.getCopiedKeys() + transformer.getRenamedKeys() + transformer.getDroppedKeys());
+        }
+    }
+
+    @Test
+    public void testRename() {
+        RdbTransformer.Rule rule = RdbTransformer.Rule.rename("a:", "bb:");
+        byte[] key = "c:1".getBytes();
+        assertTrue(key == rule.apply(null, 0, key));
+        assertEquals("bb:1", new String(rule.apply(null, 0, "a:1".getBytes())));
+    }
+
+    private static String toString(String prefix, KeyValuePair<?> kv) {
+        return kv.getDb().getDbNumber() + " " + prefix + kv.getKey() + " " + kv.getExpiredType() + " " + kv.getExpiredValue() + " " + kv.getValue() + "\n";
+    }
+
+    private static byte[] read(String name) throws IOException {
+        try (InputStream in = RdbTransformerTest.class.getClassLoader().getResourceAsStream(name)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            for (int n; (n = in.read(buf)) > 0; ) out.write(buf, 0, n);
+            return out.toByteArray();
+        }
+    }
+
+    private static List<KeyValuePair<?>> kvs(byte[] rdb) throws IOException {
+        final List<KeyValuePair<?>> r = new ArrayList<>();
+        Replicator replicator = new RedisRdbReplicator(new ByteArrayInputStream(rdb), Configuration.defaultSetting().setVerifyRdbChecksum(true));
+        replicator.addRdbListener(new RdbListener.Adaptor() {
+            @Override
+            public void handle(Replicator replicator, KeyValuePair<?> kv) {
+                r.add(kv);
+            }
+        });
+        replicator.open();
+        return r;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb;
+
+import com.moilioncircle.redis.replicator.Configuration;
+import com.moilioncircle.redis.replicator.RedisRdbReplicator;
+import com.moilioncircle.redis.replicator.Replicator;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
+import com.moilioncircle.redis.replicator.rdb.dump.DumpRdbVisitor;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class RdbWriterTest {
+
+    private static final String[] RDBS = {"dumpV7.rdb", "dumpV6.rdb", "multiple_databases.rdb", "keys_with_expiry.rdb",
+            "integer_keys.rdb", "easily_compressible_string_key.rdb", "non_ascii_values.rdb", "regular_sorted_set.rdb",
+            "sorted_set_as_ziplist.rdb", "rdb_version_8_with_64b_length_and_scores.rdb", "intset_64.rdb", "empty_database.rdb"};
+
+    @Test
+    public void testWrite() throws Exception {
+        for (String name : RDBS) {
+            List<KeyValuePair<?>> expected = kvs(RdbWriterTest.class.getClassLoader().getResourceAsStream(name), false);
+            for (int version : new int[]{7, 8}) {
+                for (boolean compress : new boolean[]{false, true}) {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    try (RdbWriter writer = new RdbWriter(Channels.newChannel(out), version, 128, compress)) {
+                        writer.writeAux("redis-ver", "4.0.0");
+                        for (KeyValuePair<?> kv : expected) writer.write(kv);
+                    }
+                    byte[] rdb = out.toByteArray();
+                    assertEquals("REDIS000" + version, new String(rdb, 0, 9));
+                    assertEquals(name, toString(expected), toString(kvs(new ByteArrayInputStream(rdb), false)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testWriteDump() throws Exception {
+        for (String name : RDBS) {
+            List<KeyValuePair<?>> expected = kvs(RdbWriterTest.class.getClassLoader().getResourceAsStream(name), false);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (RdbWriter writer = new RdbWriter(out)) {
+                for (KeyValuePair<?> kv : kvs(RdbWriterTest.class.getClassLoader().getResourceAsStream(name), true)) {
+                    writer.write(kv);
+                }
+            }
+            assertEquals(name, toString(expected), toString(kvs(new ByteArrayInputStream(out.toByteArray()), false)));
+        }
+    }
+
+    @Test
+    public void testCompress() throws Exception {
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        List<KeyValuePair<?>> kvs = kvs(RdbWriterTest.class.getClassLoader().getResourceAsStream("easily_compressible_string_key.rdb"), false);
+        try (RdbWriter w1 = new RdbWriter(Channels.newChannel(plain), 8, 1024, false);
+             RdbWriter w2 = new RdbWriter(Channels.newChannel(compressed), 8, 1024, true)) {
+            for (KeyValuePair<?> kv : kvs) {
+                w1.write(kv);
+                w2.write(kv);
+            }
+        }
+        assertTrue(compressed.size() < plain.size());
+    }
+
+    private static String toString(List<KeyValuePair<?>> kvs) {
+        StringBuilder builder = new StringBuilder();
+        for (KeyValuePair<?> kv : kvs) {
+            builder.append(kv.getDb().getDbNumber()).append(' ').append(kv.getKey()).append(' ').append(kv.getExpiredType())
+                    .append(' ').append(kv.getExpiredValue()).append(' ').append(kv.getValue()).append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static List<KeyValuePair<?>> kvs(InputStream in, boolean dump) throws IOException {
+        final List<KeyValuePair<?>> r = new ArrayList<>();
+        Replicator replicator = new RedisRdbReplicator(in, Configuration.defaultSetting().setVerifyRdbChecksum(true));
+        if (dump) replicator.setRdbVisitor(new DumpRdbVisitor(replicator));
+        replicator.addRdbListener(new RdbListener.Adaptor() {
+            @Override
+            public void handle(Replicator replicator, KeyValuePair<?> kv) {
+                r.add(kv);
+            }
+        });
+        replicator.open();
+        return r;
+    }
+}
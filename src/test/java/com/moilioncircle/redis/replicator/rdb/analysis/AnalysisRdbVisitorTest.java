@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb.analysis;
+
+import com.moilioncircle.redis.replicator.Configuration;
+import com.moilioncircle.redis.replicator.RedisRdbReplicator;
+import com.moilioncircle.redis.replicator.Replicator;
+import com.moilioncircle.redis.replicator.rdb.RdbListener;
+import com.moilioncircle.redis.replicator.rdb.datatype.ExpiredType;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
+import com.moilioncircle.redis.replicator.util.ByteArray;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class AnalysisRdbVisitorTest {
+
+    @Test
+    public void testAnalyze() throws Exception {
+        String[] files = {"dumpV6.rdb", "dumpV7.rdb", "dumpV8.rdb", "dictionary.rdb", "zipmap_with_big_values.rdb", "zipmap_that_compresses_easily.rdb",
+                "zipmap_that_doesnt_compress.rdb", "intset_16.rdb", "intset_32.rdb", "intset_64.rdb", "ziplist_that_compresses_easily.rdb",
+                "ziplist_that_doesnt_compress.rdb", "ziplist_with_integers.rdb", "linkedlist.rdb", "regular_sorted_set.rdb",
+                "sorted_set_as_ziplist.rdb", "hash_as_ziplist.rdb", "keys_with_expiry.rdb"};
+        for (String file : files) {
+            analyze(file, 0);
+            analyze(file, 2);
+        }
+    }
+
+    private static void analyze(String file, int threads) throws IOException {
+        final Map<String, Long> expected = new HashMap<>();
+        final AtomicLong expiring = new AtomicLong();
+        Replicator r = new RedisRdbReplicator(stream(file), Configuration.defaultSetting());
+        r.addRdbListener(new RdbListener.Adaptor() {
+            @Override
+            public void handle(Replicator replicator, KeyValuePair<?> kv) {
+                Object value = kv.getValue();
+                long elements = value instanceof Collection ? ((Collection<?>) value).size() : value instanceof Map ? ((Map<?, ?>) value).size() : 1L;
+                expected.put(kv.getDb().getDbNumber() + " " + kv.getKey(), elements);
+                if (kv.getExpiredType() != ExpiredType.NONE) expiring.incrementAndGet();
+            }
+        });
+        r.open();
+
+        RdbAnalyzer analyzer = new RdbAnalyzer(Integer.MAX_VALUE, 1024, ':');
+        r = new RedisRdbReplicator(stream(file), Configuration.defaultSetting().setRdbDecodeThreads(threads));
+        r.setRdbVisitor(new AnalysisRdbVisitor(r, analyzer));
+        r.open();
+        assertEquals(expected.size(), analyzer.getKeys());
+        assertEquals(file, expiring.get(), analyzer.getExpiring());
+        List<RdbAnalyzer.BigKey> keys = analyzer.getBigKeys();
+        assertEquals(expected.size(), keys.size());
+        for (RdbAnalyzer.BigKey key : keys) {
+            assertEquals(file + " " + key, expected.get(key.getDb() + " " + key.getKey()), Long.valueOf(key.getElements()));
+        }
+        for (int i = 1; i < keys.size(); i++) {
+            assertTrue(keys.get(i - 1).getBytes() >= keys.get(i).getBytes());
+        }
+        long sum = 0;
+        for (long count : analyzer.getHistogram()) sum += count;
+        assertEquals(expected.size(), sum);
+        assertTrue(analyzer.toString().startsWith("{\"keys\":" + expected.size() + ","));
+        StringBuilder csv = new StringBuilder();
+        analyzer.writeCsv(csv);
+        assertTrue(csv.toString().contains("\ntotal,,,," + expected.size() + "," + analyzer.getBytes() + ",,\n"));
+    }
+
+    @Test
+    public void testSketch() {
+        RdbAnalyzer analyzer = new RdbAnalyzer(10, 16, ':');
+        for (int i = 0; i < 100000; i++) {
+            // 3 heavy prefixes among 1000 light ones
+            String prefix = i % 4 == 3 ? "light" + (i % 1000) : "heavy" + (i % 4);
+            analyzer.add(0, 0, (prefix + ":" + i).getBytes(UTF_8), i % 4 == 3 ? 10 : 100, 1, false);
+        }
+        assertEquals(100000, analyzer.getKeys());
+        long distinct = analyzer.getDistinctKeys();
+        assertTrue(String.valueOf(distinct), Math.abs(distinct - 100000) < 3000);
+        long prefixes = analyzer.getDistinctPrefixes();
+        assertTrue(String.valueOf(prefixes), Math.abs(prefixes - 253) < 10);
+        List<SpaceSaving.Counter> top = analyzer.getPrefixes();
+        assertEquals(16, top.size());
+        for (int i = 0; i < 3; i++) {
+            SpaceSaving.Counter counter = top.get(i);
+            assertTrue(counter.getItem().startsWith("heavy"));
+            assertTrue(counter.getWeight() - counter.getError() <= 25000 * 100);
+            assertTrue(counter.getWeight() >= 25000 * 100);
+        }
+        List<RdbAnalyzer.BigKey> keys = analyzer.getBigKeys();
+        assertEquals(10, keys.size());
+        assertEquals(100, keys.get(9).getBytes());
+    }
+
+    @Test
+    public void testZipMap() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(254); // zmlen unknown
+        out.write(1);
+        out.write('a');
+        out.write(254); // 5 bytes len
+        out.write(new byte[]{0, 0, 1, 0}, 0, 4);
+        out.write(2); // free
+        out.write(new byte[256 + 2], 0, 256 + 2);
+        out.write(1);
+        out.write('b');
+        out.write(1);
+        out.write(0);
+        out.write('c');
+        out.write(255);
+        assertEquals(2, AnalysisRdbVisitor.zmlen(new ByteArray(out.toByteArray())));
+    }
+
+    private static InputStream stream(String file) throws IOException {
+        return AnalysisRdbVisitorTest.class.getClassLoader().getResourceAsStream(file);
+    }
+}
@@ -4,14 +4,32 @@ import com.moilioncircle.redis.replicator.Configuration;
 import com.moilioncircle.redis.replicator.FileType;
 import com.moilioncircle.redis.replicator.RedisReplicator;
 import com.moilioncircle.redis.replicator.Replicator;
+import com.moilioncircle.redis.replicator.cmd.impl.DefaultCommand;
 import com.moilioncircle.redis.replicator.rdb.RdbListener;
 import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
+import com.moilioncircle.redis.replicator.rdb.datatype.ZSetEntry;
+import com.moilioncircle.redis.replicator.rdb.dump.datatype.ChunkedKeyValuePair;
 import com.moilioncircle.redis.replicator.rdb.dump.datatype.DumpKeyValuePair;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class DumpRdbVisitorTest {
@@ -58,4 +76,196 @@ public class DumpRdbVisitorTest {
         assertArrayEquals(list, alist.get());
         assertArrayEquals(map, amap.get());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testChunk() {
+        int chunked = 0;
+        for (String file : new String[]{"dictionary.rdb", "linkedlist.rdb", "regular_set.rdb", "regular_sorted_set.rdb", "dumpV7.rdb", "dump-huge-kv.rdb", "rdb_version_8_with_64b_length_and_scores.rdb"}) {
+            final Map<String, Object> expected = new HashMap<>();
+            Replicator r = new RedisReplicator(DumpRdbVisitorTest.class.getClassLoader().getResourceAsStream(file), FileType.RDB, Configuration.defaultSetting());
+            r.addRdbListener(new RdbListener.Adaptor() {
+                @Override
+                public void handle(Replicator replicator, KeyValuePair<?> kv) {
+                    expected.put(kv.getKey(), normalize(kv.getValue()));
+                }
+            });
+            final Map<String, Object> actual = new HashMap<>();
+            final AtomicInteger dumped = new AtomicInteger();
+            Replicator c = new RedisReplicator(DumpRdbVisitorTest.class.getClassLoader().getResourceAsStream(file), FileType.RDB, Configuration.defaultSetting());
+            c.setRdbVisitor(new DumpRdbVisitor(c, -1, 8192, 3, 64));
+            c.addRdbListener(new RdbListener.Adaptor() {
+                @Override
+                public void handle(Replicator replicator, KeyValuePair<?> kv) {
+                    if (kv instanceof DumpKeyValuePair) {
+                        dumped.incrementAndGet();
+                        return;
+                    }
+                    Iterator<DefaultCommand> it = ((ChunkedKeyValuePair) kv).getValue();
+                    String command = null;
+                    List<byte[]> args = new ArrayList<>();
+                    while (it.hasNext()) {
+                        DefaultCommand chunk = it.next();
+                        command = new String(chunk.getCommand(), UTF_8);
+                        byte[][] ary = chunk.getArgs();
+                        assertArrayEquals(kv.getRawKey(), ary[0]);
+                        int width = command.equals("RPUSH") || command.equals("SADD") ? 1 : 2;
+                        assertTrue(ary.length - 1 <= 3 * width);
+                        args.addAll(Arrays.asList(ary).subList(1, ary.length));
+                    }
+                    actual.put(kv.getKey(), normalize(command, args));
+                }
+            });
+            try {
+                r.open();
+                c.open();
+            } catch (Exception e) {
+                fail();
+            }
+            chunked += actual.size();
+            assertEquals(expected.size(), actual.size() + dumped.get());
+            for (Map.Entry<String, Object> entry : actual.entrySet()) {
+                assertEquals(expected.get(entry.getKey()), entry.getValue());
+            }
+        }
+        assertTrue(chunked > 0);
+    }
+
+    @Test
+    public void testChunkQuickList() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write("REDIS0007".getBytes());
+        out.write(new byte[]{(byte) 0xFE, 0x00, 0x0E, 0x04});
+        out.write("list".getBytes());
+        out.write(0x03);
+        out.write(zipList("a", "b", "c"));
+        out.write(zipList());
+        out.write(zipList("d", "e"));
+        out.write(0xFF);
+        out.write(new byte[8]);
+        final List<String> expected = Arrays.asList("a", "b", "c", "d", "e");
+
+        final List<String> actual = new ArrayList<>();
+        final List<Integer> sizes = new ArrayList<>();
+        Replicator r = new RedisReplicator(new ByteArrayInputStream(out.toByteArray()), FileType.RDB, Configuration.defaultSetting());
+        r.setRdbVisitor(new DumpRdbVisitor(r, -1, 8192, 2, 0));
+        r.addRdbListener(new RdbListener.Adaptor() {
+            @Override
+            public void handle(Replicator replicator, KeyValuePair<?> kv) {
+                Iterator<DefaultCommand> it = ((ChunkedKeyValuePair) kv).getValue();
+                while (it.hasNext()) {
+                    DefaultCommand chunk = it.next();
+                    assertEquals("RPUSH", new String(chunk.getCommand(), UTF_8));
+                    sizes.add(chunk.getArgs().length - 1);
+                    for (int i = 1; i < chunk.getArgs().length; i++) actual.add(new String(chunk.getArgs()[i], UTF_8));
+                }
+            }
+        });
+        r.open();
+        assertEquals(expected, actual);
+        assertEquals(Arrays.asList(2, 2, 1), sizes);
+    }
+
+    @Test
+    public void testChunkQuickListSize() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write("REDIS0007".getBytes());
+        out.write(new byte[]{(byte) 0xFE, 0x00, 0x0E, 0x05});
+        out.write("small".getBytes());
+        out.write(0x02);
+        out.write(zipList("a", "b"));
+        out.write(zipList("c"));
+        out.write(0x0E);
+        out.write(0x05);
+        out.write("large".getBytes());
+        out.write(0x02);
+        out.write(zipList("a", "b", "c"));
+        out.write(zipList("d", "e", "f"));
+        out.write(new byte[]{0x00, 0x01});
+        out.write("k".getBytes());
+        out.write(0x01);
+        out.write("v".getBytes());
+        out.write(0xFF);
+        out.write(new byte[8]);
+
+        final List<String> events = new ArrayList<>();
+        Replicator r = new RedisReplicator(new ByteArrayInputStream(out.toByteArray()), FileType.RDB, Configuration.defaultSetting());
+        r.setRdbVisitor(new DumpRdbVisitor(r, -1, 8192, 4, 0));
+        r.addRdbListener(new RdbListener.Adaptor() {
+            @Override
+            public void handle(Replicator replicator, KeyValuePair<?> kv) {
+                if (kv instanceof ChunkedKeyValuePair) {
+                    // only the first command is read, the rest is skipped by the visitor
+                    DefaultCommand chunk = ((ChunkedKeyValuePair) kv).getValue().next();
+                    events.add(kv.getKey() + " " + (chunk.getArgs().length - 1));
+                } else {
+                    events.add(kv.getKey() + " " + kv.getClass().getSimpleName());
+                }
+            }
+        });
+        r.open();
+        assertEquals(Arrays.asList("small DumpKeyValuePair", "large 4", "k DumpKeyValuePair"), events);
+    }
+
+    private static byte[] zipList(String... elements) throws IOException {
+        ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        int prev = 0;
+        for (String element : elements) {
+            entries.write(prev);
+            entries.write(element.length());
+            entries.write(element.getBytes());
+            prev = 2 + element.length();
+        }
+        int zlbytes = 10 + entries.size() + 1;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(zlbytes);
+        out.write(new byte[]{(byte) (zlbytes >>> 8), 0, 0});
+        out.write(new byte[4]);
+        out.write(new byte[]{(byte) elements.length, 0});
+        out.write(entries.toByteArray());
+        out.write(0xFF);
+        ByteArrayOutputStream node = new ByteArrayOutputStream();
+        node.write(out.size());
+        node.write(out.toByteArray());
+        return node.toByteArray();
+    }
+
+    private static Object normalize(Object value) {
+        if (value instanceof Set) {
+            Map<String, Double> zset = new HashMap<>();
+            Set<String> set = new HashSet<>();
+            for (Object o : (Set<?>) value) {
+                if (o instanceof ZSetEntry) zset.put(((ZSetEntry) o).getElement(), ((ZSetEntry) o).getScore());
+                else set.add((String) o);
+            }
+            return zset.isEmpty() ? set : zset;
+        }
+        return value;
+    }
+
+    private static Object normalize(String command, List<byte[]> args) {
+        switch (command) {
+            case "RPUSH":
+                List<String> list = new ArrayList<>();
+                for (byte[] arg : args) list.add(new String(arg, UTF_8));
+                return list;
+            case "SADD":
+                Set<String> set = new HashSet<>();
+                for (byte[] arg : args) set.add(new String(arg, UTF_8));
+                return set;
+            case "ZADD":
+                Map<String, Double> zset = new HashMap<>();
+                for (int i = 0; i < args.size(); i += 2) {
+                    String score = new String(args.get(i), UTF_8);
+                    double d = score.equals("inf") ? Double.POSITIVE_INFINITY : score.equals("-inf") ? Double.NEGATIVE_INFINITY : Double.parseDouble(score);
+                    zset.put(new String(args.get(i + 1), UTF_8), d);
+                }
+                return zset;
+            default:
+                Map<String, String> hash = new HashMap<>();
+                for (int i = 0; i < args.size(); i += 2) {
+                    hash.put(new String(args.get(i), UTF_8), new String(args.get(i + 1), UTF_8));
+                }
+                return hash;
+        }
+    }
+}
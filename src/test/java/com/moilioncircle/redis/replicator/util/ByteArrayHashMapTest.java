@@ -0,0 +1,182 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class ByteArrayHashMapTest {
+
+    @Test
+    public void test() {
+        Map<byte[], byte[]> m = new LinkedHashMap<>();
+        m.put(new byte[]{1, 2, 3}, new byte[]{4, 5, 6});
+        m.put(null, new byte[]{4});
+        m.put(new byte[]{4, 5, 6}, null);
+        ByteArrayHashMap<byte[]> bytes = new ByteArrayHashMap<>(m);
+        assertEquals(3, bytes.size());
+        assertEquals(true, Arrays.equals(new byte[]{4, 5, 6}, bytes.get(new byte[]{1, 2, 3})));
+        assertEquals(true, Arrays.equals(new byte[]{4}, bytes.get(null)));
+        assertEquals(null, bytes.get(new byte[]{4, 5, 6}));
+        assertEquals(false, bytes.isEmpty());
+        assertEquals(true, bytes.containsKey(new byte[]{1, 2, 3}));
+        assertEquals(true, bytes.containsKey(null));
+        assertEquals(false, bytes.containsKey(1));
+        assertEquals(false, bytes.containsKey(new byte[]{1, 2}));
+        assertEquals(false, bytes.containsValue(new byte[]{4, 5, 6}));
+        assertEquals(true, bytes.containsValue(null));
+
+        // range lookup
+        byte[] ary = new byte[]{0, 1, 2, 3, 4, 5, 6, 7};
+        assertEquals(true, Arrays.equals(new byte[]{4, 5, 6}, bytes.get(ary, 1, 3)));
+        assertEquals(true, bytes.containsKey(ary, 4, 3));
+        assertEquals(false, bytes.containsKey(ary, 0, 3));
+        assertEquals(null, bytes.get(ary, 2, 3));
+
+        // insertion order
+        List<byte[]> keys = new ArrayList<>(bytes.keySet());
+        assertEquals(true, Arrays.equals(new byte[]{1, 2, 3}, keys.get(0)));
+        assertEquals(null, keys.get(1));
+        assertEquals(true, Arrays.equals(new byte[]{4, 5, 6}, keys.get(2)));
+
+        // replace keeps the order
+        byte[] old = bytes.put(new byte[]{1, 2, 3}, new byte[]{7});
+        assertEquals(true, Arrays.equals(new byte[]{4, 5, 6}, old));
+        assertEquals(3, bytes.size());
+        assertEquals(true, Arrays.equals(new byte[]{1, 2, 3}, bytes.keySet().iterator().next()));
+
+        // entry writes through
+        for (Map.Entry<byte[], byte[]> entry : bytes.entrySet()) {
+            if (entry.getKey() == null) entry.setValue(new byte[]{8});
+        }
+        assertEquals(true, Arrays.equals(new byte[]{8}, bytes.get(null)));
+
+        assertEquals(true, Arrays.equals(new byte[]{8}, bytes.remove(null)));
+        assertEquals(false, bytes.containsKey(null));
+        assertEquals(null, bytes.remove(null));
+        assertEquals(2, bytes.size());
+        bytes.put(null, new byte[]{9});
+        keys = new ArrayList<>(bytes.keySet());
+        assertEquals(null, keys.get(2));
+
+        Iterator<byte[]> it = bytes.keySet().iterator();
+        while (it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+        assertEquals(0, bytes.size());
+        assertEquals(true, bytes.isEmpty());
+
+        bytes = new ByteArrayHashMap<>(null);
+        assertEquals(0, bytes.size());
+        bytes.put(new byte[]{1}, new byte[]{1});
+        bytes.put(new byte[]{2}, new byte[]{2});
+        bytes.clear();
+        assertEquals(0, bytes.size());
+        assertEquals(false, bytes.containsKey(new byte[]{1}));
+        bytes.put(new byte[]{2}, new byte[]{3});
+        assertEquals(true, Arrays.equals(new byte[]{3}, bytes.get(new byte[]{2})));
+
+        Iterator<Map.Entry<byte[], byte[]>> itr = bytes.entrySet().iterator();
+        bytes.put(new byte[]{3}, new byte[]{3});
+        try {
+            itr.next();
+            fail();
+        } catch (ConcurrentModificationException e) {
+        }
+    }
+
+    @Test
+    public void testRandom() {
+        Random random = new Random(7);
+        Map<String, Integer> expected = new LinkedHashMap<>();
+        ByteArrayHashMap<Integer> map = new ByteArrayHashMap<>(1);
+        for (int i = 0; i < 100000; i++) {
+            String key = String.valueOf(random.nextInt(20000));
+            int op = random.nextInt(4);
+            if (op == 0) {
+                assertEquals(expected.remove(key), map.remove(key.getBytes()));
+            } else if (op == 1) {
+                assertEquals(expected.get(key), map.get(key.getBytes()));
+            } else {
+                assertEquals(expected.put(key, i), map.put(key.getBytes(), i));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        List<String> keys = new ArrayList<>();
+        for (byte[] key : map.keySet()) keys.add(new String(key));
+        assertEquals(new ArrayList<>(expected.keySet()), keys);
+        assertEquals(new ArrayList<>(expected.values()), new ArrayList<>(map.values()));
+        assertEquals(expected.hashCode(), hashCode(map));
+    }
+
+    @Test
+    public void testSerialize() throws IOException, ClassNotFoundException {
+        Map<byte[], byte[]> m = new LinkedHashMap<>();
+        m.put(new byte[]{1, 2, 3}, new byte[]{4, 5, 6});
+        m.put(null, new byte[]{4});
+        m.put(new byte[]{4, 5, 6}, null);
+        ByteArrayHashMap<byte[]> bytes = new ByteArrayHashMap<>(m);
+        bytes.remove(new byte[]{1, 2, 3});
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(buf);
+        out.writeObject(bytes);
+        out.close();
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(buf.toByteArray()));
+        @SuppressWarnings("unchecked")
+        ByteArrayHashMap<byte[]> deseri = (ByteArrayHashMap<byte[]>) in.readObject();
+        in.close();
+        assertEquals(2, deseri.size());
+        assertEquals(true, Arrays.equals(new byte[]{4}, deseri.get(null)));
+        assertEquals(null, deseri.get(new byte[]{4, 5, 6}));
+        assertEquals(true, deseri.containsKey(new byte[]{4, 5, 6}));
+        assertEquals(false, deseri.containsKey(new byte[]{1, 2, 3}));
+        assertTrue(deseri.keySet().iterator().next() == null);
+        deseri.put(new byte[]{1, 2, 3}, null);
+        assertEquals(3, deseri.size());
+    }
+
+    private static int hashCode(ByteArrayHashMap<Integer> map) {
+        int h = 0;
+        for (Map.Entry<byte[], Integer> entry : map.entrySet()) {
+            h += new String(entry.getKey()).hashCode() ^ entry.getValue().hashCode();
+        }
+        return h;
+    }
+}
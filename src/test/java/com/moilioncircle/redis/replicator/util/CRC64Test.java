@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.util;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class CRC64Test {
+
+    @Test
+    public void testCrc64() {
+        assertEquals(0xe9c6d914c4b8d9caL, CRC64.crc64("123456789".getBytes()));
+        Random random = new Random(0);
+        for (int i = 0; i < 200; i++) {
+            byte[] bytes = new byte[random.nextInt(100)];
+            random.nextBytes(bytes);
+            int start = bytes.length == 0 ? 0 : random.nextInt(bytes.length);
+            int length = random.nextInt(bytes.length - start + 1);
+            long sum = random.nextLong();
+            assertEquals(bytewise(bytes, start, length, sum), CRC64.crc64(bytes, start, length, sum));
+        }
+    }
+
+    @Test
+    public void testIncremental() {
+        Random random = new Random(1);
+        byte[] bytes = new byte[4099];
+        random.nextBytes(bytes);
+        long expected = CRC64.crc64(bytes);
+
+        CRC64 crc64 = new CRC64();
+        int i = 0;
+        while (i < bytes.length) {
+            int len = Math.min(bytes.length - i, random.nextInt(20));
+            if (len == 1) {
+                crc64.update(bytes[i]);
+            } else {
+                crc64.update(bytes, i, len);
+            }
+            i += len;
+        }
+        assertEquals(expected, crc64.getValue());
+
+        crc64.reset();
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        crc64.update(direct);
+        assertEquals(expected, crc64.getValue());
+        assertEquals(bytes.length, direct.position());
+
+        crc64.reset();
+        crc64.update(ByteBuffer.wrap(bytes, 0, 1000));
+        crc64.update(ByteBuffer.wrap(bytes, 1000, bytes.length - 1000).slice());
+        assertEquals(expected, crc64.getValue());
+    }
+
+    private static long bytewise(byte[] bytes, int start, int length, long sum) {
+        for (int i = start; i < start + length; i++) {
+            sum = (sum >>> 8) ^ CRC64.LOOKUP_TABLE[((int) sum ^ bytes[i]) & 0xFF];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.util;
+
+import com.moilioncircle.redis.replicator.Configuration;
+import com.moilioncircle.redis.replicator.RedisRdbReplicator;
+import com.moilioncircle.redis.replicator.Replicator;
+import com.moilioncircle.redis.replicator.rdb.RdbBatchListener;
+import com.moilioncircle.redis.replicator.rdb.RdbListener;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyStringValueByteArray;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.moilioncircle.redis.replicator.EventDispatcher.Policy.SPILL;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class DirectByteArrayTest {
+
+    @Test
+    public void testCopy() throws Exception {
+        for (boolean mapped : new boolean[]{false, true}) {
+            byte[] bytes = new byte[100000];
+            new Random(1).nextBytes(bytes);
+            DirectByteArray direct = new DirectByteArray(bytes.length, mapped);
+            ByteArray.arraycopy(new ByteArray(bytes), 0, direct, 0, bytes.length);
+            assertEquals(bytes.length, direct.length());
+            assertEquals(bytes[12345], direct.get(12345));
+            direct.set(12345, (byte) 1);
+            assertEquals(1, direct.get(12345));
+            direct.set(12345, bytes[12345]);
+
+            DirectByteArray other = new DirectByteArray(bytes.length, !mapped);
+            ByteArray.arraycopy(direct, 100, other, 0, bytes.length - 100);
+            ByteArray heap = new ByteArray(bytes.length);
+            ByteArray.arraycopy(other, 0, heap, 100, bytes.length - 100);
+            ByteArray.arraycopy(direct, 0, heap, 0, 100);
+            assertArrayEquals(bytes, heap.first());
+            assertArrayEquals(bytes, direct.first());
+            direct.release();
+            direct.release();
+            other.release();
+        }
+    }
+
+    @Test
+    public void testLzf() throws Exception {
+        byte[] bytes = new byte[65536];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = (byte) (i % 251 < 128 ? i % 7 : i);
+        byte[] compressed = new byte[bytes.length];
+        int clen = Lzf.encode(bytes, bytes.length, compressed, compressed.length);
+        byte[] in = new byte[clen];
+        System.arraycopy(compressed, 0, in, 0, clen);
+        DirectByteArray out = new DirectByteArray(bytes.length, false);
+        Lzf.decode(new ByteArray(in), out);
+        assertArrayEquals(bytes, out.first());
+        out.release();
+    }
+
+    @Test
+    public void testReplicator() throws Exception {
+        for (String name : new String[]{"dumpV7.rdb", "ziplist_that_compresses_easily.rdb", "zipmap_with_big_values.rdb", "easily_compressible_string_key.rdb"}) {
+            String expected = kvs(name, Configuration.defaultSetting());
+            assertEquals(name, expected, kvs(name, Configuration.defaultSetting().setOffHeapThreshold(16)));
+            assertEquals(name, expected, kvs(name, Configuration.defaultSetting().setOffHeapThreshold(16).setOffHeapMapped(true)));
+            assertEquals(name, expected, kvs(name, Configuration.defaultSetting().setOffHeapThreshold(16).setEventQueueSize(2)));
+            assertEquals(name, expected, kvs(name, Configuration.defaultSetting().setOffHeapThreshold(16).setEventQueueSize(1).setEventQueuePolicy(SPILL)));
+        }
+    }
+
+    @Test
+    public void testRelease() throws Exception {
+        for (Configuration configuration : new Configuration[]{
+                Configuration.defaultSetting().setOffHeapThreshold(16),
+                Configuration.defaultSetting().setOffHeapThreshold(16).setEventQueueSize(2),
+                Configuration.defaultSetting().setOffHeapThreshold(16).setListenerBatchSize(3)}) {
+            final List<KeyStringValueByteArray> r = new ArrayList<>();
+            // listeners swallow assertion errors, so the checks are counted
+            final AtomicInteger failures = new AtomicInteger();
+            Replicator replicator = new RedisRdbReplicator(DirectByteArrayTest.class.getClassLoader().getResourceAsStream("dumpV7.rdb"), configuration);
+            replicator.addRdbListener(new RdbListener.Adaptor() {
+                @Override
+                public void handle(Replicator replicator, KeyValuePair<?> kv) {
+                    if (!(kv instanceof KeyStringValueByteArray)) return;
+                    KeyStringValueByteArray o = (KeyStringValueByteArray) kv;
+                    if (o.getByteArray() == null || !Arrays.equals(o.getByteArray().first(), o.getRawValue())) failures.incrementAndGet();
+                    r.add(o);
+                }
+            });
+            replicator.addRdbBatchListener(new RdbBatchListener() {
+                @Override
+                public void handle(Replicator replicator, List<KeyValuePair<?>> kvs) {
+                    for (KeyValuePair<?> kv : kvs) {
+                        if (kv instanceof KeyStringValueByteArray && ((KeyStringValueByteArray) kv).getByteArray() == null) failures.incrementAndGet();
+                    }
+                }
+            });
+            replicator.open();
+            assertTrue(!r.isEmpty());
+            assertEquals(0, failures.get());
+            for (KeyStringValueByteArray kv : r) assertNull(kv.getByteArray());
+        }
+    }
+
+    @Test
+    public void testRawValueAcrossChunks() throws Exception {
+        long length = ByteArray.MAGIC + 10L;
+        // the heap copy needs a little more than 1 GB, run with -DargLine=-Xmx3g
+        assumeTrue(Runtime.getRuntime().maxMemory() > 2 * length);
+        DirectByteArray direct = new DirectByteArray(length, true);
+        direct.set(0, (byte) 1);
+        direct.set(ByteArray.MAGIC - 1, (byte) 2);
+        direct.set(ByteArray.MAGIC, (byte) 3);
+        direct.set(length - 1, (byte) 4);
+        KeyStringValueByteArray kv = new KeyStringValueByteArray();
+        kv.setByteArray(direct);
+        byte[] raw = kv.getRawValue();
+        kv.release();
+        assertEquals(length, raw.length);
+        assertEquals(1, raw[0]);
+        assertEquals(2, raw[ByteArray.MAGIC - 1]);
+        assertEquals(3, raw[ByteArray.MAGIC]);
+        assertEquals(4, raw[raw.length - 1]);
+    }
+
+    private static String kvs(String name, Configuration configuration) throws IOException {
+        final List<String> r = new ArrayList<>();
+        Replicator replicator = new RedisRdbReplicator(DirectByteArrayTest.class.getClassLoader().getResourceAsStream(name), configuration);
+        replicator.addRdbListener(new RdbListener.Adaptor() {
+            @Override
+            public void handle(Replicator replicator, KeyValuePair<?> kv) {
+                r.add(kv.getDb().getDbNumber() + " " + kv.getKey() + " " + kv.getExpiredValue() + " " + kv.getValue());
+            }
+        });
+        replicator.open();
+        return r.toString();
+    }
+}
@@ -19,8 +19,12 @@ package com.moilioncircle.redis.replicator.util;
 import org.junit.Test;
 
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author Leon Chen
@@ -62,6 +66,30 @@ public class LzfTest {
 
     }
 
+    @Test
+    public void encode() throws Exception {
+        InputStream in = LzfTest.class.getClassLoader().getResourceAsStream("low-comp-120k.txt");
+        byte[] bytes = new byte[121444];
+        int len = 0;
+        for (int n; len < bytes.length && (n = in.read(bytes, len, bytes.length - len)) > 0; ) len += n;
+        byte[][] inputs = {
+                "abcdsklafjslfjfd;sfdklafjlsafjslfjasl;fkjdsalfjasfjlas;dkfjalsvlasfkal;sj".getBytes(),
+                "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa".getBytes(),
+                Arrays.copyOf(bytes, len)
+        };
+        for (byte[] input : inputs) {
+            byte[] out = new byte[input.length];
+            int clen = Lzf.encode(input, input.length, out, out.length);
+            assertTrue(clen > 0 && clen < input.length);
+            byte[] decoded = Lzf.decode(new ByteArray(Arrays.copyOf(out, clen)), input.length).first();
+            assertArrayEquals(input, decoded);
+        }
+        // incompressible
+        byte[] random = new byte[1024];
+        new Random(0).nextBytes(random);
+        assertEquals(0, Lzf.encode(random, random.length, new byte[random.length - 4], random.length - 4));
+    }
+
     private byte[] compress(byte[] in) {
         CompressLZF c = new CompressLZF();
         byte[] compressed = new byte[in.length];
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Leon Chen
+ * @since 2.6.0
+ */
+public class ZipListIteratorTest {
+
+    @Test
+    public void testZipList() {
+        char[] chars = new char[20000];
+        Arrays.fill(chars, 'a');
+        String big = new String(chars);
+        List<String> expected = Arrays.asList("", "abc", big.substring(0, 63), big.substring(0, 64), big.substring(0, 16383), big,
+                "0", "12", "13", "-128", "127", "-32768", "32767", "-8388608", "8388607", "-2147483648", "2147483647",
+                "-9223372036854775808", "9223372036854775807", "x");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(out, 0, 4); // zlbytes, not checked
+        write(out, 0, 4); // zltail, not checked
+        write(out, expected.size(), 2);
+        int prevlen = 0;
+        for (String e : expected) {
+            int size = out.size();
+            entry(out, prevlen, e);
+            prevlen = out.size() - size;
+        }
+        out.write(255);
+        assertEquals(expected, toList(new ZipListIterator(new ByteArray(out.toByteArray()))));
+
+        // zllen 65535 means unknown, iterate until zlend
+        byte[] bytes = out.toByteArray();
+        bytes[8] = (byte) 0xff;
+        bytes[9] = (byte) 0xff;
+        ZipListIterator it = new ZipListIterator(new ByteArray(bytes));
+        assertEquals(65535, it.zllen());
+        assertEquals(expected, toList(it));
+
+        // missing zlend
+        it = new ZipListIterator(new ByteArray(Arrays.copyOf(bytes, bytes.length - 1)));
+        try {
+            toList(it);
+            fail();
+        } catch (AssertionError e) {
+        }
+    }
+
+    @Test
+    public void testIntSet() {
+        long[][] values = {{-32768, 0, 32767}, {-2147483648L, 1, 2147483647L}, {Long.MIN_VALUE, 2, Long.MAX_VALUE}};
+        for (int encoding = 2, i = 0; encoding <= 8; encoding <<= 1, i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            write(out, encoding, 4);
+            write(out, values[i].length, 4);
+            List<String> expected = new ArrayList<>();
+            for (long v : values[i]) {
+                write(out, v, encoding);
+                expected.add(String.valueOf(v));
+            }
+            IntSetIterator it = new IntSetIterator(new ByteArray(out.toByteArray()));
+            assertEquals(values[i].length, it.lenOfContent());
+            assertEquals(expected, toList(it));
+            assertFalse(it.hasNext());
+        }
+        try {
+            new IntSetIterator(new ByteArray(new byte[]{3, 0, 0, 0, 0, 0, 0, 0}));
+            fail();
+        } catch (AssertionError e) {
+        }
+    }
+
+    private static List<String> toList(EncodingIterator<byte[]> it) {
+        List<String> list = new ArrayList<>();
+        while (it.hasNext()) list.add(new String(it.next()));
+        return list;
+    }
+
+    private static void entry(ByteArrayOutputStream out, int prevlen, String e) {
+        if (prevlen < 254) {
+            out.write(prevlen);
+        } else {
+            out.write(254);
+            write(out, prevlen, 4);
+        }
+        long v;
+        try {
+            v = Long.parseLong(e);
+        } catch (NumberFormatException ex) {
+            byte[] bytes = e.getBytes();
+            int len = bytes.length;
+            if (len <= 0x3f) {
+                out.write(len);
+            } else if (len <= 0x3fff) {
+                out.write(0x40 | (len >> 8));
+                out.write(len & 0xff);
+            } else {
+                out.write(0x80);
+                for (int i = 3; i >= 0; i--) out.write((len >>> (i << 3)) & 0xff);
+            }
+            out.write(bytes, 0, len);
+            return;
+        }
+        if (v >= 0 && v <= 12) {
+            out.write(0xf1 + (int) v);
+        } else if (v >= Byte.MIN_VALUE && v <= Byte.MAX_VALUE) {
+            out.write(0xfe);
+            write(out, v, 1);
+        } else if (v >= Short.MIN_VALUE && v <= Short.MAX_VALUE) {
+            out.write(0xc0);
+            write(out, v, 2);
+        } else if (v >= -8388608 && v <= 8388607) {
+            out.write(0xf0);
+            write(out, v, 3);
+        } else if (v >= Integer.MIN_VALUE && v <= Integer.MAX_VALUE) {
+            out.write(0xd0);
+            write(out, v, 4);
+        } else {
+            out.write(0xe0);
+            write(out, v, 8);
+        }
+    }
+
+    private static void write(ByteArrayOutputStream out, long v, int len) {
+        for (int i = 0; i < len; i++) out.write((int) (v >>> (i << 3)) & 0xff);
+    }
+}